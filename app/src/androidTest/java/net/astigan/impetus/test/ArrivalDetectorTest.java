@@ -0,0 +1,128 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+
+import net.astigan.impetus.location.ArrivalDetector;
+import net.astigan.impetus.location.GeofenceIndex;
+
+import java.util.Random;
+
+/**
+ * Tests for arrival detection, using noisy fixes every second around a destination
+ */
+
+public class ArrivalDetectorTest extends InstrumentationTestCase {
+
+    private static final double DEST_LAT = TestTracks.ORIGIN_LAT;
+    private static final double DEST_LNG = TestTracks.ORIGIN_LNG;
+    private static final double NOISE = 8 / 1.5; // m on each axis, for an accuracy of 8m
+    private static final double ENTRY_RADIUS = 25; // m
+    private static final double EXIT_RADIUS = 40; // m
+    private static final long DWELL_TIME = 10 * 1000; // 10s
+
+    private GeofenceIndex index;
+    private RecordingListener listener;
+    private ArrivalDetector detector;
+    private Random random;
+    private long timeMs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        index = new GeofenceIndex.Builder().addGeofence(DEST_LAT, DEST_LNG, ENTRY_RADIUS, EXIT_RADIUS).build();
+        listener = new RecordingListener();
+        detector = new ArrivalDetector(index, DWELL_TIME, listener);
+        random = new Random(31);
+        timeMs = 0;
+    }
+
+    public void testWalkingToDestination() {
+
+        walk(-500, 0); // from 500m south
+        stand(0, 300);
+        assertTrue(detector.hasArrived(0));
+        assertEquals(1, listener.arrivals);
+        assertEquals(0, listener.departures);
+    }
+
+    public void testPassingByIsNotAnArrival() {
+
+        walkEast(-300, 300, 60); // 60m north of the destination
+        assertEquals(0, listener.arrivals);
+    }
+
+    public void testNoisyFixInsideIsNotAnArrival() {
+
+        stand(100, 30);
+        fix(5, 0); // a single bad fix near the destination
+        stand(100, 30);
+        assertEquals(0, listener.arrivals);
+    }
+
+    public void testHysteresisAtTheEdge() {
+
+        stand(30, 600); // jittering across the entry radius for ten minutes
+        assertEquals(1, listener.arrivals);
+        assertEquals(0, listener.departures);
+    }
+
+    public void testLeavingAndReturning() {
+
+        stand(0, 30);
+        assertEquals(1, listener.arrivals);
+
+        walk(0, 200);
+        assertEquals(1, listener.departures);
+        assertFalse(detector.hasArrived(0));
+
+        walk(200, 0);
+        stand(0, 30);
+        assertEquals(2, listener.arrivals);
+    }
+
+    /**
+     * Walks north or south at 1.4m/s along the destination's longitude
+     */
+    private void walk(double fromNorth, double toNorth) {
+        double step = (toNorth > fromNorth) ? 1.4 : -1.4;
+        int seconds = (int) Math.abs((toNorth - fromNorth) / step);
+
+        for (int i=0; i <= seconds; i++) {
+            fix(fromNorth + i * step, 0);
+        }
+    }
+
+    private void walkEast(double fromEast, double toEast, double north) {
+        for (double east = fromEast; east <= toEast; east += 1.4) {
+            fix(north, east);
+        }
+    }
+
+    private void stand(double north, int seconds) {
+        for (int i=0; i < seconds; i++) {
+            fix(north, 0);
+        }
+    }
+
+    private void fix(double north, double east) {
+        detector.update(TestTracks.noisyLat(north, NOISE, random), TestTracks.noisyLng(east, NOISE, random), timeMs);
+        timeMs += 1000;
+    }
+
+    private static class RecordingListener implements ArrivalDetector.Listener {
+
+        int arrivals = 0;
+        int departures = 0;
+
+        @Override
+        public void onArrived(int fence) {
+            arrivals++;
+        }
+
+        @Override
+        public void onDeparted(int fence) {
+            departures++;
+        }
+    }
+
+}
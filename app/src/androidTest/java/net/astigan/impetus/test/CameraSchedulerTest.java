@@ -0,0 +1,213 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.log.Logger;
+import net.astigan.impetus.ui.map.CameraScheduler;
+import net.astigan.impetus.ui.map.FrameClock;
+
+/**
+ * Tests that camera moves are coalesced, applied one animation at a time and skipped when in view
+ */
+
+public class CameraSchedulerTest extends InstrumentationTestCase {
+
+    private static final int FRAME_TIME = 16; // ms
+    private static final double VIEWPORT_SIZE = 0.01; // degrees
+    private static final float FIT_ZOOM = 11; // where the fake camera ends up after fitting to bounds
+
+    public void testJourneyFixesRarelyMoveCamera() {
+
+        FakeClock clock = new FakeClock();
+        FakeCamera camera = new FakeCamera(clock, 51.5, -0.12, 15);
+        CameraScheduler scheduler = new CameraScheduler(camera, clock);
+
+        int fixes = 720; // 12 minutes at 1Hz, walking north-east at ~1.4m/s
+        for (int i=0; i < fixes; i++) {
+            scheduler.moveTo(51.5 + i * 0.00001, -0.12 + i * 0.00001, 15, 1000);
+            clock.advance(1000);
+            assertTrue(camera.isInsideViewport(51.5 + i * 0.00001, -0.12 + i * 0.00001, 0));
+        }
+
+        Log.i(Logger.TAG, scheduler.describe());
+        assertEquals(fixes, scheduler.getRequestedCount());
+        assertEquals(fixes, scheduler.getSkippedCount() + scheduler.getAnimatedCount());
+        assertTrue(scheduler.getAnimatedCount() < fixes / 20);
+    }
+
+    public void testSeekbarDragCoalesced() {
+
+        FakeClock clock = new FakeClock();
+        FakeCamera camera = new FakeCamera(clock, 51.5, -0.12, 13);
+        CameraScheduler scheduler = new CameraScheduler(camera, clock);
+
+        for (int i=0; i < 120; i++) { // a 2s drag, with a change every frame
+            double span = 0.01 + i * 0.001;
+            scheduler.fitBounds(51.5 - span, -0.12 - span, 51.5 + span, -0.12 + span, 48, 500);
+            clock.advance(FRAME_TIME);
+            assertTrue(camera.maxConcurrent <= 1);
+        }
+        clock.advance(1000);
+
+        Log.i(Logger.TAG, scheduler.describe());
+        assertTrue(scheduler.getAnimatedCount() <= 5);
+        assertEquals(120, scheduler.getCoalescedCount() + scheduler.getAnimatedCount());
+        assertEquals(0.01 + 119 * 0.001, camera.span, 1e-9); // ends on the latest target
+    }
+
+    public void testMovesWithinFrameKeepLatest() {
+
+        FakeClock clock = new FakeClock();
+        FakeCamera camera = new FakeCamera(clock, 0, 0, 15);
+        CameraScheduler scheduler = new CameraScheduler(camera, clock);
+
+        scheduler.moveTo(1, 1, 15, 1000);
+        scheduler.moveTo(2, 2, 15, 1000);
+        scheduler.moveTo(0, 0, 12, 1000); // zoom changed, so not skipped
+        assertEquals(1, clock.posted);
+        assertEquals(12f, scheduler.getTargetZoom());
+
+        clock.advance(FRAME_TIME);
+        assertEquals(1, scheduler.getAnimatedCount());
+        assertEquals(2, scheduler.getCoalescedCount());
+        assertEquals(12f, camera.zoom);
+
+        scheduler.moveTo(3, 3, 12, 1000);
+        scheduler.cancel();
+        clock.advance(2000);
+        assertEquals(1, scheduler.getAnimatedCount());
+    }
+
+    public void testFollowingDoesNotUndoFit() {
+
+        FakeClock clock = new FakeClock();
+        FakeCamera camera = new FakeCamera(clock, 51.5, -0.12, 15);
+        CameraScheduler scheduler = new CameraScheduler(camera, clock);
+
+        scheduler.fitBounds(51.45, -0.17, 51.55, -0.07, 48, 500);
+        scheduler.moveTo(51.5, -0.12, 15, 1000); // a fix in the same frame
+        clock.advance(FRAME_TIME);
+        assertEquals(1, scheduler.getAnimatedCount());
+
+        for (int i=0; i < 20; i++) { // fixes during the fit, at the zoom it had reached
+            scheduler.moveTo(51.5, -0.12, 13.5f, 1000);
+            clock.advance(FRAME_TIME);
+        }
+        clock.advance(1000);
+
+        Log.i(Logger.TAG, scheduler.describe());
+        assertEquals(1, scheduler.getAnimatedCount());
+        assertEquals(21, scheduler.getSkippedCount());
+        assertEquals(0.05, camera.span, 1e-9);
+        assertEquals(FIT_ZOOM, scheduler.getTargetZoom());
+
+        // following the user again, at the zoom the fit ended on
+        scheduler.moveTo(51.5, -0.12, scheduler.getTargetZoom(), 1000);
+        clock.advance(FRAME_TIME);
+        assertEquals(1, scheduler.getAnimatedCount());
+        assertEquals(FIT_ZOOM, camera.zoom);
+    }
+
+    /**
+     * Runs frames every FRAME_TIME, and finishes the camera's animations when they are due
+     */
+    private static class FakeClock extends FrameClock {
+
+        private long timeMs = 0;
+        private long nextFrameMs = FRAME_TIME;
+        private Runnable frame;
+        private int posted = 0;
+        private FakeCamera camera;
+
+        @Override
+        public void postFrame(Runnable frame) {
+            this.frame = frame;
+            posted++;
+        }
+
+        void advance(long ms) {
+            long endMs = timeMs + ms;
+            while (nextFrameMs <= endMs) {
+                timeMs = nextFrameMs;
+                nextFrameMs += FRAME_TIME;
+                camera.finishIfDue(timeMs);
+
+                Runnable current = frame;
+                frame = null;
+                if (current != null) {
+                    current.run();
+                }
+            }
+            timeMs = endMs;
+        }
+    }
+
+    /**
+     * A square viewport around the camera's centre, which jumps to the target when animated
+     */
+    private static class FakeCamera implements CameraScheduler.Camera {
+
+        private final FakeClock clock;
+        private double lat;
+        private double lng;
+        private float zoom;
+        private double span = VIEWPORT_SIZE / 2;
+
+        private Runnable onFinished;
+        private long finishMs;
+        private int maxConcurrent = 0;
+
+        FakeCamera(FakeClock clock, double lat, double lng, float zoom) {
+            this.clock = clock;
+            this.lat = lat;
+            this.lng = lng;
+            this.zoom = zoom;
+            clock.camera = this;
+        }
+
+        @Override
+        public float getZoom() {
+            return zoom;
+        }
+
+        @Override
+        public boolean isInsideViewport(double lat, double lng, double margin) {
+            double inner = span * (1 - 2 * margin);
+            return Math.abs(lat - this.lat) <= inner && Math.abs(lng - this.lng) <= inner;
+        }
+
+        @Override
+        public void animateTo(double lat, double lng, float zoom, int duration, Runnable onFinished) {
+            start(duration, onFinished);
+            this.lat = lat;
+            this.lng = lng;
+            this.zoom = zoom;
+        }
+
+        @Override
+        public void animateToBounds(double minLat, double minLng, double maxLat, double maxLng, int padding,
+                                    int duration, Runnable onFinished) {
+            start(duration, onFinished);
+            lat = (minLat + maxLat) / 2;
+            lng = (minLng + maxLng) / 2;
+            span = (maxLat - minLat) / 2;
+            zoom = FIT_ZOOM;
+        }
+
+        void finishIfDue(long nowMs) {
+            if (onFinished != null && nowMs >= finishMs) {
+                Runnable current = onFinished;
+                onFinished = null;
+                current.run();
+            }
+        }
+
+        private void start(int duration, Runnable onFinished) {
+            maxConcurrent = Math.max(maxConcurrent, (this.onFinished == null) ? 1 : 2);
+            this.onFinished = onFinished;
+            this.finishMs = clock.timeMs + duration;
+        }
+    }
+
+}
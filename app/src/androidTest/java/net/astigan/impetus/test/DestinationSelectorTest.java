@@ -0,0 +1,126 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import net.astigan.impetus.destination.DestinationConstraint;
+import net.astigan.impetus.destination.DestinationSelector;
+import net.astigan.impetus.log.Logger;
+
+/**
+ * Tests for the destination selection engine, including a benchmark of how the number of
+ * candidates scored within the time budget scales with the number of threads.
+ */
+
+public class DestinationSelectorTest extends InstrumentationTestCase {
+
+    private static final double ORIGIN_LAT = 51.5;
+    private static final double ORIGIN_LNG = -0.12;
+    private static final long BUDGET = 50; // ms
+
+    public void testRejectedCandidatesAreNeverSelected() {
+
+        DestinationSelector selector = new DestinationSelector();
+        selector.addConstraint(new DestinationConstraint() {
+            @Override
+            public double score(double lat, double lng) {
+                return (lat > ORIGIN_LAT) ? Double.NEGATIVE_INFINITY : 0;
+            }
+        });
+
+        for (int i=0; i<100; i++) {
+            LatLng destination = selector.select(5000, ORIGIN_LAT, ORIGIN_LNG, 1000, BUDGET);
+            assertTrue(destination.latitude <= ORIGIN_LAT);
+        }
+
+        selector.addConstraint(new DestinationConstraint() {
+            @Override
+            public double score(double lat, double lng) {
+                return Double.NEGATIVE_INFINITY;
+            }
+        });
+        assertNull(selector.select(5000, ORIGIN_LAT, ORIGIN_LNG, 1000, BUDGET));
+        selector.shutdown();
+    }
+
+    public void testBestCandidateIsSelected() {
+
+        DestinationSelector selector = new DestinationSelector();
+        selector.addConstraint(new DestinationConstraint() {
+            @Override
+            public double score(double lat, double lng) {
+                return lng; // prefer east
+            }
+        });
+
+        LatLng destination = selector.select(5000, ORIGIN_LAT, ORIGIN_LNG, 20000, 1000);
+        assertTrue(destination.longitude > ORIGIN_LNG + 0.09); // ~6.5km east at this latitude
+        selector.shutdown();
+    }
+
+    public void testTimeBudget() {
+
+        DestinationSelector selector = new DestinationSelector();
+        selector.addConstraint(new ExpensiveConstraint());
+
+        long start = System.nanoTime();
+        LatLng destination = selector.select(5000, ORIGIN_LAT, ORIGIN_LNG, Integer.MAX_VALUE, BUDGET);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        assertNotNull(destination);
+        assertTrue("Took " + elapsedMs + "ms", elapsedMs < BUDGET * 3);
+        selector.shutdown();
+    }
+
+    public void testScalingAcrossCores() {
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        int singleThreaded = benchmark(1);
+        int best = singleThreaded;
+        StringBuilder sb = new StringBuilder("Candidates scored per second: ")
+                .append(singleThreaded * 1000 / BUDGET).append(" on 1 thread");
+
+        for (int threads=2; threads < cores * 2; threads *= 2) {
+            int scored = benchmark(Math.min(threads, cores));
+            best = Math.max(best, scored);
+            sb.append(", ").append(scored * 1000 / BUDGET).append(" on ").append(Math.min(threads, cores));
+        }
+        Log.i(Logger.TAG, sb.append(" (").append(cores).append(" cores)").toString());
+
+        if (cores > 1) {
+            assertTrue("Only " + best + " vs " + singleThreaded + " on 1 thread", best >= singleThreaded * 1.5);
+        }
+    }
+
+    private int benchmark(int threads) {
+        DestinationSelector selector = new DestinationSelector(threads);
+        selector.addConstraint(new ExpensiveConstraint());
+
+        selector.select(5000, ORIGIN_LAT, ORIGIN_LNG, Integer.MAX_VALUE, BUDGET); // warm up
+
+        int total = 0;
+        for (int i=0; i<5; i++) {
+            selector.select(5000, ORIGIN_LAT, ORIGIN_LNG, Integer.MAX_VALUE, BUDGET);
+            total += selector.getLastCandidateCount();
+        }
+        selector.shutdown();
+        return total / 5;
+    }
+
+    /**
+     * Simulates a constraint that does a realistic amount of work, e.g. a polygon test
+     */
+    private static class ExpensiveConstraint implements DestinationConstraint {
+        @Override
+        public double score(double lat, double lng) {
+            double total = 0;
+            for (int i=0; i<50; i++) {
+                total += Math.sin(lat + i) * Math.cos(lng - i);
+            }
+            return total;
+        }
+    }
+
+}
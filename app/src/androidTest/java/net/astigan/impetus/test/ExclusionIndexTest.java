@@ -0,0 +1,172 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+
+import net.astigan.impetus.destination.ExclusionIndex;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Tests for the destination exclusion index. Lookups are checked against a brute force
+ * point-in-polygon test over every edge.
+ */
+
+public class ExclusionIndexTest extends InstrumentationTestCase {
+
+    // a lake with an island in it, and a diagonal strip of private land
+    private static final double[] LAKE = circle(51.50, -0.12, 0.02, 200);
+    private static final double[] ISLAND = circle(51.50, -0.12, 0.005, 50);
+    private static final double[] STRIP = { 51.45, -0.20, 51.46, -0.20, 51.56, -0.05, 51.55, -0.05, 51.45, -0.20 };
+
+    public void testMatchesBruteForce() {
+
+        ExclusionIndex index = new ExclusionIndex.Builder()
+                .addPolygon(LAKE, ISLAND)
+                .addPolygon(STRIP)
+                .build();
+
+        assertTrue(index.isExcluded(51.51, -0.12));
+        assertFalse(index.isExcluded(51.50, -0.12)); // on the island
+        assertFalse(index.isExcluded(40.0, 10.0)); // outside the grid
+        assertEquals(Double.NEGATIVE_INFINITY, index.score(51.51, -0.12), 0.0);
+        assertEquals(0.0, index.score(51.50, -0.12), 0.0);
+
+        Random random = new Random(42);
+
+        for (int i=0; i<100000; i++) {
+            double lat = 51.44 + random.nextDouble() * 0.13;
+            double lng = -0.21 + random.nextDouble() * 0.17;
+
+            boolean expected = (contains(LAKE, lat, lng) && !contains(ISLAND, lat, lng)) || contains(STRIP, lat, lng);
+            assertEquals("Mismatch at " + lat + "," + lng, expected, index.isExcluded(lat, lng));
+        }
+    }
+
+    public void testSaveAndLoad() throws Exception {
+
+        ExclusionIndex built = new ExclusionIndex.Builder()
+                .addPolygon(LAKE, ISLAND)
+                .addPolygon(STRIP)
+                .build();
+
+        File file = File.createTempFile("exclusions", ".idx");
+
+        try {
+            built.save(file);
+            ExclusionIndex loaded = ExclusionIndex.load(file);
+
+            Random random = new Random(7);
+
+            for (int i=0; i<10000; i++) {
+                double lat = 51.44 + random.nextDouble() * 0.13;
+                double lng = -0.21 + random.nextDouble() * 0.17;
+                assertEquals(built.isExcluded(lat, lng), loaded.isExcluded(lat, lng));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testLoadOrBuildRebuildsWhenSourcesChange() throws Exception {
+
+        File directory = File.createTempFile("exclusions", "");
+        directory.delete();
+        directory.mkdir();
+        File lake = new File(directory, "lake.geojson");
+        File strip = new File(directory, "strip.geojson");
+        File indexFile = new File(directory, "exclusions.idx");
+
+        try {
+            assertNull(ExclusionIndex.loadOrBuild(directory, indexFile));
+
+            writeGeoJson(lake, LAKE);
+            writeGeoJson(strip, STRIP);
+            ExclusionIndex index = ExclusionIndex.loadOrBuild(directory, indexFile);
+            assertTrue(index.isExcluded(51.51, -0.12));
+            assertTrue(index.isExcluded(51.46, -0.19));
+
+            // nothing changed, so the index file isn't rewritten
+            long builtTime = 1418000000000L;
+            assertTrue(indexFile.setLastModified(builtTime));
+            ExclusionIndex.loadOrBuild(directory, indexFile);
+            assertEquals(builtTime, indexFile.lastModified());
+
+            // removing a source leaves every remaining file older than the index
+            strip.delete();
+            index = ExclusionIndex.loadOrBuild(directory, indexFile);
+            assertTrue(index.isExcluded(51.51, -0.12));
+            assertFalse(index.isExcluded(51.46, -0.19));
+
+            // replacing a source with an older file
+            writeGeoJson(lake, ISLAND);
+            assertTrue(lake.setLastModified(builtTime - 1000000));
+            index = ExclusionIndex.loadOrBuild(directory, indexFile);
+            assertFalse(index.isExcluded(51.51, -0.12));
+            assertTrue(index.isExcluded(51.50, -0.12));
+
+            // a damaged index with a matching fingerprint is rebuilt rather than failing every load
+            truncate(indexFile, indexFile.length() / 2);
+            index = ExclusionIndex.loadOrBuild(directory, indexFile);
+            assertTrue(index.isExcluded(51.50, -0.12));
+            assertFalse(new File(directory, indexFile.getName() + ".tmp").exists());
+        } finally {
+            lake.delete();
+            strip.delete();
+            indexFile.delete();
+            directory.delete();
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void writeGeoJson(File file, double[] ring) throws IOException {
+        Writer writer = new FileWriter(file);
+
+        try {
+            writer.write("{\"type\":\"Polygon\",\"coordinates\":[[");
+            for (int i=0; i < ring.length; i += 2) {
+                writer.write(((i > 0) ? "," : "") + "[" + ring[i + 1] + "," + ring[i] + "]");
+            }
+            writer.write("]]}");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static double[] circle(double lat, double lng, double radius, int points) {
+        double[] ring = new double[(points + 1) * 2];
+
+        for (int i=0; i <= points; i++) {
+            double angle = (2 * Math.PI * i) / points;
+            ring[i * 2] = lat + radius * Math.sin(angle);
+            ring[i * 2 + 1] = lng + radius * Math.cos(angle);
+        }
+        return ring;
+    }
+
+    private static boolean contains(double[] ring, double lat, double lng) {
+        boolean inside = false;
+
+        for (int i=0; i + 3 < ring.length; i += 2) {
+            double lat1 = ring[i], lng1 = ring[i + 1], lat2 = ring[i + 2], lng2 = ring[i + 3];
+
+            if ((lat1 > lat) != (lat2 > lat) && lng < lng1 + (lat - lat1) * (lng2 - lng1) / (lat2 - lat1)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+}
@@ -0,0 +1,121 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.location.FixGate;
+import net.astigan.impetus.log.Logger;
+
+import java.util.Random;
+
+/**
+ * Tests for the fix gate, using simulated fixes north of an origin point
+ */
+
+public class FixGateTest extends InstrumentationTestCase {
+
+    private static final float ACCURACY = 8; // m, a 68% radius
+    private static final double NOISE = ACCURACY / 1.5; // m, the standard deviation on each axis for that radius
+
+    public void testNoisyWalkIsAccepted() {
+
+        FixGate gate = new FixGate();
+        Random random = new Random(5);
+
+        for (int i=0; i<3600; i++) {
+            gate.check(TestTracks.noisyLat(i * TestTracks.WALKING_SPEED, NOISE, random),
+                    TestTracks.noisyLng(0, NOISE, random),
+                    i * 1000L, ACCURACY);
+        }
+
+        Log.i(Logger.TAG, "Noisy walk: " + gate.describeCounts());
+        assertTrue(gate.getAcceptedCount() > 3600 * 0.995); // only the worst outliers
+    }
+
+    public void testInaccurateFixIsRejected() {
+
+        FixGate gate = new FixGate();
+        assertEquals(FixGate.ACCEPTED, gate.check(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG, 0, 10));
+        assertEquals(FixGate.REJECT_ACCURACY, gate.check(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG, 1000, 120));
+        // unknown accuracy
+        assertEquals(FixGate.ACCEPTED, gate.check(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG, 2000, Float.NaN));
+        assertEquals(1, gate.getRejectCount(FixGate.REJECT_ACCURACY));
+    }
+
+    public void testGateRecoversWhenAccuracyStaysPoor() {
+
+        FixGate gate = new FixGate();
+        walk(gate, 0, 10);
+
+        // indoors, where every fix is worse than the gate's limit
+        int rejected = 0;
+        for (int i=11; i<16; i++) {
+            if (gate.check(lat(i), TestTracks.ORIGIN_LNG, i * 1000L, 80) == FixGate.REJECT_ACCURACY) {
+                rejected++;
+            }
+        }
+
+        assertEquals(5, rejected);
+        assertEquals(FixGate.ACCEPTED, gate.check(lat(16), TestTracks.ORIGIN_LNG, 16000, 80));
+        assertEquals(FixGate.REJECT_ACCURACY, gate.check(lat(17), TestTracks.ORIGIN_LNG, 17000, 80));
+    }
+
+    public void testTeleportIsRejected() {
+
+        FixGate gate = new FixGate();
+        walk(gate, 0, 60); // a minute north
+
+        // the GPS recovers 2km away 5s later
+        double jumpLat = lat(60) + 2000 / TestTracks.METRES_PER_DEGREE;
+        assertEquals(FixGate.REJECT_SPEED, gate.check(jumpLat, TestTracks.ORIGIN_LNG, 65000, 10));
+
+        // the walk carries on where it was
+        assertEquals(FixGate.ACCEPTED, gate.check(lat(66), TestTracks.ORIGIN_LNG, 66000, 5));
+        assertEquals(1, gate.getRejectCount(FixGate.REJECT_SPEED));
+    }
+
+    public void testSuddenAccelerationIsRejected() {
+
+        FixGate gate = new FixGate();
+        for (int i=0; i<10; i++) {
+            assertEquals(FixGate.ACCEPTED, gate.check(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG, i * 1000L, 2));
+        }
+
+        // 14m/s is a possible speed, but not one reached from standing in a second
+        double lat = TestTracks.lat(14 + 4);
+        assertEquals(FixGate.REJECT_ACCELERATION, gate.check(lat, TestTracks.ORIGIN_LNG, 10000, 2));
+        assertEquals(1, gate.getRejectCount(FixGate.REJECT_ACCELERATION));
+    }
+
+    public void testGateRecoversAfterRealMove() {
+
+        FixGate gate = new FixGate();
+        walk(gate, 0, 10);
+
+        // a train ride through a tunnel: every fix is far from the last accepted one
+        double offset = 5000 / TestTracks.METRES_PER_DEGREE;
+        int rejected = 0;
+        for (int i=0; i<10; i++) {
+            if (gate.check(lat(10) + offset, TestTracks.ORIGIN_LNG, 20000 + i * 1000L, 10) != FixGate.ACCEPTED) {
+                rejected++;
+            }
+        }
+
+        assertEquals(5, rejected);
+        assertEquals(FixGate.ACCEPTED, gate.check(lat(12) + offset, TestTracks.ORIGIN_LNG, 31000, 10));
+    }
+
+    private static void walk(FixGate gate, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            assertEquals(FixGate.ACCEPTED, gate.check(lat(i), TestTracks.ORIGIN_LNG, i * 1000L, 5));
+        }
+    }
+
+    /**
+     * @return the latitude after walking north for the given number of seconds
+     */
+    private static double lat(int seconds) {
+        return TestTracks.lat(seconds * TestTracks.WALKING_SPEED);
+    }
+
+}
@@ -0,0 +1,207 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.entities.Journey;
+import net.astigan.impetus.entities.TrackBuffer;
+import net.astigan.impetus.location.FixRingBuffer;
+import net.astigan.impetus.log.Logger;
+
+/**
+ * Tests for the fix ring buffer. The stress tests run a producer and consumer on separate threads,
+ * with every field of fix i derived from i, so a fix read half overwritten or out of order is caught.
+ */
+
+public class FixRingBufferTest extends InstrumentationTestCase {
+
+    private static final int STRESS_FIXES = 1000000;
+    private static final long PRODUCER_PAUSE = 200; // ns between fixes, so the threads run side by side
+
+    public void testDrainInBatches() {
+
+        FixRingBuffer ring = new FixRingBuffer(16, 0);
+        FixRingBuffer.Batch batch = new FixRingBuffer.Batch(4);
+
+        for (int i=0; i<10; i++) {
+            publish(ring, i);
+        }
+
+        assertEquals(4, ring.drain(batch));
+        assertEquals(0, batch.getFirstSequence());
+        assertEquals(4, ring.drain(batch));
+        assertEquals(4, batch.getFirstSequence());
+        assertEquals(5.0, batch.getLatitude(1), 0);
+        assertEquals(2, ring.drain(batch));
+        assertEquals(9, batch.getTime(1));
+        assertEquals(0, ring.drain(batch));
+        assertEquals(10, ring.getConsumedSequence());
+    }
+
+    public void testOverrunAndResync() {
+
+        FixRingBuffer ring = new FixRingBuffer(10, 100);
+        FixRingBuffer.Batch batch = new FixRingBuffer.Batch(64);
+        assertEquals(16, ring.getCapacity());
+
+        for (int i=100; i<100 + ring.getCapacity(); i++) {
+            publish(ring, i);
+        }
+        assertEquals(FixRingBuffer.OVERRUN, ring.drain(batch));
+        assertEquals(100, ring.getConsumedSequence()); // nothing consumed
+
+        ring.resync(ring.getPublishedSequence() - 4);
+        assertEquals(4, ring.drain(batch));
+        assertEquals(112, batch.getFirstSequence());
+        assertEquals(112.0, batch.getLatitude(0), 0);
+    }
+
+    public void testResyncAheadOfProducer() {
+
+        FixRingBuffer ring = new FixRingBuffer(16, 0);
+        FixRingBuffer.Batch batch = new FixRingBuffer.Batch(64);
+        for (int i=0; i<3; i++) {
+            publish(ring, i);
+        }
+
+        // caught up from a track that already holds a fix not yet published to the ring
+        ring.resync(4);
+        assertEquals(0, ring.drain(batch));
+        assertEquals(4, ring.getConsumedSequence());
+
+        publish(ring, 3);
+        assertEquals(0, ring.drain(batch));
+        publish(ring, 4);
+        assertEquals(1, ring.drain(batch));
+        assertEquals(4, batch.getFirstSequence());
+        assertEquals(4.0, batch.getLatitude(0), 0);
+    }
+
+    public void testJourneyPublishesTrackIndices() {
+
+        Journey journey = new Journey(null, null, null);
+        FixRingBuffer.Batch batch = new FixRingBuffer.Batch(8);
+
+        for (int i=0; i<5; i++) {
+            journey.addLocation(51.5 + i * 0.001, -0.12, i * 1000L, 8, 1.4f);
+        }
+
+        TrackBuffer track = journey.getTrack();
+        assertEquals(5, journey.getFixStream().drain(batch));
+        for (int i=0; i<5; i++) {
+            assertEquals(track.getLatitude(i), batch.getLatitude(i), 1e-9);
+            assertEquals(track.getTime(i), batch.getTime(i));
+        }
+    }
+
+    /**
+     * A consumer that keeps up with a throttled producer should see every fix exactly once
+     */
+    public void testStressWithoutOverrun() throws InterruptedException {
+
+        StressResult result = stress(1024, 100000, true);
+
+        Log.i(Logger.TAG, "Ring without overrun: " + result.received + " fixes in " + result.drains +
+                " drains, " + result.overruns + " overruns");
+
+        assertEquals(0, result.errors);
+        assertEquals(100000, result.received + result.lost);
+        assertEquals(0, result.overruns);
+    }
+
+    /**
+     * A slow consumer on a small ring is overrun, and should only ever see consistent fixes in
+     * order, skipping those it lost
+     */
+    public void testStressWithOverrun() throws InterruptedException {
+
+        long start = System.nanoTime();
+        StressResult result = stress(16, STRESS_FIXES, false);
+        long nsPerFix = (System.nanoTime() - start) / STRESS_FIXES;
+
+        Log.i(Logger.TAG, "Ring with overrun: " + result.received + " received, " + result.lost + " lost, " +
+                result.overruns + " overruns, " + nsPerFix + "ns per fix");
+
+        assertEquals(0, result.errors);
+        assertEquals(STRESS_FIXES, result.received + result.lost);
+        assertTrue(result.received > 0);
+    }
+
+    private static StressResult stress(int capacity, final int fixes, final boolean throttle)
+            throws InterruptedException {
+
+        final FixRingBuffer ring = new FixRingBuffer(capacity, 0);
+        final int limit = ring.getCapacity() / 2;
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i=0; i<fixes; i++) {
+                    while (throttle && i - ring.getConsumedSequence() >= limit) {
+                        Thread.yield();
+                    }
+                    publish(ring, i);
+
+                    long resume = System.nanoTime() + PRODUCER_PAUSE;
+                    while (System.nanoTime() < resume) {
+                        // spin
+                    }
+                }
+            }
+        }, "Producer");
+
+        StressResult result = new StressResult();
+        FixRingBuffer.Batch batch = new FixRingBuffer.Batch(4);
+        long expected = 0;
+
+        producer.start();
+        while (expected < fixes) {
+            int count = ring.drain(batch);
+
+            if (count == FixRingBuffer.OVERRUN) {
+                long resume = Math.max(expected, ring.getPublishedSequence() - limit);
+                result.overruns++;
+                result.lost += resume - expected;
+                expected = resume;
+                ring.resync(resume);
+                continue;
+            }
+            if (count == 0) {
+                Thread.yield();
+                continue;
+            }
+
+            result.drains++;
+            if (batch.getFirstSequence() != expected) {
+                result.errors++;
+            }
+            for (int i=0; i<count; i++) {
+                if (!isConsistent(batch, i, expected + i)) {
+                    result.errors++;
+                }
+            }
+            result.received += count;
+            expected += count;
+        }
+        producer.join();
+        return result;
+    }
+
+    private static void publish(FixRingBuffer ring, long i) {
+        ring.publish(i, -i, i, i % 100, i % 1000);
+    }
+
+    private static boolean isConsistent(FixRingBuffer.Batch batch, int index, long i) {
+        return batch.getLatitude(index) == i && batch.getLongitude(index) == -i && batch.getTime(index) == i &&
+                batch.getAccuracy(index) == i % 100 && batch.getSpeed(index) == i % 1000;
+    }
+
+    private static class StressResult {
+        private long received = 0;
+        private long lost = 0;
+        private int drains = 0;
+        private int overruns = 0;
+        private int errors = 0;
+    }
+
+}
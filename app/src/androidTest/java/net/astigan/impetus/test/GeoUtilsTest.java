@@ -0,0 +1,125 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+
+import net.astigan.impetus.utils.GeoUtils;
+
+import java.util.Random;
+
+/**
+ * A set of unit tests for the spherical geometry kernels. Results are checked against Vincenty's
+ * formulae on the WGS84 ellipsoid, which the spherical model should match to within 0.6%.
+ */
+
+public class GeoUtilsTest extends InstrumentationTestCase {
+
+    private static final double MAX_RELATIVE_ERROR = 0.006; // spherical vs ellipsoidal model
+    private static final double MAX_BEARING_ERROR = 0.5; // degrees
+
+    public void testKnownDistances() {
+
+        // London to Paris, ~343.5km on the ellipsoid
+        double distance = GeoUtils.haversineDistance(51.5074, -0.1278, 48.8566, 2.3522);
+        assertEquals(343500, distance, 343500 * MAX_RELATIVE_ERROR);
+
+        assertEquals(0.0, GeoUtils.haversineDistance(10.0, 20.0, 10.0, 20.0), 0.0);
+        assertEquals(90.0, GeoUtils.initialBearing(0.0, 0.0, 0.0, 1.0), 0.000001);
+        assertEquals(180.0, GeoUtils.initialBearing(1.0, 0.0, 0.0, 0.0), 0.000001);
+    }
+
+    public void testBearingTables() {
+
+        for (double bearing = 0.0; bearing < 2 * Math.PI; bearing += 0.0001) {
+            assertEquals(Math.sin(bearing), GeoUtils.sinBearing(bearing), 0.000000001);
+            assertEquals(Math.cos(bearing), GeoUtils.cosBearing(bearing), 0.000000001);
+        }
+    }
+
+    public void testDestinationAgainstReference() {
+
+        Random random = new Random(42);
+        double[] lat = new double[1];
+        double[] lng = new double[1];
+
+        for (int i=0; i<10000; i++) {
+            double originLat = (random.nextDouble() * 140) - 70;
+            double originLng = (random.nextDouble() * 360) - 180;
+            double distance = 500 + random.nextDouble() * 65000;
+            double bearing = random.nextDouble() * 2 * Math.PI;
+
+            GeoUtils.Origin origin = new GeoUtils.Origin(originLat, originLng);
+            origin.getDestination(distance, GeoUtils.sinBearing(bearing), GeoUtils.cosBearing(bearing), lat, lng, 0);
+
+            // the inverse functions should recover the inputs exactly on the sphere
+            assertEquals(distance, origin.distanceTo(lat[0], lng[0]), 0.01);
+            assertEquals(distance, GeoUtils.haversineDistance(originLat, originLng, lat[0], lng[0]), 0.01);
+            assertEquals(0.0, angleDifference(Math.toDegrees(bearing), origin.bearingTo(lat[0], lng[0])), 0.0001);
+
+            // ...and agree with the ellipsoid to within the model error
+            double[] reference = vincentyInverse(originLat, originLng, lat[0], lng[0]);
+            assertEquals(reference[0], distance, reference[0] * MAX_RELATIVE_ERROR);
+            assertEquals(0.0, angleDifference(reference[1], Math.toDegrees(bearing)), MAX_BEARING_ERROR);
+        }
+    }
+
+    private static double angleDifference(double a, double b) {
+        double difference = Math.abs(a - b) % 360.0;
+        return (difference > 180.0) ? 360.0 - difference : difference;
+    }
+
+    /**
+     * Reference implementation of Vincenty's inverse formula on the WGS84 ellipsoid
+     *
+     * @return the distance in metres and the initial bearing in degrees
+     */
+    private static double[] vincentyInverse(double lat1, double lng1, double lat2, double lng2) {
+        double a = 6378137.0;
+        double f = 1 / 298.257223563;
+        double b = (1 - f) * a;
+
+        double l = Math.toRadians(lng2 - lng1);
+        double u1 = Math.atan((1 - f) * Math.tan(Math.toRadians(lat1)));
+        double u2 = Math.atan((1 - f) * Math.tan(Math.toRadians(lat2)));
+        double sinU1 = Math.sin(u1), cosU1 = Math.cos(u1);
+        double sinU2 = Math.sin(u2), cosU2 = Math.cos(u2);
+
+        double lambda = l;
+        double sinSigma, cosSigma, sigma, cosSqAlpha, cos2SigmaM, sinLambda, cosLambda;
+        int iterations = 0;
+
+        do {
+            sinLambda = Math.sin(lambda);
+            cosLambda = Math.cos(lambda);
+            sinSigma = Math.sqrt((cosU2 * sinLambda) * (cosU2 * sinLambda) +
+                    (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda) * (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda));
+            if (sinSigma == 0) {
+                return new double[] { 0, 0 };
+            }
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1 - sinAlpha * sinAlpha;
+            cos2SigmaM = (cosSqAlpha == 0) ? 0 : cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha;
+            double c = f / 16 * cosSqAlpha * (4 + f * (4 - 3 * cosSqAlpha));
+            double previousLambda = lambda;
+            lambda = l + (1 - c) * f * sinAlpha *
+                    (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+
+            if (Math.abs(lambda - previousLambda) < 1E-12) {
+                break;
+            }
+        } while (++iterations < 200);
+
+        double uSq = cosSqAlpha * (a * a - b * b) / (b * b);
+        double bigA = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+        double bigB = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+        double deltaSigma = bigB * sinSigma * (cos2SigmaM + bigB / 4 * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM) -
+                bigB / 6 * cos2SigmaM * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+
+        double distance = b * bigA * (sigma - deltaSigma);
+        double bearing = Math.toDegrees(Math.atan2(cosU2 * sinLambda, cosU1 * sinU2 - sinU1 * cosU2 * cosLambda));
+
+        return new double[] { distance, (bearing + 360.0) % 360.0 };
+    }
+
+}
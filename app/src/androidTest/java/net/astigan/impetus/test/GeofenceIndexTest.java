@@ -0,0 +1,158 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.location.GeofenceIndex;
+import net.astigan.impetus.log.Logger;
+import net.astigan.impetus.utils.GeoUtils;
+
+import java.util.Random;
+
+/**
+ * Tests for the geofence index. Lookups are checked against a brute force distance check to every
+ * geofence, and the cost of a lookup is compared as the number of geofences grows.
+ */
+
+public class GeofenceIndexTest extends InstrumentationTestCase {
+
+    private static final double MIN_LAT = 51.40;
+    private static final double MIN_LNG = -0.30;
+    private static final double SPAN = 0.2; // degrees, ~20km north to south
+
+    public void testMatchesBruteForce() {
+
+        Random random = new Random(21);
+        double[][] fences = randomGeofences(2000, random);
+        GeofenceIndex index = build(fences);
+
+        int[] nearby = new int[index.getMaxCandidates()];
+        double[] distances = new double[index.getMaxCandidates()];
+        int totalFound = 0;
+
+        for (int i=0; i<10000; i++) {
+            // half the points close to a geofence, so plenty are found
+            double lat, lng;
+            if (i % 2 == 0) {
+                double[] fence = fences[random.nextInt(fences.length)];
+                lat = fence[0] + (random.nextDouble() - 0.5) * 0.001;
+                lng = fence[1] + (random.nextDouble() - 0.5) * 0.0015;
+            } else {
+                lat = MIN_LAT - 0.05 + random.nextDouble() * (SPAN + 0.1);
+                lng = MIN_LNG - 0.05 + random.nextDouble() * (SPAN + 0.1);
+            }
+
+            int found = index.findNearby(lat, lng, nearby, distances);
+            int expected = 0;
+
+            for (int k=0; k < fences.length; k++) {
+                double distance = GeoUtils.haversineDistance(fences[k][0], fences[k][1], lat, lng);
+                if (distance <= fences[k][3]) {
+                    expected++;
+                    int position = indexOf(nearby, found, k);
+                    assertTrue("Missed geofence " + k + " at " + lat + "," + lng, position >= 0);
+                    assertEquals(distance, distances[position], 0.01);
+                }
+            }
+            assertEquals(expected, found);
+            totalFound += found;
+        }
+        assertTrue(totalFound > 2000);
+    }
+
+    public void testOutsideGrid() {
+
+        GeofenceIndex index = new GeofenceIndex.Builder().addGeofence(51.5, -0.12, 25, 40).build();
+        int[] nearby = new int[index.getMaxCandidates()];
+        double[] distances = new double[index.getMaxCandidates()];
+
+        assertEquals(1, index.findNearby(51.5, -0.12, nearby, distances));
+        assertEquals(0, nearby[0]);
+        assertEquals(0.0, distances[0], 1e-6);
+        assertEquals(0, index.findNearby(51.6, -0.12, nearby, distances));
+        assertEquals(0, index.findNearby(-51.5, 0.12, nearby, distances));
+
+        GeofenceIndex empty = new GeofenceIndex.Builder().build();
+        assertEquals(0, empty.findNearby(0, 0, new int[1], new double[1]));
+    }
+
+    public void testInvalidRadii() {
+        try {
+            new GeofenceIndex.Builder().addGeofence(51.5, -0.12, 40, 25);
+            fail("Expected an exit radius smaller than the entry radius to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * The time per lookup should stay flat from one geofence to thousands spread over a city
+     */
+    public void testConstantCost() {
+
+        Random random = new Random(22);
+        double[] lats = new double[100000];
+        double[] lngs = new double[100000];
+        for (int i=0; i < lats.length; i++) {
+            lats[i] = MIN_LAT + random.nextDouble() * SPAN;
+            lngs[i] = MIN_LNG + random.nextDouble() * SPAN;
+        }
+
+        int[] sizes = { 1, 10, 100, 1000, 10000 };
+        StringBuilder report = new StringBuilder("Geofence lookups:");
+
+        for (int size : sizes) {
+            GeofenceIndex index = build(randomGeofences(size, random));
+            int[] nearby = new int[index.getMaxCandidates()];
+            double[] distances = new double[index.getMaxCandidates()];
+
+            long found = 0;
+            for (int i=0; i < lats.length; i++) { // warm up
+                found += index.findNearby(lats[i], lngs[i], nearby, distances);
+            }
+
+            long start = System.nanoTime();
+            for (int i=0; i < lats.length; i++) {
+                found += index.findNearby(lats[i], lngs[i], nearby, distances);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            report.append(" ").append(size).append(" geofences ").append(elapsed / lats.length).append("ns")
+                    .append(" (max ").append(index.getMaxCandidates()).append(" per cell, ").append(found)
+                    .append(" found)");
+            assertTrue(index.getMaxCandidates() <= 12);
+        }
+        Log.i(Logger.TAG, report.toString());
+    }
+
+    /**
+     * @return geofences as lat, lng, entry radius, exit radius
+     */
+    private static double[][] randomGeofences(int count, Random random) {
+        double[][] fences = new double[count][];
+        for (int i=0; i < count; i++) {
+            double entry = 10 + random.nextDouble() * 40;
+            fences[i] = new double[] { MIN_LAT + random.nextDouble() * SPAN, MIN_LNG + random.nextDouble() * SPAN,
+                    entry, entry * 1.5 };
+        }
+        return fences;
+    }
+
+    private static GeofenceIndex build(double[][] fences) {
+        GeofenceIndex.Builder builder = new GeofenceIndex.Builder();
+        for (double[] fence : fences) {
+            builder.addGeofence(fence[0], fence[1], fence[2], fence[3]);
+        }
+        return builder.build();
+    }
+
+    private static int indexOf(int[] values, int count, int value) {
+        for (int i=0; i < count; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
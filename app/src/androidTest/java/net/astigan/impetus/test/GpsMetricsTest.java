@@ -0,0 +1,151 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.log.GpsMetrics;
+import net.astigan.impetus.log.LogHistogram;
+import net.astigan.impetus.log.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for the GPS metrics and the log bucketed histograms behind them
+ */
+
+public class GpsMetricsTest extends InstrumentationTestCase {
+
+    public void testHistogramPercentilesWithinBucketError() {
+
+        LogHistogram histogram = new LogHistogram(60 * 60 * 1000);
+        Random random = new Random(41);
+        long[] values = new long[100000];
+
+        for (int i=0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 14); // 1 to ~1.2M, spread over many powers of two
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+
+        double[] percentiles = { 1, 10, 50, 90, 99, 99.9, 100 };
+        for (double percentile : percentiles) {
+            long exact = values[(int) Math.ceil(values.length * percentile / 100.0) - 1];
+            long estimate = histogram.getValueAtPercentile(percentile);
+
+            assertTrue("p" + percentile + " " + estimate + " below " + exact, estimate >= exact);
+            assertTrue("p" + percentile + " " + estimate + " too far above " + exact, estimate <= exact * 1.125 + 1);
+        }
+    }
+
+    public void testHistogramSmallAndClampedValues() {
+
+        LogHistogram histogram = new LogHistogram(1000);
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals("no values", histogram.describe("ms"));
+
+        for (int i=0; i<8; i++) {
+            histogram.record(i); // small values are exact
+        }
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(7, histogram.getValueAtPercentile(100));
+
+        histogram.record(-5);
+        histogram.record(1000000);
+        assertEquals(1000, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(1));
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+    }
+
+    public void testConcurrentRecording() throws InterruptedException {
+
+        final LogHistogram histogram = new LogHistogram(1000000);
+        Thread[] threads = new Thread[4];
+
+        for (int t=0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int i=0; i<250000; i++) {
+                        histogram.record(random.nextInt(1000000));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1000000, histogram.getCount());
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(median > 450000 && median < 600000);
+    }
+
+    public void testFixTimings() {
+
+        GpsMetrics metrics = new GpsMetrics(0);
+        metrics.startSession(1000);
+        metrics.startSession(2000); // still waiting for the first fix
+
+        metrics.recordFix(9000, 12);
+        for (int i=1; i <= 10; i++) {
+            metrics.recordFix(9000 + i * 5000, 8);
+        }
+
+        assertEquals(1, metrics.getTimeToFirstFix().getCount());
+        assertEquals(8000, metrics.getTimeToFirstFix().getMax());
+        assertEquals(10, metrics.getFixIntervals().getCount());
+        assertEquals(5000, metrics.getFixIntervals().getValueAtPercentile(50));
+        assertEquals(120, metrics.getAccuracies().getMax()); // dm
+        assertEquals(11, metrics.getCount(GpsMetrics.FIXES));
+
+        // the gap while the GPS was off isn't an interval, but the restart is timed
+        metrics.stopSession();
+        metrics.startSession(200000);
+        metrics.recordFix(230000, Float.NaN);
+
+        assertEquals(2, metrics.getTimeToFirstFix().getCount());
+        assertEquals(30000, metrics.getTimeToFirstFix().getMax());
+        assertEquals(10, metrics.getFixIntervals().getCount());
+        assertEquals(11, metrics.getAccuracies().getCount());
+    }
+
+    public void testSnapshotDump() throws Exception {
+
+        GpsMetrics metrics = new GpsMetrics(0);
+        metrics.startSession(0);
+        for (int i=0; i < 120; i++) {
+            metrics.recordSatelliteStatus(7);
+            metrics.recordFix(3000 + i * 1000L, 6);
+        }
+        metrics.count(GpsMetrics.FIXES_GAINED);
+
+        String snapshot = metrics.describe(123000);
+        Log.i(Logger.TAG, snapshot);
+        assertTrue(snapshot.contains("satellite status events: 120 (58.5/min)"));
+        assertTrue(snapshot.contains("time to first fix: n=1"));
+
+        File file = File.createTempFile("gps_metrics", ".txt");
+        try {
+            metrics.dump(file, 123000);
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                assertEquals("GPS metrics over 2.1 minutes", reader.readLine());
+            } finally {
+                reader.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+}
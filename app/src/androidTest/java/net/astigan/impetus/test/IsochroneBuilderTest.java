@@ -0,0 +1,81 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import net.astigan.impetus.graph.Isochrone;
+import net.astigan.impetus.graph.IsochroneBuilder;
+import net.astigan.impetus.log.Logger;
+import net.astigan.impetus.utils.GeoUtils;
+
+/**
+ * Tests for the isochrone calculations, with and without a (synthetic) road graph.
+ */
+
+public class IsochroneBuilderTest extends InstrumentationTestCase {
+
+    private static final int GRID_SIZE = 200; // ~22km across
+
+    public void testCirclesWithoutGraph() {
+
+        Isochrone[] isochrones = new IsochroneBuilder(null).build(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG);
+        assertEquals(IsochroneBuilder.MAX_DISTANCE + 1, isochrones.length);
+
+        for (int distance=1; distance <= IsochroneBuilder.MAX_DISTANCE; distance++) {
+            Isochrone isochrone = isochrones[distance];
+            assertEquals(distance, isochrone.getDistance());
+
+            for (LatLng point : isochrone.getPoints()) {
+                assertEquals(distance * 1000, GeoUtils.haversineDistance(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG,
+                        point.latitude, point.longitude), 0.01);
+                assertInBounds(isochrone, point);
+            }
+        }
+    }
+
+    public void testNetworkIsochrones() {
+
+        double centreLat = TestTracks.ORIGIN_LAT + (GRID_SIZE / 2) * TestGraphs.SPACING;
+        double centreLng = TestTracks.ORIGIN_LNG + (GRID_SIZE / 2) * TestGraphs.SPACING;
+        IsochroneBuilder builder = new IsochroneBuilder(TestGraphs.createGrid(GRID_SIZE));
+
+        long start = System.nanoTime();
+        Isochrone[] isochrones = builder.build(centreLat, centreLng);
+        Log.i(Logger.TAG, "Isochrones took " + ((System.nanoTime() - start) / 1000000) + "ms");
+
+        for (int distance=1; distance <= IsochroneBuilder.MAX_DISTANCE; distance++) {
+            Isochrone isochrone = isochrones[distance];
+
+            for (int i=0; i < isochrone.getPoints().size(); i++) {
+                LatLng point = isochrone.getPoints().get(i);
+                double radius = GeoUtils.haversineDistance(centreLat, centreLng, point.latitude, point.longitude);
+
+                // nothing can be further in a straight line than it is to walk
+                assertTrue(radius <= distance * 1000 + 0.01);
+                assertInBounds(isochrone, point);
+
+                // isochrones for longer distances contain the shorter ones
+                LatLng shorter = isochrones[distance - 1].getPoints().get(i);
+                assertTrue(radius + 0.01 >= GeoUtils.haversineDistance(centreLat, centreLng,
+                        shorter.latitude, shorter.longitude));
+            }
+        }
+
+        // on a grid, the furthest point walkable along the diagonal is 1/sqrt(2) of the distance
+        LatLng diagonal = isochrones[5].getPoints().get(9); // 45-50 degrees
+        assertEquals(5000 / Math.sqrt(2), GeoUtils.haversineDistance(centreLat, centreLng,
+                diagonal.latitude, diagonal.longitude), 200);
+
+        // the grid runs out after ~11km in every direction, so long distances fall back to circles
+        LatLng far = isochrones[40].getPoints().get(0);
+        assertEquals(40000, GeoUtils.haversineDistance(centreLat, centreLng, far.latitude, far.longitude), 0.01);
+    }
+
+    private static void assertInBounds(Isochrone isochrone, LatLng point) {
+        assertTrue(point.latitude >= isochrone.getMinLatitude() && point.latitude <= isochrone.getMaxLatitude());
+        assertTrue(point.longitude >= isochrone.getMinLongitude() && point.longitude <= isochrone.getMaxLongitude());
+    }
+
+}
@@ -0,0 +1,170 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import net.astigan.impetus.entities.TrackBuffer;
+import net.astigan.impetus.io.GeoJsonWriter;
+import net.astigan.impetus.io.GpxWriter;
+import net.astigan.impetus.io.JourneyCodec;
+import net.astigan.impetus.io.PolylineEncoder;
+import net.astigan.impetus.log.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A set of unit tests for the journey codecs, covering round trips of each format and the
+ * throughput of streaming a long journey.
+ */
+
+public class JourneyCodecTest extends InstrumentationTestCase {
+
+    private static final int THROUGHPUT_POINTS = 1000000;
+    private static final double MIN_THROUGHPUT = 20.0; // MB/s
+
+    public void testBinaryRoundTrip() throws IOException {
+
+        TrackBuffer track = createTrack(5000);
+        track.add(-33.868820, 151.209296, track.getTime(track.size() - 1) - 1000, Float.NaN, Float.NaN);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JourneyCodec.encode(track, out);
+
+        TrackBuffer decoded = new TrackBuffer();
+        JourneyCodec.decode(new ByteArrayInputStream(out.toByteArray()), decoded);
+
+        assertEquals(track.size(), decoded.size());
+
+        for (int i=0; i < track.size(); i++) {
+            assertEquals(track.getLatitudeE6(i), decoded.getLatitudeE6(i));
+            assertEquals(track.getLongitudeE6(i), decoded.getLongitudeE6(i));
+            assertEquals(track.getTime(i), decoded.getTime(i));
+        }
+        for (int i=0; i < track.size() - 1; i++) {
+            assertEquals(track.getAccuracy(i), decoded.getAccuracy(i), 0.05f);
+            assertEquals(track.getSpeed(i), decoded.getSpeed(i), 0.005f);
+        }
+        assertTrue(Float.isNaN(decoded.getAccuracy(track.size() - 1)));
+
+        // consecutive fixes should cost well under 12 bytes each
+        assertTrue(out.size() < track.size() * 12);
+    }
+
+    public void testPolylineRoundTrip() {
+
+        // example from the encoded polyline algorithm documentation
+        TrackBuffer track = new TrackBuffer();
+        track.add(38.5, -120.2, 0, Float.NaN, Float.NaN);
+        track.add(40.7, -120.95, 0, Float.NaN, Float.NaN);
+        track.add(43.252, -126.453, 0, Float.NaN, Float.NaN);
+
+        String encoded = PolylineEncoder.encode(track);
+        assertEquals("_p~iF~ps|U_ulLnnqC_mqNvxq`@", encoded);
+
+        List<LatLng> decoded = PolylineEncoder.decode(encoded);
+        assertEquals(3, decoded.size());
+        assertEquals(43.252, decoded.get(2).latitude, 0.00001);
+        assertEquals(-126.453, decoded.get(2).longitude, 0.00001);
+    }
+
+    public void testGpxWriter() throws IOException {
+
+        TrackBuffer track = new TrackBuffer();
+        track.add(51.507351, -0.127758, 1418000000000L, Float.NaN, Float.NaN);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GpxWriter.write(track, out);
+        String gpx = out.toString("UTF-8");
+
+        assertTrue(gpx.startsWith("<?xml"));
+        assertTrue(gpx.contains("<trkpt lat=\"51.507351\" lon=\"-0.127758\"><time>2014-12-08T00:53:20Z</time></trkpt>"));
+        assertTrue(gpx.trim().endsWith("</gpx>"));
+    }
+
+    public void testGeoJsonWriter() throws IOException {
+
+        TrackBuffer track = new TrackBuffer();
+        track.add(51.5, -0.000001, 1418000000000L, Float.NaN, Float.NaN);
+        track.add(51.6, -0.1, 1418000005000L, Float.NaN, Float.NaN);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GeoJsonWriter.write(track, out);
+        String json = out.toString("UTF-8");
+
+        assertTrue(json.contains("\"coordTimes\":[\"2014-12-08T00:53:20Z\",\"2014-12-08T00:53:25Z\"]"));
+        assertTrue(json.contains("\"coordinates\":[[-0.000001,51.500000],[-0.100000,51.600000]]"));
+    }
+
+    public void testThroughput() throws IOException {
+
+        TrackBuffer track = createTrack(THROUGHPUT_POINTS);
+
+        logThroughput("binary", track, new Export() {
+            public void write(TrackBuffer track, OutputStream out) throws IOException {
+                JourneyCodec.encode(track, out);
+            }
+        });
+        logThroughput("gpx", track, new Export() {
+            public void write(TrackBuffer track, OutputStream out) throws IOException {
+                GpxWriter.write(track, out);
+            }
+        });
+        logThroughput("geojson", track, new Export() {
+            public void write(TrackBuffer track, OutputStream out) throws IOException {
+                GeoJsonWriter.write(track, out);
+            }
+        });
+    }
+
+    private interface Export {
+        void write(TrackBuffer track, OutputStream out) throws IOException;
+    }
+
+    private void logThroughput(String format, TrackBuffer track, Export export) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+
+        long start = System.nanoTime();
+        export.write(track, out);
+        double seconds = (System.nanoTime() - start) / 1E9;
+
+        double megabytesPerSecond = (out.count / 1E6) / seconds;
+        Log.i(Logger.TAG, format + ": " + out.count + " bytes in " + seconds + "s (" + megabytesPerSecond + " MB/s)");
+
+        assertTrue(format + " too slow: " + megabytesPerSecond + " MB/s", megabytesPerSecond > MIN_THROUGHPUT);
+    }
+
+    private static TrackBuffer createTrack(int points) {
+        TrackBuffer track = new TrackBuffer(points + 1);
+        double lat = 51.5;
+        double lng = -0.12;
+
+        for (int i=0; i < points; i++) {
+            lat += ((i % 7) - 3) * 0.00003;
+            lng += ((i % 5) - 2) * 0.00004;
+            track.add(lat, lng, 1418000000000L + (i * 5000L), 3.0f + (i % 20), 1.25f);
+        }
+        return track;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+package net.astigan.impetus.test;
+
+import android.location.Location;
+import android.test.InstrumentationTestCase;
+
+import net.astigan.impetus.entities.Journey;
+import net.astigan.impetus.entities.TrackBuffer;
+import net.astigan.impetus.io.JourneyLog;
+import net.astigan.impetus.utils.LocationUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Tests that a journey is recovered from its log, up to the last intact record
+ */
+
+public class JourneyLogTest extends InstrumentationTestCase {
+
+    private static final int HEADER_SIZE = 64; // bytes
+    private static final int RECORD_SIZE = 32; // bytes
+    private static final long START_TIME = 1418000000000L;
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("journey", ".log");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws IOException {
+
+        writeLog(100);
+
+        JourneyLog log = JourneyLog.recover(file);
+        assertEquals(100, log.getRecordCount());
+
+        Journey journey = log.restoreJourney();
+        TrackBuffer track = journey.getTrack();
+        assertEquals(100, track.size());
+        assertEquals(51.52, journey.getEndLocation().getLatitude(), 1e-9);
+        assertEquals(-0.1, journey.getEndLocation().getLongitude(), 1e-9);
+
+        for (int i=0; i < 100; i++) {
+            assertEquals(51.5 + i * 0.0001, track.getLatitude(i), 1e-6);
+            assertEquals(-0.12, track.getLongitude(i), 1e-6);
+            assertEquals(START_TIME + i * 5000L, track.getTime(i));
+            assertEquals(5 + i % 10, track.getAccuracy(i), 0);
+        }
+        assertTrue(Float.isNaN(track.getSpeed(99)));
+
+        // appending after recovery carries on the sequence
+        log.append(51.6, -0.12, START_TIME + 500000, 5, 1.4f);
+        log.close();
+        assertEquals(101, JourneyLog.recover(file).getRecordCount());
+    }
+
+    public void testTornFinalRecord() throws IOException {
+
+        writeLog(50);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(recordPosition(49) + 8); // the process died while writing the time
+            raf.writeInt(0);
+        } finally {
+            raf.close();
+        }
+
+        assertEquals(49, JourneyLog.recover(file).getRecordCount());
+    }
+
+    public void testBadChecksum() throws IOException {
+
+        writeLog(50);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(recordPosition(20) + 28);
+            int checksum = raf.readInt();
+            raf.seek(recordPosition(20) + 28);
+            raf.writeInt(checksum ^ 1);
+        } finally {
+            raf.close();
+        }
+
+        // nothing after a bad record is trusted
+        assertEquals(20, JourneyLog.recover(file).getRecordCount());
+    }
+
+    public void testOutOfSequenceRecord() throws IOException {
+
+        writeLog(30);
+
+        // a valid record left at the wrong position, e.g. from an earlier journey
+        byte[] record = new byte[RECORD_SIZE];
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(recordPosition(3));
+            raf.readFully(record);
+            raf.seek(recordPosition(12));
+            raf.write(record);
+        } finally {
+            raf.close();
+        }
+
+        assertEquals(12, JourneyLog.recover(file).getRecordCount());
+    }
+
+    public void testCorruptHeader() throws IOException {
+
+        writeLog(10);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.writeInt(0);
+        } finally {
+            raf.close();
+        }
+
+        try {
+            JourneyLog.recover(file);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testAppendFailureThrows() throws IOException {
+
+        JourneyLog log = JourneyLog.create(file, location(51.5, -0.12), location(51.52, -0.1));
+        log.close(); // the next region can't be mapped
+
+        try {
+            log.append(51.5, -0.12, START_TIME, 5, 1.4f);
+            fail();
+        } catch (IOException e) {
+            // expected, so the caller can carry on without the log
+        }
+    }
+
+    private void writeLog(int records) throws IOException {
+        JourneyLog log = JourneyLog.create(file, location(51.5, -0.12), location(51.52, -0.1));
+        for (int i=0; i < records; i++) {
+            float speed = (i == records - 1) ? Float.NaN : 1.4f;
+            log.append(51.5 + i * 0.0001, -0.12, START_TIME + i * 5000L, 5 + i % 10, speed);
+        }
+        log.close();
+    }
+
+    private static long recordPosition(int index) {
+        return HEADER_SIZE + (long) index * RECORD_SIZE;
+    }
+
+    private static Location location(double lat, double lng) {
+        Location location = new Location(LocationUtils.LOCATION_PROVIDER);
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        location.setTime(START_TIME);
+        return location;
+    }
+
+}
@@ -0,0 +1,127 @@
+package net.astigan.impetus.test;
+
+import android.location.Location;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.entities.Journey;
+import net.astigan.impetus.entities.TrackBuffer;
+import net.astigan.impetus.log.Logger;
+
+/**
+ * A set of unit tests for the journey model and its packed track buffer. Memory tests fill a
+ * journey with synthetic fixes and measure the heap growth per point, including the distance index.
+ */
+
+public class JourneyTest extends InstrumentationTestCase {
+
+    private static final int MAX_BYTES_PER_POINT = 40; // 20 bytes/point + array growth headroom
+    private static final double MICRODEGREE = 0.000001;
+
+    public void testTrackBufferRoundTrip() {
+
+        TrackBuffer track = new TrackBuffer(2);
+
+        Location location = new Location("test");
+        location.setLatitude(51.5073509);
+        location.setLongitude(-0.1277583);
+        location.setTime(1418000000000L);
+        location.setAccuracy(8.0f);
+
+        track.add(location);
+        track.add(51.5080000, -0.1280000, 1418000005000L, Float.NaN, 1.4f);
+        track.add(51.5090000, -0.1290000, 1418000010000L, 4.0f, Float.NaN);
+
+        assertEquals(3, track.size());
+
+        assertEquals(51.5073509, track.getLatitude(0), MICRODEGREE);
+        assertEquals(-0.1277583, track.getLongitude(0), MICRODEGREE);
+        assertEquals(1418000000000L, track.getTime(0));
+        assertEquals(1418000010000L, track.getTime(2));
+
+        assertEquals(8.0f, track.getAccuracy(0));
+        assertTrue(Float.isNaN(track.getAccuracy(1)));
+        assertTrue(Float.isNaN(track.getSpeed(0)));
+        assertEquals(1.4f, track.getSpeed(1));
+
+        Location rebuilt = track.getLocation(0);
+        assertEquals(location.getLatitude(), rebuilt.getLatitude(), MICRODEGREE);
+        assertEquals(location.getTime(), rebuilt.getTime());
+        assertFalse(track.getLocation(1).hasAccuracy());
+    }
+
+    public void testJourneyDistance() {
+
+        Journey journey = new Journey(createLocation(0.0, 0.0, 0), createLocation(0.0, 0.0, 0),
+                createLocation(0.0, 1.0, 0));
+
+        assertEquals(0, journey.getJourneyDistance());
+
+        // 0.001 degrees of longitude along the equator is ~111.2m
+        for (int i=0; i<=1000; i++) {
+            journey.addLocation(createLocation(0.0, i * 0.001, i * 1000L));
+        }
+
+        assertEquals(111195, journey.getJourneyDistance(), 5);
+        assertEquals(0.0, journey.getDistanceAtTime(-1L), 0.0);
+        assertEquals(0.0, journey.getDistanceAtTime(0L), 0.0);
+        assertEquals(55597.5, journey.getDistanceAtTime(500000L), 5.0);
+        assertEquals(55597.5, journey.getDistanceAtTime(500999L), 5.0);
+        assertEquals(11119.5, journey.getDistanceSince(900000L), 1.0);
+
+        // between checkpoints the distance is summed from the nearest one, matching the running total
+        assertEquals(journey.getJourneyDistance(), journey.getDistanceAtTime(1000000L), 1.0);
+        for (int i=0; i<=1000; i++) {
+            assertEquals(i * 111.195, journey.getDistanceAtTime(i * 1000L), 0.5);
+        }
+    }
+
+    public void testMemoryPerPoint10k() {
+        assertMemoryPerPoint(10000);
+    }
+
+    public void testMemoryPerPoint100k() {
+        assertMemoryPerPoint(100000);
+    }
+
+    public void testMemoryPerPoint1M() {
+        assertMemoryPerPoint(1000000);
+    }
+
+    private void assertMemoryPerPoint(int points) {
+        Runtime runtime = Runtime.getRuntime();
+        long before = getUsedMemory(runtime);
+
+        Journey journey = new Journey(createLocation(51.5, -0.12, 0), createLocation(51.5, -0.12, 0),
+                createLocation(51.6, -0.02, 0));
+        long time = 1418000000000L;
+
+        for (int i=0; i<points; i++) {
+            journey.addLocation(51.5 + (i * 0.00001), -0.12 + (i * 0.00001), time + (i * 1000L), 5.0f, 1.2f);
+        }
+
+        long after = getUsedMemory(runtime);
+        double bytesPerPoint = (after - before) / (double) points;
+
+        Log.i(Logger.TAG, "Journey memory for " + points + " points: " + bytesPerPoint + " bytes/point");
+
+        assertEquals(points, journey.getTrack().size());
+        assertTrue("Too much memory per point: " + bytesPerPoint, bytesPerPoint < MAX_BYTES_PER_POINT);
+    }
+
+    private static Location createLocation(double lat, double lng, long timeMs) {
+        Location location = new Location("test");
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        location.setTime(timeMs);
+        return location;
+    }
+
+    private static long getUsedMemory(Runtime runtime) {
+        System.gc();
+        System.runFinalization();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
@@ -0,0 +1,178 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.location.KalmanFilter;
+import net.astigan.impetus.location.MovementGate;
+import net.astigan.impetus.log.Logger;
+import net.astigan.impetus.utils.GeoUtils;
+
+import java.util.Random;
+
+/**
+ * Tests for the Kalman smoothing stage and movement gate, using simulated noisy tracks: a walk with several turns,
+ * and a user standing still. The noise is seeded so the results are repeatable.
+ */
+
+public class KalmanFilterTest extends InstrumentationTestCase {
+
+    private static final float ACCURACY = 8; // m
+    private static final int INTERVAL = 5; // s, the service's update interval
+    private static final int FIXES = 360; // 30 minutes
+    private static final double MIN_TRACK_DISTANCE = 5; // m, as used by the service
+
+    public void testWalkingTrack() {
+
+        double[][] truth = walk();
+        double[][] noisy = addNoise(truth, new Random(42));
+
+        KalmanFilter filter = new KalmanFilter();
+        MovementGate gate = new MovementGate(MIN_TRACK_DISTANCE);
+        double[][] filtered = new double[FIXES][2];
+        double[][] stored = new double[FIXES][2];
+        int storedCount = 0;
+
+        for (int i=0; i < FIXES; i++) {
+            filter.update(noisy[i][0], noisy[i][1], i * INTERVAL * 1000L, ACCURACY);
+            filtered[i][0] = filter.getLatitude();
+            filtered[i][1] = filter.getLongitude();
+
+            if (gate.accept(filtered[i][0], filtered[i][1], ACCURACY)) {
+                stored[storedCount++] = filtered[i];
+            }
+        }
+
+        double trueDistance = pathLength(truth, FIXES);
+        double rawDistance = pathLength(noisy, FIXES);
+        double storedDistance = pathLength(stored, storedCount);
+
+        Log.i(Logger.TAG, "True distance " + (int) trueDistance + "m, raw " + (int) rawDistance +
+                "m, smoothed " + (int) storedDistance + "m from " + storedCount + "/" + FIXES + " points");
+        Log.i(Logger.TAG, "RMS error raw " + rmsError(truth, noisy) + "m, smoothed " + rmsError(truth, filtered) + "m");
+
+        assertTrue(rawDistance > trueDistance * 2); // jitter badly overstates the distance
+        assertTrue(Math.abs(storedDistance - trueDistance) < Math.abs(rawDistance - trueDistance) / 4);
+        assertTrue(storedCount < FIXES * 0.6);
+        assertTrue(rmsError(truth, filtered) < rmsError(truth, noisy));
+        assertEquals(TestTracks.WALKING_SPEED, filter.getSpeed(), 0.5);
+    }
+
+    public void testStandingStill() {
+
+        Random random = new Random(7);
+        KalmanFilter filter = new KalmanFilter();
+        MovementGate gate = new MovementGate(MIN_TRACK_DISTANCE);
+        double[][] raw = new double[FIXES][2];
+        double[][] stored = new double[FIXES][2];
+        int storedCount = 0;
+
+        for (int i=0; i < FIXES; i++) {
+            raw[i][0] = TestTracks.ORIGIN_LAT;
+            raw[i][1] = TestTracks.ORIGIN_LNG;
+        }
+        raw = addNoise(raw, random);
+
+        for (int i=0; i < FIXES; i++) {
+            filter.update(raw[i][0], raw[i][1], i * INTERVAL * 1000L, ACCURACY);
+
+            if (gate.accept(filter.getLatitude(), filter.getLongitude(), ACCURACY)) {
+                stored[storedCount++] = new double[] { filter.getLatitude(), filter.getLongitude() };
+            }
+        }
+
+        double rawDistance = pathLength(raw, FIXES);
+        double storedDistance = pathLength(stored, storedCount);
+
+        Log.i(Logger.TAG, "Standing still: raw distance " + (int) rawDistance + "m, smoothed " +
+                (int) storedDistance + "m from " + storedCount + "/" + FIXES + " points");
+
+        assertTrue(storedDistance < rawDistance * 0.25);
+        assertTrue(storedCount < FIXES * 0.3);
+        assertTrue(filter.getSpeed() < 0.5);
+    }
+
+    public void testWorstFixesMoveEstimateLeast() {
+
+        KalmanFilter precise = new KalmanFilter();
+        KalmanFilter imprecise = new KalmanFilter();
+
+        for (int i=0; i<10; i++) {
+            precise.update(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG, i * 1000L, 5);
+            imprecise.update(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG, i * 1000L, 5);
+        }
+
+        double jump = 50 / TestTracks.METRES_PER_DEGREE; // 50m north
+        precise.update(TestTracks.ORIGIN_LAT + jump, TestTracks.ORIGIN_LNG, 10000, 5);
+        imprecise.update(TestTracks.ORIGIN_LAT + jump, TestTracks.ORIGIN_LNG, 10000, 100);
+
+        assertTrue(precise.getLatitude() - TestTracks.ORIGIN_LAT >
+                (imprecise.getLatitude() - TestTracks.ORIGIN_LAT) * 5);
+    }
+
+    public void testCostPerFix() {
+
+        double[][] noisy = addNoise(walk(), new Random(1));
+        KalmanFilter filter = new KalmanFilter();
+
+        long start = System.nanoTime();
+        for (int repeat=0; repeat<100; repeat++) {
+            filter.reset();
+            for (int i=0; i < FIXES; i++) {
+                filter.update(noisy[i][0], noisy[i][1], i * INTERVAL * 1000L, ACCURACY);
+            }
+        }
+        long nsPerFix = (System.nanoTime() - start) / (100L * FIXES);
+
+        Log.i(Logger.TAG, "Kalman filter took " + nsPerFix + "ns per fix");
+        assertTrue(nsPerFix < 10000);
+    }
+
+    /**
+     * A walk at constant speed that turns 90 degrees every 5 minutes
+     */
+    private static double[][] walk() {
+        double[][] points = new double[FIXES][2];
+        double north = 0;
+        double east = 0;
+
+        for (int i=0; i < FIXES; i++) {
+            int leg = (i / 60) % 4;
+            double step = TestTracks.WALKING_SPEED * INTERVAL;
+            north += (leg == 0) ? step : (leg == 2) ? -step * 0.5 : 0;
+            east += (leg == 1) ? step : (leg == 3) ? step * 0.5 : 0;
+
+            points[i][0] = TestTracks.lat(north);
+            points[i][1] = TestTracks.lng(east);
+        }
+        return points;
+    }
+
+    private static double[][] addNoise(double[][] truth, Random random) {
+        double[][] noisy = new double[truth.length][2];
+
+        for (int i=0; i < truth.length; i++) {
+            noisy[i][0] = truth[i][0] + (random.nextGaussian() * ACCURACY) / TestTracks.METRES_PER_DEGREE;
+            noisy[i][1] = truth[i][1] + (random.nextGaussian() * ACCURACY) / TestTracks.METRES_PER_DEGREE_LNG;
+        }
+        return noisy;
+    }
+
+    private static double pathLength(double[][] points, int count) {
+        double length = 0;
+        for (int i=1; i < count; i++) {
+            length += GeoUtils.haversineDistance(points[i - 1][0], points[i - 1][1], points[i][0], points[i][1]);
+        }
+        return length;
+    }
+
+    private static double rmsError(double[][] truth, double[][] estimate) {
+        double sum = 0;
+        for (int i=0; i < truth.length; i++) {
+            double error = GeoUtils.haversineDistance(truth[i][0], truth[i][1], estimate[i][0], estimate[i][1]);
+            sum += error * error;
+        }
+        return Math.sqrt(sum / truth.length);
+    }
+
+}
@@ -0,0 +1,216 @@
+package net.astigan.impetus.test;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.location.LocationEventBus;
+import net.astigan.impetus.log.Logger;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the location event bus. Each test runs the bus on its own looper thread, which can be
+ * blocked to simulate a busy main thread while fixes are published.
+ */
+
+public class LocationEventBusTest extends InstrumentationTestCase {
+
+    private static final long TIMEOUT = 10; // s
+
+    private HandlerThread looperThread;
+    private Handler handler;
+    private LocationEventBus bus;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        looperThread = new HandlerThread("EventBusTest");
+        looperThread.start();
+        handler = new Handler(looperThread.getLooper());
+        bus = new LocationEventBus(looperThread.getLooper());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        looperThread.quit();
+        super.tearDown();
+    }
+
+    public void testBurstIsCoalesced() throws InterruptedException {
+
+        RecordingListener listener = new RecordingListener();
+        register(listener);
+
+        CountDownLatch release = blockLooper();
+        for (int i=0; i<100; i++) {
+            bus.publish(51.5 + i * 0.0001, -0.12, i * 1000L, 8, 1.4f);
+        }
+        release.countDown();
+        awaitIdle();
+
+        assertEquals(100, bus.getPublishedCount());
+        assertEquals(1, bus.getDispatchCount());
+        assertEquals(1, listener.count);
+        assertEquals(99, listener.lastSequence);
+        assertEquals(51.5 + 99 * 0.0001, listener.lastLat, 1e-9);
+        assertEquals(99000, listener.lastTime);
+    }
+
+    public void testFixesAreDeliveredInOrder() throws InterruptedException {
+
+        RecordingListener listener = new RecordingListener();
+        register(listener);
+
+        for (int i=0; i<10; i++) {
+            bus.publish(51.5, -0.12, i * 1000L, Float.NaN, Float.NaN);
+            awaitIdle();
+        }
+
+        assertEquals(10, listener.count);
+        assertEquals(9, listener.lastSequence);
+        assertTrue(Float.isNaN(listener.lastAccuracy));
+    }
+
+    public void testLatestFixIsGivenOnRegistration() throws InterruptedException {
+
+        bus.publish(51.5, -0.12, 1000, 8, 1.4f);
+        awaitIdle();
+
+        RecordingListener late = new RecordingListener();
+        register(late);
+        assertEquals(1, late.count);
+        assertEquals(51.5, late.lastLat, 1e-9);
+
+        unregister(late);
+        bus.publish(51.6, -0.12, 2000, 8, 1.4f);
+        awaitIdle();
+        assertEquals(1, late.count);
+    }
+
+    /**
+     * Publishes from another thread as fast as possible, checking that every delivered fix is
+     * consistent (never half overwritten by a later one) and newer than the last
+     */
+    public void testConcurrentPublishing() throws InterruptedException {
+
+        final int fixes = 200000;
+        final ConsistencyListener listener = new ConsistencyListener();
+        register(listener);
+
+        Thread publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i=0; i<fixes; i++) {
+                    bus.publish(i, -i, i, i, i);
+                }
+            }
+        }, "Publisher");
+        publisher.start();
+        publisher.join();
+        awaitIdle();
+
+        Log.i(Logger.TAG, fixes + " fixes published in " + bus.getDispatchCount() + " dispatches");
+
+        assertEquals(0, listener.errors);
+        assertEquals(fixes - 1, listener.lastSequence);
+        assertTrue(bus.getDispatchCount() <= fixes);
+    }
+
+    private void register(final LocationEventBus.Listener listener) throws InterruptedException {
+        runOnLooper(new Runnable() {
+            @Override
+            public void run() {
+                bus.register(listener);
+            }
+        });
+    }
+
+    private void unregister(final LocationEventBus.Listener listener) throws InterruptedException {
+        runOnLooper(new Runnable() {
+            @Override
+            public void run() {
+                bus.unregister(listener);
+            }
+        });
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        runOnLooper(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    private void runOnLooper(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @return a latch which holds up the looper until it's counted down
+     */
+    private CountDownLatch blockLooper() {
+        final CountDownLatch release = new CountDownLatch(1);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(TIMEOUT, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        return release;
+    }
+
+    private static class RecordingListener implements LocationEventBus.Listener {
+
+        private int count = 0;
+        private long lastSequence = -1;
+        private double lastLat;
+        private long lastTime;
+        private float lastAccuracy;
+
+        @Override
+        public void onLocationUpdate(LocationEventBus.Fix fix) {
+            count++;
+            lastSequence = fix.getSequence();
+            lastLat = fix.getLatitude();
+            lastTime = fix.getTime();
+            lastAccuracy = fix.getAccuracy();
+        }
+    }
+
+    /**
+     * Expects fix i to have been published with every field set to i, or -i for the longitude
+     */
+    private static class ConsistencyListener implements LocationEventBus.Listener {
+
+        private int errors = 0;
+        private long lastSequence = -1;
+
+        @Override
+        public void onLocationUpdate(LocationEventBus.Fix fix) {
+            long i = fix.getSequence();
+
+            if (i <= lastSequence || fix.getLatitude() != i || fix.getLongitude() != -i ||
+                    fix.getTime() != i || fix.getAccuracy() != (float) i) {
+                errors++;
+            }
+            lastSequence = i;
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package net.astigan.impetus.test;
+
+import android.location.Location;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.location.LocationPipeline;
+import net.astigan.impetus.location.LocationSample;
+import net.astigan.impetus.location.PipelineStage;
+import net.astigan.impetus.log.Logger;
+
+/**
+ * Tests for the location pipeline: stage ordering, dropping fixes, and the per-stage counters.
+ */
+
+public class LocationPipelineTest extends InstrumentationTestCase {
+
+    public void testStagesRunInOrder() {
+
+        StringBuilder trace = new StringBuilder();
+        LocationPipeline pipeline = new LocationPipeline();
+        pipeline.addStage(new TracingStage("a", trace, true));
+        pipeline.addStage(new TracingStage("b", trace, true));
+        pipeline.addStage(new TracingStage("c", trace, true));
+
+        LocationSample sample = sample(51.5, -0.12, 1000);
+        assertEquals(-1, pipeline.process(sample));
+        assertEquals("abc", trace.toString());
+        assertEquals(3, pipeline.getStageCount());
+        assertEquals("b", pipeline.getStageName(1));
+    }
+
+    public void testDroppedSampleSkipsLaterStages() {
+
+        StringBuilder trace = new StringBuilder();
+        LocationPipeline pipeline = new LocationPipeline();
+        pipeline.addStage(new TracingStage("a", trace, true));
+        pipeline.addStage(new TracingStage("b", trace, false));
+        pipeline.addStage(new TracingStage("c", trace, true));
+
+        for (int i=0; i<5; i++) {
+            assertEquals(1, pipeline.process(sample(51.5, -0.12, i * 1000L)));
+        }
+
+        assertEquals("ababababab", trace.toString());
+        assertEquals(5, pipeline.getProcessedCount(0));
+        assertEquals(5, pipeline.getProcessedCount(1));
+        assertEquals(5, pipeline.getDroppedCount(1));
+        assertEquals(0, pipeline.getProcessedCount(2));
+    }
+
+    public void testSmoothedPositionDefaultsToRaw() {
+
+        LocationSample sample = sample(51.5, -0.12, 1000);
+        sample.readLocation();
+
+        assertEquals(51.5, sample.getSmoothedLatitude(), 0);
+        assertEquals(-0.12, sample.getSmoothedLongitude(), 0);
+        assertTrue(Float.isNaN(sample.getAccuracy()));
+        assertFalse(sample.isStored());
+
+        sample.setSmoothed(51.6, -0.13, 1.4f);
+        sample.setStored(true);
+        sample.readLocation(); // the next fix starts afresh
+        assertEquals(51.5, sample.getSmoothedLatitude(), 0);
+        assertFalse(sample.isStored());
+    }
+
+    public void testLatencyIsRecorded() {
+
+        LocationPipeline pipeline = new LocationPipeline();
+        pipeline.addStage(new PipelineStage() {
+            @Override
+            public String getName() {
+                return "slow";
+            }
+
+            @Override
+            public boolean process(LocationSample sample) {
+                long end = System.nanoTime() + 100000; // 100us
+                while (System.nanoTime() < end) {
+                    // spin
+                }
+                return true;
+            }
+        });
+
+        for (int i=0; i<10; i++) {
+            pipeline.process(sample(51.5, -0.12, i * 1000L));
+        }
+        Log.i(Logger.TAG, pipeline.describeLatencies());
+
+        assertTrue(pipeline.getMeanLatencyNanos(0) >= 100000);
+        assertTrue(pipeline.getMaxLatencyNanos(0) >= pipeline.getMeanLatencyNanos(0));
+    }
+
+    private static LocationSample sample(double lat, double lng, long timeMs) {
+        Location location = new Location("test");
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        location.setTime(timeMs);
+
+        LocationSample sample = new LocationSample();
+        sample.setLocation(location);
+        return sample;
+    }
+
+    private static class TracingStage implements PipelineStage {
+
+        private final String name;
+        private final StringBuilder trace;
+        private final boolean passes;
+
+        TracingStage(String name, StringBuilder trace, boolean passes) {
+            this.name = name;
+            this.trace = trace;
+            this.passes = passes;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean process(LocationSample sample) {
+            trace.append(name);
+            return passes;
+        }
+    }
+
+}
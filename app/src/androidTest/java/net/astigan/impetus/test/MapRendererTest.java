@@ -0,0 +1,155 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+
+import net.astigan.impetus.ui.map.MapRenderer;
+import net.astigan.impetus.ui.map.MapScene;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests that the map renderer only applies what changed in the scene, reusing map objects
+ */
+
+public class MapRendererTest extends InstrumentationTestCase {
+
+    private static final float HUE_BLUE = 240;
+    private static final float HUE_ORANGE = 30;
+    private static final float HUE_YELLOW = 60;
+
+    public void testFixOnlyMovesCurrentMarker() {
+
+        RecordingSurface surface = new RecordingSurface();
+        MapRenderer renderer = new MapRenderer(surface);
+        MapScene scene = new MapScene();
+
+        scene.setMarker(MapScene.MARKER_START, 51.5, -0.12, HUE_BLUE);
+        scene.setMarker(MapScene.MARKER_FINISH, 51.52, -0.1, HUE_ORANGE);
+        scene.setLine(MapScene.LINE_GUIDE, 51.5, -0.12, 51.52, -0.1, 0xff0000ff);
+        scene.setMarker(MapScene.MARKER_CURRENT, 51.5, -0.12, HUE_YELLOW);
+        renderer.render(scene);
+        assertEquals(4, surface.calls.size()); // three markers and a line, all new
+
+        for (int i=1; i <= 100; i++) {
+            surface.calls.clear();
+            scene.setMarker(MapScene.MARKER_CURRENT, 51.5 + i * 0.0001, -0.12, HUE_YELLOW);
+            renderer.render(scene);
+
+            assertEquals(1, surface.calls.size());
+            assertEquals("moveMarker 2", surface.calls.get(0));
+        }
+
+        surface.calls.clear();
+        renderer.render(scene);
+        assertTrue(surface.calls.isEmpty());
+    }
+
+    public void testHiddenObjectsAreReused() {
+
+        RecordingSurface surface = new RecordingSurface();
+        MapRenderer renderer = new MapRenderer(surface);
+        MapScene scene = new MapScene();
+
+        scene.hideMarker(MapScene.MARKER_FINISH);
+        renderer.render(scene);
+        assertTrue(surface.calls.isEmpty()); // nothing is created until it is shown
+
+        scene.setMarker(MapScene.MARKER_FINISH, 1, 1, HUE_ORANGE);
+        scene.setLine(MapScene.LINE_GUIDE, 0, 0, 1, 1, 0xff0000ff);
+        renderer.render(scene);
+
+        scene.hideMarker(MapScene.MARKER_FINISH);
+        scene.hideLine(MapScene.LINE_GUIDE);
+        renderer.render(scene);
+
+        scene.setMarker(MapScene.MARKER_FINISH, 2, 2, HUE_ORANGE);
+        scene.setLine(MapScene.LINE_GUIDE, 0, 0, 2, 2, 0xff0000ff);
+        renderer.render(scene);
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("addMarker 1");
+        expected.add("addLine 0");
+        expected.add("setMarkerVisible 1 false");
+        expected.add("setLineVisible 0 false");
+        expected.add("moveMarker 1");
+        expected.add("setMarkerVisible 1 true");
+        expected.add("moveLine 0");
+        expected.add("setLineVisible 0 true");
+        assertEquals(expected, surface.calls);
+    }
+
+    public void testCameraOnlyMovesOnChange() {
+
+        RecordingSurface surface = new RecordingSurface();
+        MapRenderer renderer = new MapRenderer(surface);
+        MapScene scene = new MapScene();
+
+        renderer.render(scene);
+        assertTrue(surface.calls.isEmpty()); // no camera target yet
+
+        scene.setCamera(51.5, -0.12, 15);
+        renderer.render(scene);
+        renderer.render(scene);
+        assertEquals(1, surface.calls.size());
+
+        scene.setCamera(51.5, -0.12, 14);
+        renderer.render(scene);
+        assertEquals(2, surface.calls.size());
+
+        renderer.invalidateCamera(); // e.g. fitted to some bounds instead
+        renderer.render(scene);
+        assertEquals(3, surface.calls.size());
+    }
+
+    private static class RecordingSurface implements MapRenderer.Surface {
+
+        private final List<String> calls = new ArrayList<String>();
+
+        @Override
+        public void addMarker(int marker, double lat, double lng, float hue) {
+            calls.add("addMarker " + marker);
+        }
+
+        @Override
+        public void moveMarker(int marker, double lat, double lng) {
+            calls.add("moveMarker " + marker);
+        }
+
+        @Override
+        public void setMarkerHue(int marker, float hue) {
+            calls.add("setMarkerHue " + marker);
+        }
+
+        @Override
+        public void setMarkerVisible(int marker, boolean visible) {
+            calls.add("setMarkerVisible " + marker + " " + visible);
+        }
+
+        @Override
+        public void addLine(int line, double lat1, double lng1, double lat2, double lng2, int color) {
+            calls.add("addLine " + line);
+        }
+
+        @Override
+        public void moveLine(int line, double lat1, double lng1, double lat2, double lng2) {
+            calls.add("moveLine " + line);
+        }
+
+        @Override
+        public void setLineColor(int line, int color) {
+            calls.add("setLineColor " + line);
+        }
+
+        @Override
+        public void setLineVisible(int line, boolean visible) {
+            calls.add("setLineVisible " + line + " " + visible);
+        }
+
+        @Override
+        public void moveCamera(double lat, double lng, float zoom) {
+            calls.add("moveCamera");
+        }
+    }
+
+}
@@ -4,8 +4,11 @@ import android.test.InstrumentationTestCase;
 
 import com.google.android.gms.maps.model.LatLng;
 
+import net.astigan.impetus.utils.GeoUtils;
 import net.astigan.impetus.utils.MapUtils;
 
+import java.util.Random;
+
 /**
  * A set of unit tests for testing map util functions. As most methods use some sort of random
  * number generation, each method is called repeatedly and tested on grounds of probability
@@ -32,26 +35,6 @@ public class MapUtilsTest extends InstrumentationTestCase {
         }
     }
 
-    public void testGetRandomDirection() {
-
-        int direction;
-
-        boolean limitsReached = false;
-
-        for (int i=0; i<10000; i++) {
-            direction = MapUtils.getRandomJourneyDirection();
-
-            if (direction < 0 || direction > 90) {
-                assertEquals("Fail: ", Integer.toString(direction));
-            }
-
-            if (direction == 0 || direction == 90) {
-                limitsReached = true;
-            }
-        }
-        assertEquals(true, limitsReached);
-    }
-
     public void testGetSanitisedPosition() {
 
         // correct for values that exceed the bounds of lat/lng e.g. 92.5 & 181.35
@@ -93,6 +76,32 @@ public class MapUtilsTest extends InstrumentationTestCase {
 
     }
 
+    public void testGetRandomCoordinatesBatch() {
+
+        int count = 10000;
+        double[] lats = new double[count];
+        double[] lngs = new double[count];
+        double[] repeatLats = new double[count];
+        double[] repeatLngs = new double[count];
+
+        for (int k=1000; k<=50000; k+=7000) {
+            MapUtils.getRandomCoordinates(k, 51.5, -0.12, new Random(k), lats, lngs, count);
+            MapUtils.getRandomCoordinates(k, 51.5, -0.12, new Random(k), repeatLats, repeatLngs, count);
+
+            double lowest = k * 0.7;
+            double highest = k * 1.3;
+
+            for (int i=0; i<count; i++) {
+                // the same seed produces the same batch
+                assertEquals(lats[i], repeatLats[i], 0.0);
+                assertEquals(lngs[i], repeatLngs[i], 0.0);
+
+                double distance = GeoUtils.haversineDistance(51.5, -0.12, lats[i], lngs[i]);
+                assertTrue("Fail: " + distance, distance > lowest * 0.99 && distance < highest * 1.01);
+            }
+        }
+    }
+
     // TODO further MapsUtils testing
 
 
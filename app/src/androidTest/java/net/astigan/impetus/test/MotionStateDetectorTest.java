@@ -0,0 +1,270 @@
+package net.astigan.impetus.test;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.entities.TrackBuffer;
+import net.astigan.impetus.location.MotionStateDetector;
+import net.astigan.impetus.location.ReplayLocationSource;
+import net.astigan.impetus.log.Logger;
+import net.astigan.impetus.main.LocationService;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the motion state detector, including a replay of an hour long journey with two stops
+ * that reports how many fixes and how much CPU time dropping to low power while stationary saves.
+ */
+
+public class MotionStateDetectorTest extends InstrumentationTestCase {
+
+    private static final float ACCURACY = 8; // m, a 68% radius
+    private static final double NOISE = ACCURACY / 1.5; // m, on each axis
+    private static final float SPEED_NOISE = 0.15f; // m/s
+    private static final long START_TIME = TestTracks.START_TIME;
+    private static final double WALKING_SPEED = TestTracks.WALKING_SPEED;
+    private static final long TIMEOUT = 30; // s
+
+    private HandlerThread looperThread;
+    private Handler handler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        looperThread = new HandlerThread("MotionTest");
+        looperThread.start();
+        handler = new Handler(looperThread.getLooper());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        looperThread.quit();
+        super.tearDown();
+    }
+
+    public void testStopIsDetected() {
+
+        MotionStateDetector detector = new MotionStateDetector();
+        TrackBuffer track = new TrackBuffer();
+        Random random = new Random(7);
+        addWalk(track, 0, 120, 0, random); // 2 minutes walking
+        addStop(track, 120, 180, 120 * WALKING_SPEED, random); // 3 minutes standing
+
+        long stationaryTime = -1;
+        for (int i=0; i < track.size(); i += 5) { // a fix every 5s
+            detector.update(track.getLatitude(i), track.getLongitude(i), track.getSpeed(i), track.getAccuracy(i),
+                    track.getTime(i));
+
+            if (track.getTime(i) < START_TIME + 120 * 1000) {
+                assertEquals(MotionStateDetector.MOVING, detector.getState());
+            } else if (stationaryTime < 0 && detector.isStationary()) {
+                stationaryTime = track.getTime(i) - START_TIME - 120 * 1000;
+            }
+        }
+
+        assertTrue(detector.isStationary());
+        assertTrue(stationaryTime >= 60 * 1000 && stationaryTime <= 90 * 1000);
+    }
+
+    public void testStopWithoutSpeed() {
+
+        MotionStateDetector detector = new MotionStateDetector();
+        Random random = new Random(8);
+
+        for (int i=0; i < 60; i += 5) { // walking
+            assertFalse(detector.update(lat(i * WALKING_SPEED, random), lng(random), Float.NaN, ACCURACY,
+                    START_TIME + i * 1000L));
+        }
+        for (int i=60; i < 300; i += 5) { // standing
+            detector.update(lat(60 * WALKING_SPEED, random), lng(random), Float.NaN, ACCURACY, START_TIME + i * 1000L);
+        }
+        assertTrue(detector.isStationary());
+    }
+
+    public void testMovingOffWakes() {
+
+        MotionStateDetector detector = new MotionStateDetector();
+        Random random = new Random(9);
+        stand(detector, 0, 300, random);
+        assertTrue(detector.isStationary());
+
+        // the next fix in low power mode is 30m away
+        assertTrue(detector.update(lat(30, random), lng(random), Float.NaN, ACCURACY, START_TIME + 360 * 1000L));
+        assertEquals(MotionStateDetector.MOVING, detector.getState());
+
+        stand(detector, 400, 600, random);
+        assertTrue(detector.isStationary());
+
+        // walking speed wakes at once, even close to the stop
+        assertTrue(detector.update(lat(0, random), lng(random), (float) WALKING_SPEED, ACCURACY,
+                START_TIME + 605 * 1000L));
+    }
+
+    public void testAccelerometerWakes() {
+
+        MotionStateDetector detector = new MotionStateDetector();
+        stand(detector, 0, 300, new Random(10));
+        assertTrue(detector.isStationary());
+
+        long timeNs = 0;
+        for (int i=0; i<100; i++) { // resting on a table
+            assertFalse(detector.onAcceleration(0.1f, 0.05f, 9.8f, timeNs += 200 * 1000000L));
+        }
+        for (int i=0; i<3; i++) { // odd knocks, too far apart to count
+            assertFalse(detector.onAcceleration(3, 2, 12, timeNs += 3000 * 1000000L));
+        }
+        assertTrue(detector.isStationary());
+
+        // picked up and walking off
+        boolean woken = false;
+        for (int i=0; i<10 && !woken; i++) {
+            woken = detector.onAcceleration(2, 3, (i % 2 == 0) ? 13 : 7, timeNs += 200 * 1000000L);
+        }
+        assertTrue(woken);
+        assertEquals(MotionStateDetector.MOVING, detector.getState());
+    }
+
+    /**
+     * Replays an hour with a 15 minute and a 20 minute stop, sampling every 5s throughout and then
+     * dropping to low power while stationary. Updates are requested with the service's intervals, so
+     * the detector only sees the fixes that a device would deliver.
+     */
+    public void testReplayJourneyWithStops() throws InterruptedException {
+
+        TrackBuffer track = new TrackBuffer();
+        Random random = new Random(12);
+        addWalk(track, 0, 600, 0, random);
+        addStop(track, 600, 900, 600 * WALKING_SPEED, random);
+        addWalk(track, 1500, 600, 600 * WALKING_SPEED, random);
+        addStop(track, 2100, 1200, 1200 * WALKING_SPEED, random);
+        addWalk(track, 3300, 300, 1200 * WALKING_SPEED, random);
+
+        ReplayResult full = replay(track, false);
+        ReplayResult adaptive = replay(track, true);
+
+        Log.i(Logger.TAG, "Journey with stops: " + full.fixes + " fixes at full rate, " + adaptive.fixes +
+                " with low power while stationary (" + (100 - adaptive.fixes * 100 / full.fixes) + "% fewer), " +
+                "pipeline CPU " + full.cpuNs / 1000 + "us vs " + adaptive.cpuNs / 1000 + "us, " +
+                adaptive.stationaryMs / 1000 + "s of journey time stationary");
+
+        assertEquals(720, full.fixes);
+        assertTrue(adaptive.fixes < full.fixes * 0.6);
+        assertTrue(adaptive.stationaryMs > 25 * 60 * 1000 && adaptive.stationaryMs < 35 * 60 * 1000);
+        assertEquals(MotionStateDetector.MOVING, adaptive.finalState);
+    }
+
+    private ReplayResult replay(TrackBuffer track, final boolean adaptive) throws InterruptedException {
+
+        final ReplayLocationSource source = new ReplayLocationSource(track, 1000);
+        final MotionStateDetector detector = new MotionStateDetector();
+        final ReplayResult result = new ReplayResult();
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        final LocationListener listener = new LocationListener() {
+
+            private long stationarySince;
+
+            @Override
+            public void onLocationChanged(Location location) {
+                long start = Debug.threadCpuTimeNanos();
+                result.fixes++;
+
+                float speed = (location.hasSpeed()) ? location.getSpeed() : Float.NaN;
+                boolean changed = detector.update(location.getLatitude(), location.getLongitude(), speed,
+                        location.getAccuracy(), location.getTime());
+
+                if (changed && detector.isStationary()) {
+                    stationarySince = location.getTime();
+                } else if (changed && stationarySince > 0) {
+                    result.stationaryMs += location.getTime() - stationarySince;
+                    stationarySince = 0;
+                }
+                if (adaptive && changed) {
+                    if (detector.isStationary()) {
+                        source.requestUpdates(LocationService.LOW_POWER_TIME_INTERVAL,
+                                LocationService.LOW_POWER_DIST_INTERVAL, this, looperThread.getLooper());
+                    } else {
+                        source.requestUpdates(LocationService.MIN_TIME_INTERVAL,
+                                LocationService.MOVING_REQUEST_DISTANCE, this, looperThread.getLooper());
+                    }
+                }
+                result.cpuNs += Debug.threadCpuTimeNanos() - start;
+            }
+
+            @Override
+            public void onStatusChanged(String provider, int status, Bundle bundle) {
+            }
+
+            @Override
+            public void onProviderEnabled(String provider) {
+            }
+
+            @Override
+            public void onProviderDisabled(String provider) {
+            }
+        };
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                source.requestUpdates(LocationService.MIN_TIME_INTERVAL, LocationService.MOVING_REQUEST_DISTANCE,
+                        listener, looperThread.getLooper());
+            }
+        });
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (source.isFinished()) {
+                    source.removeUpdates(listener);
+                    result.finalState = detector.getState();
+                    finished.countDown();
+                } else {
+                    handler.postDelayed(this, 10);
+                }
+            }
+        });
+
+        assertTrue(finished.await(TIMEOUT, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private static void stand(MotionStateDetector detector, int from, int to, Random random) {
+        for (int i = from; i < to; i += 5) {
+            detector.update(lat(0, random), lng(random), (float) Math.abs(random.nextGaussian() * SPEED_NOISE),
+                    ACCURACY, START_TIME + i * 1000L);
+        }
+    }
+
+    private static void addWalk(TrackBuffer track, int startSecond, int seconds, double startNorth, Random random) {
+        TestTracks.addWalk(track, startSecond, seconds, startNorth, WALKING_SPEED, NOISE, ACCURACY, SPEED_NOISE,
+                random);
+    }
+
+    private static void addStop(TrackBuffer track, int startSecond, int seconds, double north, Random random) {
+        TestTracks.addWalk(track, startSecond, seconds, north, 0, NOISE, ACCURACY, SPEED_NOISE, random);
+    }
+
+    private static double lat(double north, Random random) {
+        return TestTracks.noisyLat(north, NOISE, random);
+    }
+
+    private static double lng(Random random) {
+        return TestTracks.noisyLng(0, NOISE, random);
+    }
+
+    private static class ReplayResult {
+        int fixes = 0;
+        long cpuNs = 0;
+        long stationaryMs = 0;
+        int finalState;
+    }
+
+}
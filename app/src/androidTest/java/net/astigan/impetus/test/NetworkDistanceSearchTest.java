@@ -0,0 +1,107 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.graph.NetworkDistanceSearch;
+import net.astigan.impetus.graph.RoadGraph;
+import net.astigan.impetus.log.Logger;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for the bounded shortest path search, checked against a simple relaxation of every edge
+ * until the distances stop changing.
+ */
+
+public class NetworkDistanceSearchTest extends InstrumentationTestCase {
+
+    public void testMatchesReference() {
+
+        RoadGraph graph = TestGraphs.createGrid(40);
+        NetworkDistanceSearch search = new NetworkDistanceSearch(graph);
+        Random random = new Random(42);
+
+        for (int i=0; i<5; i++) { // repeated searches reuse the same labels
+            int source = random.nextInt(graph.getNodeCount());
+            int bound = 10000 + random.nextInt(20000); // 1-3km
+
+            search.search(source, bound);
+            int[] expected = referenceDistances(graph, source);
+            int reached = 0;
+
+            for (int node=0; node < graph.getNodeCount(); node++) {
+                if (expected[node] <= bound) {
+                    assertEquals(expected[node], search.getDistance(node));
+                    reached++;
+                } else {
+                    assertEquals(NetworkDistanceSearch.UNREACHED, search.getDistance(node));
+                }
+            }
+            assertEquals(reached, search.getReachedCount());
+        }
+    }
+
+    public void testRandomNodeInBand() {
+
+        RoadGraph graph = TestGraphs.createGrid(40);
+        NetworkDistanceSearch search = new NetworkDistanceSearch(graph);
+        Random random = new Random(7);
+
+        search.search(graph.nearestNode(TestTracks.ORIGIN_LAT + 0.02, TestTracks.ORIGIN_LNG + 0.02), 26000);
+
+        for (int i=0; i<1000; i++) {
+            int node = search.getRandomNode(14000, 26000, random);
+            int distance = search.getDistance(node);
+            assertTrue(distance >= 14000 && distance <= 26000);
+        }
+        assertEquals(-1, search.getRandomNode(30000, 40000, random));
+    }
+
+    public void testCitySizedSearch() {
+
+        RoadGraph graph = TestGraphs.createGrid(300); // 90,000 nodes, ~33km across
+        NetworkDistanceSearch search = new NetworkDistanceSearch(graph);
+        int source = graph.nearestNode(TestTracks.ORIGIN_LAT + 0.15, TestTracks.ORIGIN_LNG + 0.15);
+
+        search.search(source, 130000); // warm up
+
+        long start = System.nanoTime();
+        for (int i=0; i<10; i++) {
+            search.search(source, 130000); // 13km, the upper band for a 10km journey
+        }
+        long elapsedMs = (System.nanoTime() - start) / 10000000;
+
+        Log.i(Logger.TAG, "Searched " + search.getReachedCount() + " nodes in " + elapsedMs + "ms");
+        assertTrue(search.getReachedCount() > 10000);
+    }
+
+    private static int[] referenceDistances(RoadGraph graph, int source) {
+        int[] distances = new int[graph.getNodeCount()];
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        distances[source] = 0;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (int node=0; node < graph.getNodeCount(); node++) {
+                if (distances[node] == Integer.MAX_VALUE) {
+                    continue;
+                }
+                for (int edge = graph.getFirstEdge(node); edge < graph.getEndEdge(node); edge++) {
+                    int target = graph.getEdgeTarget(edge);
+                    int distance = distances[node] + graph.getEdgeLength(edge);
+
+                    if (distance < distances[target]) {
+                        distances[target] = distance;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return distances;
+    }
+
+}
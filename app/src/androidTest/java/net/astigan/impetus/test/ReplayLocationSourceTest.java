@@ -0,0 +1,304 @@
+package net.astigan.impetus.test;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.entities.Journey;
+import net.astigan.impetus.entities.TrackBuffer;
+import net.astigan.impetus.io.GpxReader;
+import net.astigan.impetus.io.GpxWriter;
+import net.astigan.impetus.location.KalmanFilter;
+import net.astigan.impetus.location.LocationPipeline;
+import net.astigan.impetus.location.LocationSample;
+import net.astigan.impetus.location.MovementGate;
+import net.astigan.impetus.location.PipelineStage;
+import net.astigan.impetus.location.ReplayLocationSource;
+import net.astigan.impetus.log.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for replaying recorded tracks, including a load test that pushes an hour long walk through
+ * a location pipeline at 1000x and reports its throughput, latency and memory use.
+ */
+
+public class ReplayLocationSourceTest extends InstrumentationTestCase {
+
+    private static final long START_TIME = TestTracks.START_TIME;
+    private static final long TIMEOUT = 30; // s
+
+    private HandlerThread looperThread;
+    private Handler handler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        looperThread = new HandlerThread("ReplayTest");
+        looperThread.start();
+        handler = new Handler(looperThread.getLooper());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        looperThread.quit();
+        super.tearDown();
+    }
+
+    public void testGpxRoundTrip() throws IOException {
+
+        TrackBuffer track = walk(100, 0, new Random(3));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GpxWriter.write(track, out);
+
+        TrackBuffer read = new TrackBuffer();
+        GpxReader.read(new ByteArrayInputStream(out.toByteArray()), read);
+
+        assertEquals(track.size(), read.size());
+        for (int i=0; i < track.size(); i++) {
+            assertEquals(track.getLatitudeE6(i), read.getLatitudeE6(i));
+            assertEquals(track.getLongitudeE6(i), read.getLongitudeE6(i));
+            assertEquals((track.getTime(i) / 1000) * 1000, read.getTime(i)); // GPX is written to the second
+        }
+    }
+
+    public void testGpxTimeFormats() throws IOException {
+
+        String gpx = "<gpx><trk><trkseg>" +
+                "<trkpt lat=\"51.5\" lon=\"-0.12\"><time>2014-12-08T00:53:20Z</time></trkpt>" +
+                "<trkpt lat=\"51.5\" lon=\"-0.12\"><time>2014-12-08T00:53:21.250Z</time></trkpt>" +
+                "<trkpt lat=\"51.5\" lon=\"-0.12\"><time>2014-12-08T01:53:22+01:00</time></trkpt>" +
+                "<trkpt lat=\"51.5\" lon=\"-0.12\"></trkpt>" +
+                "</trkseg></trk></gpx>";
+
+        TrackBuffer track = new TrackBuffer();
+        GpxReader.read(new ByteArrayInputStream(gpx.getBytes("UTF-8")), track);
+
+        assertEquals(4, track.size());
+        assertEquals(START_TIME, track.getTime(0));
+        assertEquals(START_TIME + 1250, track.getTime(1));
+        assertEquals(START_TIME + 2000, track.getTime(2));
+        assertEquals(START_TIME + 3000, track.getTime(3)); // a second after the last
+    }
+
+    public void testGpxPointWithoutPosition() throws IOException {
+
+        String gpx = "<gpx><trk><trkseg>" +
+                "<trkpt lat=\"51.5\" lon=\"-0.12\"></trkpt>" +
+                "<trkpt lat=\"51.5\"></trkpt>" +
+                "</trkseg></trk></gpx>";
+
+        try {
+            GpxReader.read(new ByteArrayInputStream(gpx.getBytes("UTF-8")), new TrackBuffer());
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("track point 1"));
+        }
+    }
+
+    public void testSpeedUp() throws InterruptedException {
+
+        TrackBuffer track = walk(600, 0, null); // 10 minutes
+        ReplayLocationSource source = new ReplayLocationSource(track, 1000);
+        RecordingListener listener = new RecordingListener();
+
+        long start = System.nanoTime();
+        replay(source, 0, 0, listener);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        Log.i(Logger.TAG, "Replayed 10 minutes at 1000x in " + elapsedMs + "ms");
+
+        assertEquals(600, listener.count);
+        assertEquals(599 * 1000, listener.lastTime - listener.firstTime);
+        assertTrue(elapsedMs >= 550 && elapsedMs < 5000);
+    }
+
+    public void testMinTimeAndDistance() throws InterruptedException {
+
+        TrackBuffer track = walk(600, 0, null);
+
+        RecordingListener byTime = new RecordingListener();
+        replay(new ReplayLocationSource(track, 1000), 5000, 0, byTime);
+        assertEquals(120, byTime.count);
+
+        RecordingListener byDistance = new RecordingListener();
+        replay(new ReplayLocationSource(track, 1000), 0, 13.5f, byDistance); // every 10 fixes, 14m
+        assertEquals(60, byDistance.count);
+    }
+
+    public void testInvalidSpeedUp() {
+        try {
+            new ReplayLocationSource(walk(10, 0, null), 5000);
+            fail("Expected the speed up to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Replays an hour long noisy walk through a pipeline of smoothing and journey stages
+     */
+    public void testPipelineLoad() throws InterruptedException {
+
+        int fixes = 3600;
+        TrackBuffer track = walk(fixes, 8, new Random(11));
+        final Journey journey = new Journey(null, null, null);
+        final KalmanFilter filter = new KalmanFilter();
+        final MovementGate gate = new MovementGate(5);
+
+        final LocationPipeline pipeline = new LocationPipeline();
+        pipeline.addStage(new PipelineStage() {
+            @Override
+            public String getName() {
+                return "ingest";
+            }
+
+            @Override
+            public boolean process(LocationSample sample) {
+                sample.readLocation();
+                return true;
+            }
+        });
+        pipeline.addStage(new PipelineStage() {
+            @Override
+            public String getName() {
+                return "smooth";
+            }
+
+            @Override
+            public boolean process(LocationSample sample) {
+                filter.update(sample.getLatitude(), sample.getLongitude(), sample.getTime(), sample.getAccuracy());
+                sample.setSmoothed(filter.getLatitude(), filter.getLongitude(), filter.getSpeed());
+                sample.setStored(gate.accept(sample.getSmoothedLatitude(), sample.getSmoothedLongitude(),
+                        sample.getAccuracy()));
+                return true;
+            }
+        });
+        pipeline.addStage(new PipelineStage() {
+            @Override
+            public String getName() {
+                return "persist";
+            }
+
+            @Override
+            public boolean process(LocationSample sample) {
+                if (sample.isStored()) {
+                    journey.addLocation(sample.getSmoothedLatitude(), sample.getSmoothedLongitude(),
+                            sample.getTime(), sample.getAccuracy(), sample.getSmoothedSpeed());
+                }
+                return true;
+            }
+        });
+
+        final LocationSample sample = new LocationSample();
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void onLocationChanged(Location location) {
+                super.onLocationChanged(location);
+                sample.setLocation(location);
+                pipeline.process(sample);
+            }
+        };
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+
+        replay(new ReplayLocationSource(track, 1000), 0, 0, listener);
+
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+
+        Log.i(Logger.TAG, "Replayed 1 hour at 1000x in " + elapsedMs + "ms, " + (fixes * 1000L / Math.max(elapsedMs, 1)) +
+                " fixes/s, journey of " + journey.getTrack().size() + " points, " + journey.getJourneyDistance() + "m, " +
+                "retained heap " + (heapAfter - heapBefore) / 1024 + "KB");
+        Log.i(Logger.TAG, "Pipeline " + pipeline.describeLatencies());
+
+        double trueDistance = (fixes - 1) * TestTracks.WALKING_SPEED;
+        assertEquals(fixes, listener.count);
+        assertEquals(fixes, pipeline.getProcessedCount(2));
+        assertEquals(trueDistance, journey.getJourneyDistance(), trueDistance * 0.25);
+        assertTrue(elapsedMs < 3600 * 3);
+    }
+
+    /**
+     * Starts the replay on the looper thread and waits for it to finish
+     */
+    private void replay(final ReplayLocationSource source, final long minTime, final float minDistance,
+                        final LocationListener listener) throws InterruptedException {
+
+        final CountDownLatch finished = new CountDownLatch(1);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                source.requestUpdates(minTime, minDistance, listener, looperThread.getLooper());
+            }
+        });
+
+        final Runnable check = new Runnable() {
+            @Override
+            public void run() {
+                if (source.isFinished()) {
+                    source.removeUpdates(listener);
+                    finished.countDown();
+                } else {
+                    handler.postDelayed(this, 10);
+                }
+            }
+        };
+        handler.post(check);
+        assertTrue(finished.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A walk north at a constant speed, with a fix every second
+     *
+     * @param noise the standard deviation of the position noise in metres, and the reported accuracy
+     */
+    private static TrackBuffer walk(int fixes, float noise, Random random) {
+        TrackBuffer track = new TrackBuffer();
+        TestTracks.addWalk(track, 0, fixes, 0, TestTracks.WALKING_SPEED, noise, (noise > 0) ? noise : Float.NaN,
+                Float.NaN, random);
+        return track;
+    }
+
+    private static class RecordingListener implements LocationListener {
+
+        int count = 0;
+        long firstTime;
+        long lastTime;
+
+        @Override
+        public void onLocationChanged(Location location) {
+            if (count == 0) {
+                firstTime = location.getTime();
+            }
+            lastTime = location.getTime();
+            count++;
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle bundle) {
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+        }
+    }
+
+}
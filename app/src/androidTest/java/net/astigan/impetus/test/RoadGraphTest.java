@@ -0,0 +1,197 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.graph.RoadGraph;
+import net.astigan.impetus.graph.RoadGraphConverter;
+import net.astigan.impetus.log.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Tests for the road graph, using a small synthetic street grid rather than a real OSM extract.
+ */
+
+public class RoadGraphTest extends InstrumentationTestCase {
+
+    private static final int GRID_SIZE = 50; // streets along each side
+
+    public void testStructure() {
+
+        RoadGraph graph = createGrid();
+
+        // the isolated footpath is dropped, so every node is on the grid
+        assertEquals(GRID_SIZE * GRID_SIZE, graph.getNodeCount());
+        assertEquals(2 * 2 * GRID_SIZE * (GRID_SIZE - 1), graph.getEdgeCount());
+
+        for (int node=0; node < graph.getNodeCount(); node++) {
+            int degree = graph.getEndEdge(node) - graph.getFirstEdge(node);
+            assertTrue(degree >= 2 && degree <= 4);
+
+            for (int edge = graph.getFirstEdge(node); edge < graph.getEndEdge(node); edge++) {
+                assertEquals(1113, graph.getEdgeLength(edge), 450); // 69-111m depending on direction
+                assertTrue(hasEdge(graph, graph.getEdgeTarget(edge), node));
+            }
+        }
+    }
+
+    public void testNearestNode() {
+
+        RoadGraph graph = createGrid();
+        Random random = new Random(42);
+
+        for (int i=0; i<10000; i++) {
+            double lat = TestTracks.ORIGIN_LAT - 0.01 + random.nextDouble() * (GRID_SIZE * TestGraphs.SPACING + 0.02);
+            double lng = TestTracks.ORIGIN_LNG - 0.01 + random.nextDouble() * (GRID_SIZE * TestGraphs.SPACING + 0.02);
+
+            int nearest = graph.nearestNode(lat, lng);
+            assertEquals(distance(graph, bruteForceNearest(graph, lat, lng), lat, lng),
+                    distance(graph, nearest, lat, lng), 0.000000001);
+        }
+
+        long start = System.nanoTime();
+        for (int i=0; i<100000; i++) {
+            graph.nearestNode(TestTracks.ORIGIN_LAT + random.nextDouble() * 0.05,
+                    TestTracks.ORIGIN_LNG + random.nextDouble() * 0.05);
+        }
+        Log.i(Logger.TAG, "Nearest node lookup took " + ((System.nanoTime() - start) / 100000) + "ns");
+    }
+
+    public void testNearestNodeWithinDistance() {
+
+        RoadGraph graph = createGrid();
+        double lat = TestTracks.ORIGIN_LAT;
+        double lng = TestTracks.ORIGIN_LNG;
+
+        int node = graph.nearestNode(lat - 0.005, lng, RoadGraph.MAX_SNAP_DISTANCE); // ~560m south
+        assertEquals(graph.nearestNode(lat - 0.005, lng), node);
+        assertEquals(-1, graph.nearestNode(lat - 0.02, lng, RoadGraph.MAX_SNAP_DISTANCE)); // ~2.2km
+        assertEquals(-1, new RoadGraph.Builder().build().nearestNode(lat, lng, RoadGraph.MAX_SNAP_DISTANCE));
+    }
+
+    public void testSaveAndLoad() throws Exception {
+
+        RoadGraph built = createGrid();
+        File file = File.createTempFile("roads", ".graph");
+
+        try {
+            built.save(file);
+            RoadGraph loaded = RoadGraph.load(file);
+
+            assertEquals(built.getNodeCount(), loaded.getNodeCount());
+            assertEquals(built.getEdgeCount(), loaded.getEdgeCount());
+
+            for (int node=0; node < built.getNodeCount(); node++) {
+                assertEquals(built.getLatitude(node), loaded.getLatitude(node), 0.0);
+                assertEquals(built.getLongitude(node), loaded.getLongitude(node), 0.0);
+                assertEquals(built.getFirstEdge(node), loaded.getFirstEdge(node));
+            }
+            for (int edge=0; edge < built.getEdgeCount(); edge++) {
+                assertEquals(built.getEdgeTarget(edge), loaded.getEdgeTarget(edge));
+                assertEquals(built.getEdgeLength(edge), loaded.getEdgeLength(edge));
+            }
+            assertEquals(built.nearestNode(51.51, -0.11), loaded.nearestNode(51.51, -0.11));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testLoadOrConvertReplacesDamagedGraph() throws Exception {
+
+        File osmFile = File.createTempFile("roads", ".osm");
+        File graphFile = new File(osmFile.getPath() + ".graph");
+
+        try {
+            Writer writer = new FileWriter(osmFile);
+            try {
+                writer.write("<osm>" +
+                        "<node id=\"1\" lat=\"51.500\" lon=\"-0.120\"/>" +
+                        "<node id=\"2\" lat=\"51.501\" lon=\"-0.120\"/>" +
+                        "<node id=\"3\" lat=\"51.501\" lon=\"-0.119\"/>" +
+                        "<way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/>" +
+                        "<tag k=\"highway\" v=\"footway\"/></way>" +
+                        "</osm>");
+            } finally {
+                writer.close();
+            }
+
+            assertEquals(3, RoadGraphConverter.loadOrConvert(osmFile, graphFile).getNodeCount());
+
+            // a graph left truncated, but newer than the extract
+            RandomAccessFile raf = new RandomAccessFile(graphFile, "rw");
+            try {
+                raf.setLength(raf.length() / 2);
+            } finally {
+                raf.close();
+            }
+            assertTrue(graphFile.lastModified() >= osmFile.lastModified());
+
+            assertEquals(3, RoadGraphConverter.loadOrConvert(osmFile, graphFile).getNodeCount());
+            assertEquals(3, RoadGraph.load(graphFile).getNodeCount());
+            assertFalse(new File(graphFile.getPath() + ".tmp").exists());
+        } finally {
+            osmFile.delete();
+            graphFile.delete();
+        }
+    }
+
+    public void testConvertSkipsNodesWithoutPosition() throws Exception {
+
+        String osm = "<osm>" +
+                "<node id=\"1\" lat=\"51.500\" lon=\"-0.120\"/>" +
+                "<node id=\"2\" lat=\"51.501\" lon=\"-0.120\"/>" +
+                "<node id=\"3\" lon=\"-0.119\"/>" +
+                "<node id=\"4\" lat=\"51.502\" lon=\"-0.119\"/>" +
+                "<node id=\"5\" lat=\"51.503\" lon=\"-0.119\"/>" +
+                "<node id=\"6\" lat=\"51.504\" lon=\"-0.119\"/>" +
+                "<way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"4\"/>" +
+                "<nd ref=\"5\"/><nd ref=\"6\"/><tag k=\"highway\" v=\"footway\"/></way>" +
+                "</osm>";
+
+        RoadGraph graph = RoadGraphConverter.convert(new ByteArrayInputStream(osm.getBytes("UTF-8")));
+        assertEquals(3, graph.getNodeCount()); // the way is broken at node 3, leaving 4-5-6 as the largest part
+    }
+
+    private static RoadGraph createGrid() {
+        RoadGraph.Builder builder = TestGraphs.addGrid(new RoadGraph.Builder(), GRID_SIZE);
+
+        // an unreachable footpath in the middle of the grid
+        int a = builder.addNode(TestTracks.ORIGIN_LAT + 0.0205, TestTracks.ORIGIN_LNG + 0.0205);
+        int b = builder.addNode(TestTracks.ORIGIN_LAT + 0.0206, TestTracks.ORIGIN_LNG + 0.0206);
+        builder.addEdge(a, b);
+
+        return builder.build();
+    }
+
+    private static boolean hasEdge(RoadGraph graph, int from, int to) {
+        for (int edge = graph.getFirstEdge(from); edge < graph.getEndEdge(from); edge++) {
+            if (graph.getEdgeTarget(edge) == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int bruteForceNearest(RoadGraph graph, double lat, double lng) {
+        int best = -1;
+        for (int node=0; node < graph.getNodeCount(); node++) {
+            if (best < 0 || distance(graph, node, lat, lng) < distance(graph, best, lat, lng)) {
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    private static double distance(RoadGraph graph, int node, double lat, double lng) {
+        double dLat = graph.getLatitude(node) - lat;
+        double dLng = (graph.getLongitude(node) - lng) * Math.cos(Math.toRadians(lat));
+        return dLat * dLat + dLng * dLng;
+    }
+
+}
@@ -0,0 +1,67 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+
+import net.astigan.impetus.destination.RoadProximityConstraint;
+import net.astigan.impetus.graph.RoadGraph;
+import net.astigan.impetus.utils.GeoUtils;
+
+import java.util.Random;
+
+/**
+ * Tests for the road proximity constraint. Scores are checked against the brute force distance to
+ * every node, allowing for the coarseness of the grid.
+ */
+
+public class RoadProximityConstraintTest extends InstrumentationTestCase {
+
+    private static final double MAX_DISTANCE = 100; // m
+    private static final double GRID_SLACK = 150; // m, two cell diagonals
+
+    public void testMatchesBruteForce() {
+
+        // junctions at three corners of a square kilometre of open ground
+        RoadGraph.Builder builder = new RoadGraph.Builder();
+        int corner = builder.addNode(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG);
+        int north = builder.addNode(TestTracks.ORIGIN_LAT + 0.01, TestTracks.ORIGIN_LNG);
+        int east = builder.addNode(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG + 0.015);
+        builder.addEdge(corner, north);
+        builder.addEdge(corner, east);
+        RoadGraph graph = builder.build();
+
+        RoadProximityConstraint constraint = new RoadProximityConstraint(graph, MAX_DISTANCE);
+
+        assertEquals(0.0, constraint.score(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG), 0.0);
+        assertEquals(Double.NEGATIVE_INFINITY, constraint.score(TestTracks.ORIGIN_LAT + 0.005,
+                TestTracks.ORIGIN_LNG), 0.0);
+        assertEquals(0.0, constraint.score(40.0, 10.0), 0.0); // outside the graph
+
+        Random random = new Random(42);
+
+        // within the graph's bounds, beyond which nothing is rejected
+        for (int i=0; i<100000; i++) {
+            double lat = TestTracks.ORIGIN_LAT + random.nextDouble() * 0.01;
+            double lng = TestTracks.ORIGIN_LNG + random.nextDouble() * 0.015;
+
+            double distance = Double.MAX_VALUE;
+            for (int node=0; node < graph.getNodeCount(); node++) {
+                distance = Math.min(distance, GeoUtils.haversineDistance(lat, lng,
+                        graph.getLatitude(node), graph.getLongitude(node)));
+            }
+            double score = constraint.score(lat, lng);
+
+            if (distance <= MAX_DISTANCE) {
+                assertEquals("Rejected " + lat + "," + lng, 0.0, score, 0.0);
+            }
+            else if (distance > MAX_DISTANCE + GRID_SLACK) {
+                assertEquals("Accepted " + lat + "," + lng, Double.NEGATIVE_INFINITY, score, 0.0);
+            }
+        }
+    }
+
+    public void testEmptyGraph() {
+        RoadProximityConstraint constraint = new RoadProximityConstraint(new RoadGraph.Builder().build(), MAX_DISTANCE);
+        assertEquals(0.0, constraint.score(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG), 0.0);
+    }
+
+}
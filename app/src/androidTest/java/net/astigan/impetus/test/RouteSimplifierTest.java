@@ -0,0 +1,134 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import net.astigan.impetus.log.Logger;
+import net.astigan.impetus.utils.RouteSimplifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests that each zoom band of the route simplifier stays within its pixel tolerance of the raw
+ * route at the band's closest zoom, while cutting the vertex count when zoomed out
+ */
+
+public class RouteSimplifierTest extends InstrumentationTestCase {
+
+    private static final double PIXEL_TOLERANCE = 1.5; // px
+    private static final double EQUATOR_METRES_PER_PIXEL = 156543.03; // at zoom 0
+
+    public void testBandsWithinTolerance() {
+
+        RouteSimplifier simplifier = new RouteSimplifier();
+        List<LatLng> route = winding(4000, new Random(21));
+        for (LatLng point : route) {
+            simplifier.addPoint(point.latitude, point.longitude);
+        }
+
+        for (int band=0; band < simplifier.getBandCount(); band++) {
+            List<LatLng> vertices = new ArrayList<LatLng>();
+            simplifier.getVerticesSince(band, 0, vertices);
+            assertEquals(simplifier.getVertexCount(band), vertices.size());
+            vertices.add(simplifier.getLastPoint()); // the tail drawn onto the latest point
+
+            double metresPerPixel = EQUATOR_METRES_PER_PIXEL * Math.cos(Math.toRadians(TestTracks.ORIGIN_LAT)) /
+                    Math.pow(2, simplifier.getBandMaxZoom(band));
+            double maxDeviation = 0;
+            for (LatLng point : route) {
+                maxDeviation = Math.max(maxDeviation, distanceToLine(point, vertices));
+            }
+
+            Log.i(Logger.TAG, "Band " + band + ": " + simplifier.getVertexCount(band) + " vertices, max deviation " +
+                    Math.round(maxDeviation / metresPerPixel * 100) / 100.0 + "px at zoom " +
+                    simplifier.getBandMaxZoom(band));
+            assertTrue(maxDeviation <= PIXEL_TOLERANCE * metresPerPixel * 1.01);
+        }
+
+        assertTrue(simplifier.getVertexCount(0) * 20 < route.size());
+        assertTrue(simplifier.getVertexCount(0) > 2); // the corners survive when zoomed out
+        for (int band=1; band < simplifier.getBandCount(); band++) {
+            assertTrue(simplifier.getVertexCount(band) >= simplifier.getVertexCount(band - 1));
+        }
+    }
+
+    public void testBandForZoom() {
+
+        RouteSimplifier simplifier = new RouteSimplifier();
+        assertEquals(0, simplifier.getBandForZoom(3));
+        assertEquals(0, simplifier.getBandForZoom(10.9f));
+        assertEquals(1, simplifier.getBandForZoom(11));
+        assertEquals(simplifier.getBandCount() - 1, simplifier.getBandForZoom(21));
+
+        for (int band=0; band + 1 < simplifier.getBandCount(); band++) {
+            assertEquals(band + 1, simplifier.getBandForZoom(simplifier.getBandMaxZoom(band)));
+        }
+    }
+
+    public void testIncrementalVertices() {
+
+        RouteSimplifier simplifier = new RouteSimplifier();
+        assertNull(simplifier.getLastPoint());
+
+        List<LatLng> incremental = new ArrayList<LatLng>();
+        int version = 0;
+        for (LatLng point : winding(1000, new Random(22))) {
+            simplifier.addPoint(point.latitude, point.longitude);
+            version = simplifier.getVerticesSince(2, version, incremental);
+        }
+
+        List<LatLng> all = new ArrayList<LatLng>();
+        simplifier.getVerticesSince(2, 0, all);
+        assertEquals(all, incremental);
+        assertEquals(all.get(all.size() - 1), simplifier.getLastVertex(2));
+
+        simplifier.clear();
+        assertEquals(0, simplifier.getVertexCount(2));
+        assertNull(simplifier.getLastVertex(2));
+    }
+
+    /**
+     * A walk with a point every 5m that turns gradually, with sharp corners and GPS jitter
+     */
+    private static List<LatLng> winding(int points, Random random) {
+        List<LatLng> route = new ArrayList<LatLng>(points);
+        double north = 0, east = 0, heading = 0;
+
+        for (int i=0; i < points; i++) {
+            heading += (i % 300 == 299) ? Math.PI / 2 : random.nextGaussian() * 0.05;
+            north += 5 * Math.cos(heading);
+            east += 5 * Math.sin(heading);
+
+            route.add(new LatLng(TestTracks.noisyLat(north, 1, random), TestTracks.noisyLng(east, 1, random)));
+        }
+        return route;
+    }
+
+    /**
+     * @return the distance in metres from a point to the nearest segment of a polyline
+     */
+    private static double distanceToLine(LatLng point, List<LatLng> line) {
+        double lngScale = TestTracks.METRES_PER_DEGREE_LNG;
+        double min = Double.MAX_VALUE;
+
+        for (int i=0; i + 1 < line.size(); i++) {
+            double ax = (line.get(i).longitude - point.longitude) * lngScale;
+            double ay = (line.get(i).latitude - point.latitude) * TestTracks.METRES_PER_DEGREE;
+            double bx = (line.get(i + 1).longitude - point.longitude) * lngScale;
+            double by = (line.get(i + 1).latitude - point.latitude) * TestTracks.METRES_PER_DEGREE;
+
+            double dx = bx - ax, dy = by - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double t = (lengthSquared == 0) ? 0 : Math.max(0, Math.min(1, -(ax * dx + ay * dy) / lengthSquared));
+
+            double x = ax + t * dx, y = ay + t * dy;
+            min = Math.min(min, Math.sqrt(x * x + y * y));
+        }
+        return min;
+    }
+
+}
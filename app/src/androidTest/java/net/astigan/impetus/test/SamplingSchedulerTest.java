@@ -0,0 +1,165 @@
+package net.astigan.impetus.test;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import net.astigan.impetus.location.SamplingScheduler;
+import net.astigan.impetus.log.Logger;
+import net.astigan.impetus.utils.GeoUtils;
+
+/**
+ * Tests for the adaptive GPS sampling scheduler. A simulation harness replays a journey second by
+ * second, waking the GPS and delivering fixes the way the LocationManager would for the registered
+ * minimum time and distance, and reports the wakeups saved compared with the old fixed policy.
+ */
+
+public class SamplingSchedulerTest extends InstrumentationTestCase {
+
+    private static final long FIXED_MIN_TIME = 5000; // ms, the service's previous policy
+    private static final float FIXED_MIN_DISTANCE = 20; // m
+
+    public void testTiers() {
+
+        SamplingScheduler scheduler = new SamplingScheduler();
+        double destinationLat = TestTracks.lat(5000);
+        scheduler.setDestination(destinationLat, TestTracks.ORIGIN_LNG);
+
+        scheduler.update(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG, 1.4f, 0);
+        assertEquals(SamplingScheduler.TIER_FAR, scheduler.getTier());
+
+        assertTrue(scheduler.update(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG, 0.0f, 1000));
+        assertEquals(SamplingScheduler.TIER_STATIONARY, scheduler.getTier());
+        // no change, no re-register
+        assertFalse(scheduler.update(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG, 0.0f, 2000));
+
+        scheduler.update(TestTracks.lat(4000), TestTracks.ORIGIN_LNG, 1.4f, 3000);
+        assertEquals(SamplingScheduler.TIER_CRUISING, scheduler.getTier());
+
+        scheduler.update(TestTracks.lat(4900), TestTracks.ORIGIN_LNG, 1.4f, 4000);
+        assertEquals(SamplingScheduler.TIER_ARRIVING, scheduler.getTier());
+        assertTrue(scheduler.getMinTime() < FIXED_MIN_TIME);
+    }
+
+    public void testTurnsAreSampledDensely() {
+
+        SamplingScheduler scheduler = new SamplingScheduler();
+        scheduler.setDestination(TestTracks.ORIGIN_LAT + 0.1, TestTracks.ORIGIN_LNG);
+
+        scheduler.update(TestTracks.ORIGIN_LAT, TestTracks.ORIGIN_LNG, 1.4f, 0);
+        scheduler.update(TestTracks.lat(50), TestTracks.ORIGIN_LNG, 1.4f, 36000); // north
+        assertEquals(SamplingScheduler.TIER_FAR, scheduler.getTier());
+
+        scheduler.update(TestTracks.lat(50), TestTracks.ORIGIN_LNG + 0.001, 1.4f, 72000); // east
+        assertEquals(SamplingScheduler.TIER_TURNING, scheduler.getTier());
+
+        scheduler.update(TestTracks.lat(50), TestTracks.ORIGIN_LNG + 0.002, 1.4f, 120000);
+        assertEquals(SamplingScheduler.TIER_FAR, scheduler.getTier());
+    }
+
+    public void testSimulatedJourney() {
+
+        double[][] track = journey();
+        double destinationLat = track[track.length - 1][0];
+        double destinationLng = track[track.length - 1][1];
+
+        Simulation fixed = new Simulation(track, destinationLat, destinationLng, null);
+        Simulation adaptive = new Simulation(track, destinationLat, destinationLng, new SamplingScheduler());
+
+        Log.i(Logger.TAG, "Fixed policy: " + fixed.wakeups + " wakeups, " + fixed.fixes + " fixes, " +
+                fixed.arrivalFixes + " in the last 150m");
+        Log.i(Logger.TAG, "Adaptive policy: " + adaptive.wakeups + " wakeups, " + adaptive.fixes + " fixes, " +
+                adaptive.arrivalFixes + " in the last 150m, " + (fixed.wakeups - adaptive.wakeups) + " wakeups saved");
+
+        assertTrue(adaptive.wakeups < fixed.wakeups * 0.6);
+        assertTrue(adaptive.arrivalFixes > fixed.arrivalFixes);
+    }
+
+    /**
+     * Replays a track recorded at 1Hz. The GPS wakes once the minimum time has passed, and a fix is
+     * delivered if the user has also moved the minimum distance since the last one.
+     */
+    private static class Simulation {
+
+        private int wakeups = 0;
+        private int fixes = 0;
+        private int arrivalFixes = 0;
+
+        Simulation(double[][] track, double destinationLat, double destinationLng, SamplingScheduler scheduler) {
+            if (scheduler != null) {
+                scheduler.setDestination(destinationLat, destinationLng);
+            }
+            long minTime = (scheduler == null) ? FIXED_MIN_TIME : scheduler.getMinTime();
+            float minDistance = (scheduler == null) ? FIXED_MIN_DISTANCE : scheduler.getMinDistance();
+
+            long nextWake = 0;
+            double lastLat = track[0][0];
+            double lastLng = track[0][1];
+            long lastTime = 0;
+
+            for (int second=0; second < track.length; second++) {
+                long timeMs = second * 1000L;
+                if (timeMs < nextWake) {
+                    continue;
+                }
+                wakeups++;
+                nextWake = timeMs + minTime;
+
+                double lat = track[second][0];
+                double lng = track[second][1];
+                double moved = GeoUtils.haversineDistance(lastLat, lastLng, lat, lng);
+
+                if (second > 0 && moved < minDistance) {
+                    continue;
+                }
+                fixes++;
+
+                if (GeoUtils.haversineDistance(lat, lng, destinationLat, destinationLng) < 150) {
+                    arrivalFixes++;
+                }
+
+                if (scheduler != null) {
+                    float speed = (second > 0) ? (float) (moved * 1000 / (timeMs - lastTime)) : Float.NaN;
+
+                    if (scheduler.update(lat, lng, speed, timeMs)) {
+                        minTime = scheduler.getMinTime();
+                        minDistance = scheduler.getMinDistance();
+                        nextWake = timeMs + minTime;
+                    }
+                }
+                lastLat = lat;
+                lastLng = lng;
+                lastTime = timeMs;
+            }
+        }
+    }
+
+    /**
+     * A 1Hz track: 3km north with a 10 minute stop half way, a turn east for 1km, and a turn north
+     * for the last 500m to the destination
+     */
+    private static double[][] journey() {
+        int stop = 600;
+        int seconds = (int) (4500 / TestTracks.WALKING_SPEED) + stop;
+        double[][] track = new double[seconds][2];
+        double north = 0;
+        double east = 0;
+        double walked = 0;
+
+        for (int second=0; second < seconds; second++) {
+            boolean stopped = walked >= 1500 && walked < 1500 + TestTracks.WALKING_SPEED && stop-- > 0;
+
+            if (!stopped) {
+                if (walked < 3000 || walked >= 4000) {
+                    north += TestTracks.WALKING_SPEED;
+                } else {
+                    east += TestTracks.WALKING_SPEED;
+                }
+                walked += TestTracks.WALKING_SPEED;
+            }
+            track[second][0] = TestTracks.lat(north);
+            track[second][1] = TestTracks.lng(east);
+        }
+        return track;
+    }
+
+}
@@ -0,0 +1,47 @@
+package net.astigan.impetus.test;
+
+import net.astigan.impetus.graph.RoadGraph;
+
+/**
+ * Shared fixtures for the road graph tests: a synthetic street grid with its south west corner at
+ * the same origin as the test tracks, rather than a real OSM extract
+ */
+
+public final class TestGraphs {
+
+    public static final double SPACING = 0.001; // degrees, ~110m
+
+    private TestGraphs() {
+    }
+
+    /**
+     * @return a square grid of streets, with node row * size + col at the junction in that row and
+     * column, counting north and east from the origin
+     */
+    public static RoadGraph createGrid(int size) {
+        return addGrid(new RoadGraph.Builder(), size).build();
+    }
+
+    /**
+     * Adds a square grid of streets to a builder, so other roads can be added before it's built
+     */
+    public static RoadGraph.Builder addGrid(RoadGraph.Builder builder, int size) {
+        int[] ids = new int[size * size];
+
+        for (int row=0; row < size; row++) {
+            for (int col=0; col < size; col++) {
+                ids[row * size + col] = builder.addNode(TestTracks.ORIGIN_LAT + row * SPACING,
+                        TestTracks.ORIGIN_LNG + col * SPACING);
+
+                if (col > 0) {
+                    builder.addEdge(ids[row * size + col - 1], ids[row * size + col]);
+                }
+                if (row > 0) {
+                    builder.addEdge(ids[(row - 1) * size + col], ids[row * size + col]);
+                }
+            }
+        }
+        return builder;
+    }
+
+}
@@ -0,0 +1,75 @@
+package net.astigan.impetus.test;
+
+import net.astigan.impetus.entities.TrackBuffer;
+import net.astigan.impetus.utils.GeoUtils;
+
+import java.util.Random;
+
+/**
+ * Shared fixtures for the location tests: positions given in metres from an origin in central
+ * London, optionally with GPS noise, and tracks of a user walking or standing with a fix every second
+ */
+
+public final class TestTracks {
+
+    public static final double ORIGIN_LAT = 51.5;
+    public static final double ORIGIN_LNG = -0.12;
+    public static final double METRES_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_MEAN_RADIUS;
+    public static final double METRES_PER_DEGREE_LNG = METRES_PER_DEGREE * Math.cos(Math.toRadians(ORIGIN_LAT));
+    public static final double WALKING_SPEED = 1.4; // m/s
+    public static final long START_TIME = 1418000000000L;
+
+    private TestTracks() {
+    }
+
+    /**
+     * @return the latitude a distance north of the origin, or south if negative
+     */
+    public static double lat(double north) {
+        return ORIGIN_LAT + north / METRES_PER_DEGREE;
+    }
+
+    /**
+     * @return the longitude a distance east of the origin, or west if negative
+     */
+    public static double lng(double east) {
+        return ORIGIN_LNG + east / METRES_PER_DEGREE_LNG;
+    }
+
+    /**
+     * @param noise the standard deviation of the error in metres
+     */
+    public static double noisyLat(double north, double noise, Random random) {
+        return lat((noise > 0) ? north + random.nextGaussian() * noise : north);
+    }
+
+    /**
+     * @param noise the standard deviation of the error in metres
+     */
+    public static double noisyLng(double east, double noise, Random random) {
+        return lng((noise > 0) ? east + random.nextGaussian() * noise : east);
+    }
+
+    /**
+     * Adds a fix every second of a user heading north at a constant speed, or standing still
+     *
+     * @param speed the true speed in m/s, 0 to stand still
+     * @param noise the standard deviation of the position error on each axis in metres, or 0
+     * @param accuracy the reported accuracy in metres, or NaN
+     * @param speedNoise the standard deviation of the reported speed in m/s, or NaN to report no speed
+     * @param random the source of noise, which may be null if there's none
+     */
+    public static void addWalk(TrackBuffer track, int startSecond, int seconds, double startNorth, double speed,
+                               double noise, float accuracy, float speedNoise, Random random) {
+
+        for (int i=0; i < seconds; i++) {
+            double lat = noisyLat(startNorth + i * speed, noise, random);
+            double lng = noisyLng(0, noise, random);
+            float reportedSpeed = (Float.isNaN(speedNoise)) ? Float.NaN :
+                    (float) Math.abs(speed + random.nextGaussian() * speedNoise);
+
+            track.add(lat, lng, START_TIME + (startSecond + i) * 1000L, accuracy, reportedSpeed);
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package net.astigan.impetus.destination;
+
+/**
+ * A rule used to score candidate destinations. Constraints are called from several threads at
+ * once, so implementations must be thread safe, and should avoid allocating as they may be called
+ * hundreds of thousands of times per selection.
+ */
+public interface DestinationConstraint {
+
+    /**
+     * @return a score for the destination, where higher is better, or Double.NEGATIVE_INFINITY if
+     * the destination must not be used
+     */
+    public double score(double lat, double lng);
+
+}
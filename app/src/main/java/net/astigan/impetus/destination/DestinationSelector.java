@@ -0,0 +1,189 @@
+package net.astigan.impetus.destination;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import net.astigan.impetus.utils.MapUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Picks a journey destination by generating thousands of random candidates around the user and
+ * scoring them against a set of pluggable constraints, e.g. to avoid destinations in a lake.
+ *
+ * Candidates are generated and scored in parallel, one task per thread, with each task working
+ * through its share in small batches. Selection has a time budget - once it runs out each task
+ * stops at the end of its current batch, and the best candidate found so far is returned.
+ */
+public class DestinationSelector {
+
+    private static final int BATCH_SIZE = 256; // candidates generated at a time by each task
+
+    private final ExecutorService executor;
+    private final int threads;
+    private final List<DestinationConstraint> constraints = new CopyOnWriteArrayList<DestinationConstraint>();
+    private final Random seeds = new Random();
+
+    private volatile int lastCandidateCount = 0;
+
+    public DestinationSelector() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public DestinationSelector(int threads) {
+        this.threads = Math.max(threads, 1);
+        this.executor = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "DestinationSelector");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void addConstraint(DestinationConstraint constraint) {
+        constraints.add(constraint);
+    }
+
+    public void removeConstraint(DestinationConstraint constraint) {
+        constraints.remove(constraint);
+    }
+
+    /**
+     * Selects the best scoring destination from a set of random candidates
+     *
+     * @param approxDistance the approximate distance in metres that the user wishes to travel
+     * @param originLat latitude of the start location
+     * @param originLng longitude of the start location
+     * @param maxCandidates the maximum number of candidates to score
+     * @param budgetMs the time after which the best candidate found so far is returned
+     * @return the best destination, or null if every candidate scored was rejected
+     */
+    public LatLng select(double approxDistance, double originLat, double originLng,
+                         int maxCandidates, long budgetMs) {
+
+        long deadline = System.nanoTime() + (budgetMs * 1000000);
+        int share = (int) ((maxCandidates + (long) threads - 1) / threads);
+
+        List<Callable<Candidate>> tasks = new ArrayList<Callable<Candidate>>(threads);
+
+        for (int i=0; i < threads; i++) {
+            tasks.add(new CandidateTask(approxDistance, originLat, originLng, share, deadline, seeds.nextLong()));
+        }
+
+        Candidate best = null;
+        int candidateCount = 0;
+
+        try {
+            for (Future<Candidate> future : executor.invokeAll(tasks)) {
+                Candidate candidate = future.get();
+                candidateCount += candidate.count;
+
+                if (candidate.isValid() && (best == null || candidate.score > best.score)) {
+                    best = candidate;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to score destinations", e.getCause());
+        }
+
+        lastCandidateCount = candidateCount;
+        return (best == null) ? null : new LatLng(best.lat, best.lng);
+    }
+
+    /**
+     * @return the number of candidates that were scored during the last selection
+     */
+    public int getLastCandidateCount() {
+        return lastCandidateCount;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the total score of a destination across every constraint
+     */
+    public double score(double lat, double lng) {
+        double total = 0;
+
+        for (DestinationConstraint constraint : constraints) {
+            total += constraint.score(lat, lng);
+
+            if (total == Double.NEGATIVE_INFINITY) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private static class Candidate {
+
+        private double lat;
+        private double lng;
+        private double score = Double.NEGATIVE_INFINITY;
+        private int count = 0;
+
+        boolean isValid() {
+            return score != Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    private class CandidateTask implements Callable<Candidate> {
+
+        private final double approxDistance;
+        private final double originLat;
+        private final double originLng;
+        private final int candidates;
+        private final long deadline;
+        private final Random random;
+
+        CandidateTask(double approxDistance, double originLat, double originLng, int candidates,
+                      long deadline, long seed) {
+
+            this.approxDistance = approxDistance;
+            this.originLat = originLat;
+            this.originLng = originLng;
+            this.candidates = candidates;
+            this.deadline = deadline;
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public Candidate call() {
+            Candidate best = new Candidate();
+            double[] lats = new double[BATCH_SIZE];
+            double[] lngs = new double[BATCH_SIZE];
+
+            while (best.count < candidates && System.nanoTime() < deadline) {
+                int batch = Math.min(BATCH_SIZE, candidates - best.count);
+                MapUtils.getRandomCoordinates(approxDistance, originLat, originLng, random, lats, lngs, batch);
+
+                for (int i=0; i < batch; i++) {
+                    double score = score(lats[i], lngs[i]);
+
+                    if (score > best.score) {
+                        best.score = score;
+                        best.lat = lats[i];
+                        best.lng = lngs[i];
+                    }
+                }
+                best.count += batch;
+            }
+            return best;
+        }
+    }
+
+}
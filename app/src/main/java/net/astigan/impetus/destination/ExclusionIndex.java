@@ -0,0 +1,663 @@
+package net.astigan.impetus.destination;
+
+import net.astigan.impetus.utils.FileUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A spatial index of areas that destinations must not be placed in, such as lakes, the sea or
+ * private land, which rejects any candidate destination inside one of them.
+ *
+ * The area covered by the polygons is split into a uniform grid. Each cell is marked as fully
+ * inside a polygon, fully outside every polygon, or on an edge. Only edge cells need an exact test,
+ * which counts how many of the polygon edges passing through the cell are crossed on a line from
+ * the cell centre (whose inside/outside state is precomputed) to the point. Most checks therefore
+ * cost a single array lookup, regardless of how many polygons or edges there are.
+ *
+ * Indexes are built from GeoJSON, and can be saved to a compact binary file which is memory mapped
+ * when loaded, so no parsing happens at startup. The file's header records a fingerprint of the
+ * GeoJSON files it was built from, so it is rebuilt whenever that set changes.
+ */
+public class ExclusionIndex implements DestinationConstraint {
+
+    private static final int MAGIC = 0x494D5058; // "IMPX"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 72; // bytes
+    private static final int FINGERPRINT_OFFSET = 64; // bytes
+
+    private static final long FINGERPRINT_SEED = 0xCBF29CE484222325L;
+    private static final long FINGERPRINT_PRIME = 0x100000001B3L;
+
+    private static final int OUTSIDE = -1;
+    private static final int INSIDE = -2;
+
+    private static final int MAX_GRID_SIZE = 512; // cells along the longest side
+    private static final double MIN_CELL_SIZE = 0.0005; // degrees, ~50m
+    private static final double MICRODEGREES = 1E6;
+
+    private final int cols;
+    private final int rows;
+    private final double minLat;
+    private final double minLng;
+    private final double cellLat; // degrees
+    private final double cellLng; // degrees
+
+    private final IntBuffer cells; // OUTSIDE, INSIDE, or the edge cell number
+    private final IntBuffer cellGroups; // per edge cell, offsets into the polygon groups
+    private final IntBuffer groupInside; // per group, 1 if the cell centre is inside the polygon
+    private final IntBuffer groupEdges; // per group, offsets into the edges
+    private final IntBuffer edges; // lat1, lng1, lat2, lng2 in microdegrees
+
+    private ExclusionIndex(int cols, int rows, double minLat, double minLng, double cellLat, double cellLng,
+                           IntBuffer cells, IntBuffer cellGroups, IntBuffer groupInside,
+                           IntBuffer groupEdges, IntBuffer edges) {
+        this.cols = cols;
+        this.rows = rows;
+        this.minLat = minLat;
+        this.minLng = minLng;
+        this.cellLat = cellLat;
+        this.cellLng = cellLng;
+        this.cells = cells;
+        this.cellGroups = cellGroups;
+        this.groupInside = groupInside;
+        this.groupEdges = groupEdges;
+        this.edges = edges;
+    }
+
+    @Override
+    public double score(double lat, double lng) {
+        return (isExcluded(lat, lng)) ? Double.NEGATIVE_INFINITY : 0;
+    }
+
+    public boolean isExcluded(double lat, double lng) {
+        int row = (int) Math.floor((lat - minLat) / cellLat);
+        int col = (int) Math.floor((lng - minLng) / cellLng);
+
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return false;
+        }
+
+        int cell = cells.get(row * cols + col);
+
+        if (cell == OUTSIDE) {
+            return false;
+        } else if (cell == INSIDE) {
+            return true;
+        }
+
+        // work relative to the cell centre, in microdegrees
+        double centreLat = (minLat + (row + 0.5) * cellLat) * MICRODEGREES;
+        double centreLng = (minLng + (col + 0.5) * cellLng) * MICRODEGREES;
+        double y = (lat * MICRODEGREES) - centreLat;
+        double x = (lng * MICRODEGREES) - centreLng;
+
+        for (int group = cellGroups.get(cell); group < cellGroups.get(cell + 1); group++) {
+            boolean inside = groupInside.get(group) == 1;
+
+            for (int edge = groupEdges.get(group); edge < groupEdges.get(group + 1); edge++) {
+                int offset = edge * 4;
+                double y1 = edges.get(offset) - centreLat;
+                double x1 = edges.get(offset + 1) - centreLng;
+                double y2 = edges.get(offset + 2) - centreLat;
+                double x2 = edges.get(offset + 3) - centreLng;
+
+                if (crosses(x1, y1, x2, y2, x, y)) {
+                    inside = !inside;
+                }
+            }
+
+            if (inside) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the edge crosses the line from the origin (the cell centre) to the point
+     */
+    private static boolean crosses(double x1, double y1, double x2, double y2, double x, double y) {
+        boolean edgeSeparates = (orientation(x1, y1, x2, y2, 0, 0) > 0) != (orientation(x1, y1, x2, y2, x, y) > 0);
+        boolean lineSeparates = (orientation(0, 0, x, y, x1, y1) > 0) != (orientation(0, 0, x, y, x2, y2) > 0);
+        return edgeSeparates && lineSeparates;
+    }
+
+    private static double orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+
+    /**
+     * Writes the index to a binary file that can be memory mapped by load
+     */
+    public void save(File file) throws IOException {
+        save(file, 0);
+    }
+
+    /**
+     * Writes the index to a binary file that can be memory mapped by load. The file is replaced
+     * atomically, so an interrupted save leaves any previous index intact.
+     *
+     * @param sourceFingerprint identifies the GeoJSON files the index was built from
+     */
+    public void save(File file, long sourceFingerprint) throws IOException {
+        File temp = FileUtils.getTempFile(file);
+
+        try {
+            write(temp, sourceFingerprint);
+            FileUtils.replace(temp, file);
+        } finally {
+            temp.delete(); // only left behind if the save failed
+        }
+    }
+
+    private void write(File file, long sourceFingerprint) throws IOException {
+        int edgeCells = cellGroups.limit() - 1;
+        int groups = groupInside.limit();
+        int edgeCount = edges.limit() / 4;
+
+        FileOutputStream fileOut = new FileOutputStream(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(cols);
+            out.writeInt(rows);
+            out.writeInt(edgeCells);
+            out.writeInt(groups);
+            out.writeInt(edgeCount);
+            out.writeInt(0); // padding
+            out.writeDouble(minLat);
+            out.writeDouble(minLng);
+            out.writeDouble(cellLat);
+            out.writeDouble(cellLng);
+            out.writeLong(sourceFingerprint);
+
+            writeInts(out, cells);
+            writeInts(out, cellGroups);
+            writeInts(out, groupInside);
+            writeInts(out, groupEdges);
+            writeInts(out, edges);
+
+            out.flush();
+            fileOut.getFD().sync(); // on disk before it's renamed into place
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, IntBuffer buffer) throws IOException {
+        for (int i=0; i < buffer.limit(); i++) {
+            out.writeInt(buffer.get(i));
+        }
+    }
+
+    /**
+     * Memory maps an index previously written by save
+     */
+    public static ExclusionIndex load(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Unrecognised exclusion index: " + file);
+            }
+
+            int cols = buffer.getInt(8);
+            int rows = buffer.getInt(12);
+            int edgeCells = buffer.getInt(16);
+            int groups = buffer.getInt(20);
+            int edgeCount = buffer.getInt(24);
+
+            long expectedSize = HEADER_SIZE + 4L * ((long) cols * rows + (edgeCells + 1) + groups + (groups + 1) + edgeCount * 4L);
+            if (buffer.limit() != expectedSize) {
+                throw new IOException("Exclusion index is truncated: " + file);
+            }
+
+            int position = HEADER_SIZE;
+            IntBuffer cells = slice(buffer, position, cols * rows);
+            position += cells.limit() * 4;
+            IntBuffer cellGroups = slice(buffer, position, edgeCells + 1);
+            position += cellGroups.limit() * 4;
+            IntBuffer groupInside = slice(buffer, position, groups);
+            position += groupInside.limit() * 4;
+            IntBuffer groupEdges = slice(buffer, position, groups + 1);
+            position += groupEdges.limit() * 4;
+            IntBuffer edges = slice(buffer, position, edgeCount * 4);
+
+            return new ExclusionIndex(cols, rows, buffer.getDouble(32), buffer.getDouble(40),
+                    buffer.getDouble(48), buffer.getDouble(56), cells, cellGroups, groupInside, groupEdges, edges);
+        } finally {
+            in.close(); // the mapping stays valid after the channel is closed
+        }
+    }
+
+    private static IntBuffer slice(ByteBuffer buffer, int position, int ints) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(position);
+        duplicate.limit(position + ints * 4);
+        return duplicate.slice().asIntBuffer();
+    }
+
+    /**
+     * Builds an index from GeoJSON files containing Polygon or MultiPolygon geometries
+     */
+    public static ExclusionIndex fromGeoJson(List<File> files) throws IOException {
+        Builder builder = new Builder();
+
+        for (File file : files) {
+            try {
+                builder.addGeoJson(new JSONObject(readFile(file)));
+            } catch (JSONException e) {
+                throw new IOException("Invalid GeoJSON in " + file + ": " + e.getMessage());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Loads the index for the GeoJSON files in a directory, rebuilding the binary file first if
+     * the set of GeoJSON files has changed since it was written. A file that is added, removed,
+     * renamed or replaced by one of a different size or modification time counts as a change,
+     * even if it is older than the index. An index file that can't be loaded is also rebuilt.
+     *
+     * @return the index, or null if the directory contains no GeoJSON files
+     */
+    public static ExclusionIndex loadOrBuild(File geoJsonDirectory, File indexFile) throws IOException {
+        List<File> files = new ArrayList<File>();
+        File[] contents = geoJsonDirectory.listFiles();
+
+        if (contents != null) {
+            for (File file : contents) {
+                if (file.getName().endsWith(".geojson") || file.getName().endsWith(".json")) {
+                    files.add(file);
+                }
+            }
+        }
+
+        if (files.isEmpty()) {
+            return null;
+        }
+
+        long fingerprint = fingerprint(files);
+
+        if (readFingerprint(indexFile) != fingerprint) {
+            fromGeoJson(files).save(indexFile, fingerprint);
+            return load(indexFile);
+        }
+
+        try {
+            return load(indexFile);
+        } catch (IOException e) {
+            indexFile.delete(); // damaged, so rebuilt from the sources
+            fromGeoJson(files).save(indexFile, fingerprint);
+            return load(indexFile);
+        }
+    }
+
+    /**
+     * Hashes the name, size and modification time of each file, in name order as directory
+     * listings aren't ordered
+     */
+    private static long fingerprint(List<File> files) {
+        List<File> sorted = new ArrayList<File>(files);
+        Collections.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return lhs.getName().compareTo(rhs.getName());
+            }
+        });
+
+        long hash = FINGERPRINT_SEED;
+        for (File file : sorted) {
+            String name = file.getName();
+            for (int i=0; i < name.length(); i++) {
+                hash = (hash ^ name.charAt(i)) * FINGERPRINT_PRIME;
+            }
+            hash = (hash ^ file.length()) * FINGERPRINT_PRIME;
+            hash = (hash ^ file.lastModified()) * FINGERPRINT_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @return the source fingerprint in an index file's header, or 0 if the file is missing or
+     * isn't an index in the current format
+     */
+    private static long readFingerprint(File indexFile) {
+        if (!indexFile.exists()) {
+            return 0;
+        }
+
+        try {
+            RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+
+            try {
+                if (file.length() < HEADER_SIZE || file.readInt() != MAGIC || file.readInt() != VERSION) {
+                    return 0;
+                }
+                file.seek(FINGERPRINT_OFFSET);
+                return file.readLong();
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            return 0; // rebuilt, which replaces the unreadable file
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        Writer writer = new StringWriter();
+        char[] buffer = new char[8192];
+
+        try {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                writer.write(buffer, 0, read);
+            }
+        } finally {
+            reader.close();
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Collects polygons and builds the grid. Polygons are stored as a list of rings in degrees,
+     * where any ring after the first is a hole. Building allocates freely as it only happens when
+     * the source files change.
+     */
+    public static class Builder {
+
+        private final List<double[][]> polygons = new ArrayList<double[][]>(); // rings of lat,lng pairs
+
+        /**
+         * @param rings the outer ring followed by any holes, each as alternating lat/lng values
+         */
+        public Builder addPolygon(double[]... rings) {
+            polygons.add(rings);
+            return this;
+        }
+
+        public Builder addGeoJson(JSONObject json) throws JSONException {
+            String type = json.getString("type");
+
+            if ("FeatureCollection".equals(type)) {
+                JSONArray features = json.getJSONArray("features");
+                for (int i=0; i < features.length(); i++) {
+                    addGeoJson(features.getJSONObject(i));
+                }
+            } else if ("Feature".equals(type)) {
+                if (!json.isNull("geometry")) {
+                    addGeoJson(json.getJSONObject("geometry"));
+                }
+            } else if ("Polygon".equals(type)) {
+                addGeoJsonPolygon(json.getJSONArray("coordinates"));
+            } else if ("MultiPolygon".equals(type)) {
+                JSONArray coordinates = json.getJSONArray("coordinates");
+                for (int i=0; i < coordinates.length(); i++) {
+                    addGeoJsonPolygon(coordinates.getJSONArray(i));
+                }
+            }
+            return this;
+        }
+
+        private void addGeoJsonPolygon(JSONArray coordinates) throws JSONException {
+            double[][] rings = new double[coordinates.length()][];
+
+            for (int i=0; i < rings.length; i++) {
+                JSONArray ring = coordinates.getJSONArray(i);
+                rings[i] = new double[ring.length() * 2];
+
+                for (int k=0; k < ring.length(); k++) {
+                    JSONArray position = ring.getJSONArray(k); // GeoJSON positions are [lng, lat]
+                    rings[i][k * 2] = position.getDouble(1);
+                    rings[i][k * 2 + 1] = position.getDouble(0);
+                }
+            }
+            polygons.add(rings);
+        }
+
+        public ExclusionIndex build() {
+            double minLat = Double.MAX_VALUE, minLng = Double.MAX_VALUE;
+            double maxLat = -Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+
+            for (double[][] polygon : polygons) {
+                for (int i=0; i < polygon[0].length; i += 2) {
+                    minLat = Math.min(minLat, polygon[0][i]);
+                    maxLat = Math.max(maxLat, polygon[0][i]);
+                    minLng = Math.min(minLng, polygon[0][i + 1]);
+                    maxLng = Math.max(maxLng, polygon[0][i + 1]);
+                }
+            }
+
+            if (polygons.isEmpty()) {
+                minLat = minLng = maxLat = maxLng = 0;
+            }
+
+            double cellSize = Math.max(Math.max(maxLat - minLat, maxLng - minLng) / MAX_GRID_SIZE, MIN_CELL_SIZE);
+            int rows = Math.max((int) Math.ceil((maxLat - minLat) / cellSize), 1);
+            int cols = Math.max((int) Math.ceil((maxLng - minLng) / cellSize), 1);
+
+            boolean[] inside = new boolean[rows * cols];
+            Map<Integer, List<Group>> cellGroups = new HashMap<Integer, List<Group>>();
+
+            for (double[][] polygon : polygons) {
+                addToGrid(polygon, minLat, minLng, cellSize, rows, cols, inside, cellGroups);
+            }
+
+            return pack(minLat, minLng, cellSize, rows, cols, inside, cellGroups);
+        }
+
+        private static void addToGrid(double[][] polygon, double minLat, double minLng, double cellSize,
+                                      int rows, int cols, boolean[] inside, Map<Integer, List<Group>> cellGroups) {
+
+            // find the cells each edge passes through
+            Map<Integer, Group> groups = new HashMap<Integer, Group>();
+
+            for (double[] ring : polygon) {
+                for (int i=0; i + 3 < ring.length; i += 2) {
+                    double lat1 = ring[i], lng1 = ring[i + 1], lat2 = ring[i + 2], lng2 = ring[i + 3];
+
+                    int rowStart = clamp((int) Math.floor((Math.min(lat1, lat2) - minLat) / cellSize), rows);
+                    int rowEnd = clamp((int) Math.floor((Math.max(lat1, lat2) - minLat) / cellSize), rows);
+                    int colStart = clamp((int) Math.floor((Math.min(lng1, lng2) - minLng) / cellSize), cols);
+                    int colEnd = clamp((int) Math.floor((Math.max(lng1, lng2) - minLng) / cellSize), cols);
+
+                    for (int row = rowStart; row <= rowEnd; row++) {
+                        for (int col = colStart; col <= colEnd; col++) {
+                            double cellMinLat = minLat + row * cellSize;
+                            double cellMinLng = minLng + col * cellSize;
+
+                            if (intersectsCell(lat1, lng1, lat2, lng2, cellMinLat, cellMinLng, cellSize)) {
+                                int cell = row * cols + col;
+                                Group group = groups.get(cell);
+                                if (group == null) {
+                                    group = new Group();
+                                    groups.put(cell, group);
+                                }
+                                group.edges.add(new int[] { toMicros(lat1), toMicros(lng1), toMicros(lat2), toMicros(lng2) });
+                            }
+                        }
+                    }
+                }
+            }
+
+            // scan each row through the cell centres to find which centres are inside the polygon
+            double[] crossings = new double[64];
+
+            for (int row=0; row < rows; row++) {
+                double lat = minLat + (row + 0.5) * cellSize;
+                int count = 0;
+
+                for (double[] ring : polygon) {
+                    for (int i=0; i + 3 < ring.length; i += 2) {
+                        double lat1 = ring[i], lng1 = ring[i + 1], lat2 = ring[i + 2], lng2 = ring[i + 3];
+
+                        if ((lat1 > lat) != (lat2 > lat)) {
+                            if (count == crossings.length) {
+                                crossings = Arrays.copyOf(crossings, count * 2);
+                            }
+                            crossings[count++] = lng1 + (lat - lat1) * (lng2 - lng1) / (lat2 - lat1);
+                        }
+                    }
+                }
+                Arrays.sort(crossings, 0, count);
+
+                int crossed = 0;
+                for (int col=0; col < cols; col++) {
+                    double lng = minLng + (col + 0.5) * cellSize;
+
+                    while (crossed < count && crossings[crossed] < lng) {
+                        crossed++;
+                    }
+                    boolean centreInside = (crossed % 2) == 1;
+                    int cell = row * cols + col;
+                    Group group = groups.get(cell);
+
+                    if (group != null) {
+                        group.centreInside = centreInside;
+                        List<Group> existing = cellGroups.get(cell);
+                        if (existing == null) {
+                            existing = new ArrayList<Group>();
+                            cellGroups.put(cell, existing);
+                        }
+                        existing.add(group);
+                    } else if (centreInside) {
+                        inside[cell] = true;
+                    }
+                }
+            }
+        }
+
+        private static ExclusionIndex pack(double minLat, double minLng, double cellSize, int rows, int cols,
+                                           boolean[] inside, Map<Integer, List<Group>> cellGroups) {
+
+            int[] cells = new int[rows * cols];
+            List<List<Group>> edgeCells = new ArrayList<List<Group>>();
+            int groupCount = 0;
+            int edgeCount = 0;
+
+            for (int cell=0; cell < cells.length; cell++) {
+                List<Group> groups = cellGroups.get(cell);
+
+                if (inside[cell]) {
+                    cells[cell] = INSIDE;
+                } else if (groups != null) {
+                    cells[cell] = edgeCells.size();
+                    edgeCells.add(groups);
+                    groupCount += groups.size();
+                    for (Group group : groups) {
+                        edgeCount += group.edges.size();
+                    }
+                } else {
+                    cells[cell] = OUTSIDE;
+                }
+            }
+
+            int[] cellGroupOffsets = new int[edgeCells.size() + 1];
+            int[] groupInside = new int[groupCount];
+            int[] groupEdgeOffsets = new int[groupCount + 1];
+            int[] edges = new int[edgeCount * 4];
+
+            int group = 0;
+            int edge = 0;
+
+            for (int i=0; i < edgeCells.size(); i++) {
+                cellGroupOffsets[i] = group;
+
+                for (Group g : edgeCells.get(i)) {
+                    groupInside[group] = (g.centreInside) ? 1 : 0;
+                    groupEdgeOffsets[group] = edge;
+
+                    for (int[] e : g.edges) {
+                        System.arraycopy(e, 0, edges, edge * 4, 4);
+                        edge++;
+                    }
+                    group++;
+                }
+            }
+            cellGroupOffsets[edgeCells.size()] = group;
+            groupEdgeOffsets[groupCount] = edge;
+
+            return new ExclusionIndex(cols, rows, minLat, minLng, cellSize, cellSize,
+                    IntBuffer.wrap(cells), IntBuffer.wrap(cellGroupOffsets), IntBuffer.wrap(groupInside),
+                    IntBuffer.wrap(groupEdgeOffsets), IntBuffer.wrap(edges));
+        }
+
+        /**
+         * Checks whether a segment touches a cell, by clipping it against the cell's bounds
+         */
+        private static boolean intersectsCell(double lat1, double lng1, double lat2, double lng2,
+                                              double cellMinLat, double cellMinLng, double cellSize) {
+            double t0 = 0;
+            double t1 = 1;
+            double dLat = lat2 - lat1;
+            double dLng = lng2 - lng1;
+
+            double[] p = { -dLng, dLng, -dLat, dLat };
+            double[] q = { lng1 - cellMinLng, cellMinLng + cellSize - lng1,
+                    lat1 - cellMinLat, cellMinLat + cellSize - lat1 };
+
+            for (int i=0; i < 4; i++) {
+                if (p[i] == 0) {
+                    if (q[i] < 0) {
+                        return false;
+                    }
+                } else {
+                    double t = q[i] / p[i];
+                    if (p[i] < 0) {
+                        t0 = Math.max(t0, t);
+                    } else {
+                        t1 = Math.min(t1, t);
+                    }
+                    if (t0 > t1) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static int clamp(int value, int size) {
+            return Math.max(0, Math.min(value, size - 1));
+        }
+
+        private static int toMicros(double degrees) {
+            return (int) Math.round(degrees * MICRODEGREES);
+        }
+
+        private static class Group {
+            private boolean centreInside;
+            private final List<int[]> edges = new ArrayList<int[]>();
+        }
+    }
+
+}
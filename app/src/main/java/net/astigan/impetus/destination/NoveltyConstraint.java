@@ -0,0 +1,43 @@
+package net.astigan.impetus.destination;
+
+import net.astigan.impetus.utils.GeoUtils;
+
+/**
+ * Prefers destinations that are far away from recently chosen destinations, so that repeatedly
+ * randomising a journey explores somewhere new each time.
+ */
+public class NoveltyConstraint implements DestinationConstraint {
+
+    private static final int MAX_DESTINATIONS = 16;
+    private static final double MAX_REWARD_DISTANCE = 5000; // m, further away scores no higher
+
+    private final double weight;
+
+    private final double[] lats = new double[MAX_DESTINATIONS];
+    private final double[] lngs = new double[MAX_DESTINATIONS];
+    private volatile int count = 0;
+    private int next = 0;
+
+    public NoveltyConstraint(double weight) {
+        this.weight = weight;
+    }
+
+    public synchronized void addDestination(double lat, double lng) {
+        lats[next] = lat;
+        lngs[next] = lng;
+        next = (next + 1) % MAX_DESTINATIONS;
+        count = Math.min(count + 1, MAX_DESTINATIONS); // volatile write publishes the new entry
+    }
+
+    @Override
+    public double score(double lat, double lng) {
+        int size = count;
+        double nearest = MAX_REWARD_DISTANCE;
+
+        for (int i=0; i < size; i++) {
+            nearest = Math.min(nearest, GeoUtils.haversineDistance(lat, lng, lats[i], lngs[i]));
+        }
+        return weight * (nearest / MAX_REWARD_DISTANCE);
+    }
+
+}
@@ -0,0 +1,97 @@
+package net.astigan.impetus.destination;
+
+import net.astigan.impetus.graph.RoadGraph;
+import net.astigan.impetus.utils.GeoUtils;
+
+/**
+ * Rejects destinations that aren't close to the walkable network in a road graph, such as the
+ * middle of a field or a private estate that no path reaches.
+ *
+ * The area around the graph is split into a uniform grid, and every cell that could hold a point
+ * within the maximum distance of a node is marked as near, so a check is a single array lookup.
+ * Every destination within the maximum distance is accepted, along with some up to a cell's
+ * diagonal further. Destinations beyond the area the graph covers aren't judged at all.
+ */
+public class RoadProximityConstraint implements DestinationConstraint {
+
+    private static final double CELL_SIZE = 50; // m
+    private static final double METRES_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_MEAN_RADIUS;
+
+    private final int rows;
+    private final int cols;
+    private final double minLat;
+    private final double minLng;
+    private final double cellLat; // degrees
+    private final double cellLng; // degrees
+    private final boolean[] near;
+
+    /**
+     * Builds the grid, which takes a pass over every node so shouldn't be done on the UI thread
+     *
+     * @param maxDistance how far in metres a destination can be from the nearest node
+     */
+    public RoadProximityConstraint(RoadGraph graph, double maxDistance) {
+        double minLat = Double.MAX_VALUE, minLng = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+
+        for (int node=0; node < graph.getNodeCount(); node++) {
+            minLat = Math.min(minLat, graph.getLatitude(node));
+            maxLat = Math.max(maxLat, graph.getLatitude(node));
+            minLng = Math.min(minLng, graph.getLongitude(node));
+            maxLng = Math.max(maxLng, graph.getLongitude(node));
+        }
+
+        if (graph.getNodeCount() == 0) {
+            minLat = minLng = maxLat = maxLng = 0;
+        }
+
+        int reach = (int) Math.ceil(maxDistance / CELL_SIZE); // cells
+        int margin = reach + 1; // cells, so rounding can't put a node's reach off the grid
+        cellLat = CELL_SIZE / METRES_PER_DEGREE;
+        cellLng = cellLat / Math.cos(Math.toRadians((minLat + maxLat) / 2));
+        this.minLat = minLat - margin * cellLat;
+        this.minLng = minLng - margin * cellLng;
+        rows = (graph.getNodeCount() == 0) ? 0 : (int) Math.floor((maxLat - minLat) / cellLat) + 2 * margin + 1;
+        cols = (graph.getNodeCount() == 0) ? 0 : (int) Math.floor((maxLng - minLng) / cellLng) + 2 * margin + 1;
+
+        boolean[] hasNode = new boolean[rows * cols];
+        for (int node=0; node < graph.getNodeCount(); node++) {
+            int row = (int) Math.floor((graph.getLatitude(node) - this.minLat) / cellLat);
+            int col = (int) Math.floor((graph.getLongitude(node) - this.minLng) / cellLng);
+            hasNode[row * cols + col] = true;
+        }
+
+        // the closest two points in cells n apart are n - 1 cells apart
+        near = new boolean[rows * cols];
+        for (int cell=0; cell < hasNode.length; cell++) {
+            if (hasNode[cell]) {
+                markNear(cell / cols, cell % cols, reach);
+            }
+        }
+    }
+
+    private void markNear(int row, int col, int reach) {
+        for (int dRow = -reach; dRow <= reach; dRow++) {
+            for (int dCol = -reach; dCol <= reach; dCol++) {
+                int gapRows = Math.max(Math.abs(dRow) - 1, 0);
+                int gapCols = Math.max(Math.abs(dCol) - 1, 0);
+
+                if (gapRows * gapRows + gapCols * gapCols <= reach * reach) {
+                    near[(row + dRow) * cols + col + dCol] = true;
+                }
+            }
+        }
+    }
+
+    @Override
+    public double score(double lat, double lng) {
+        int row = (int) Math.floor((lat - minLat) / cellLat);
+        int col = (int) Math.floor((lng - minLng) / cellLng);
+
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return 0; // not covered by the graph
+        }
+        return (near[row * cols + col]) ? 0 : Double.NEGATIVE_INFINITY;
+    }
+
+}
@@ -2,26 +2,40 @@ package net.astigan.impetus.entities;
 
 import android.location.Location;
 
-import com.google.android.gms.maps.model.LatLng;
+import net.astigan.impetus.location.FixRingBuffer;
+import net.astigan.impetus.utils.GeoUtils;
 
-import net.astigan.impetus.utils.LocationUtils;
-
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
- * Model representing a journey. Locations along the journey are added to a list
+ * Model representing a journey. Locations along the journey are added to a packed track buffer,
+ * and the distance travelled is accumulated as each location arrives.
+ *
+ * Locations are added on the location thread. Each one is also published to a fix stream, numbered
+ * by its index in the track, which the UI drains to draw the route without touching the track.
  */
 public class Journey {
 
-    private List<Location> locations;
+    private static final int FIX_STREAM_CAPACITY = 256;
+    private static final int CHECKPOINT_INTERVAL = 64; // fixes
+
+    private final TrackBuffer track;
+    private final FixRingBuffer fixStream = new FixRingBuffer(FIX_STREAM_CAPACITY, 0);
+
+    // cumulative distance at every CHECKPOINT_INTERVAL'th fix, so distance queries only walk the
+    // fixes since the nearest checkpoint without storing a distance for every fix
+    private double[] checkpoints = new double[16];
+    private double distanceSum = 0.0;
+    private double distanceCompensation = 0.0; // kahan summation error term
 
     private final Location startLocation;
     private final Location endLocation;
     private Location currentLocation;
+    private volatile boolean arrived = false;
+    private boolean arrivalShown = false; // only used on the main thread
 
     public Journey(Location startLocation, Location currentLocation, Location endLocation) {
-        this.locations = new ArrayList<Location>();
+        this.track = new TrackBuffer();
         this.startLocation = startLocation;
         this.currentLocation = currentLocation;
         this.endLocation = endLocation;
@@ -43,31 +57,133 @@ public class Journey {
         this.currentLocation = currentLocation;
     }
 
-    public void addLocation(Location location) {
-        this.locations.add(location);
+    /**
+     * @return true once the user has arrived at the end location. Set on the location thread.
+     */
+    public boolean hasArrived() {
+        return arrived;
     }
 
-    public List<LatLng> getLocationRoute() {
-        List<LatLng> route = new ArrayList<LatLng>();
+    public void setArrived() {
+        this.arrived = true;
+    }
+
+    /**
+     * @return true once the user has been told they've arrived, which outlives the activity
+     */
+    public boolean isArrivalShown() {
+        return arrivalShown;
+    }
+
+    public void setArrivalShown() {
+        this.arrivalShown = true;
+    }
 
-        for (Location location : locations) {
-            route.add(LocationUtils.constructLatLngFromLocation(location));
+    public void addLocation(Location location) {
+        if (location != null) {
+            this.track.add(location);
+            accumulateDistance();
+            publishLast();
         }
-        return route;
     }
 
-    public int getJourneyDistance() {
-        float distance = 0.0f;
+    /**
+     * Adds a location from its primitive values, without needing a Location object
+     *
+     * @param accuracy accuracy in metres, or NaN if unknown
+     * @param speed speed in m/s, or NaN if unknown
+     */
+    public void addLocation(double lat, double lng, long timeMs, float accuracy, float speed) {
+        this.track.add(lat, lng, timeMs, accuracy, speed);
+        accumulateDistance();
+        publishLast();
+    }
+
+    private void publishLast() {
+        int last = track.size() - 1;
+        fixStream.publish(track.getLatitude(last), track.getLongitude(last), track.getTime(last),
+                track.getAccuracy(last), track.getSpeed(last));
+    }
+
+    private void accumulateDistance() {
+        int last = track.size() - 1;
 
-        if (locations != null && locations.size() < 2) {
+        if (last > 0) {
+            double segment = GeoUtils.haversineDistance(track.getLatitude(last - 1),
+                    track.getLongitude(last - 1), track.getLatitude(last), track.getLongitude(last));
+
+            double y = segment - distanceCompensation;
+            double t = distanceSum + y;
+            distanceCompensation = (t - distanceSum) - y;
+            distanceSum = t;
+        }
 
-            for (int i=0; i < locations.size() - 2;) {
-                Location a = locations.get(i);
-                Location b = locations.get(++i);
-                distance += a.distanceTo(b);
+        if (last % CHECKPOINT_INTERVAL == 0) {
+            int checkpoint = last / CHECKPOINT_INTERVAL;
+
+            if (checkpoint >= checkpoints.length) {
+                checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
             }
+            checkpoints[checkpoint] = distanceSum;
+        }
+    }
+
+    /**
+     * @return the distance travelled up to the fix at the given index, from the checkpoint at or
+     * before it plus the segments since
+     */
+    private double getDistanceAtIndex(int index) {
+        int start = index - (index % CHECKPOINT_INTERVAL);
+        double distance = checkpoints[start / CHECKPOINT_INTERVAL];
+
+        for (int i = start + 1; i <= index; i++) {
+            distance += GeoUtils.haversineDistance(track.getLatitude(i - 1), track.getLongitude(i - 1),
+                    track.getLatitude(i), track.getLongitude(i));
         }
+        return distance;
+    }
+
+    public TrackBuffer getTrack() {
+        return track;
+    }
+
+    /**
+     * @return the stream of locations added to the journey, for a single consumer on another thread
+     */
+    public FixRingBuffer getFixStream() {
+        return fixStream;
+    }
+
+    /**
+     * @return a version number for the route, which increases each time a location is added
+     */
+    public int getRouteVersion() {
+        return track.size();
+    }
+
+    /**
+     * @return the total distance travelled in metres
+     */
+    public int getJourneyDistance() {
+        return (int) distanceSum;
+    }
+
+    /**
+     * Gets the distance travelled up until the last location recorded at or before a given time
+     *
+     * @param timeMs UTC time in ms
+     * @return the distance in metres, or 0 if the time is before the journey started
+     */
+    public double getDistanceAtTime(long timeMs) {
+        int index = track.indexAtOrBefore(timeMs);
+        return (index == -1) ? 0.0 : getDistanceAtIndex(index);
+    }
 
-        return (int) distance;
+    /**
+     * @param checkpointTimeMs UTC time of the checkpoint in ms
+     * @return the distance travelled in metres since the checkpoint
+     */
+    public double getDistanceSince(long checkpointTimeMs) {
+        return distanceSum - getDistanceAtTime(checkpointTimeMs);
     }
 }
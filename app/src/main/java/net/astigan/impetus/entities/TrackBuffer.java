@@ -0,0 +1,224 @@
+package net.astigan.impetus.entities;
+
+import android.location.Location;
+
+import net.astigan.impetus.utils.LocationUtils;
+
+import java.util.Arrays;
+
+/**
+ * A growable store for the fixes recorded along a journey, backed by parallel primitive arrays.
+ *
+ * Coordinates are held as int microdegrees (roughly 0.1m of precision) and times as int ms offsets
+ * from the first fix. Accuracy and speed are float columns, NaN where a fix didn't provide them, and
+ * each is only allocated once some fix does. A point costs 12 bytes, or 20 with both columns,
+ * instead of the 100+ bytes of a Location object, which is only built when a caller asks for one.
+ *
+ * Fixes are appended by a single thread. The size is written after each fix, so another thread
+ * that reads the size first can safely read the fixes before it.
+ */
+public class TrackBuffer {
+
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final double MICRODEGREES = 1E6;
+
+    private int[] latitudes; // microdegrees
+    private int[] longitudes; // microdegrees
+    private int[] timeOffsets; // ms since baseTime
+    private float[] accuracies; // m, NaN when missing
+    private float[] speeds; // m/s, NaN when missing
+
+    private long baseTime;
+    private volatile int size;
+
+    public TrackBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TrackBuffer(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        this.latitudes = new int[capacity];
+        this.longitudes = new int[capacity];
+        this.timeOffsets = new int[capacity];
+    }
+
+    public void add(Location location) {
+        float accuracy = (location.hasAccuracy()) ? location.getAccuracy() : Float.NaN;
+        float speed = (location.hasSpeed()) ? location.getSpeed() : Float.NaN;
+        add(location.getLatitude(), location.getLongitude(), location.getTime(), accuracy, speed);
+    }
+
+    /**
+     * Appends a fix to the end of the track.
+     *
+     * @param lat latitude in degrees
+     * @param lng longitude in degrees
+     * @param timeMs UTC time of the fix in ms. Journeys are limited to ~24 days from the first fix
+     * @param accuracy accuracy in metres, or NaN if unknown
+     * @param speed speed in m/s, or NaN if unknown
+     */
+    public void add(double lat, double lng, long timeMs, float accuracy, float speed) {
+        int index = size;
+
+        if (index == 0) {
+            baseTime = timeMs;
+        }
+        ensureCapacity(index + 1);
+
+        latitudes[index] = quantise(lat);
+        longitudes[index] = quantise(lng);
+        timeOffsets[index] = (int) Math.max(Math.min(timeMs - baseTime, Integer.MAX_VALUE), Integer.MIN_VALUE);
+
+        if (!Float.isNaN(accuracy)) {
+            ensureAccuracyColumn();
+        }
+        if (accuracies != null) {
+            accuracies[index] = accuracy;
+        }
+
+        if (!Float.isNaN(speed)) {
+            ensureSpeedColumn();
+        }
+        if (speeds != null) {
+            speeds[index] = speed;
+        }
+        size = index + 1; // publishes the fix to other threads
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return latitudes[index] / MICRODEGREES;
+    }
+
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return longitudes[index] / MICRODEGREES;
+    }
+
+    public int getLatitudeE6(int index) {
+        checkIndex(index);
+        return latitudes[index];
+    }
+
+    public int getLongitudeE6(int index) {
+        checkIndex(index);
+        return longitudes[index];
+    }
+
+    public long getTime(int index) {
+        checkIndex(index);
+        return baseTime + timeOffsets[index];
+    }
+
+    public float getAccuracy(int index) {
+        checkIndex(index);
+        return (accuracies == null) ? Float.NaN : accuracies[index];
+    }
+
+    public float getSpeed(int index) {
+        checkIndex(index);
+        return (speeds == null) ? Float.NaN : speeds[index];
+    }
+
+    /**
+     * Finds the last fix recorded at or before the given time using a binary search, as fixes are
+     * appended in time order.
+     *
+     * @return the index of the fix, or -1 if the time is before the first fix
+     */
+    public int indexAtOrBefore(long timeMs) {
+        if (size == 0 || timeMs < baseTime) {
+            return -1;
+        }
+        long offset = Math.min(timeMs - baseTime, Integer.MAX_VALUE);
+
+        int low = 0;
+        int high = size - 1;
+
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+
+            if (timeOffsets[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Builds a new Location object for the fix at the given index. This allocates, so should not
+     * be called for every point on a long track.
+     */
+    public Location getLocation(int index) {
+        Location location = new Location(LocationUtils.LOCATION_PROVIDER);
+        location.setLatitude(getLatitude(index));
+        location.setLongitude(getLongitude(index));
+        location.setTime(getTime(index));
+
+        float accuracy = getAccuracy(index);
+        if (!Float.isNaN(accuracy)) {
+            location.setAccuracy(accuracy);
+        }
+        float speed = getSpeed(index);
+        if (!Float.isNaN(speed)) {
+            location.setSpeed(speed);
+        }
+        return location;
+    }
+
+    private static int quantise(double degrees) {
+        return (int) Math.round(degrees * MICRODEGREES);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        int capacity = latitudes.length;
+
+        if (required > capacity) {
+            int newCapacity = Math.max(capacity + (capacity >> 1), required);
+            latitudes = Arrays.copyOf(latitudes, newCapacity);
+            longitudes = Arrays.copyOf(longitudes, newCapacity);
+            timeOffsets = Arrays.copyOf(timeOffsets, newCapacity);
+
+            if (accuracies != null) {
+                accuracies = Arrays.copyOf(accuracies, newCapacity);
+            }
+            if (speeds != null) {
+                speeds = Arrays.copyOf(speeds, newCapacity);
+            }
+        }
+    }
+
+    private void ensureAccuracyColumn() {
+        if (accuracies == null) {
+            accuracies = new float[latitudes.length];
+            Arrays.fill(accuracies, Float.NaN);
+        }
+    }
+
+    private void ensureSpeedColumn() {
+        if (speeds == null) {
+            speeds = new float[latitudes.length];
+            Arrays.fill(speeds, Float.NaN);
+        }
+    }
+}
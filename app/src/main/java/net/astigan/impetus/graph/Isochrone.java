@@ -0,0 +1,66 @@
+package net.astigan.impetus.graph;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outline of the area that can be reached within a journey distance, with its bounding box so
+ * the map can be fitted to it without iterating over the points.
+ */
+public class Isochrone {
+
+    private final int distance; // km
+    private final List<LatLng> points;
+
+    private final double minLatitude;
+    private final double minLongitude;
+    private final double maxLatitude;
+    private final double maxLongitude;
+
+    public Isochrone(int distance, List<LatLng> points) {
+        this.distance = distance;
+        this.points = Collections.unmodifiableList(points);
+
+        double minLat = Double.MAX_VALUE, minLng = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+
+        for (LatLng point : points) {
+            minLat = Math.min(minLat, point.latitude);
+            maxLat = Math.max(maxLat, point.latitude);
+            minLng = Math.min(minLng, point.longitude);
+            maxLng = Math.max(maxLng, point.longitude);
+        }
+
+        this.minLatitude = minLat;
+        this.minLongitude = minLng;
+        this.maxLatitude = maxLat;
+        this.maxLongitude = maxLng;
+    }
+
+    public int getDistance() {
+        return distance;
+    }
+
+    public List<LatLng> getPoints() {
+        return points;
+    }
+
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+}
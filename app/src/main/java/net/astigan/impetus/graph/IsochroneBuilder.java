@@ -0,0 +1,123 @@
+package net.astigan.impetus.graph;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import net.astigan.impetus.utils.GeoUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Calculates the reachable area for every whole km of journey distance around a point.
+ *
+ * With a road graph, one bounded search finds the walking distance to every node, and each
+ * isochrone is a star shaped polygon with a vertex per sector of bearing, placed at the furthest
+ * node in that sector which can be walked to within the distance. This keeps the polygons to a
+ * fixed number of vertices however dense the graph is. Without a graph, or for distances that the
+ * graph does not cover, the isochrone is a circle.
+ */
+public class IsochroneBuilder {
+
+    public static final int MAX_DISTANCE = 50; // km, matches the journey creator seekbar
+
+    private static final int SECTORS = 72; // 5 degrees each
+    private static final int KM = 10000; // decimetres
+    private static final double MIN_BAND = 0.7; // a distance is covered if destinations can be found
+
+    private final RoadGraph graph;
+    private final NetworkDistanceSearch search;
+    private final double[][] radii = new double[MAX_DISTANCE + 1][SECTORS]; // m
+
+    /**
+     * @param graph the road graph, or null to use circles
+     */
+    public IsochroneBuilder(RoadGraph graph) {
+        this.graph = graph;
+        this.search = (graph == null) ? null : new NetworkDistanceSearch(graph);
+    }
+
+    public RoadGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return isochrones indexed by distance in km, from 1 to MAX_DISTANCE. Index 0 holds the
+     * 1km isochrone.
+     */
+    public Isochrone[] build(double lat, double lng) {
+        GeoUtils.Origin origin = new GeoUtils.Origin(lat, lng);
+        int coveredDistance = searchGraph(origin);
+
+        Isochrone[] isochrones = new Isochrone[MAX_DISTANCE + 1];
+        double[] lats = new double[SECTORS + 1];
+        double[] lngs = new double[SECTORS + 1];
+
+        for (int distance=1; distance <= MAX_DISTANCE; distance++) {
+            boolean network = distance <= coveredDistance;
+            List<LatLng> points = new ArrayList<LatLng>(SECTORS + 1);
+
+            for (int sector=0; sector < SECTORS; sector++) {
+                double bearing = (sector + 0.5) * (2 * Math.PI / SECTORS);
+                double radius = (network) ? radii[distance][sector] : distance * 1000;
+
+                origin.getDestination(radius, GeoUtils.sinBearing(bearing), GeoUtils.cosBearing(bearing), lats, lngs, sector);
+                points.add(new LatLng(lats[sector], lngs[sector]));
+            }
+            points.add(points.get(0));
+
+            isochrones[distance] = new Isochrone(distance, points);
+        }
+        isochrones[0] = isochrones[1];
+        return isochrones;
+    }
+
+    /**
+     * Fills in the furthest reachable radius for each distance and sector
+     *
+     * @return the largest distance in km that the graph covers, or 0 if the graph cannot be used
+     */
+    private int searchGraph(GeoUtils.Origin origin) {
+        if (graph == null || graph.getNodeCount() == 0) {
+            return 0;
+        }
+
+        int start = graph.nearestNode(origin.getLatitude(), origin.getLongitude(), RoadGraph.MAX_SNAP_DISTANCE);
+        if (start < 0) {
+            return 0;
+        }
+
+        for (double[] sectors : radii) {
+            Arrays.fill(sectors, 0);
+        }
+
+        search.search(start, MAX_DISTANCE * KM);
+        int furthest = 0;
+
+        for (int i=0; i < search.getReachedCount(); i++) {
+            int node = search.getReachedNode(i);
+            int distance = search.getDistance(node);
+            furthest = distance; // nodes are reached in order of distance
+
+            double nodeLat = graph.getLatitude(node);
+            double nodeLng = graph.getLongitude(node);
+            int bucket = Math.max((distance + KM - 1) / KM, 1);
+            int sector = (int) (origin.bearingTo(nodeLat, nodeLng) * SECTORS / 360.0) % SECTORS;
+            double radius = origin.distanceTo(nodeLat, nodeLng);
+
+            if (radius > radii[bucket][sector]) {
+                radii[bucket][sector] = radius;
+            }
+        }
+
+        // anything reachable within a shorter distance is reachable within a longer one
+        for (int distance=2; distance <= MAX_DISTANCE; distance++) {
+            for (int sector=0; sector < SECTORS; sector++) {
+                radii[distance][sector] = Math.max(radii[distance][sector], radii[distance - 1][sector]);
+            }
+        }
+
+        return Math.min((int) (furthest / (MIN_BAND * KM)), MAX_DISTANCE);
+    }
+
+}
@@ -0,0 +1,125 @@
+package net.astigan.impetus.graph;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.crashlytics.android.Crashlytics;
+
+import net.astigan.impetus.utils.GeoUtils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a set of isochrones for the user's current position, recalculating them on a background
+ * thread when the user moves. Looking up the isochrone for a distance is then just an array access,
+ * so the overlay can follow the seekbar as it is dragged.
+ *
+ * Updates are coalesced - if several arrive while a calculation is running, only the latest is
+ * calculated next.
+ */
+public class IsochroneCache {
+
+    public interface Listener {
+        public void onIsochronesUpdated();
+    }
+
+    private static final double RECALCULATE_DISTANCE = 250; // m
+
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private volatile Isochrone[] isochrones;
+
+    // the latest requested position and graph, read by the background thread
+    private volatile double[] pendingPosition;
+    private volatile RoadGraph pendingGraph;
+
+    private double[] lastPosition;
+    private RoadGraph lastGraph;
+
+    private IsochroneBuilder builder; // only used on the background thread
+
+    public IsochroneCache(Listener listener) {
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "IsochroneCache");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Recalculates the isochrones if the user has moved far enough, or the road graph has changed
+     *
+     * @param graph the road graph, or null if none is loaded
+     */
+    public void update(double lat, double lng, RoadGraph graph) {
+        if (lastPosition != null && graph == lastGraph &&
+                GeoUtils.haversineDistance(lastPosition[0], lastPosition[1], lat, lng) < RECALCULATE_DISTANCE) {
+            return;
+        }
+        lastPosition = new double[] { lat, lng };
+        lastGraph = graph;
+
+        pendingGraph = graph;
+        pendingPosition = lastPosition;
+
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    calculate();
+                }
+            });
+        }
+    }
+
+    /**
+     * @param distance the journey distance in km
+     * @return the isochrone, or null if none have been calculated yet
+     */
+    public Isochrone getIsochrone(int distance) {
+        Isochrone[] current = isochrones;
+
+        if (current == null) {
+            return null;
+        }
+        return current[Math.max(0, Math.min(distance, IsochroneBuilder.MAX_DISTANCE))];
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void calculate() {
+        scheduled.set(false); // any update after this point schedules another calculation
+
+        RoadGraph graph = pendingGraph;
+        double[] position = pendingPosition;
+
+        try {
+            if (builder == null || builder.getGraph() != graph) {
+                builder = new IsochroneBuilder(graph);
+            }
+            isochrones = builder.build(position[0], position[1]);
+
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onIsochronesUpdated();
+                }
+            });
+        } catch (RuntimeException e) {
+            Crashlytics.logException(e);
+        }
+    }
+
+}
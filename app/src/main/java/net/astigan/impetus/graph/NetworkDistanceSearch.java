@@ -0,0 +1,211 @@
+package net.astigan.impetus.graph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Finds walking distances from a start node to every node within a bound, using Dijkstra's
+ * algorithm with a binary heap of node ids keyed on their distance labels.
+ *
+ * All of the working arrays are allocated once per graph and reused by each search. Distance labels
+ * are only valid if their generation matches the current search, so nothing needs to be cleared
+ * between searches. Searches are not thread safe.
+ */
+public class NetworkDistanceSearch {
+
+    public static final int UNREACHED = Integer.MAX_VALUE;
+
+    private static final int SETTLED = -1;
+
+    private final RoadGraph graph;
+
+    private final int[] distances; // decimetres
+    private final int[] generations;
+    private int generation = 0;
+
+    private final int[] heap; // node ids
+    private final int[] heapPositions; // per node, its index in the heap or SETTLED
+    private int heapSize = 0;
+
+    private final int[] settled; // nodes in the order they were settled, i.e. by distance
+    private int settledCount = 0;
+
+    public NetworkDistanceSearch(RoadGraph graph) {
+        int nodes = graph.getNodeCount();
+
+        this.graph = graph;
+        this.distances = new int[nodes];
+        this.generations = new int[nodes];
+        this.heap = new int[nodes];
+        this.heapPositions = new int[nodes];
+        this.settled = new int[nodes];
+    }
+
+    public RoadGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Finds the shortest distance to every node that can be reached within the bound
+     *
+     * @param source the node to start from
+     * @param maxDistance the furthest distance to search, in decimetres
+     */
+    public void search(int source, int maxDistance) {
+        nextGeneration();
+        heapSize = 0;
+        settledCount = 0;
+
+        generations[source] = generation;
+        distances[source] = 0;
+        push(source);
+
+        while (heapSize > 0) {
+            int node = pop();
+            int distance = distances[node];
+            settled[settledCount++] = node;
+
+            for (int edge = graph.getFirstEdge(node); edge < graph.getEndEdge(node); edge++) {
+                int target = graph.getEdgeTarget(edge);
+                int targetDistance = distance + graph.getEdgeLength(edge);
+
+                if (targetDistance > maxDistance) {
+                    continue;
+                }
+
+                if (generations[target] != generation) {
+                    generations[target] = generation;
+                    distances[target] = targetDistance;
+                    push(target);
+                } else if (heapPositions[target] != SETTLED && targetDistance < distances[target]) {
+                    distances[target] = targetDistance;
+                    siftUp(heapPositions[target]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the distance to the node in decimetres, or UNREACHED if it was outside the bound
+     */
+    public int getDistance(int node) {
+        return (generations[node] == generation) ? distances[node] : UNREACHED;
+    }
+
+    /**
+     * @return the number of nodes reached by the last search
+     */
+    public int getReachedCount() {
+        return settledCount;
+    }
+
+    /**
+     * @return a node reached by the last search, in order of increasing distance
+     */
+    public int getReachedNode(int index) {
+        return settled[index];
+    }
+
+    /**
+     * Picks a random node whose distance from the source falls within a band
+     *
+     * @param minDistance the minimum distance in decimetres
+     * @param maxDistance the maximum distance in decimetres
+     * @return the node, or -1 if no reached node falls within the band
+     */
+    public int getRandomNode(int minDistance, int maxDistance, Random random) {
+        int start = firstSettledAtLeast(minDistance);
+        int end = firstSettledAtLeast(maxDistance == UNREACHED ? UNREACHED : maxDistance + 1);
+
+        return (start < end) ? settled[start + random.nextInt(end - start)] : -1;
+    }
+
+    /**
+     * Binary searches the settled nodes, which are in order of distance
+     */
+    private int firstSettledAtLeast(int distance) {
+        int low = 0;
+        int high = settledCount;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (distances[settled[middle]] < distance) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void nextGeneration() {
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(generations, 0);
+            generation = 0;
+        }
+        generation++;
+    }
+
+    private void push(int node) {
+        heap[heapSize] = node;
+        heapPositions[node] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private int pop() {
+        int node = heap[0];
+        heapPositions[node] = SETTLED;
+
+        if (--heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapPositions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return node;
+    }
+
+    private void siftUp(int position) {
+        int node = heap[position];
+        int distance = distances[node];
+
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            int parentNode = heap[parent];
+
+            if (distances[parentNode] <= distance) {
+                break;
+            }
+            heap[position] = parentNode;
+            heapPositions[parentNode] = position;
+            position = parent;
+        }
+        heap[position] = node;
+        heapPositions[node] = position;
+    }
+
+    private void siftDown(int position) {
+        int node = heap[position];
+        int distance = distances[node];
+
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && distances[heap[child + 1]] < distances[heap[child]]) {
+                child++;
+            }
+
+            int childNode = heap[child];
+            if (distances[childNode] >= distance) {
+                break;
+            }
+            heap[position] = childNode;
+            heapPositions[childNode] = position;
+            position = child;
+        }
+        heap[position] = node;
+        heapPositions[node] = position;
+    }
+
+}
@@ -0,0 +1,454 @@
+package net.astigan.impetus.graph;
+
+import net.astigan.impetus.utils.FileUtils;
+import net.astigan.impetus.utils.GeoUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A walkable road and footpath network, stored as compressed sparse row adjacency so that it can
+ * be memory mapped straight from a preprocessed file without any parsing at startup.
+ *
+ * Nodes are stored in the order of an implicit KD-tree - the middle node of any range splits the
+ * rest of that range by latitude or longitude, alternating at each level - so the nearest node to
+ * a point can be found without building a separate tree. Only the largest connected part of the
+ * network is kept, so every node can be reached from every other node.
+ */
+public class RoadGraph {
+
+    public static final double MAX_SNAP_DISTANCE = 1000; // m, further away than this isn't covered by the graph
+
+    private static final int MAGIC = 0x494D5047; // "IMPG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16; // bytes
+
+    private static final double MICRODEGREES = 1E6;
+    private static final double DECIMETRES = 10;
+
+    private final int nodeCount;
+    private final int edgeCount;
+
+    private final IntBuffer latitudes; // microdegrees
+    private final IntBuffer longitudes; // microdegrees
+    private final IntBuffer edgeOffsets; // per node, the first of its edges
+    private final IntBuffer edgeTargets;
+    private final IntBuffer edgeLengths; // decimetres
+
+    private RoadGraph(IntBuffer latitudes, IntBuffer longitudes, IntBuffer edgeOffsets,
+                      IntBuffer edgeTargets, IntBuffer edgeLengths) {
+        this.nodeCount = latitudes.limit();
+        this.edgeCount = edgeTargets.limit();
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.edgeOffsets = edgeOffsets;
+        this.edgeTargets = edgeTargets;
+        this.edgeLengths = edgeLengths;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public double getLatitude(int node) {
+        return latitudes.get(node) / MICRODEGREES;
+    }
+
+    public double getLongitude(int node) {
+        return longitudes.get(node) / MICRODEGREES;
+    }
+
+    /**
+     * @return the index of the node's first edge, for use with getEdgeTarget and getEdgeLength
+     */
+    public int getFirstEdge(int node) {
+        return edgeOffsets.get(node);
+    }
+
+    /**
+     * @return the index after the node's last edge
+     */
+    public int getEndEdge(int node) {
+        return edgeOffsets.get(node + 1);
+    }
+
+    public int getEdgeTarget(int edge) {
+        return edgeTargets.get(edge);
+    }
+
+    /**
+     * @return the length of the edge in decimetres
+     */
+    public int getEdgeLength(int edge) {
+        return edgeLengths.get(edge);
+    }
+
+    /**
+     * Finds the node closest to a point, using an equirectangular approximation which is accurate
+     * over the short distances involved in snapping.
+     *
+     * @return the node, or -1 if the graph is empty
+     */
+    public int nearestNode(double lat, double lng) {
+        if (nodeCount == 0) {
+            return -1;
+        }
+        NearestSearch search = new NearestSearch(lat * MICRODEGREES, lng * MICRODEGREES, Math.cos(Math.toRadians(lat)));
+        search.search(0, nodeCount, 0);
+        return search.bestNode;
+    }
+
+    /**
+     * @param maxDistance the furthest a node can be from the point in metres
+     * @return the node closest to a point, or -1 if there's none within the distance
+     */
+    public int nearestNode(double lat, double lng, double maxDistance) {
+        int node = nearestNode(lat, lng);
+
+        if (node < 0 || GeoUtils.haversineDistance(lat, lng, getLatitude(node), getLongitude(node)) > maxDistance) {
+            return -1;
+        }
+        return node;
+    }
+
+    private class NearestSearch {
+
+        private final double lat;
+        private final double lng;
+        private final double lngScale;
+
+        private int bestNode = -1;
+        private double bestDistance = Double.MAX_VALUE;
+
+        NearestSearch(double lat, double lng, double lngScale) {
+            this.lat = lat;
+            this.lng = lng;
+            this.lngScale = lngScale;
+        }
+
+        void search(int start, int end, int depth) {
+            if (start >= end) {
+                return;
+            }
+            int middle = (start + end) >>> 1;
+
+            double dLat = lat - latitudes.get(middle);
+            double dLng = (lng - longitudes.get(middle)) * lngScale;
+            double distance = dLat * dLat + dLng * dLng;
+
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestNode = middle;
+            }
+
+            double split = ((depth & 1) == 0) ? dLat : dLng;
+
+            if (split < 0) {
+                search(start, middle, depth + 1);
+                if (split * split < bestDistance) {
+                    search(middle + 1, end, depth + 1);
+                }
+            } else {
+                search(middle + 1, end, depth + 1);
+                if (split * split < bestDistance) {
+                    search(start, middle, depth + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the graph to a binary file that can be memory mapped by load. The file is replaced
+     * atomically, so an interrupted save leaves any previous graph intact.
+     */
+    public void save(File file) throws IOException {
+        File temp = FileUtils.getTempFile(file);
+
+        try {
+            write(temp);
+            FileUtils.replace(temp, file);
+        } finally {
+            temp.delete(); // only left behind if the save failed
+        }
+    }
+
+    private void write(File file) throws IOException {
+        FileOutputStream fileOut = new FileOutputStream(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodeCount);
+            out.writeInt(edgeCount);
+
+            writeInts(out, latitudes);
+            writeInts(out, longitudes);
+            writeInts(out, edgeOffsets);
+            writeInts(out, edgeTargets);
+            writeInts(out, edgeLengths);
+
+            out.flush();
+            fileOut.getFD().sync(); // on disk before it's renamed into place
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, IntBuffer buffer) throws IOException {
+        for (int i=0; i < buffer.limit(); i++) {
+            out.writeInt(buffer.get(i));
+        }
+    }
+
+    /**
+     * Memory maps a graph previously written by save
+     */
+    public static RoadGraph load(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Unrecognised road graph: " + file);
+            }
+
+            int nodes = buffer.getInt(8);
+            int edges = buffer.getInt(12);
+
+            long expectedSize = HEADER_SIZE + 4L * (3L * nodes + 1 + 2L * edges);
+            if (buffer.limit() != expectedSize) {
+                throw new IOException("Road graph is truncated: " + file);
+            }
+
+            int position = HEADER_SIZE;
+            IntBuffer latitudes = slice(buffer, position, nodes);
+            position += nodes * 4;
+            IntBuffer longitudes = slice(buffer, position, nodes);
+            position += nodes * 4;
+            IntBuffer edgeOffsets = slice(buffer, position, nodes + 1);
+            position += (nodes + 1) * 4;
+            IntBuffer edgeTargets = slice(buffer, position, edges);
+            position += edges * 4;
+            IntBuffer edgeLengths = slice(buffer, position, edges);
+
+            return new RoadGraph(latitudes, longitudes, edgeOffsets, edgeTargets, edgeLengths);
+        } finally {
+            in.close(); // the mapping stays valid after the channel is closed
+        }
+    }
+
+    private static IntBuffer slice(ByteBuffer buffer, int position, int ints) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(position);
+        duplicate.limit(position + ints * 4);
+        return duplicate.slice().asIntBuffer();
+    }
+
+    /**
+     * Collects nodes and undirected edges, then arranges them into the compact form used by the
+     * graph. Nodes outside the largest connected part of the network are dropped.
+     */
+    public static class Builder {
+
+        private int[] latitudes = new int[1024];
+        private int[] longitudes = new int[1024];
+        private int nodeCount = 0;
+
+        private int[] edgeSources = new int[1024];
+        private int[] edgeTargets = new int[1024];
+        private int edgeCount = 0;
+
+        /**
+         * @return the id used to refer to the node when adding edges
+         */
+        public int addNode(double lat, double lng) {
+            if (nodeCount == latitudes.length) {
+                latitudes = Arrays.copyOf(latitudes, nodeCount * 2);
+                longitudes = Arrays.copyOf(longitudes, nodeCount * 2);
+            }
+            latitudes[nodeCount] = (int) Math.round(lat * MICRODEGREES);
+            longitudes[nodeCount] = (int) Math.round(lng * MICRODEGREES);
+            return nodeCount++;
+        }
+
+        public void addEdge(int from, int to) {
+            if (from == to) {
+                return;
+            }
+            if (edgeCount == edgeSources.length) {
+                edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+                edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+            }
+            edgeSources[edgeCount] = from;
+            edgeTargets[edgeCount] = to;
+            edgeCount++;
+        }
+
+        public RoadGraph build() {
+            int[] component = largestComponent();
+
+            // arrange the nodes that are kept into KD-tree order
+            int[] order = new int[nodeCount];
+            int kept = 0;
+            for (int node=0; node < nodeCount; node++) {
+                if (component[node] >= 0) {
+                    order[kept++] = node;
+                }
+            }
+            arrange(order, 0, kept, 0);
+
+            int[] newIds = new int[nodeCount];
+            Arrays.fill(newIds, -1);
+            int[] lats = new int[kept];
+            int[] lngs = new int[kept];
+
+            for (int i=0; i < kept; i++) {
+                newIds[order[i]] = i;
+                lats[i] = latitudes[order[i]];
+                lngs[i] = longitudes[order[i]];
+            }
+
+            // count the edges of each node, then fill them in both directions
+            int[] offsets = new int[kept + 1];
+            for (int i=0; i < edgeCount; i++) {
+                int from = newIds[edgeSources[i]];
+                if (from >= 0) {
+                    offsets[from + 1]++;
+                    offsets[newIds[edgeTargets[i]] + 1]++;
+                }
+            }
+            for (int i=0; i < kept; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            int[] targets = new int[offsets[kept]];
+            int[] lengths = new int[offsets[kept]];
+            int[] next = Arrays.copyOf(offsets, kept);
+
+            for (int i=0; i < edgeCount; i++) {
+                int from = newIds[edgeSources[i]];
+                int to = newIds[edgeTargets[i]];
+
+                if (from >= 0) {
+                    int length = (int) Math.round(GeoUtils.haversineDistance(lats[from] / MICRODEGREES,
+                            lngs[from] / MICRODEGREES, lats[to] / MICRODEGREES, lngs[to] / MICRODEGREES) * DECIMETRES);
+
+                    targets[next[from]] = to;
+                    lengths[next[from]++] = length;
+                    targets[next[to]] = from;
+                    lengths[next[to]++] = length;
+                }
+            }
+
+            return new RoadGraph(IntBuffer.wrap(lats), IntBuffer.wrap(lngs), IntBuffer.wrap(offsets),
+                    IntBuffer.wrap(targets), IntBuffer.wrap(lengths));
+        }
+
+        /**
+         * Labels the nodes using union-find, then marks those outside the largest set with -1
+         */
+        private int[] largestComponent() {
+            int[] parents = new int[nodeCount];
+            for (int i=0; i < nodeCount; i++) {
+                parents[i] = i;
+            }
+
+            for (int i=0; i < edgeCount; i++) {
+                int a = find(parents, edgeSources[i]);
+                int b = find(parents, edgeTargets[i]);
+                if (a != b) {
+                    parents[a] = b;
+                }
+            }
+
+            int[] sizes = new int[nodeCount];
+            int largest = -1;
+            for (int i=0; i < nodeCount; i++) {
+                int root = find(parents, i);
+                sizes[root]++;
+                if (largest < 0 || sizes[root] > sizes[largest]) {
+                    largest = root;
+                }
+            }
+
+            for (int i=0; i < nodeCount; i++) {
+                parents[i] = (largest >= 0 && sizes[largest] > 1 && find(parents, i) == largest) ? 0 : -1;
+            }
+            return parents;
+        }
+
+        private static int find(int[] parents, int node) {
+            while (parents[node] != node) {
+                parents[node] = parents[parents[node]];
+                node = parents[node];
+            }
+            return node;
+        }
+
+        /**
+         * Recursively partitions the range so the middle element splits the rest by latitude on
+         * even levels and longitude on odd levels
+         */
+        private void arrange(int[] nodes, int start, int end, int depth) {
+            if (end - start <= 1) {
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            int[] keys = ((depth & 1) == 0) ? latitudes : longitudes;
+
+            select(nodes, keys, start, end - 1, middle);
+            arrange(nodes, start, middle, depth + 1);
+            arrange(nodes, middle + 1, end, depth + 1);
+        }
+
+        /**
+         * Moves the node with the kth smallest key into position k, with smaller keys before it
+         * and larger keys after it
+         */
+        private static void select(int[] nodes, int[] keys, int left, int right, int k) {
+            while (left < right) {
+                int pivot = keys[nodes[(left + right) >>> 1]];
+                int i = left;
+                int j = right;
+
+                while (i <= j) {
+                    while (keys[nodes[i]] < pivot) {
+                        i++;
+                    }
+                    while (keys[nodes[j]] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        int temp = nodes[i];
+                        nodes[i++] = nodes[j];
+                        nodes[j--] = temp;
+                    }
+                }
+
+                if (k <= j) {
+                    right = j;
+                } else if (k >= i) {
+                    left = i;
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package net.astigan.impetus.graph;
+
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts an OpenStreetMap XML extract into a RoadGraph, keeping only the ways that can be walked.
+ */
+public class RoadGraphConverter {
+
+    private static final String[] UNWALKABLE_HIGHWAYS = {
+            "motorway", "motorway_link", "trunk", "trunk_link", "construction", "proposed", "raceway", "bus_guideway"
+    };
+
+    /**
+     * Loads the graph for an OSM extract, converting it first if the extract has changed since the
+     * graph file was written, or if the graph file can't be loaded
+     *
+     * @return the graph, or null if there is no extract
+     */
+    public static RoadGraph loadOrConvert(File osmFile, File graphFile) throws IOException {
+        if (!osmFile.exists()) {
+            return null;
+        }
+
+        if (!graphFile.exists() || graphFile.lastModified() < osmFile.lastModified()) {
+            convert(osmFile, graphFile);
+            return RoadGraph.load(graphFile);
+        }
+
+        try {
+            return RoadGraph.load(graphFile);
+        } catch (IOException e) {
+            graphFile.delete(); // damaged, so converted again from the extract
+            convert(osmFile, graphFile);
+            return RoadGraph.load(graphFile);
+        }
+    }
+
+    private static void convert(File osmFile, File graphFile) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(osmFile));
+        try {
+            convert(in).save(graphFile);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static RoadGraph convert(InputStream osmXml) throws IOException {
+        RoadGraph.Builder builder = new RoadGraph.Builder();
+        Map<Long, Integer> nodeIds = new HashMap<Long, Integer>();
+
+        long[] wayNodes = new long[256];
+        int wayNodeCount = 0;
+        String highway = null;
+        String foot = null;
+        String access = null;
+
+        try {
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setInput(osmXml, null);
+
+            for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                if (event == XmlPullParser.START_TAG) {
+                    String name = parser.getName();
+
+                    if ("node".equals(name)) {
+                        String lat = parser.getAttributeValue(null, "lat");
+                        String lng = parser.getAttributeValue(null, "lon");
+
+                        if (lat != null && lng != null) { // skipped, which breaks any way through it
+                            long id = Long.parseLong(parser.getAttributeValue(null, "id"));
+                            nodeIds.put(id, builder.addNode(Double.parseDouble(lat), Double.parseDouble(lng)));
+                        }
+                    } else if ("way".equals(name)) {
+                        wayNodeCount = 0;
+                        highway = foot = access = null;
+                    } else if ("nd".equals(name)) {
+                        if (wayNodeCount == wayNodes.length) {
+                            wayNodes = Arrays.copyOf(wayNodes, wayNodeCount * 2);
+                        }
+                        wayNodes[wayNodeCount++] = Long.parseLong(parser.getAttributeValue(null, "ref"));
+                    } else if ("tag".equals(name)) {
+                        String key = parser.getAttributeValue(null, "k");
+                        String value = parser.getAttributeValue(null, "v");
+
+                        if ("highway".equals(key)) {
+                            highway = value;
+                        } else if ("foot".equals(key)) {
+                            foot = value;
+                        } else if ("access".equals(key)) {
+                            access = value;
+                        }
+                    }
+                } else if (event == XmlPullParser.END_TAG && "way".equals(parser.getName())) {
+                    if (isWalkable(highway, foot, access)) {
+                        addWay(builder, nodeIds, wayNodes, wayNodeCount);
+                    }
+                    wayNodeCount = 0;
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException("Invalid OSM extract: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid OSM extract: " + e.getMessage());
+        }
+        return builder.build();
+    }
+
+    private static void addWay(RoadGraph.Builder builder, Map<Long, Integer> nodeIds, long[] wayNodes, int count) {
+        Integer previous = null;
+
+        for (int i=0; i < count; i++) {
+            Integer node = nodeIds.get(wayNodes[i]);
+
+            if (node != null && previous != null) {
+                builder.addEdge(previous, node);
+            }
+            previous = node; // a node missing from the extract breaks the way
+        }
+    }
+
+    private static boolean isWalkable(String highway, String foot, String access) {
+        if (highway == null) {
+            return false;
+        }
+        if ("yes".equals(foot) || "designated".equals(foot) || "permissive".equals(foot)) {
+            return true;
+        }
+        if ("no".equals(foot) || "no".equals(access) || "private".equals(access)) {
+            return false;
+        }
+        for (String unwalkable : UNWALKABLE_HIGHWAYS) {
+            if (unwalkable.equals(highway)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
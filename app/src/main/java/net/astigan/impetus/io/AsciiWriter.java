@@ -0,0 +1,118 @@
+package net.astigan.impetus.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes ASCII text into a reusable byte buffer. Numbers and timestamps are formatted by hand, so
+ * streaming a track out as text does not allocate a String for every value.
+ */
+class AsciiWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_VALUE_LENGTH = 32; // longest number or timestamp written
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+
+    AsciiWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    void write(String text) throws IOException {
+        for (int i=0; i < text.length(); i++) {
+            if (position == BUFFER_SIZE) {
+                flushBuffer();
+            }
+            buffer[position++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Writes a value stored in millionths as a decimal, e.g. 51507351 as 51.507351
+     */
+    void writeMicros(int micros) throws IOException {
+        ensureSpace();
+
+        long value = micros;
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        writeDigits(value / 1000000, 1);
+        buffer[position++] = '.';
+        writeDigits(value % 1000000, 6);
+    }
+
+    /**
+     * Writes a UTC timestamp in ISO 8601 format, e.g. 2014-12-08T00:53:20Z
+     */
+    void writeIsoTime(long timeMs) throws IOException {
+        ensureSpace();
+
+        long seconds = floorDiv(timeMs, 1000);
+        long days = floorDiv(seconds, 86400);
+        int secondOfDay = (int) (seconds - days * 86400);
+
+        // civil date from days since epoch, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        long month = (mp < 10) ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + ((month <= 2) ? 1 : 0);
+
+        writeDigits(year, 4);
+        buffer[position++] = '-';
+        writeDigits(month, 2);
+        buffer[position++] = '-';
+        writeDigits(day, 2);
+        buffer[position++] = 'T';
+        writeDigits(secondOfDay / 3600, 2);
+        buffer[position++] = ':';
+        writeDigits((secondOfDay / 60) % 60, 2);
+        buffer[position++] = ':';
+        writeDigits(secondOfDay % 60, 2);
+        buffer[position++] = 'Z';
+    }
+
+    void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private void writeDigits(long value, int minDigits) {
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    private void ensureSpace() throws IOException {
+        if (position > BUFFER_SIZE - MAX_VALUE_LENGTH) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return ((x % y != 0) && ((x ^ y) < 0)) ? q - 1 : q;
+    }
+
+}
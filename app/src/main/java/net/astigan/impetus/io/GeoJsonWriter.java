@@ -0,0 +1,39 @@
+package net.astigan.impetus.io;
+
+import net.astigan.impetus.entities.TrackBuffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams a track to an OutputStream as a GeoJSON LineString feature. The time of each point is
+ * written to the "coordTimes" property, which is the convention used by most GPX converters.
+ * Like GpxWriter, nothing is built in memory before being written.
+ */
+public class GeoJsonWriter {
+
+    public static void write(TrackBuffer track, OutputStream out) throws IOException {
+        AsciiWriter writer = new AsciiWriter(out);
+        writer.write("{\"type\":\"Feature\",\"properties\":{\"coordTimes\":[");
+
+        for (int i=0; i < track.size(); i++) {
+            writer.write((i == 0) ? "\"" : ",\"");
+            writer.writeIsoTime(track.getTime(i));
+            writer.write("\"");
+        }
+
+        writer.write("]},\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+
+        for (int i=0; i < track.size(); i++) {
+            writer.write((i == 0) ? "[" : ",[");
+            writer.writeMicros(track.getLongitudeE6(i));
+            writer.write(",");
+            writer.writeMicros(track.getLatitudeE6(i));
+            writer.write("]");
+        }
+
+        writer.write("]}}\n");
+        writer.flush();
+    }
+
+}
@@ -0,0 +1,130 @@
+package net.astigan.impetus.io;
+
+import android.util.Xml;
+
+import net.astigan.impetus.entities.TrackBuffer;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the track points of a GPX document into a track, e.g. one written by GpxWriter or recorded
+ * by another app. Points without a time are given one a second after the previous point.
+ */
+public class GpxReader {
+
+    private static final long DEFAULT_INTERVAL = 1000; // ms, for points without a time
+
+    /**
+     * Appends the document's track points onto the given track
+     */
+    public static void read(InputStream gpx, TrackBuffer track) throws IOException {
+        boolean inPoint = false;
+        double lat = 0;
+        double lng = 0;
+        long time = Long.MIN_VALUE;
+        long previousTime = 0;
+
+        try {
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setInput(gpx, null);
+
+            for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                if (event == XmlPullParser.START_TAG) {
+                    String name = parser.getName();
+
+                    if ("trkpt".equals(name)) {
+                        String latText = parser.getAttributeValue(null, "lat");
+                        String lngText = parser.getAttributeValue(null, "lon");
+
+                        if (latText == null || lngText == null) {
+                            throw new IOException("Invalid GPX: track point " + track.size() + " has no position");
+                        }
+                        inPoint = true;
+                        lat = Double.parseDouble(latText);
+                        lng = Double.parseDouble(lngText);
+                        time = Long.MIN_VALUE;
+                    } else if (inPoint && "time".equals(name)) {
+                        time = parseIsoTime(parser.nextText().trim());
+                    }
+                } else if (event == XmlPullParser.END_TAG && "trkpt".equals(parser.getName())) {
+                    if (time == Long.MIN_VALUE) {
+                        time = (track.isEmpty()) ? 0 : previousTime + DEFAULT_INTERVAL;
+                    }
+                    track.add(lat, lng, time, Float.NaN, Float.NaN);
+                    previousTime = time;
+                    inPoint = false;
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException("Invalid GPX: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid GPX: " + e.getMessage());
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Invalid GPX time: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parses an ISO 8601 date-time such as 2014-12-08T09:30:15.250Z, with an optional fraction of a
+     * second and a Z or +hh:mm offset
+     *
+     * @return the UTC time in ms
+     */
+    static long parseIsoTime(String text) {
+        long year = parseDigits(text, 0, 4);
+        long month = parseDigits(text, 5, 2);
+        long day = parseDigits(text, 8, 2);
+        long hour = parseDigits(text, 11, 2);
+        long minute = parseDigits(text, 14, 2);
+        long second = parseDigits(text, 17, 2);
+
+        int position = 19;
+        long millis = 0;
+
+        if (position < text.length() && text.charAt(position) == '.') {
+            long scale = 100;
+            position++;
+
+            while (position < text.length() && Character.isDigit(text.charAt(position))) {
+                millis += (text.charAt(position) - '0') * scale;
+                scale /= 10;
+                position++;
+            }
+        }
+
+        long offsetMinutes = 0;
+        if (position < text.length() && text.charAt(position) != 'Z') {
+            long sign = (text.charAt(position) == '-') ? -1 : 1;
+            offsetMinutes = sign * (parseDigits(text, position + 1, 2) * 60 + parseDigits(text, position + 4, 2));
+        }
+
+        // days since epoch from a civil date, see http://howardhinnant.github.io/date_algorithms.html
+        long y = (month <= 2) ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097 + dayOfEra - 719468;
+
+        long seconds = days * 86400 + hour * 3600 + (minute - offsetMinutes) * 60 + second;
+        return seconds * 1000 + millis;
+    }
+
+    private static long parseDigits(String text, int start, int count) {
+        long value = 0;
+
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Expected a digit in " + text);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,37 @@
+package net.astigan.impetus.io;
+
+import net.astigan.impetus.entities.TrackBuffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams a track to an OutputStream as a GPX 1.1 document. Points are written straight from the
+ * track buffer without building a DOM, so exports run in constant memory.
+ */
+public class GpxWriter {
+
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<gpx version=\"1.1\" creator=\"Get Lost\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n" +
+            "<trk><trkseg>\n";
+    private static final String FOOTER = "</trkseg></trk>\n</gpx>\n";
+
+    public static void write(TrackBuffer track, OutputStream out) throws IOException {
+        AsciiWriter writer = new AsciiWriter(out);
+        writer.write(HEADER);
+
+        for (int i=0; i < track.size(); i++) {
+            writer.write("<trkpt lat=\"");
+            writer.writeMicros(track.getLatitudeE6(i));
+            writer.write("\" lon=\"");
+            writer.writeMicros(track.getLongitudeE6(i));
+            writer.write("\"><time>");
+            writer.writeIsoTime(track.getTime(i));
+            writer.write("</time></trkpt>\n");
+        }
+
+        writer.write(FOOTER);
+        writer.flush();
+    }
+
+}
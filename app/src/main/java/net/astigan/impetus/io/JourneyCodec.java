@@ -0,0 +1,180 @@
+package net.astigan.impetus.io;
+
+import net.astigan.impetus.entities.TrackBuffer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compact binary format for journey tracks. Each fix is stored as the difference from the
+ * previous fix, zigzag encoded so small negative values stay small, then written as a varint.
+ * Consecutive GPS fixes are close together, so most fixes take 6-8 bytes.
+ *
+ * Layout: magic, version, point count, then for each point the latitude and longitude deltas in
+ * microdegrees, the time delta in ms, accuracy in decimetres and speed in cm/s. Accuracy and speed
+ * are stored offset by one, with 0 meaning the value is unknown.
+ */
+public class JourneyCodec {
+
+    private static final int MAGIC = 0x494D5054; // "IMPT"
+    private static final int VERSION = 1;
+
+    public static void encode(TrackBuffer track, OutputStream out) throws IOException {
+        BufferedBinaryWriter writer = new BufferedBinaryWriter(out);
+        writer.writeVarInt(MAGIC);
+        writer.writeVarInt(VERSION);
+        writer.writeVarInt(track.size());
+
+        int previousLat = 0;
+        int previousLng = 0;
+        long previousTime = 0;
+
+        for (int i=0; i < track.size(); i++) {
+            int lat = track.getLatitudeE6(i);
+            int lng = track.getLongitudeE6(i);
+            long time = track.getTime(i);
+
+            writer.writeVarLong(zigzag(lat - previousLat));
+            writer.writeVarLong(zigzag(lng - previousLng));
+            writer.writeVarLong(zigzag(time - previousTime));
+            writer.writeVarInt(encodeOptional(track.getAccuracy(i), 10));
+            writer.writeVarInt(encodeOptional(track.getSpeed(i), 100));
+
+            previousLat = lat;
+            previousLng = lng;
+            previousTime = time;
+        }
+        writer.flush();
+    }
+
+    /**
+     * Decodes a track written by encode, appending its fixes onto the given track
+     */
+    public static void decode(InputStream in, TrackBuffer track) throws IOException {
+        BufferedBinaryReader reader = new BufferedBinaryReader(in);
+
+        if (reader.readVarInt() != MAGIC) {
+            throw new IOException("Not an encoded journey");
+        }
+        int version = reader.readVarInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported journey version " + version);
+        }
+
+        int count = reader.readVarInt();
+        long lat = 0;
+        long lng = 0;
+        long time = 0;
+
+        for (int i=0; i < count; i++) {
+            lat += unzigzag(reader.readVarLong());
+            lng += unzigzag(reader.readVarLong());
+            time += unzigzag(reader.readVarLong());
+            float accuracy = decodeOptional(reader.readVarInt(), 10);
+            float speed = decodeOptional(reader.readVarInt(), 100);
+
+            track.add(lat / 1E6, lng / 1E6, time, accuracy, speed);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int encodeOptional(float value, int scale) {
+        return (Float.isNaN(value) || value < 0) ? 0 : Math.round(value * scale) + 1;
+    }
+
+    private static float decodeOptional(int value, int scale) {
+        return (value == 0) ? Float.NaN : (value - 1) / (float) scale;
+    }
+
+    /**
+     * Writes varints into a reusable buffer rather than one byte at a time to the stream
+     */
+    private static class BufferedBinaryWriter {
+
+        private final OutputStream out;
+        private final byte[] buffer = new byte[8192];
+        private int position = 0;
+
+        BufferedBinaryWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeVarInt(int value) throws IOException {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long value) throws IOException {
+            if (position > buffer.length - 10) { // a varint is at most 10 bytes
+                flushBuffer();
+            }
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        private void flushBuffer() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private static class BufferedBinaryReader {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[8192];
+        private int position = 0;
+        private int limit = 0;
+
+        BufferedBinaryReader(InputStream in) {
+            this.in = in;
+        }
+
+        int readVarInt() throws IOException {
+            return (int) readVarLong();
+        }
+
+        long readVarLong() throws IOException {
+            long result = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private int readByte() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+
+                if (limit <= 0) {
+                    limit = 0;
+                    throw new EOFException("Unexpected end of encoded journey");
+                }
+            }
+            return buffer[position++];
+        }
+    }
+
+}
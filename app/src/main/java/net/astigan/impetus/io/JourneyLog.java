@@ -0,0 +1,260 @@
+package net.astigan.impetus.io;
+
+import android.location.Location;
+
+import net.astigan.impetus.entities.Journey;
+import net.astigan.impetus.utils.LocationUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An append-only binary log of the fixes recorded during a journey, so that the journey can be
+ * recovered if the process dies mid-way through.
+ *
+ * The file is written through memory-mapped regions, so an append is a handful of memory writes
+ * with no fsync or serialisation objects - the OS flushes the dirty pages in its own time, which
+ * survives the process being killed. Each record is fixed width and carries its own sequence
+ * number and checksum. On recovery the file is scanned up to the last valid record, which discards
+ * any record that was only partially written.
+ */
+public class JourneyLog {
+
+    private static final int MAGIC = 0x494D504A; // "IMPJ"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64; // bytes
+    private static final int RECORD_SIZE = 32; // bytes
+    private static final int RECORDS_PER_REGION = 32768; // ~45 hours of fixes at 5s intervals
+    private static final long REGION_SIZE = (long) RECORDS_PER_REGION * RECORD_SIZE;
+
+    private static final double MICRODEGREES = 1E6;
+    private static final int CHECKSUM_SEED = 0x811C9DC5;
+    private static final int CHECKSUM_PRIME = 0x01000193;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+
+    private MappedByteBuffer region;
+    private int regionIndex = -1;
+    private int recordCount = 0;
+
+    private double startLat;
+    private double startLng;
+    private long startTime;
+    private double destinationLat;
+    private double destinationLng;
+
+    private JourneyLog(File file) throws IOException {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+    }
+
+    /**
+     * Creates a new log for a journey, replacing any existing log file
+     */
+    public static JourneyLog create(File file, Location start, Location destination) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to replace journey log " + file);
+        }
+
+        JourneyLog log = new JourneyLog(file);
+        log.startLat = start.getLatitude();
+        log.startLng = start.getLongitude();
+        log.startTime = start.getTime();
+        log.destinationLat = destination.getLatitude();
+        log.destinationLng = destination.getLongitude();
+
+        try {
+            log.writeHeader();
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    /**
+     * Opens an existing log and scans it for the last valid record. New fixes are appended after
+     * that record.
+     */
+    public static JourneyLog recover(File file) throws IOException {
+        JourneyLog log = new JourneyLog(file);
+
+        try {
+            log.readHeader();
+            log.scanRecords();
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    public void append(Location location) throws IOException {
+        float accuracy = (location.hasAccuracy()) ? location.getAccuracy() : Float.NaN;
+        float speed = (location.hasSpeed()) ? location.getSpeed() : Float.NaN;
+        append(location.getLatitude(), location.getLongitude(), location.getTime(), accuracy, speed);
+    }
+
+    /**
+     * Appends a fix to the log
+     *
+     * @throws IOException if a new region of the file couldn't be mapped, e.g. the disk is full
+     */
+    public void append(double lat, double lng, long timeMs, float accuracy, float speed) throws IOException {
+        int position = mapRecord(recordCount);
+
+        int latE6 = (int) Math.round(lat * MICRODEGREES);
+        int lngE6 = (int) Math.round(lng * MICRODEGREES);
+        int accuracyBits = Float.floatToRawIntBits(accuracy);
+        int speedBits = Float.floatToRawIntBits(speed);
+
+        region.putInt(position, latE6);
+        region.putInt(position + 4, lngE6);
+        region.putLong(position + 8, timeMs);
+        region.putInt(position + 16, accuracyBits);
+        region.putInt(position + 20, speedBits);
+        region.putInt(position + 24, recordCount);
+        region.putInt(position + 28, checksum(latE6, lngE6, timeMs, accuracyBits, speedBits, recordCount));
+        recordCount++;
+    }
+
+    /**
+     * Rebuilds a journey from the header and every valid record in the log
+     */
+    public Journey restoreJourney() throws IOException {
+        Location start = createLocation(startLat, startLng, startTime);
+        Location destination = createLocation(destinationLat, destinationLng, startTime);
+        Journey journey = new Journey(start, start, destination);
+
+        for (int i=0; i < recordCount; i++) {
+            int position = mapRecord(i);
+
+            journey.addLocation(region.getInt(position) / MICRODEGREES,
+                    region.getInt(position + 4) / MICRODEGREES,
+                    region.getLong(position + 8),
+                    Float.intBitsToFloat(region.getInt(position + 16)),
+                    Float.intBitsToFloat(region.getInt(position + 20)));
+        }
+
+        if (recordCount > 0) {
+            journey.setCurrentLocation(journey.getTrack().getLocation(recordCount - 1));
+        }
+        return journey;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public void close() {
+        try {
+            channel.close();
+            randomAccessFile.close();
+        } catch (IOException e) {
+            // nothing useful can be done if closing fails
+        }
+        region = null;
+    }
+
+    public boolean delete() {
+        close();
+        return file.delete();
+    }
+
+    private void writeHeader() throws IOException {
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putDouble(8, startLat);
+        header.putDouble(16, startLng);
+        header.putLong(24, startTime);
+        header.putDouble(32, destinationLat);
+        header.putDouble(40, destinationLng);
+        header.force(); // written once per journey, so worth making durable
+    }
+
+    private void readHeader() throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            throw new IOException("Journey log is truncated: " + file);
+        }
+
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Unrecognised journey log format: " + file);
+        }
+        startLat = header.getDouble(8);
+        startLng = header.getDouble(16);
+        startTime = header.getLong(24);
+        destinationLat = header.getDouble(32);
+        destinationLng = header.getDouble(40);
+    }
+
+    private void scanRecords() throws IOException {
+        long maxRecords = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        recordCount = 0;
+
+        while (recordCount < maxRecords && isValidRecord(recordCount)) {
+            recordCount++;
+        }
+    }
+
+    private boolean isValidRecord(int index) throws IOException {
+        int position = mapRecord(index);
+
+        int latE6 = region.getInt(position);
+        int lngE6 = region.getInt(position + 4);
+        long timeMs = region.getLong(position + 8);
+        int accuracyBits = region.getInt(position + 16);
+        int speedBits = region.getInt(position + 20);
+        int sequence = region.getInt(position + 24);
+        int checksum = region.getInt(position + 28);
+
+        return sequence == index &&
+                checksum == checksum(latE6, lngE6, timeMs, accuracyBits, speedBits, sequence);
+    }
+
+    /**
+     * Ensures the region containing a record is mapped
+     *
+     * @return the position of the record within the current region
+     */
+    private int mapRecord(int index) throws IOException {
+        int requiredRegion = index / RECORDS_PER_REGION;
+
+        if (requiredRegion != regionIndex) {
+            long offset = HEADER_SIZE + requiredRegion * REGION_SIZE;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, offset, REGION_SIZE);
+            regionIndex = requiredRegion;
+        }
+        return (index % RECORDS_PER_REGION) * RECORD_SIZE;
+    }
+
+    private static int checksum(int latE6, int lngE6, long timeMs, int accuracyBits, int speedBits, int sequence) {
+        int hash = CHECKSUM_SEED;
+        hash = (hash ^ latE6) * CHECKSUM_PRIME;
+        hash = (hash ^ lngE6) * CHECKSUM_PRIME;
+        hash = (hash ^ (int) timeMs) * CHECKSUM_PRIME;
+        hash = (hash ^ (int) (timeMs >>> 32)) * CHECKSUM_PRIME;
+        hash = (hash ^ accuracyBits) * CHECKSUM_PRIME;
+        hash = (hash ^ speedBits) * CHECKSUM_PRIME;
+        hash = (hash ^ sequence) * CHECKSUM_PRIME;
+        return hash;
+    }
+
+    private static Location createLocation(double lat, double lng, long timeMs) {
+        Location location = new Location(LocationUtils.LOCATION_PROVIDER);
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        location.setTime(timeMs);
+        return location;
+    }
+
+}
@@ -0,0 +1,93 @@
+package net.astigan.impetus.io;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import net.astigan.impetus.entities.TrackBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes and decodes tracks using the Google encoded polyline format, which is a compact text
+ * representation that can be shared in URLs and used by the static maps API. Coordinates are
+ * stored to 5 decimal places (~1m).
+ *
+ * See https://developers.google.com/maps/documentation/utilities/polylinealgorithm
+ */
+public class PolylineEncoder {
+
+    public static String encode(TrackBuffer track) {
+        StringBuilder sb = new StringBuilder(track.size() * 8);
+
+        try {
+            encode(track, sb);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder never throws
+        }
+        return sb.toString();
+    }
+
+    public static void encode(TrackBuffer track, Appendable out) throws IOException {
+        int previousLat = 0;
+        int previousLng = 0;
+
+        for (int i=0; i < track.size(); i++) {
+            int lat = toE5(track.getLatitudeE6(i));
+            int lng = toE5(track.getLongitudeE6(i));
+
+            encodeValue(lat - previousLat, out);
+            encodeValue(lng - previousLng, out);
+
+            previousLat = lat;
+            previousLng = lng;
+        }
+    }
+
+    public static List<LatLng> decode(CharSequence encoded) {
+        List<LatLng> points = new ArrayList<LatLng>();
+        int[] index = new int[] { 0 };
+
+        int lat = 0;
+        int lng = 0;
+
+        while (index[0] < encoded.length()) {
+            lat += decodeValue(encoded, index);
+            lng += decodeValue(encoded, index);
+            points.add(new LatLng(lat / 1E5, lng / 1E5));
+        }
+        return points;
+    }
+
+    private static int toE5(int e6) {
+        return (int) Math.round(e6 / 10.0);
+    }
+
+    private static void encodeValue(int value, Appendable out) throws IOException {
+        int shifted = (value < 0) ? ~(value << 1) : (value << 1);
+
+        while (shifted >= 0x20) {
+            out.append((char) ((0x20 | (shifted & 0x1F)) + 63));
+            shifted >>>= 5;
+        }
+        out.append((char) (shifted + 63));
+    }
+
+    private static int decodeValue(CharSequence encoded, int[] index) {
+        int result = 0;
+        int shift = 0;
+        int b;
+
+        do {
+            if (index[0] >= encoded.length()) {
+                throw new IllegalArgumentException("Truncated polyline");
+            }
+            b = encoded.charAt(index[0]++) - 63;
+            result |= (b & 0x1F) << shift;
+            shift += 5;
+        } while (b >= 0x20);
+
+        return ((result & 1) != 0) ? ~(result >> 1) : (result >> 1);
+    }
+
+}
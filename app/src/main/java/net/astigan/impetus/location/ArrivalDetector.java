@@ -0,0 +1,110 @@
+package net.astigan.impetus.location;
+
+/**
+ * Notices when the user arrives at, and later leaves, the geofences in an index.
+ *
+ * A geofence is entered when a fix falls within its entry radius, but the user only counts as
+ * having arrived once they've stayed within its exit radius for a dwell time, so a single noisy fix
+ * doesn't trigger an arrival. Having arrived, they only leave once they've stayed outside the exit
+ * radius for the dwell time, so jitter around the edge doesn't repeat the arrival.
+ *
+ * Only the geofences near each fix, and those the user is currently in, are looked at.
+ */
+public class ArrivalDetector {
+
+    public interface Listener {
+        void onArrived(int fence);
+        void onDeparted(int fence);
+    }
+
+    private static final int OUTSIDE = 0;
+    private static final int DWELLING = 1;
+    private static final int ARRIVED = 2;
+    private static final int LEAVING = 3;
+
+    private final GeofenceIndex index;
+    private final long dwellTime; // ms
+    private final Listener listener;
+
+    private final int[] states;
+    private final long[] changedTimes; // when each geofence entered its current state
+    private final int[] seenUpdates; // the update each geofence was last found near
+    private int updateCount = 0;
+
+    private final int[] nearby;
+    private final double[] distances;
+    private final int[] active; // geofences that aren't OUTSIDE
+    private int activeCount = 0;
+
+    /**
+     * @param dwellTime the time in ms the user must stay in a geofence to arrive
+     */
+    public ArrivalDetector(GeofenceIndex index, long dwellTime, Listener listener) {
+        this.index = index;
+        this.dwellTime = dwellTime;
+        this.listener = listener;
+
+        states = new int[index.size()];
+        changedTimes = new long[index.size()];
+        seenUpdates = new int[index.size()];
+        nearby = new int[index.getMaxCandidates()];
+        distances = new double[index.getMaxCandidates()];
+        active = new int[index.size()];
+    }
+
+    /**
+     * Updates the geofence states with a new fix, calling the listener for any arrivals or departures
+     */
+    public void update(double lat, double lng, long timeMs) {
+        int update = ++updateCount;
+        int count = index.findNearby(lat, lng, nearby, distances);
+
+        for (int i=0; i < count; i++) {
+            int fence = nearby[i];
+            seenUpdates[fence] = update;
+
+            if (states[fence] == OUTSIDE) {
+                if (distances[i] <= index.getEntryRadius(fence)) {
+                    states[fence] = DWELLING;
+                    changedTimes[fence] = timeMs;
+                    active[activeCount++] = fence;
+                }
+            } else if (states[fence] == DWELLING && timeMs - changedTimes[fence] >= dwellTime) {
+                states[fence] = ARRIVED;
+                listener.onArrived(fence);
+            } else if (states[fence] == LEAVING) {
+                states[fence] = ARRIVED; // back within the exit radius before the dwell time was up
+            }
+        }
+
+        // anything active that wasn't found is beyond its exit radius
+        for (int i = activeCount - 1; i >= 0; i--) {
+            int fence = active[i];
+
+            if (seenUpdates[fence] == update) {
+                continue;
+            }
+
+            if (states[fence] == ARRIVED) {
+                states[fence] = LEAVING;
+                changedTimes[fence] = timeMs;
+            } else if (states[fence] == DWELLING || timeMs - changedTimes[fence] >= dwellTime) {
+                boolean arrived = states[fence] == LEAVING;
+                states[fence] = OUTSIDE;
+                active[i] = active[--activeCount];
+
+                if (arrived) {
+                    listener.onDeparted(fence);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the user has arrived at the geofence, and hasn't yet left it
+     */
+    public boolean hasArrived(int fence) {
+        return states[fence] == ARRIVED || states[fence] == LEAVING;
+    }
+
+}
@@ -0,0 +1,124 @@
+package net.astigan.impetus.location;
+
+import net.astigan.impetus.utils.GeoUtils;
+
+/**
+ * Rejects fixes that can't be trusted before they reach the rest of the pipeline: those with a poor
+ * accuracy, and those that imply an impossible speed or acceleration since the last accepted fix,
+ * such as the jump when the GPS recovers after a tunnel.
+ *
+ * The distance between fixes is reduced by their combined error radii before the speed is worked
+ * out, so ordinary jitter between close fixes isn't mistaken for movement. If several fixes in a row are
+ * rejected for their speed, the user really has moved, so the gate accepts the next one and starts
+ * again from there. The same goes for fixes rejected for their accuracy, so the current location
+ * still moves, if less often, while the accuracy stays poor indoors or between tall buildings.
+ */
+public class FixGate {
+
+    public static final int ACCEPTED = -1;
+    public static final int REJECT_ACCURACY = 0;
+    public static final int REJECT_SPEED = 1;
+    public static final int REJECT_ACCELERATION = 2;
+    private static final int REASONS = 3;
+
+    private static final float MAX_ACCURACY = 50; // m
+    private static final double MAX_SPEED = 15; // m/s, faster than anyone walks or cycles
+    private static final double MAX_ACCELERATION = 6; // m/s^2
+    private static final int MAX_CONSECUTIVE_REJECTS = 5;
+    private static final double ERROR_RADII = 2; // accuracy is a 68% radius, twice it covers ~95% of fixes
+
+    private boolean hasLast = false;
+    private double lastLat;
+    private double lastLng;
+    private long lastTimeMs;
+    private float lastAccuracy;
+    private double lastSpeed = Double.NaN;
+
+    private int consecutiveRejects = 0;
+    private long acceptedCount = 0;
+    private final long[] rejectCounts = new long[REASONS];
+
+    /**
+     * Checks a fix, making it the new reference if it's accepted
+     *
+     * @param accuracy the fix's accuracy in metres, or NaN if unknown
+     * @return ACCEPTED, or the reason the fix was rejected
+     */
+    public int check(double lat, double lng, long timeMs, float accuracy) {
+        int result = evaluate(lat, lng, timeMs, accuracy);
+
+        if (result == ACCEPTED) {
+            consecutiveRejects = 0;
+            acceptedCount++;
+        } else {
+            rejectCounts[result]++;
+        }
+        return result;
+    }
+
+    private int evaluate(double lat, double lng, long timeMs, float accuracy) {
+        if (accuracy > MAX_ACCURACY && consecutiveRejects < MAX_CONSECUTIVE_REJECTS) { // false for NaN
+            consecutiveRejects++;
+            return REJECT_ACCURACY;
+        }
+
+        if (!hasLast || timeMs <= lastTimeMs) {
+            accept(lat, lng, timeMs, accuracy, Double.NaN);
+            return ACCEPTED;
+        }
+
+        double dt = (timeMs - lastTimeMs) / 1000.0;
+        double distance = GeoUtils.haversineDistance(lastLat, lastLng, lat, lng);
+        double speed = Math.max(distance - getRadius(accuracy) - getRadius(lastAccuracy), 0) / dt;
+
+        if (consecutiveRejects < MAX_CONSECUTIVE_REJECTS) {
+            if (speed > MAX_SPEED) {
+                consecutiveRejects++;
+                return REJECT_SPEED;
+            }
+            if (!Double.isNaN(lastSpeed) && Math.abs(speed - lastSpeed) / dt > MAX_ACCELERATION) {
+                consecutiveRejects++;
+                return REJECT_ACCELERATION;
+            }
+        }
+
+        accept(lat, lng, timeMs, accuracy, (consecutiveRejects < MAX_CONSECUTIVE_REJECTS) ? speed : Double.NaN);
+        return ACCEPTED;
+    }
+
+    private void accept(double lat, double lng, long timeMs, float accuracy, double speed) {
+        hasLast = true;
+        lastLat = lat;
+        lastLng = lng;
+        lastTimeMs = timeMs;
+        lastAccuracy = accuracy;
+        lastSpeed = speed;
+    }
+
+    private static double getRadius(float accuracy) {
+        return (Float.isNaN(accuracy)) ? 0 : accuracy * ERROR_RADII;
+    }
+
+    public void reset() {
+        hasLast = false;
+        lastSpeed = Double.NaN;
+        consecutiveRejects = 0;
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    public long getRejectCount(int reason) {
+        return rejectCounts[reason];
+    }
+
+    /**
+     * @return a summary of the accepted and rejected counts, for logging
+     */
+    public String describeCounts() {
+        return acceptedCount + " accepted, rejected " + rejectCounts[REJECT_ACCURACY] + " for accuracy, " +
+                rejectCounts[REJECT_SPEED] + " for speed, " + rejectCounts[REJECT_ACCELERATION] + " for acceleration";
+    }
+
+}
@@ -0,0 +1,195 @@
+package net.astigan.impetus.location;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single producer, single consumer ring buffer for the fixes stored along a journey, so the
+ * location thread can hand them to the UI without either side taking a lock.
+ *
+ * Fixes are held in parallel primitive arrays and numbered by a sequence, which starts at the
+ * index of the first fix in the journey's track. The producer never waits for the consumer: if the
+ * consumer falls a ring behind, e.g. while the activity is paused, its next drain reports
+ * an overrun and it should catch up from the journey itself before resyncing.
+ *
+ * The producer and consumer positions are each padded onto their own cache line, so the two threads
+ * don't invalidate each other's cache on every fix.
+ */
+public class FixRingBuffer {
+
+    public static final int OVERRUN = -1;
+
+    private final int mask;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final long[] times; // ms
+    private final float[] accuracies; // m, NaN when missing
+    private final float[] speeds; // m/s, NaN when missing
+
+    private final Sequence published = new Sequence(); // next sequence to be written
+    private final Sequence consumed = new Sequence(); // next sequence to be read
+
+    /**
+     * @param capacity the size of the ring, rounded up to a power of two. The consumer can fall up
+     *                 to one less than this many fixes behind before it's overrun
+     * @param firstSequence the sequence of the first fix to be published
+     */
+    public FixRingBuffer(int capacity, long firstSequence) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mask = size - 1;
+        latitudes = new double[size];
+        longitudes = new double[size];
+        times = new long[size];
+        accuracies = new float[size];
+        speeds = new float[size];
+
+        published.set(firstSequence);
+        consumed.set(firstSequence);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds a fix, overwriting the oldest if the ring is full. Only called from the producer thread.
+     */
+    public void publish(double lat, double lng, long timeMs, float accuracy, float speed) {
+        long sequence = published.get();
+        int slot = (int) sequence & mask;
+
+        latitudes[slot] = lat;
+        longitudes[slot] = lng;
+        times[slot] = timeMs;
+        accuracies[slot] = accuracy;
+        speeds[slot] = speed;
+
+        published.lazySet(sequence + 1); // orders the slot writes before the new position
+    }
+
+    /**
+     * Copies the fixes published since the last drain into a batch, up to the batch's capacity.
+     * Only called from the consumer thread.
+     *
+     * @return the number of fixes copied, or OVERRUN if fixes were overwritten before they could be
+     * read, in which case nothing is consumed and the caller should catch up and call resync
+     */
+    public int drain(Batch batch) {
+        long first = consumed.get();
+        long available = published.get() - first;
+
+        if (available > mask) {
+            return OVERRUN;
+        }
+        if (available <= 0) { // none yet, or resynced to fixes the journey has but the ring doesn't
+            return 0;
+        }
+        int count = (int) Math.min(available, batch.capacity);
+
+        for (int i=0; i<count; i++) {
+            int slot = (int) (first + i) & mask;
+            batch.latitudes[i] = latitudes[slot];
+            batch.longitudes[i] = longitudes[slot];
+            batch.times[i] = times[slot];
+            batch.accuracies[i] = accuracies[slot];
+            batch.speeds[i] = speeds[slot];
+        }
+
+        // the producer starts overwriting the first slot once it's a full ring ahead of it
+        if (published.get() - first > mask) {
+            return OVERRUN;
+        }
+
+        batch.firstSequence = first;
+        batch.size = count;
+        consumed.lazySet(first + count);
+        return count;
+    }
+
+    /**
+     * Continues draining from the given sequence, e.g. once the consumer has caught up from the
+     * journey after an overrun. The sequence may be ahead of the fixes published so far, as the
+     * journey's track is updated before each fix is published. Only called from the consumer thread.
+     */
+    public void resync(long sequence) {
+        consumed.lazySet(sequence);
+    }
+
+    /**
+     * @return the sequence the next fix will be published with
+     */
+    public long getPublishedSequence() {
+        return published.get();
+    }
+
+    /**
+     * @return the sequence of the next fix to be drained
+     */
+    public long getConsumedSequence() {
+        return consumed.get();
+    }
+
+    /**
+     * A batch of fixes copied out of the ring, reused between drains
+     */
+    public static class Batch {
+
+        private final int capacity;
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final long[] times;
+        private final float[] accuracies;
+        private final float[] speeds;
+
+        private long firstSequence;
+        private int size;
+
+        public Batch(int capacity) {
+            this.capacity = capacity;
+            latitudes = new double[capacity];
+            longitudes = new double[capacity];
+            times = new long[capacity];
+            accuracies = new float[capacity];
+            speeds = new float[capacity];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the sequence of the first fix in the batch
+         */
+        public long getFirstSequence() {
+            return firstSequence;
+        }
+
+        public double getLatitude(int index) {
+            return latitudes[index];
+        }
+
+        public double getLongitude(int index) {
+            return longitudes[index];
+        }
+
+        public long getTime(int index) {
+            return times[index];
+        }
+
+        public float getAccuracy(int index) {
+            return accuracies[index];
+        }
+
+        public float getSpeed(int index) {
+            return speeds[index];
+        }
+    }
+
+    /**
+     * A position followed by enough padding to fill the rest of a 64 byte cache line
+     */
+    @SuppressWarnings("unused")
+    private static class Sequence extends AtomicLong {
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+}
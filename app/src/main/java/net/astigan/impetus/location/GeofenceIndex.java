@@ -0,0 +1,223 @@
+package net.astigan.impetus.location;
+
+import net.astigan.impetus.utils.GeoUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A spatial index of circular geofences, such as a journey's destination or its waypoints, which
+ * finds the geofences a position is near.
+ *
+ * Each geofence has an entry radius, and a larger exit radius that gives the caller hysteresis.
+ * The lat/lng bounding box of each exit circle is precomputed, and the boxes are bucketed into a
+ * uniform grid at least as large as the biggest box. A position outside the grid is rejected with
+ * four comparisons, and inside it only the few geofences in its cell are checked, first against
+ * their boxes and only then with the exact great-circle distance. The cost of a check therefore
+ * stays the same however many geofences are added, as long as they aren't all piled into one cell.
+ */
+public class GeofenceIndex {
+
+    private static final int MAX_GRID_SIZE = 256; // cells along the longest side
+    private static final double MIN_CELL_SIZE = 0.001; // degrees, ~100m
+    private static final double METRES_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_MEAN_RADIUS;
+    private static final double MIN_COS_LAT = 0.01; // keeps boxes finite near the poles
+
+    private final GeoUtils.Origin[] centres;
+    private final double[] entryRadii; // m
+    private final double[] exitRadii; // m
+    private final double[] boxes; // minLat, maxLat, minLng, maxLng per geofence
+
+    private final int cols;
+    private final double minLat;
+    private final double minLng;
+    private final double maxLat;
+    private final double maxLng;
+    private final double cellSize; // degrees
+    private final int[] cellStarts; // offsets into cellFences, per cell plus one
+    private final int[] cellFences;
+    private final int maxCellSize;
+
+    private GeofenceIndex(GeoUtils.Origin[] centres, double[] entryRadii, double[] exitRadii, double[] boxes,
+                          int rows, int cols, double minLat, double minLng, double cellSize,
+                          int[] cellStarts, int[] cellFences, int maxCellSize) {
+        this.centres = centres;
+        this.entryRadii = entryRadii;
+        this.exitRadii = exitRadii;
+        this.boxes = boxes;
+        this.cols = cols;
+        this.minLat = minLat;
+        this.minLng = minLng;
+        this.maxLat = minLat + rows * cellSize;
+        this.maxLng = minLng + cols * cellSize;
+        this.cellSize = cellSize;
+        this.cellStarts = cellStarts;
+        this.cellFences = cellFences;
+        this.maxCellSize = maxCellSize;
+    }
+
+    /**
+     * Finds the geofences whose exit radius contains a position
+     *
+     * @param fences array that the geofence numbers are written into, at least getMaxCandidates long
+     * @param distances array that the distance in metres to each geofence is written into
+     * @return the number of geofences found
+     */
+    public int findNearby(double lat, double lng, int[] fences, double[] distances) {
+        if (lat < minLat || lat >= maxLat || lng < minLng || lng >= maxLng) {
+            return 0;
+        }
+
+        int cell = (int) ((lat - minLat) / cellSize) * cols + (int) ((lng - minLng) / cellSize);
+        int found = 0;
+
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+            int fence = cellFences[i];
+            int box = fence * 4;
+
+            if (lat < boxes[box] || lat > boxes[box + 1] || lng < boxes[box + 2] || lng > boxes[box + 3]) {
+                continue;
+            }
+
+            double distance = centres[fence].distanceTo(lat, lng);
+            if (distance <= exitRadii[fence]) {
+                fences[found] = fence;
+                distances[found] = distance;
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the most geofences findNearby can return, to size its arrays
+     */
+    public int getMaxCandidates() {
+        return maxCellSize;
+    }
+
+    public int size() {
+        return centres.length;
+    }
+
+    public double getLatitude(int fence) {
+        return centres[fence].getLatitude();
+    }
+
+    public double getLongitude(int fence) {
+        return centres[fence].getLongitude();
+    }
+
+    public double getEntryRadius(int fence) {
+        return entryRadii[fence];
+    }
+
+    public double getExitRadius(int fence) {
+        return exitRadii[fence];
+    }
+
+    /**
+     * Collects geofences and builds the grid. Geofences are numbered in the order they're added.
+     */
+    public static class Builder {
+
+        private final List<double[]> fences = new ArrayList<double[]>(); // lat, lng, entry, exit
+
+        /**
+         * @param entryRadius the distance in metres within which the geofence is entered
+         * @param exitRadius the distance in metres beyond which it is left, at least the entry radius
+         */
+        public Builder addGeofence(double lat, double lng, double entryRadius, double exitRadius) {
+            if (!(entryRadius > 0 && exitRadius >= entryRadius)) {
+                throw new IllegalArgumentException("Invalid geofence radii: " + entryRadius + ", " + exitRadius);
+            }
+            fences.add(new double[] { lat, lng, entryRadius, exitRadius });
+            return this;
+        }
+
+        public GeofenceIndex build() {
+            int count = fences.size();
+            GeoUtils.Origin[] centres = new GeoUtils.Origin[count];
+            double[] entryRadii = new double[count];
+            double[] exitRadii = new double[count];
+            double[] boxes = new double[count * 4];
+
+            double minLat = Double.MAX_VALUE, minLng = Double.MAX_VALUE;
+            double maxLat = -Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+            double largestBox = 0;
+
+            for (int i=0; i < count; i++) {
+                double[] fence = fences.get(i);
+                centres[i] = new GeoUtils.Origin(fence[0], fence[1]);
+                entryRadii[i] = fence[2];
+                exitRadii[i] = fence[3];
+
+                double halfLat = fence[3] / METRES_PER_DEGREE;
+                double halfLng = halfLat / Math.max(Math.cos(Math.toRadians(fence[0])), MIN_COS_LAT);
+                boxes[i * 4] = fence[0] - halfLat;
+                boxes[i * 4 + 1] = fence[0] + halfLat;
+                boxes[i * 4 + 2] = fence[1] - halfLng;
+                boxes[i * 4 + 3] = fence[1] + halfLng;
+
+                minLat = Math.min(minLat, boxes[i * 4]);
+                maxLat = Math.max(maxLat, boxes[i * 4 + 1]);
+                minLng = Math.min(minLng, boxes[i * 4 + 2]);
+                maxLng = Math.max(maxLng, boxes[i * 4 + 3]);
+                largestBox = Math.max(largestBox, Math.max(halfLat, halfLng) * 2);
+            }
+
+            if (count == 0) {
+                minLat = minLng = maxLat = maxLng = 0;
+            }
+
+            double cellSize = Math.max(Math.max(maxLat - minLat, maxLng - minLng) / MAX_GRID_SIZE,
+                    Math.max(largestBox, MIN_CELL_SIZE));
+            int rows = Math.max((int) Math.ceil((maxLat - minLat) / cellSize), 1);
+            int cols = Math.max((int) Math.ceil((maxLng - minLng) / cellSize), 1);
+
+            // the range of cells each geofence's box covers, as row start, row end, col start, col end
+            int[] ranges = new int[count * 4];
+            for (int i=0; i < count; i++) {
+                ranges[i * 4] = clamp((int) Math.floor((boxes[i * 4] - minLat) / cellSize), rows);
+                ranges[i * 4 + 1] = clamp((int) Math.floor((boxes[i * 4 + 1] - minLat) / cellSize), rows);
+                ranges[i * 4 + 2] = clamp((int) Math.floor((boxes[i * 4 + 2] - minLng) / cellSize), cols);
+                ranges[i * 4 + 3] = clamp((int) Math.floor((boxes[i * 4 + 3] - minLng) / cellSize), cols);
+            }
+
+            // count the geofences in each cell, then fill them in, as with compressed sparse rows
+            int[] cellStarts = new int[rows * cols + 1];
+            for (int i=0; i < count; i++) {
+                for (int row = ranges[i * 4]; row <= ranges[i * 4 + 1]; row++) {
+                    for (int col = ranges[i * 4 + 2]; col <= ranges[i * 4 + 3]; col++) {
+                        cellStarts[row * cols + col + 1]++;
+                    }
+                }
+            }
+
+            int maxCellSize = 0;
+            for (int cell=0; cell < rows * cols; cell++) {
+                maxCellSize = Math.max(maxCellSize, cellStarts[cell + 1]);
+                cellStarts[cell + 1] += cellStarts[cell];
+            }
+
+            int[] cellFences = new int[cellStarts[rows * cols]];
+            int[] filled = new int[rows * cols];
+            for (int i=0; i < count; i++) {
+                for (int row = ranges[i * 4]; row <= ranges[i * 4 + 1]; row++) {
+                    for (int col = ranges[i * 4 + 2]; col <= ranges[i * 4 + 3]; col++) {
+                        int cell = row * cols + col;
+                        cellFences[cellStarts[cell] + filled[cell]++] = i;
+                    }
+                }
+            }
+
+            return new GeofenceIndex(centres, entryRadii, exitRadii, boxes, rows, cols, minLat, minLng,
+                    cellSize, cellStarts, cellFences, maxCellSize);
+        }
+
+        private static int clamp(int value, int size) {
+            return Math.max(0, Math.min(value, size - 1));
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package net.astigan.impetus.location;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Looper;
+
+/**
+ * Fixes from the device's GPS
+ */
+public class GpsLocationSource implements LocationSource {
+
+    private final LocationManager locationManager;
+
+    public GpsLocationSource(LocationManager locationManager) {
+        this.locationManager = locationManager;
+    }
+
+    @Override
+    public void requestUpdates(long minTime, float minDistance, LocationListener listener, Looper looper) {
+        locationManager.removeUpdates(listener);
+        locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, minTime, minDistance, listener, looper);
+    }
+
+    @Override
+    public void removeUpdates(LocationListener listener) {
+        locationManager.removeUpdates(listener);
+    }
+
+    @Override
+    public Location getLastKnownLocation() {
+        return locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
+    }
+}
@@ -0,0 +1,163 @@
+package net.astigan.impetus.location;
+
+import net.astigan.impetus.utils.GeoUtils;
+
+/**
+ * Smooths GPS fixes with a constant velocity Kalman filter, so that jitter while walking (or
+ * standing still) doesn't add distance and extra vertices to the journey.
+ *
+ * Fixes are projected onto a local east/north plane in metres around a reference point, where the
+ * two axes can be filtered independently. Each axis holds a position, a velocity and a 2x2
+ * covariance in primitive fields, so filtering a fix doesn't allocate anything. Each fix is weighted
+ * by its reported accuracy, so a poor fix moves the estimate less than a good one.
+ */
+public class KalmanFilter {
+
+    private static final double ACCELERATION_NOISE = 0.02; // m^2/s^3, a walker changing pace or direction
+    private static final double DEFAULT_ACCURACY = 20; // m, for fixes that don't report one
+    private static final double MIN_ACCURACY = 1; // m
+    private static final long MAX_GAP = 60 * 1000; // 60s, after which the filter starts again
+    private static final double MAX_PLANE_OFFSET = 10000; // 10km, before the plane is recentred
+
+    private static final double METRES_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_MEAN_RADIUS;
+
+    private final Axis east = new Axis();
+    private final Axis north = new Axis();
+
+    private boolean initialised = false;
+    private long lastTimeMs;
+
+    private double originLat;
+    private double originLng;
+    private double metresPerDegreeLng;
+
+    /**
+     * Adds a fix to the filter. The smoothed position is then available from the getters.
+     *
+     * @param accuracy the fix's accuracy radius in metres, or NaN/0 if unknown
+     */
+    public void update(double lat, double lng, long timeMs, float accuracy) {
+        double variance = getVariance(accuracy);
+
+        if (!initialised || timeMs - lastTimeMs > MAX_GAP) {
+            setOrigin(lat, lng);
+            east.reset(variance);
+            north.reset(variance);
+            lastTimeMs = timeMs;
+            initialised = true;
+            return;
+        }
+
+        double dt = (timeMs - lastTimeMs) / 1000.0;
+
+        if (dt > 0) {
+            east.predict(dt);
+            north.predict(dt);
+            lastTimeMs = timeMs;
+        }
+
+        east.correct((lng - originLng) * metresPerDegreeLng, variance);
+        north.correct((lat - originLat) * METRES_PER_DEGREE, variance);
+
+        if (Math.abs(east.position) > MAX_PLANE_OFFSET || Math.abs(north.position) > MAX_PLANE_OFFSET) {
+            recentre();
+        }
+    }
+
+    public void reset() {
+        initialised = false;
+    }
+
+    public boolean isInitialised() {
+        return initialised;
+    }
+
+    public double getLatitude() {
+        return originLat + north.position / METRES_PER_DEGREE;
+    }
+
+    public double getLongitude() {
+        return GeoUtils.normaliseLongitude(originLng + east.position / metresPerDegreeLng);
+    }
+
+    /**
+     * @return the estimated speed in metres per second
+     */
+    public float getSpeed() {
+        return (float) Math.sqrt(east.velocity * east.velocity + north.velocity * north.velocity);
+    }
+
+    /**
+     * @return the estimated position error (one standard deviation) in metres
+     */
+    public float getAccuracy() {
+        return (float) Math.sqrt(Math.max(east.p00, north.p00));
+    }
+
+    private static double getVariance(float accuracy) {
+        double metres = (Float.isNaN(accuracy) || accuracy <= 0) ? DEFAULT_ACCURACY : Math.max(accuracy, MIN_ACCURACY);
+        return metres * metres;
+    }
+
+    private void setOrigin(double lat, double lng) {
+        originLat = lat;
+        originLng = lng;
+        metresPerDegreeLng = METRES_PER_DEGREE * Math.max(Math.cos(Math.toRadians(lat)), 0.01);
+    }
+
+    /**
+     * Moves the plane's origin to the current estimate, so the flat approximation stays accurate
+     */
+    private void recentre() {
+        setOrigin(getLatitude(), getLongitude());
+        east.position = 0;
+        north.position = 0;
+    }
+
+    /**
+     * The state along one axis: position and velocity, with their covariance
+     */
+    private static class Axis {
+
+        private double position; // m
+        private double velocity; // m/s
+
+        private double p00; // position variance
+        private double p01; // position/velocity covariance
+        private double p11; // velocity variance
+
+        void reset(double variance) {
+            position = 0;
+            velocity = 0;
+            p00 = variance;
+            p01 = 0;
+            p11 = 4; // (2m/s)^2, roughly the range of walking speeds
+        }
+
+        void predict(double dt) {
+            position += velocity * dt;
+
+            double dt2 = dt * dt;
+            double q = ACCELERATION_NOISE;
+
+            p00 += dt * (2 * p01 + dt * p11) + q * dt2 * dt / 3;
+            p01 += dt * p11 + q * dt2 / 2;
+            p11 += q * dt;
+        }
+
+        void correct(double measurement, double variance) {
+            double s = p00 + variance;
+            double k0 = p00 / s;
+            double k1 = p01 / s;
+            double innovation = measurement - position;
+
+            position += k0 * innovation;
+            velocity += k1 * innovation;
+
+            p11 -= k1 * p01;
+            p01 -= k0 * p01;
+            p00 -= k0 * p00;
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+package net.astigan.impetus.location;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers location fixes from the LocationService to listeners in the UI, in place of Intent
+ * broadcasts.
+ *
+ * Publishing writes the fix into the next slot of a preallocated ring of records and posts a single
+ * dispatch to the bus's looper if one isn't already pending, so a burst of fixes arriving before the
+ * looper gets round to them is coalesced into one callback with the latest. Neither publishing nor
+ * dispatching allocates anything.
+ *
+ * Fixes may be published from any one thread. Listeners are registered, unregistered and called on
+ * the bus's looper, which for the shared instance is the main thread.
+ */
+public class LocationEventBus {
+
+    public interface Listener {
+
+        /**
+         * Called with the latest fix. The record is reused for the next dispatch, so copy out any
+         * values that need to be kept.
+         */
+        void onLocationUpdate(Fix fix);
+    }
+
+    private static final int RING_SIZE = 8; // power of two
+    private static final int RING_MASK = RING_SIZE - 1;
+
+    private static LocationEventBus instance;
+
+    private final Handler handler;
+    private final Fix[] ring = new Fix[RING_SIZE];
+    private final AtomicBoolean dispatchPending = new AtomicBoolean(false);
+    private volatile long sequence = -1; // of the last published fix
+
+    // only touched on the bus's looper
+    private final ArrayList<Listener> listeners = new ArrayList<Listener>();
+    private final Fix current = new Fix();
+    private long deliveredSequence = -1;
+    private long dispatchCount = 0;
+
+    public static synchronized LocationEventBus getInstance() {
+        if (instance == null) {
+            instance = new LocationEventBus(Looper.getMainLooper());
+        }
+        return instance;
+    }
+
+    /**
+     * @param looper the looper listeners are called on
+     */
+    public LocationEventBus(Looper looper) {
+        handler = new Handler(looper);
+
+        for (int i=0; i<RING_SIZE; i++) {
+            ring[i] = new Fix();
+        }
+    }
+
+    /**
+     * Publishes a fix to all listeners
+     *
+     * @param accuracy the accuracy in metres, or NaN if unknown
+     * @param speed the speed in m/s, or NaN if unknown
+     */
+    public void publish(double lat, double lng, long timeMs, float accuracy, float speed) {
+        long next = sequence + 1;
+        ring[(int) next & RING_MASK].set(lat, lng, timeMs, accuracy, speed, next);
+        sequence = next;
+
+        if (dispatchPending.compareAndSet(false, true)) {
+            handler.post(dispatcher);
+        }
+    }
+
+    /**
+     * Registers a listener, which is immediately given the latest fix if one has been delivered
+     */
+    public void register(Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+
+            if (deliveredSequence >= 0) {
+                listener.onLocationUpdate(current);
+            }
+        }
+    }
+
+    public void unregister(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the number of fixes published since the bus was created
+     */
+    public long getPublishedCount() {
+        return sequence + 1;
+    }
+
+    /**
+     * @return the number of dispatches made to listeners, which is less than the number of fixes
+     * published when fixes have been coalesced
+     */
+    public long getDispatchCount() {
+        return dispatchCount;
+    }
+
+    private final Runnable dispatcher = new Runnable() {
+        @Override
+        public void run() {
+            dispatchPending.set(false);
+
+            if (!copyLatest()) {
+                return;
+            }
+            dispatchCount++;
+
+            for (int i=0; i<listeners.size(); i++) {
+                listeners.get(i).onLocationUpdate(current);
+            }
+        }
+    };
+
+    /**
+     * Copies the latest published fix out of the ring. If the publisher lapped the ring while the
+     * slot was being read, it may have been overwritten, so the copy is retried.
+     *
+     * @return true if the latest fix is newer than the one last delivered
+     */
+    private boolean copyLatest() {
+        while (true) {
+            long latest = sequence;
+
+            if (latest == deliveredSequence) {
+                return false;
+            }
+            current.copyFrom(ring[(int) latest & RING_MASK]);
+
+            if (sequence - latest < RING_MASK) {
+                deliveredSequence = latest;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * A mutable record of a single fix
+     */
+    public static class Fix {
+
+        private double latitude;
+        private double longitude;
+        private long timeMs;
+        private float accuracy;
+        private float speed;
+        private long sequence = -1;
+
+        void set(double latitude, double longitude, long timeMs, float accuracy, float speed, long sequence) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timeMs = timeMs;
+            this.accuracy = accuracy;
+            this.speed = speed;
+            this.sequence = sequence;
+        }
+
+        void copyFrom(Fix other) {
+            set(other.latitude, other.longitude, other.timeMs, other.accuracy, other.speed, other.sequence);
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public long getTime() {
+            return timeMs;
+        }
+
+        /**
+         * @return the accuracy in metres, or NaN if unknown
+         */
+        public float getAccuracy() {
+            return accuracy;
+        }
+
+        /**
+         * @return the speed in m/s, or NaN if unknown
+         */
+        public float getSpeed() {
+            return speed;
+        }
+
+        /**
+         * @return the position of the fix in the order it was published
+         */
+        public long getSequence() {
+            return sequence;
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package net.astigan.impetus.location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs each fix through an ordered chain of stages, e.g. ingest, filter, smooth, persist, stats and
+ * publish. A stage can drop a fix, in which case the stages after it don't see it.
+ *
+ * The time spent in each stage is recorded, so a slow stage shows up in the logs. The pipeline is
+ * confined to a single thread; the counters may be read from others, but can be slightly stale.
+ */
+public class LocationPipeline {
+
+    private final List<PipelineStage> stages = new ArrayList<PipelineStage>();
+    private long[] counts = new long[0];
+    private long[] drops = new long[0];
+    private long[] totalNanos = new long[0];
+    private long[] maxNanos = new long[0];
+
+    public void addStage(PipelineStage stage) {
+        stages.add(stage);
+
+        int size = stages.size();
+        counts = Arrays.copyOf(counts, size);
+        drops = Arrays.copyOf(drops, size);
+        totalNanos = Arrays.copyOf(totalNanos, size);
+        maxNanos = Arrays.copyOf(maxNanos, size);
+    }
+
+    /**
+     * @return the index of the stage that dropped the sample, or -1 if it passed through them all
+     */
+    public int process(LocationSample sample) {
+        for (int i=0; i < stages.size(); i++) {
+            long start = System.nanoTime();
+            boolean passed = stages.get(i).process(sample);
+            long elapsed = System.nanoTime() - start;
+
+            counts[i]++;
+            totalNanos[i] += elapsed;
+            if (elapsed > maxNanos[i]) {
+                maxNanos[i] = elapsed;
+            }
+
+            if (!passed) {
+                drops[i]++;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    public String getStageName(int stage) {
+        return stages.get(stage).getName();
+    }
+
+    /**
+     * @return the number of fixes the stage has processed
+     */
+    public long getProcessedCount(int stage) {
+        return counts[stage];
+    }
+
+    /**
+     * @return the number of fixes the stage has dropped
+     */
+    public long getDroppedCount(int stage) {
+        return drops[stage];
+    }
+
+    public long getMeanLatencyNanos(int stage) {
+        return (counts[stage] == 0) ? 0 : totalNanos[stage] / counts[stage];
+    }
+
+    public long getMaxLatencyNanos(int stage) {
+        return maxNanos[stage];
+    }
+
+    /**
+     * @return a one line summary of each stage's counts and latency, for logging
+     */
+    public String describeLatencies() {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i=0; i < stages.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(getStageName(i)).append(": ").append(counts[i]).append(" fixes");
+
+            if (drops[i] > 0) {
+                sb.append(" (").append(drops[i]).append(" dropped)");
+            }
+            sb.append(" mean ").append(getMeanLatencyNanos(i) / 1000).append("us max ")
+                    .append(maxNanos[i] / 1000).append("us");
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,102 @@
+package net.astigan.impetus.location;
+
+import android.location.Location;
+
+/**
+ * A fix on its way through the LocationPipeline. One sample is reused for every fix, so the
+ * pipeline doesn't allocate as fixes arrive.
+ *
+ * The raw position is filled in from the Location on ingest. The smoothed position starts as a copy
+ * of it, and is replaced if a stage smooths the fix.
+ */
+public class LocationSample {
+
+    private Location location;
+
+    private double latitude;
+    private double longitude;
+    private long timeMs;
+    private float accuracy; // m, NaN when missing
+    private float speed; // m/s, NaN when missing
+
+    private double smoothedLatitude;
+    private double smoothedLongitude;
+    private float smoothedSpeed;
+    private boolean stored;
+
+    /**
+     * Starts the sample for a new fix. Its position isn't read until ingest.
+     */
+    public void setLocation(Location location) {
+        this.location = location;
+    }
+
+    /**
+     * Fills in the raw position from the location, clearing everything derived from the previous fix
+     */
+    public void readLocation() {
+        latitude = location.getLatitude();
+        longitude = location.getLongitude();
+        timeMs = location.getTime();
+        accuracy = (location.hasAccuracy()) ? location.getAccuracy() : Float.NaN;
+        speed = (location.hasSpeed()) ? location.getSpeed() : Float.NaN;
+
+        smoothedLatitude = latitude;
+        smoothedLongitude = longitude;
+        smoothedSpeed = speed;
+        stored = false;
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public long getTime() {
+        return timeMs;
+    }
+
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public void setSmoothed(double lat, double lng, float speed) {
+        smoothedLatitude = lat;
+        smoothedLongitude = lng;
+        smoothedSpeed = speed;
+    }
+
+    public double getSmoothedLatitude() {
+        return smoothedLatitude;
+    }
+
+    public double getSmoothedLongitude() {
+        return smoothedLongitude;
+    }
+
+    public float getSmoothedSpeed() {
+        return smoothedSpeed;
+    }
+
+    /**
+     * Marks the smoothed position as one that should be stored on the journey
+     */
+    public void setStored(boolean stored) {
+        this.stored = stored;
+    }
+
+    public boolean isStored() {
+        return stored;
+    }
+}
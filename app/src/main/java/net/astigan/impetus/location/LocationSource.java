@@ -0,0 +1,26 @@
+package net.astigan.impetus.location;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Looper;
+
+/**
+ * Where the LocationService gets its fixes from: the GPS, or a recorded track being replayed.
+ */
+public interface LocationSource {
+
+    /**
+     * Registers for updates delivered on the given looper, replacing any existing registration
+     *
+     * @param minTime the minimum time between updates in ms
+     * @param minDistance the minimum distance between updates in metres
+     */
+    void requestUpdates(long minTime, float minDistance, LocationListener listener, Looper looper);
+
+    void removeUpdates(LocationListener listener);
+
+    /**
+     * @return the most recent fix, or null if there isn't one
+     */
+    Location getLastKnownLocation();
+}
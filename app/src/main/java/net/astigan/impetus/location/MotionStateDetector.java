@@ -0,0 +1,231 @@
+package net.astigan.impetus.location;
+
+import net.astigan.impetus.utils.GeoUtils;
+
+/**
+ * Works out whether the user is moving, slowing down or stationary, so that the GPS can drop to a
+ * low power mode while they're stopped, e.g. at a cafe mid-journey, and resume when they move off.
+ *
+ * The decision uses the speed reported with each fix, and the spread of the positions over the
+ * last minute, which stays within the GPS noise when standing still. Having slowed, the user must
+ * stay still for a minute before they're considered stationary. Once stationary, a fix far from
+ * where they stopped, a walking speed, or a burst of movement from the accelerometer wakes them up.
+ */
+public class MotionStateDetector {
+
+    public static final int MOVING = 0;
+    public static final int SLOWING = 1;
+    public static final int STATIONARY = 2;
+
+    private static final float STILL_SPEED = 0.5f; // m/s
+    private static final float MOVING_SPEED = 1.0f; // m/s, above walking slowly around the same spot
+    private static final long WINDOW_TIME = 60 * 1000; // 60s of positions for the spread
+    private static final long MIN_WINDOW_SPAN = 45 * 1000; // 45s, less and a slow walk looks like standing
+    private static final int WINDOW_CAPACITY = 64; // a minute of fixes every second
+    private static final int MIN_WINDOW_FIXES = 3;
+    private static final long STATIONARY_TIME = 60 * 1000; // 60s
+    private static final double MIN_SPREAD = 10; // m
+    private static final double MIN_WAKE_DISTANCE = 20; // m
+    private static final double SPREAD_ACCURACIES = 1.5;
+    private static final double WAKE_ACCURACIES = 2.5;
+
+    private static final double WAKE_ACCELERATION = 1.5; // m/s^2 away from gravity
+    private static final int WAKE_SAMPLES = 4;
+    private static final long WAKE_WINDOW = 2000 * 1000000L; // 2s in ns
+    private static final double GRAVITY = 9.80665; // m/s^2
+
+    private final double[] windowLats = new double[WINDOW_CAPACITY];
+    private final double[] windowLngs = new double[WINDOW_CAPACITY];
+    private final long[] windowTimes = new long[WINDOW_CAPACITY];
+    private final float[] windowAccuracies = new float[WINDOW_CAPACITY];
+    private int windowStart = 0;
+    private int windowSize = 0;
+
+    private int state = MOVING;
+    private long slowingTimeMs;
+    private double anchorLat;
+    private double anchorLng;
+    private double anchorAccuracy;
+
+    private int shakeCount = 0;
+    private long shakeStartNs;
+
+    /**
+     * Updates the state with a new fix
+     *
+     * @param speed the speed in m/s, or NaN if unknown
+     * @param accuracy the accuracy in metres, or NaN if unknown
+     * @return true if the state changed
+     */
+    public boolean update(double lat, double lng, float speed, float accuracy, long timeMs) {
+        addToWindow(lat, lng, accuracy, timeMs);
+
+        int previousState = state;
+        boolean hasSpeed = !Float.isNaN(speed);
+        boolean stillSpeed = !hasSpeed || speed < STILL_SPEED;
+        boolean movingSpeed = hasSpeed && speed >= MOVING_SPEED;
+
+        switch (state) {
+            case MOVING:
+                if (stillSpeed && (hasSpeed || isSpreadSmall())) {
+                    state = SLOWING;
+                    slowingTimeMs = timeMs;
+                }
+                break;
+            case SLOWING:
+                if (movingSpeed || (!hasSpeed && !isSpreadSmall())) {
+                    state = MOVING;
+                } else if (stillSpeed && timeMs - slowingTimeMs >= STATIONARY_TIME && isSpreadSmall()) {
+                    state = STATIONARY;
+                    setAnchor();
+                }
+                break;
+            case STATIONARY:
+                double limit = Math.max(MIN_WAKE_DISTANCE, anchorAccuracy * WAKE_ACCURACIES);
+                if (movingSpeed || GeoUtils.haversineDistance(anchorLat, anchorLng, lat, lng) > limit) {
+                    wake(lat, lng, accuracy, timeMs);
+                }
+                break;
+        }
+        return state != previousState;
+    }
+
+    /**
+     * Updates the state with an accelerometer reading, which can wake a stationary user before the
+     * next fix arrives. Readings are ignored in the other states.
+     *
+     * @param timeNs the time of the reading in ns, from any monotonic clock
+     * @return true if the user was stationary and is now moving
+     */
+    public boolean onAcceleration(float x, float y, float z, long timeNs) {
+        if (state != STATIONARY) {
+            return false;
+        }
+
+        double deviation = Math.abs(Math.sqrt(x * x + y * y + z * z) - GRAVITY);
+        if (deviation < WAKE_ACCELERATION) {
+            return false;
+        }
+
+        if (shakeCount == 0 || timeNs - shakeStartNs > WAKE_WINDOW) {
+            shakeCount = 0;
+            shakeStartNs = timeNs;
+        }
+        if (++shakeCount < WAKE_SAMPLES) {
+            return false;
+        }
+
+        state = MOVING;
+        shakeCount = 0;
+        windowSize = 0; // the old positions are from standing still
+        return true;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public boolean isStationary() {
+        return state == STATIONARY;
+    }
+
+    public void reset() {
+        state = MOVING;
+        windowSize = 0;
+        shakeCount = 0;
+    }
+
+    private void wake(double lat, double lng, float accuracy, long timeMs) {
+        state = MOVING;
+        shakeCount = 0;
+        windowSize = 0;
+        addToWindow(lat, lng, accuracy, timeMs);
+    }
+
+    private void addToWindow(double lat, double lng, float accuracy, long timeMs) {
+        while (windowSize > 0 && timeMs - windowTimes[windowStart] > WINDOW_TIME) {
+            windowStart = (windowStart + 1) % WINDOW_CAPACITY;
+            windowSize--;
+        }
+        if (windowSize == WINDOW_CAPACITY) {
+            windowStart = (windowStart + 1) % WINDOW_CAPACITY;
+            windowSize--;
+        }
+
+        int index = (windowStart + windowSize) % WINDOW_CAPACITY;
+        windowLats[index] = lat;
+        windowLngs[index] = lng;
+        windowTimes[index] = timeMs;
+        windowAccuracies[index] = accuracy;
+        windowSize++;
+    }
+
+    /**
+     * @return true if the window holds enough positions over a long enough time, and their RMS
+     * distance from their centroid is within what the GPS noise alone would give
+     */
+    private boolean isSpreadSmall() {
+        if (windowSize < MIN_WINDOW_FIXES) {
+            return false;
+        }
+        int last = (windowStart + windowSize - 1) % WINDOW_CAPACITY;
+        if (windowTimes[last] - windowTimes[windowStart] < MIN_WINDOW_SPAN) {
+            return false;
+        }
+
+        // positions in metres from the first one, which is plenty accurate over a minute's travel
+        double originLat = windowLats[windowStart];
+        double originLng = windowLngs[windowStart];
+        double metresPerDegree = Math.toRadians(1) * GeoUtils.EARTH_MEAN_RADIUS;
+        double lngScale = metresPerDegree * Math.cos(Math.toRadians(originLat));
+
+        double sumX = 0, sumY = 0, sumSquares = 0;
+        for (int i=0; i < windowSize; i++) {
+            int index = (windowStart + i) % WINDOW_CAPACITY;
+            double x = (windowLngs[index] - originLng) * lngScale;
+            double y = (windowLats[index] - originLat) * metresPerDegree;
+            sumX += x;
+            sumY += y;
+            sumSquares += x * x + y * y;
+        }
+
+        double meanX = sumX / windowSize;
+        double meanY = sumY / windowSize;
+        double variance = sumSquares / windowSize - (meanX * meanX + meanY * meanY);
+        double limit = Math.max(MIN_SPREAD, getMeanAccuracy() * SPREAD_ACCURACIES);
+
+        return variance < limit * limit;
+    }
+
+    /**
+     * Fixes the point the user stopped at as the centroid of the window
+     */
+    private void setAnchor() {
+        double sumLat = 0, sumLng = 0;
+        for (int i=0; i < windowSize; i++) {
+            int index = (windowStart + i) % WINDOW_CAPACITY;
+            sumLat += windowLats[index];
+            sumLng += windowLngs[index];
+        }
+        anchorLat = sumLat / windowSize;
+        anchorLng = sumLng / windowSize;
+        anchorAccuracy = getMeanAccuracy();
+    }
+
+    /**
+     * @return the mean of the known accuracies in the window, or 0 if there are none
+     */
+    private double getMeanAccuracy() {
+        double sum = 0;
+        int count = 0;
+        for (int i=0; i < windowSize; i++) {
+            float accuracy = windowAccuracies[(windowStart + i) % WINDOW_CAPACITY];
+            if (!Float.isNaN(accuracy)) {
+                sum += accuracy;
+                count++;
+            }
+        }
+        return (count > 0) ? sum / count : 0;
+    }
+
+}
@@ -0,0 +1,54 @@
+package net.astigan.impetus.location;
+
+import net.astigan.impetus.utils.GeoUtils;
+
+/**
+ * Only lets a position through once it has moved a minimum distance from the last one that was
+ * let through, so standing still or creeping along doesn't store a stream of near-identical points.
+ * The distance grows with the fix's accuracy, as a poor fix can't show a small movement anyway.
+ */
+public class MovementGate {
+
+    private final double minDistance; // m
+
+    private boolean hasLast = false;
+    private double lastLat;
+    private double lastLng;
+
+    /**
+     * @param minDistance the distance in metres a position must move to be accepted
+     */
+    public MovementGate(double minDistance) {
+        this.minDistance = minDistance;
+    }
+
+    /**
+     * @param accuracy the accuracy of the fix in metres, or NaN if unknown
+     * @return true if the position should be stored, in which case it becomes the new reference
+     */
+    public boolean accept(double lat, double lng, float accuracy) {
+        double threshold = (accuracy > minDistance) ? accuracy : minDistance; // false for NaN
+
+        if (hasLast && GeoUtils.haversineDistance(lastLat, lastLng, lat, lng) < threshold) {
+            return false;
+        }
+        hasLast = true;
+        lastLat = lat;
+        lastLng = lng;
+        return true;
+    }
+
+    /**
+     * Sets the reference position, e.g. to the last point of a recovered journey
+     */
+    public void setLast(double lat, double lng) {
+        hasLast = true;
+        lastLat = lat;
+        lastLng = lng;
+    }
+
+    public void reset() {
+        hasLast = false;
+    }
+
+}
@@ -0,0 +1,18 @@
+package net.astigan.impetus.location;
+
+/**
+ * A step in the LocationPipeline. Stages are run in order on the pipeline's thread, each one reading
+ * and updating the same sample.
+ */
+public interface PipelineStage {
+
+    /**
+     * @return a short name for the stage, used when logging its latency
+     */
+    String getName();
+
+    /**
+     * @return false to drop the sample, so that later stages don't see it
+     */
+    boolean process(LocationSample sample);
+}
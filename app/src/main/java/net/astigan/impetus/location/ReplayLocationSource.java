@@ -0,0 +1,186 @@
+package net.astigan.impetus.location;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import net.astigan.impetus.entities.TrackBuffer;
+import net.astigan.impetus.io.GpxReader;
+import net.astigan.impetus.io.JourneyCodec;
+import net.astigan.impetus.utils.GeoUtils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Replays a recorded track as if it were coming from the GPS, sped up by a constant factor, so that
+ * hours of journeys can be pushed through the location pipeline in seconds.
+ *
+ * Fixes are delivered at their recorded times divided by the speed up, and filtered by the minimum
+ * time and distance in track time, the same as the LocationManager would. Their times are shifted
+ * so that the replay appears to start now. Re-registering for updates, e.g. when the sampling tier
+ * changes, carries on from the same point in the track.
+ */
+public class ReplayLocationSource implements LocationSource {
+
+    public static final float MIN_SPEED_UP = 1;
+    public static final float MAX_SPEED_UP = 1000;
+
+    private final TrackBuffer track;
+    private final float speedUp;
+    private final long timeShift; // ms added to track times
+
+    private Handler handler;
+    private LocationListener listener;
+    private long minTime;
+    private float minDistance;
+
+    private boolean started = false;
+    private long startUptime;
+    private int next = 0;
+    private int deliveredCount = 0;
+    private Location lastDelivered;
+
+    /**
+     * Loads a track to replay from a GPX file, or a binary track written by JourneyCodec
+     */
+    public static ReplayLocationSource load(File file, float speedUp) throws IOException {
+        TrackBuffer track = new TrackBuffer();
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+
+        try {
+            if (file.getName().toLowerCase(Locale.US).endsWith(".gpx")) {
+                GpxReader.read(in, track);
+            } else {
+                JourneyCodec.decode(in, track);
+            }
+        } finally {
+            in.close();
+        }
+
+        if (track.isEmpty()) {
+            throw new IOException("No fixes to replay in " + file);
+        }
+        return new ReplayLocationSource(track, speedUp);
+    }
+
+    /**
+     * @param speedUp how many times faster than real time to replay, from 1 to 1000
+     */
+    public ReplayLocationSource(TrackBuffer track, float speedUp) {
+        if (!(speedUp >= MIN_SPEED_UP && speedUp <= MAX_SPEED_UP)) {
+            throw new IllegalArgumentException("Replay speed up must be from " + MIN_SPEED_UP + " to " +
+                    MAX_SPEED_UP + ": " + speedUp);
+        }
+        this.track = track;
+        this.speedUp = speedUp;
+        this.timeShift = (track.isEmpty()) ? 0 : System.currentTimeMillis() - track.getTime(0);
+    }
+
+    @Override
+    public void requestUpdates(long minTime, float minDistance, LocationListener listener, Looper looper) {
+        if (handler == null || handler.getLooper() != looper) {
+            handler = new Handler(looper);
+        }
+        handler.removeCallbacks(player);
+
+        this.listener = listener;
+        this.minTime = minTime;
+        this.minDistance = minDistance;
+
+        if (!started) {
+            started = true;
+            startUptime = SystemClock.uptimeMillis();
+        }
+        scheduleNext();
+    }
+
+    @Override
+    public void removeUpdates(LocationListener listener) {
+        if (listener == this.listener) {
+            if (handler != null) {
+                handler.removeCallbacks(player);
+            }
+            this.listener = null;
+        }
+    }
+
+    @Override
+    public Location getLastKnownLocation() {
+        return lastDelivered;
+    }
+
+    /**
+     * @return true once every fix in the track has been replayed
+     */
+    public boolean isFinished() {
+        return next >= track.size();
+    }
+
+    /**
+     * @return the number of fixes delivered, after filtering by minimum time and distance
+     */
+    public int getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    private void scheduleNext() {
+        if (next < track.size()) {
+            long offset = (long) ((track.getTime(next) - track.getTime(0)) / speedUp);
+            handler.postAtTime(player, startUptime + offset);
+        }
+    }
+
+    private final Runnable player = new Runnable() {
+        @Override
+        public void run() {
+            int index = next++;
+            LocationListener target = listener;
+
+            // scheduled before delivering, as the listener may re-register and schedule it again
+            scheduleNext();
+
+            if (target != null && shouldDeliver(index)) {
+                lastDelivered = buildLocation(index);
+                deliveredCount++;
+                target.onLocationChanged(lastDelivered);
+            }
+        }
+    };
+
+    private boolean shouldDeliver(int index) {
+        if (lastDelivered == null) {
+            return true;
+        }
+        long elapsed = track.getTime(index) + timeShift - lastDelivered.getTime();
+        double moved = GeoUtils.haversineDistance(lastDelivered.getLatitude(), lastDelivered.getLongitude(),
+                track.getLatitude(index), track.getLongitude(index));
+
+        return elapsed >= minTime && moved >= minDistance;
+    }
+
+    private Location buildLocation(int index) {
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        location.setLatitude(track.getLatitude(index));
+        location.setLongitude(track.getLongitude(index));
+        location.setTime(track.getTime(index) + timeShift);
+
+        float accuracy = track.getAccuracy(index);
+        if (!Float.isNaN(accuracy)) {
+            location.setAccuracy(accuracy);
+        }
+        float speed = track.getSpeed(index);
+        if (!Float.isNaN(speed)) {
+            location.setSpeed(speed);
+        }
+        return location;
+    }
+
+}
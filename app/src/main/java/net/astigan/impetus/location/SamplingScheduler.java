@@ -0,0 +1,141 @@
+package net.astigan.impetus.location;
+
+import net.astigan.impetus.utils.GeoUtils;
+
+/**
+ * Chooses how often to ask for GPS updates during a journey. Updates are dense near the destination
+ * and around turns, where the route matters most, and sparse when the user is walking in a straight
+ * line far from the destination or standing still, so the GPS radio can sleep between fixes.
+ *
+ * The interval is picked from a fixed set of tiers, so the caller only needs to re-register for
+ * updates when the tier changes rather than on every fix.
+ */
+public class SamplingScheduler {
+
+    public static final int TIER_ARRIVING = 0;
+    public static final int TIER_TURNING = 1;
+    public static final int TIER_NEAR = 2;
+    public static final int TIER_CRUISING = 3;
+    public static final int TIER_FAR = 4;
+    public static final int TIER_STATIONARY = 5;
+
+    private static final int DEFAULT_TIER = TIER_NEAR; // until the first fix arrives
+    private static final long[] TIER_TIMES = { 2000, 3000, 5000, 10000, 15000, 30000 }; // ms
+    private static final float[] TIER_DISTANCES = { 5, 10, 15, 30, 50, 20 }; // m
+
+    private static final double ARRIVING_DISTANCE = 150; // m
+    private static final double NEAR_DISTANCE = 500; // m
+    private static final double FAR_DISTANCE = 2000; // m
+    private static final float STATIONARY_SPEED = 0.3f; // m/s
+    private static final double MIN_HEADING_DISTANCE = 5; // m, less than this and the heading is noise
+    private static final double TURN_ANGLE = 30; // degrees
+    private static final long TURN_HOLD_TIME = 20 * 1000; // 20s of dense sampling after a turn
+    private static final long NO_TURN = Long.MIN_VALUE;
+
+    private boolean hasDestination = false;
+    private double destinationLat;
+    private double destinationLng;
+
+    private boolean hasLast = false;
+    private double lastLat;
+    private double lastLng;
+    private double lastHeading = Double.NaN;
+    private long turnTimeMs = NO_TURN;
+
+    private int tier = DEFAULT_TIER;
+
+    public void setDestination(double lat, double lng) {
+        hasDestination = true;
+        destinationLat = lat;
+        destinationLng = lng;
+    }
+
+    public void reset() {
+        hasDestination = false;
+        hasLast = false;
+        lastHeading = Double.NaN;
+        turnTimeMs = NO_TURN;
+        tier = DEFAULT_TIER;
+    }
+
+    /**
+     * Updates the tier with a new fix
+     *
+     * @param speed the speed in m/s, or NaN if unknown
+     * @return true if the tier changed, and updates should be re-registered
+     */
+    public boolean update(double lat, double lng, float speed, long timeMs) {
+        updateHeading(lat, lng, timeMs);
+
+        int previousTier = tier;
+        double remaining = (hasDestination) ?
+                GeoUtils.haversineDistance(lat, lng, destinationLat, destinationLng) : Double.MAX_VALUE;
+
+        if (remaining < ARRIVING_DISTANCE) {
+            tier = TIER_ARRIVING;
+        } else if (turnTimeMs != NO_TURN && timeMs - turnTimeMs < TURN_HOLD_TIME) {
+            tier = TIER_TURNING;
+        } else if (speed < STATIONARY_SPEED) { // false for NaN
+            tier = TIER_STATIONARY;
+        } else if (remaining < NEAR_DISTANCE) {
+            tier = TIER_NEAR;
+        } else if (remaining < FAR_DISTANCE) {
+            tier = TIER_CRUISING;
+        } else {
+            tier = TIER_FAR;
+        }
+        return tier != previousTier;
+    }
+
+    public int getTier() {
+        return tier;
+    }
+
+    /**
+     * @return the minimum time between updates in ms
+     */
+    public long getMinTime() {
+        return TIER_TIMES[tier];
+    }
+
+    /**
+     * @return the minimum distance between updates in metres
+     */
+    public float getMinDistance() {
+        return TIER_DISTANCES[tier];
+    }
+
+    /**
+     * Tracks the direction of travel between fixes that are far enough apart to give a reliable
+     * heading, and notes the time of any sharp change in it
+     */
+    private void updateHeading(double lat, double lng, long timeMs) {
+        if (!hasLast) {
+            hasLast = true;
+            lastLat = lat;
+            lastLng = lng;
+            return;
+        }
+
+        if (GeoUtils.haversineDistance(lastLat, lastLng, lat, lng) < MIN_HEADING_DISTANCE) {
+            return;
+        }
+
+        double heading = GeoUtils.initialBearing(lastLat, lastLng, lat, lng);
+
+        if (!Double.isNaN(lastHeading)) {
+            double change = Math.abs(heading - lastHeading) % 360.0;
+            if (change > 180.0) {
+                change = 360.0 - change;
+            }
+            if (change > TURN_ANGLE) {
+                turnTimeMs = timeMs;
+            }
+        }
+
+        lastHeading = heading;
+        lastLat = lat;
+        lastLng = lng;
+    }
+
+}
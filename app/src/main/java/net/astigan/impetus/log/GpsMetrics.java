@@ -0,0 +1,168 @@
+package net.astigan.impetus.log;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how well the GPS is performing in the field: the time to first fix, the time between
+ * fixes, their accuracy, how many satellites are used, and counts of GPS status events. The
+ * snapshot can be logged or written to a file, so sampling intervals can be tuned from real data.
+ *
+ * Recording is lock-free and allocates nothing. Times come from the caller, on the elapsed realtime
+ * clock. The first fix and inter-arrival times are worked out from state that is only touched by
+ * the thread recording fixes and GPS events, but a snapshot can be taken from any thread.
+ */
+public class GpsMetrics {
+
+    public static final int FIXES = 0;
+    public static final int SATELLITE_EVENTS = 1;
+    public static final int FIRST_FIX_EVENTS = 2;
+    public static final int STARTED_EVENTS = 3;
+    public static final int STOPPED_EVENTS = 4;
+    public static final int FIXES_GAINED = 5;
+    public static final int FIXES_LOST = 6;
+    private static final String[] COUNTER_NAMES = { "fixes", "satellite status events", "first fix events",
+            "started events", "stopped events", "fixes gained", "fixes lost" };
+
+    private static final long MAX_TIME = 60 * 60 * 1000; // 1 hour
+    private static final long MAX_ACCURACY = 10000 * 10; // 10km in dm
+    private static final long MAX_SATELLITES = 64;
+    private static final long NO_TIME = -1;
+
+    private final long createdMs;
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTER_NAMES.length);
+    private final LogHistogram timeToFirstFix = new LogHistogram(MAX_TIME); // ms
+    private final LogHistogram fixIntervals = new LogHistogram(MAX_TIME); // ms
+    private final LogHistogram accuracies = new LogHistogram(MAX_ACCURACY); // dm
+    private final LogHistogram satellitesUsed = new LogHistogram(MAX_SATELLITES);
+
+    private long sessionStartMs = NO_TIME;
+    private long lastFixMs = NO_TIME;
+
+    /**
+     * @param nowMs the current elapsed realtime, from which event rates are worked out
+     */
+    public GpsMetrics(long nowMs) {
+        this.createdMs = nowMs;
+    }
+
+    /**
+     * Starts timing to the first fix, e.g. when updates are first requested or the GPS starts.
+     * Does nothing if a session is already waiting for its first fix.
+     */
+    public void startSession(long nowMs) {
+        if (sessionStartMs == NO_TIME) {
+            sessionStartMs = nowMs;
+        }
+    }
+
+    /**
+     * Ends the session when the GPS stops, so the gap to the next fix isn't counted as an interval
+     */
+    public void stopSession() {
+        sessionStartMs = NO_TIME;
+        lastFixMs = NO_TIME;
+    }
+
+    /**
+     * @param accuracy the accuracy in metres, or NaN if unknown
+     */
+    public void recordFix(long nowMs, float accuracy) {
+        counters.incrementAndGet(FIXES);
+
+        if (sessionStartMs != NO_TIME) {
+            timeToFirstFix.record(nowMs - sessionStartMs);
+            sessionStartMs = NO_TIME;
+        }
+        if (lastFixMs != NO_TIME) {
+            fixIntervals.record(nowMs - lastFixMs);
+        }
+        lastFixMs = nowMs;
+
+        if (!Float.isNaN(accuracy)) {
+            accuracies.record(Math.round(accuracy * 10));
+        }
+    }
+
+    public void recordSatelliteStatus(int usedInFix) {
+        counters.incrementAndGet(SATELLITE_EVENTS);
+        satellitesUsed.record(usedInFix);
+    }
+
+    /**
+     * Counts an event with no other data, e.g. STARTED_EVENTS or FIXES_LOST
+     */
+    public void count(int counter) {
+        counters.incrementAndGet(counter);
+    }
+
+    public long getCount(int counter) {
+        return counters.get(counter);
+    }
+
+    public LogHistogram getTimeToFirstFix() {
+        return timeToFirstFix;
+    }
+
+    public LogHistogram getFixIntervals() {
+        return fixIntervals;
+    }
+
+    public LogHistogram getAccuracies() {
+        return accuracies;
+    }
+
+    public LogHistogram getSatellitesUsed() {
+        return satellitesUsed;
+    }
+
+    /**
+     * @return a multi-line snapshot of every recorder, with the event counts as rates per minute
+     */
+    public String describe(long nowMs) {
+        double minutes = Math.max(nowMs - createdMs, 1) / 60000.0;
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("GPS metrics over ").append(Math.round(minutes * 10) / 10.0).append(" minutes\n");
+        sb.append("time to first fix: ").append(timeToFirstFix.describe("ms")).append('\n');
+        sb.append("fix interval: ").append(fixIntervals.describe("ms")).append('\n');
+        sb.append("accuracy: ").append(accuracies.describe("dm")).append('\n');
+        sb.append("satellites used: ").append(satellitesUsed.describe("")).append('\n');
+
+        for (int i=0; i < COUNTER_NAMES.length; i++) {
+            long count = counters.get(i);
+            sb.append(COUNTER_NAMES[i]).append(": ").append(count)
+                    .append(" (").append(Math.round(count / minutes * 10) / 10.0).append("/min)\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Logs the snapshot to logcat, a line at a time
+     */
+    public void log(long nowMs) {
+        for (String line : describe(nowMs).split("\n")) {
+            Log.i(Logger.TAG, line);
+        }
+    }
+
+    /**
+     * Writes the snapshot to a file, replacing anything already there
+     */
+    public void dump(File file, long nowMs) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+        try {
+            writer.write(describe(nowMs));
+        } finally {
+            writer.close();
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package net.astigan.impetus.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values in logarithmic buckets, in the style of HdrHistogram:
+ * each power of two is split into 8 linear sub-buckets, so any value is counted to within 12.5%
+ * however large it is, with a few hundred buckets covering everything from 1 to Long.MAX_VALUE.
+ *
+ * Recording is lock-free and allocates nothing, so it can be called from any thread on every fix.
+ * Reads don't stop recording, so a snapshot taken while values are being recorded may be slightly
+ * inconsistent, e.g. the count may include a value whose bucket hasn't been incremented yet.
+ */
+public class LogHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // per power of two
+
+    private final long highestValue;
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalSum = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * @param highestValue the largest value to track, larger values are counted as this
+     */
+    public LogHistogram(long highestValue) {
+        this.highestValue = Math.max(highestValue, 1);
+        this.counts = new AtomicLongArray(getBucket(this.highestValue) + 1);
+    }
+
+    /**
+     * @param value the value to count, negative values are counted as 0
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, Math.min(value, highestValue));
+
+        counts.incrementAndGet(getBucket(clamped));
+        totalCount.incrementAndGet();
+        totalSum.addAndGet(clamped);
+
+        long max;
+        while (clamped > (max = maxValue.get())) {
+            if (maxValue.compareAndSet(max, clamped)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+        long count = totalCount.get();
+        return (count == 0) ? 0 : (double) totalSum.get() / count;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the highest value in the bucket holding the percentile, capped at the maximum
+     * recorded, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = 0;
+        for (int i=0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max((long) Math.ceil(count * Math.min(percentile, 100) / 100.0), 1);
+        long seen = 0;
+
+        for (int i=0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                long highest = (i + 1 < counts.length()) ? getLowestValue(i + 1) - 1 : highestValue;
+                return Math.min(highest, maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    /**
+     * @return the count, mean, median, 90th and 99th percentiles and maximum on one line
+     */
+    public String describe(String unit) {
+        if (getCount() == 0) {
+            return "no values";
+        }
+        return "n=" + getCount() + " mean=" + Math.round(getMean()) + unit +
+                " p50=" + getValueAtPercentile(50) + unit + " p90=" + getValueAtPercentile(90) + unit +
+                " p99=" + getValueAtPercentile(99) + unit + " max=" + getMax() + unit;
+    }
+
+    /**
+     * Values below the sub-bucket count have a bucket each. Above that, the bucket is found from the
+     * position of the highest set bit, and the next bits below it choose the sub-bucket.
+     */
+    private static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // at least SUB_BUCKET_BITS
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the lowest value counted in a bucket
+     */
+    private static long getLowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+}
@@ -2,11 +2,9 @@ package net.astigan.impetus.main;
 
 import android.app.ActionBar;
 import android.app.Activity;
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.res.Configuration;
 import android.location.LocationManager;
@@ -14,7 +12,6 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
-import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.widget.DrawerLayout;
 import android.util.Log;
 import android.view.Gravity;
@@ -29,6 +26,7 @@ import com.ikimuhendis.ldrawer.ActionBarDrawerToggle;
 import com.ikimuhendis.ldrawer.DrawerArrowDrawable;
 
 import net.astigan.impetus.R;
+import net.astigan.impetus.location.LocationEventBus;
 import net.astigan.impetus.log.Logger;
 import net.astigan.impetus.ui.dialogs.AboutDialogFragment;
 import net.astigan.impetus.ui.dialogs.LicenseDialogFragment;
@@ -79,15 +77,14 @@ public abstract class BaseDrawerLayoutActivity extends Activity {
         Intent intent = new Intent(this, LocationService.class);
         bindService(intent, impetusConnection, Context.BIND_AUTO_CREATE);
 
-        LocalBroadcastManager.getInstance(this).registerReceiver(locationReceiver,
-                new IntentFilter(LocationService.LOCATION_UPDATE));
+        LocationEventBus.getInstance().register(locationListener);
     }
 
     @Override
     protected void onPause() {
         super.onPause();
         unbindService(impetusConnection);
-        LocalBroadcastManager.getInstance(this).unregisterReceiver(locationReceiver);
+        LocationEventBus.getInstance().unregister(locationListener);
     }
 
     @Override
@@ -234,6 +231,7 @@ public abstract class BaseDrawerLayoutActivity extends Activity {
             LocationService.ImpetusBinder impetusBinder = (LocationService.ImpetusBinder) binder;
             locationService = impetusBinder.getService();
             Log.i(Logger.TAG, "Connected Impetus location service");
+            onLocationServiceConnected();
         }
 
         public void onServiceDisconnected(ComponentName className) {
@@ -242,18 +240,18 @@ public abstract class BaseDrawerLayoutActivity extends Activity {
         }
     };
 
-    private final BroadcastReceiver locationReceiver = new BroadcastReceiver() {
+    private final LocationEventBus.Listener locationListener = new LocationEventBus.Listener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            double lat = intent.getDoubleExtra(LocationService.LAT_KEY, -1);
-            double lng = intent.getDoubleExtra(LocationService.LNG_KEY, -1);
-
-            onLocationUpdate(lat, lng);
+        public void onLocationUpdate(LocationEventBus.Fix fix) {
+            BaseDrawerLayoutActivity.this.onLocationUpdate(fix.getLatitude(), fix.getLongitude());
         }
     };
 
     protected abstract void onLocationUpdate(double lat, double lng);
 
+    protected void onLocationServiceConnected() {
+    }
+
     private boolean isGpsEnabled(Context context) {
         LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
         return locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER);
@@ -3,42 +3,124 @@ package net.astigan.impetus.main;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.location.GpsSatellite;
 import android.location.GpsStatus;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Binder;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
 import android.os.SystemClock;
-import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 
+import com.crashlytics.android.Crashlytics;
+
 import net.astigan.impetus.entities.Journey;
+import net.astigan.impetus.io.JourneyLog;
+import net.astigan.impetus.location.ArrivalDetector;
+import net.astigan.impetus.location.FixGate;
+import net.astigan.impetus.location.GeofenceIndex;
+import net.astigan.impetus.location.GpsLocationSource;
+import net.astigan.impetus.location.KalmanFilter;
+import net.astigan.impetus.location.LocationEventBus;
+import net.astigan.impetus.location.LocationPipeline;
+import net.astigan.impetus.location.LocationSample;
+import net.astigan.impetus.location.LocationSource;
+import net.astigan.impetus.location.MotionStateDetector;
+import net.astigan.impetus.location.MovementGate;
+import net.astigan.impetus.location.PipelineStage;
+import net.astigan.impetus.location.ReplayLocationSource;
+import net.astigan.impetus.location.SamplingScheduler;
+import net.astigan.impetus.log.GpsMetrics;
 import net.astigan.impetus.log.Logger;
+import net.astigan.impetus.utils.GeoUtils;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Receives updates on the current location, and if a journey is active, adds this information to
  * it. Also receives updates for GPS status and determines whether the user has a GPS Fix or not.
+ *
+ * Location updates are delivered to a dedicated thread rather than the main looper, where each fix
+ * runs through a pipeline of stages: ingest, filter, smooth, persist, arrival, sampling and publish.
+ * The UI only hears about the result, through the LocationEventBus and the journey's fix stream, and
+ * notices arrival at the destination through the journey. Journey state is only changed on the
+ * pipeline thread, so starting and stopping a journey are posted to it.
+ *
+ * While the user is stationary, updates drop to a low power rate and the accelerometer is watched
+ * instead, so that moving off resumes full rate sampling without waiting for the next fix.
+ *
+ * Fixes normally come from the GPS, but a recorded track can be replayed through the pipeline
+ * instead for testing, by starting the service with a GPX or binary track file:
+ * adb shell am startservice -n net.astigan.impetus/.main.LocationService --es replay_file [path] --ef replay_speed 100
+ *
+ * GPS performance metrics are logged and written to a file when the service is destroyed, and can
+ * be dumped at any time with:
+ * adb shell am startservice -n net.astigan.impetus/.main.LocationService --ez dump_metrics true
  */
 public class LocationService extends Service {
 
-    public static final String LOCATION_UPDATE = "net.astigan.impetus.location.LOCATION_UPDATE";
-    public static final String LNG_KEY = "LONGITUDE";
-    public static final String LAT_KEY = "LATITUDE";
+    public static final String EXTRA_REPLAY_FILE = "replay_file";
+    public static final String EXTRA_REPLAY_SPEED = "replay_speed";
+    public static final String EXTRA_DUMP_METRICS = "dump_metrics";
 
-    private static final float MIN_DIST_INTERVAL = 20.0f; // 30m
-    private static final long MIN_TIME_INTERVAL = 5 * 1000; // 5s
+    public static final float MIN_DIST_INTERVAL = 20.0f; // 20m
+    public static final long MIN_TIME_INTERVAL = 5 * 1000; // 5s
+    public static final float MOVING_REQUEST_DISTANCE = 0.0f; // every fix, for the motion detector
     private static final long GPS_FIX_TIME = 15 * 1000; // 15s
+    private static final int MIN_FIX_SATELLITES = 3; // enough for a 2D fix
+    private static final double MIN_TRACK_DISTANCE = 5.0; // 5m between stored points
+    private static final double ARRIVAL_RADIUS = 25.0; // 25m from the destination
+    private static final double DEPARTURE_RADIUS = 40.0; // 40m, so jitter at the edge doesn't repeat the arrival
+    private static final long ARRIVAL_DWELL_TIME = 10 * 1000; // 10s
+    public static final long LOW_POWER_TIME_INTERVAL = 60 * 1000; // 60s
+    public static final float LOW_POWER_DIST_INTERVAL = 20.0f; // 20m
+    private static final long PIPELINE_STOP_TIME = 2 * 1000; // 2s
+    private static final String JOURNEY_LOG_FILE = "journey.log";
+    private static final String GPS_METRICS_FILE = "gps_metrics.txt";
 
     private final IBinder binder = new ImpetusBinder();
-    private boolean journeyActive = false;
-
-    private Journey journey;
-    private Location currentLocation;
-
-    private boolean isGpsFix = false;
-    private long lastLocationTimeMs = 0;
+    private volatile boolean journeyActive = false;
+
+    private volatile Journey journey;
+    private JourneyLog journeyLog;
+    private volatile Location currentLocation;
+    private final FixGate fixGate = new FixGate();
+    private final KalmanFilter kalmanFilter = new KalmanFilter();
+    private final MovementGate movementGate = new MovementGate(MIN_TRACK_DISTANCE);
+    private final SamplingScheduler samplingScheduler = new SamplingScheduler();
+    private final MotionStateDetector motionDetector = new MotionStateDetector();
+    private ArrivalDetector arrivalDetector;
+    private final LocationEventBus eventBus = LocationEventBus.getInstance();
+    private final GpsMetrics gpsMetrics = new GpsMetrics(SystemClock.elapsedRealtime());
+
+    private HandlerThread pipelineThread;
+    private Handler pipelineHandler;
+    private final LocationPipeline pipeline = new LocationPipeline();
+    private final LocationSample sample = new LocationSample();
+
+    private LocationManager locationManager;
+    private LocationSource locationSource;
+    private SensorManager sensorManager;
+    private final AccelerometerListener accelerometerListener = new AccelerometerListener();
+    private boolean accelerometerRegistered = false;
+    private final LocationChangeListener locationListener = new LocationChangeListener();
+    private final GpsFixListener gpsFixListener = new GpsFixListener();
+
+    private float publishDistance = MIN_DIST_INTERVAL; // only used on the pipeline thread
+    private boolean publishArrival = false; // only used on the pipeline thread
+    private volatile boolean isGpsFix = false;
+    private volatile long lastLocationTimeMs = 0;
 
     public class ImpetusBinder extends Binder {
         LocationService getService() {
@@ -46,37 +128,157 @@ public class LocationService extends Service {
         }
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        recoverJourney(); // before the pipeline starts, so a recovered journey is visible at once
+
+        pipeline.addStage(new IngestStage());
+        pipeline.addStage(new FilterStage());
+        pipeline.addStage(new SmoothStage());
+        pipeline.addStage(new PersistStage());
+        pipeline.addStage(new ArrivalStage());
+        pipeline.addStage(new SamplingStage());
+        pipeline.addStage(new PublishStage());
+
+        pipelineThread = new HandlerThread("LocationPipeline", Process.THREAD_PRIORITY_BACKGROUND);
+        pipelineThread.start();
+        pipelineHandler = new Handler(pipelineThread.getLooper());
+    }
+
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.i(Logger.TAG, "Starting Impetus location service");
-        initialiseLocationUpdates();
+
+        if (intent != null && intent.getStringExtra(EXTRA_REPLAY_FILE) != null) {
+            startReplay(new File(intent.getStringExtra(EXTRA_REPLAY_FILE)),
+                    intent.getFloatExtra(EXTRA_REPLAY_SPEED, ReplayLocationSource.MIN_SPEED_UP));
+        }
+        if (intent != null && intent.getBooleanExtra(EXTRA_DUMP_METRICS, false)) {
+            pipelineHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    dumpGpsMetrics();
+                }
+            });
+        }
+        pipelineHandler.post(locationUpdatesInitialiser);
         return Service.START_NOT_STICKY;
     }
 
     @Override
     public IBinder onBind(Intent intent) {
         Log.i(Logger.TAG, "Binding Impetus Location Service");
-        broadcastLocation(currentLocation);
-        initialiseLocationUpdates();
+        pipelineHandler.post(locationUpdatesInitialiser);
         return binder;
     }
 
+    private final Runnable locationUpdatesInitialiser = new Runnable() {
+        @Override
+        public void run() {
+            initialiseLocationUpdates();
+        }
+    };
+
+    /**
+     * Registers for location and GPS status updates on the pipeline thread. Only called on that thread.
+     */
     private void initialiseLocationUpdates() {
-        LocationManager locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
+        locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
+
+        sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
+
+        if (locationSource == null) {
+            locationSource = new GpsLocationSource(locationManager);
+        }
 
-        locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, MIN_TIME_INTERVAL,
-                MIN_DIST_INTERVAL, new LocationChangeListener());
+        gpsMetrics.startSession(SystemClock.elapsedRealtime());
+        requestCurrentUpdates();
+        locationManager.addGpsStatusListener(gpsFixListener);
 
-        locationManager.addGpsStatusListener(new GpsFixListener());
+        Location lastKnown = locationSource.getLastKnownLocation();
+        if (lastKnown != null) {
+            currentLocation = lastKnown;
+        }
+        publishLocation(currentLocation);
+    }
 
-        currentLocation = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
-        broadcastLocation(currentLocation);
+    /**
+     * Registers for updates at the rate for the current motion state and journey: low power while
+     * stationary, the sampling scheduler's tier during a journey, and the default rate otherwise.
+     *
+     * Unless stationary, updates are requested with no minimum distance, as the motion detector
+     * needs the fixes of a user standing still to notice they've stopped. The distance is applied
+     * before publishing instead.
+     */
+    private void requestCurrentUpdates() {
+        if (motionDetector.isStationary()) {
+            publishDistance = 0; // already filtered by the location source
+            requestLocationUpdates(LOW_POWER_TIME_INTERVAL, LOW_POWER_DIST_INTERVAL);
+        } else if (journeyActive) {
+            publishDistance = samplingScheduler.getMinDistance();
+            requestLocationUpdates(samplingScheduler.getMinTime(), MOVING_REQUEST_DISTANCE);
+        } else {
+            publishDistance = MIN_DIST_INTERVAL;
+            requestLocationUpdates(MIN_TIME_INTERVAL, MOVING_REQUEST_DISTANCE);
+        }
     }
 
-    public void startNewJourney(Location destination) {
-        if (currentLocation != null) {
-            journeyActive = true;
-            journey = new Journey(currentLocation, currentLocation, destination);
+    /**
+     * Registers for updates from the location source on the pipeline thread, replacing any existing
+     * registration
+     */
+    private void requestLocationUpdates(long minTime, float minDistance) {
+        if (locationSource != null) {
+            locationSource.requestUpdates(minTime, minDistance, locationListener, pipelineThread.getLooper());
+        }
+    }
+
+    /**
+     * Switches the location source to a recorded track, replayed from the start
+     */
+    private void startReplay(final File trackFile, final float speedUp) {
+        pipelineHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ReplayLocationSource replay = ReplayLocationSource.load(trackFile, speedUp);
+
+                    if (locationSource != null) {
+                        locationSource.removeUpdates(locationListener);
+                    }
+                    locationSource = replay;
+                    Log.i(Logger.TAG, "Replaying " + trackFile + " at " + speedUp + "x");
+                } catch (IOException e) {
+                    Crashlytics.logException(e);
+                } catch (IllegalArgumentException e) {
+                    Crashlytics.logException(e);
+                }
+            }
+        });
+    }
+
+    public void startNewJourney(final Location destination) {
+        final Location start = currentLocation;
+
+        if (start != null) {
+            pipelineHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    kalmanFilter.reset();
+                    movementGate.reset();
+                    samplingScheduler.reset();
+                    samplingScheduler.setDestination(destination.getLatitude(), destination.getLongitude());
+                    startArrivalDetection(destination);
+                    motionDetector.reset();
+                    updateAccelerometer();
+                    createJourneyLog(start, destination);
+
+                    journey = new Journey(start, start, destination);
+                    journeyActive = true;
+                    requestCurrentUpdates();
+                }
+            });
         }
         else {
             throw new RuntimeException("Attempted to start journey without a location!");
@@ -84,25 +286,145 @@ public class LocationService extends Service {
     }
 
     public void stopJourney() {
-        journeyActive = false;
-        journey = null;
+        pipelineHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                journeyActive = false;
+                journey = null;
+                arrivalDetector = null;
+                samplingScheduler.reset();
+                requestCurrentUpdates();
+
+                if (journeyLog != null) {
+                    journeyLog.delete();
+                    journeyLog = null;
+                }
+            }
+        });
     }
 
+    /**
+     * @return the active journey, or null if there isn't one. A newly started journey becomes
+     * available once the pipeline thread has set it up.
+     */
     public Journey getJourney() {
         return journey;
     }
 
-    private void broadcastLocation(Location location) {
-        if (location != null) {
-            Intent intent = new Intent(LOCATION_UPDATE);
-            intent.putExtra(LAT_KEY, location.getLatitude());
-            intent.putExtra(LNG_KEY, location.getLongitude());
+    /**
+     * Watches for the user arriving at the destination. Only a single geofence for now, but the
+     * index would take a journey's waypoints as well.
+     */
+    private void startArrivalDetection(Location destination) {
+        GeofenceIndex geofences = new GeofenceIndex.Builder()
+                .addGeofence(destination.getLatitude(), destination.getLongitude(), ARRIVAL_RADIUS, DEPARTURE_RADIUS)
+                .build();
+
+        arrivalDetector = new ArrivalDetector(geofences, ARRIVAL_DWELL_TIME, new ArrivalDetector.Listener() {
+            @Override
+            public void onArrived(int fence) {
+                Log.i(Logger.TAG, "Arrived at the destination");
+                if (journey != null) {
+                    journey.setArrived();
+                    publishArrival = true; // so the UI hears of it even if the user stands still
+                }
+            }
+
+            @Override
+            public void onDeparted(int fence) {
+                Log.i(Logger.TAG, "Left the destination");
+            }
+        });
+    }
+
+    private void createJourneyLog(Location start, Location destination) {
+        try {
+            journeyLog = JourneyLog.create(getJourneyLogFile(), start, destination);
+        } catch (IOException e) {
+            // the journey can continue in memory, it just won't survive the process dying
+            Crashlytics.logException(e);
+            journeyLog = null;
+        }
+    }
+
+    /**
+     * Restores a journey that was in progress when the process last died, if one was logged
+     */
+    private void recoverJourney() {
+        File logFile = getJourneyLogFile();
+
+        if (logFile.exists()) {
+            try {
+                journeyLog = JourneyLog.recover(logFile);
+                journey = journeyLog.restoreJourney();
+                journeyActive = true;
+
+                Location destination = journey.getEndLocation();
+                samplingScheduler.setDestination(destination.getLatitude(), destination.getLongitude());
+                startArrivalDetection(destination);
+
+                int last = journey.getTrack().size() - 1;
+                if (last >= 0) {
+                    movementGate.setLast(journey.getTrack().getLatitude(last), journey.getTrack().getLongitude(last));
+                }
+                Log.i(Logger.TAG, "Recovered journey with " + journeyLog.getRecordCount() + " locations");
+            } catch (IOException e) {
+                Crashlytics.logException(e);
+                if (journeyLog != null) {
+                    journeyLog.close();
+                    journeyLog = null;
+                }
+                logFile.delete();
+            }
+        }
+    }
+
+    private File getJourneyLogFile() {
+        return new File(getFilesDir(), JOURNEY_LOG_FILE);
+    }
 
-            LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
-            Log.i(Logger.TAG, "Broadcasting new location");
+    private void publishLocation(Location location) {
+        if (location != null) {
+            float accuracy = (location.hasAccuracy()) ? location.getAccuracy() : Float.NaN;
+            float speed = (location.hasSpeed()) ? location.getSpeed() : Float.NaN;
+            eventBus.publish(location.getLatitude(), location.getLongitude(), location.getTime(), accuracy, speed);
         }
         else {
-            Log.w(Logger.TAG, "No location available for broadcast");
+            Log.w(Logger.TAG, "No location available to publish");
+        }
+    }
+
+    /**
+     * Watches the accelerometer while the user is stationary, and stops watching it otherwise
+     */
+    private void updateAccelerometer() {
+        if (sensorManager == null) {
+            return;
+        }
+
+        if (motionDetector.isStationary() && !accelerometerRegistered) {
+            Sensor accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            if (accelerometer != null) {
+                accelerometerRegistered = sensorManager.registerListener(accelerometerListener, accelerometer,
+                        SensorManager.SENSOR_DELAY_NORMAL, pipelineHandler);
+            }
+        } else if (!motionDetector.isStationary() && accelerometerRegistered) {
+            sensorManager.unregisterListener(accelerometerListener);
+            accelerometerRegistered = false;
+        }
+    }
+
+    /**
+     * Logs a snapshot of the GPS metrics, and writes it to a file in the app's files directory
+     */
+    private void dumpGpsMetrics() {
+        long now = SystemClock.elapsedRealtime();
+        gpsMetrics.log(now);
+
+        try {
+            gpsMetrics.dump(new File(getFilesDir(), GPS_METRICS_FILE), now);
+        } catch (IOException e) {
+            Crashlytics.logException(e);
         }
     }
 
@@ -113,44 +435,326 @@ public class LocationService extends Service {
     @Override
     public void onDestroy() {
         Log.i(Logger.TAG, "Destroying Impetus location service");
+
+        pipelineHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (journeyLog != null) {
+                    journeyLog.close(); // keep the file, the journey is still active
+                }
+                if (locationSource != null) {
+                    locationSource.removeUpdates(locationListener);
+                }
+                if (locationManager != null) {
+                    locationManager.removeGpsStatusListener(gpsFixListener);
+                }
+                if (accelerometerRegistered) {
+                    sensorManager.unregisterListener(accelerometerListener);
+                }
+                Log.i(Logger.TAG, "Location pipeline " + pipeline.describeLatencies());
+                Log.i(Logger.TAG, "Fix gate " + fixGate.describeCounts());
+                dumpGpsMetrics();
+                Looper.myLooper().quit();
+            }
+        });
+        waitForPipelineToStop();
         super.onDestroy();
     }
 
+    /**
+     * Waits for the pipeline thread to finish the fixes already queued and close the journey log. A
+     * new instance of the service recovers the journey from the log in onCreate, which can only run
+     * after this returns, so it sees every fix and is the only one writing to the file.
+     */
+    private void waitForPipelineToStop() {
+        try {
+            pipelineThread.join(PIPELINE_STOP_TIME);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (pipelineThread.isAlive()) {
+            Crashlytics.logException(new IllegalStateException("Location pipeline still running after " +
+                    PIPELINE_STOP_TIME + "ms"));
+        }
+    }
+
+    /**
+     * Reads the fix's position and notes when it arrived, for the GPS status and metrics
+     */
+    private class IngestStage implements PipelineStage {
+        @Override
+        public String getName() {
+            return "ingest";
+        }
+
+        @Override
+        public boolean process(LocationSample sample) {
+            sample.readLocation();
+            lastLocationTimeMs = SystemClock.elapsedRealtime();
+            gpsMetrics.recordFix(lastLocationTimeMs, sample.getAccuracy());
+            return true;
+        }
+    }
+
+    /**
+     * Drops fixes that are older than the last one, which the provider can deliver after
+     * re-registering for updates, and those the fix gate rejects as inaccurate or impossible jumps
+     */
+    private class FilterStage implements PipelineStage {
+
+        private long lastTimeMs = Long.MIN_VALUE;
+
+        @Override
+        public String getName() {
+            return "filter";
+        }
+
+        @Override
+        public boolean process(LocationSample sample) {
+            if (sample.getTime() < lastTimeMs) {
+                return false;
+            }
+            lastTimeMs = sample.getTime();
+
+            return fixGate.check(sample.getLatitude(), sample.getLongitude(), sample.getTime(),
+                    sample.getAccuracy()) == FixGate.ACCEPTED;
+        }
+    }
+
+    /**
+     * Smooths journey fixes, and marks those that have moved far enough from the last stored point
+     * to be stored
+     */
+    private class SmoothStage implements PipelineStage {
+        @Override
+        public String getName() {
+            return "smooth";
+        }
+
+        @Override
+        public boolean process(LocationSample sample) {
+            if (journeyActive && journey != null) {
+                kalmanFilter.update(sample.getLatitude(), sample.getLongitude(), sample.getTime(), sample.getAccuracy());
+                sample.setSmoothed(kalmanFilter.getLatitude(), kalmanFilter.getLongitude(), kalmanFilter.getSpeed());
+                sample.setStored(movementGate.accept(sample.getSmoothedLatitude(), sample.getSmoothedLongitude(),
+                        sample.getAccuracy()));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Adds stored fixes to the journey, which publishes them to its fix stream, and to the log. If
+     * the log can't be written the journey carries on, but won't be recoverable.
+     */
+    private class PersistStage implements PipelineStage {
+        @Override
+        public String getName() {
+            return "persist";
+        }
+
+        @Override
+        public boolean process(LocationSample sample) {
+            if (sample.isStored() && journey != null) {
+                double lat = sample.getSmoothedLatitude();
+                double lng = sample.getSmoothedLongitude();
+                journey.addLocation(lat, lng, sample.getTime(), sample.getAccuracy(), sample.getSmoothedSpeed());
+
+                if (journeyLog != null) {
+                    try {
+                        journeyLog.append(lat, lng, sample.getTime(), sample.getAccuracy(), sample.getSmoothedSpeed());
+                    } catch (IOException e) {
+                        // e.g. the disk is full, so carry on in memory rather than leave a partial log to recover
+                        Crashlytics.logException(e);
+                        journeyLog.delete();
+                        journeyLog = null;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Checks whether the user has arrived at the destination
+     */
+    private class ArrivalStage implements PipelineStage {
+        @Override
+        public String getName() {
+            return "arrival";
+        }
+
+        @Override
+        public boolean process(LocationSample sample) {
+            if (journeyActive && arrivalDetector != null) {
+                arrivalDetector.update(sample.getSmoothedLatitude(), sample.getSmoothedLongitude(), sample.getTime());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Re-registers for updates if the user has stopped or moved off, or the journey has moved into a
+     * different sampling tier, e.g. as the user nears the destination
+     */
+    private class SamplingStage implements PipelineStage {
+        @Override
+        public String getName() {
+            return "sampling";
+        }
+
+        @Override
+        public boolean process(LocationSample sample) {
+            boolean changed = false;
+
+            if (motionDetector.update(sample.getLatitude(), sample.getLongitude(), sample.getSpeed(),
+                    sample.getAccuracy(), sample.getTime())) {
+
+                Log.i(Logger.TAG, "Motion state changed to " + motionDetector.getState());
+                updateAccelerometer();
+                changed = true;
+            }
+            if (journeyActive && samplingScheduler.update(sample.getSmoothedLatitude(),
+                    sample.getSmoothedLongitude(), sample.getSmoothedSpeed(), sample.getTime())) {
+
+                Log.i(Logger.TAG, "GPS sampling tier changed to " + samplingScheduler.getTier());
+                changed = true;
+            }
+
+            if (changed) {
+                requestCurrentUpdates();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Makes the fix the current location, and publishes it to the UI for the current location marker
+     * if it has moved at least the current minimum distance from the last one published, or if the
+     * user has just arrived
+     */
+    private class PublishStage implements PipelineStage {
+
+        private boolean hasPublished = false;
+        private double publishedLat;
+        private double publishedLng;
+
+        @Override
+        public String getName() {
+            return "publish";
+        }
+
+        @Override
+        public boolean process(LocationSample sample) {
+            currentLocation = sample.getLocation();
+
+            if (!publishArrival && hasPublished && GeoUtils.haversineDistance(publishedLat, publishedLng,
+                    sample.getLatitude(), sample.getLongitude()) < publishDistance) {
+                return true;
+            }
+            publishArrival = false;
+            hasPublished = true;
+            publishedLat = sample.getLatitude();
+            publishedLng = sample.getLongitude();
+
+            eventBus.publish(sample.getLatitude(), sample.getLongitude(), sample.getTime(),
+                    sample.getAccuracy(), sample.getSpeed());
+            return true;
+        }
+    }
+
+    /**
+     * Tracks whether the GPS has a fix, and records its events in the metrics. The GPS has a fix if
+     * a location arrived recently, or enough satellites are being used, which covers the long gaps
+     * between locations when sampling slowly. Only called on the pipeline thread.
+     */
     private class GpsFixListener implements GpsStatus.Listener {
+
+        private GpsStatus gpsStatus;
+
         public void onGpsStatusChanged(int event) {
 
             switch (event) {
                 case GpsStatus.GPS_EVENT_SATELLITE_STATUS:
 
-                    Log.i(Logger.TAG, "GPS event");
-                    long now = SystemClock.elapsedRealtime();
-                    isGpsFix = (now - lastLocationTimeMs) < GPS_FIX_TIME;
-                    lastLocationTimeMs = now;
+                    // arrives every second or so, so only changes are logged
+                    int usedInFix = countSatellitesUsedInFix();
+                    gpsMetrics.recordSatelliteStatus(usedInFix);
+
+                    boolean recentLocation = (SystemClock.elapsedRealtime() - lastLocationTimeMs) < GPS_FIX_TIME;
+                    setGpsFix(recentLocation || usedInFix >= MIN_FIX_SATELLITES);
                     break;
                 case GpsStatus.GPS_EVENT_FIRST_FIX:
 
-                    Log.i(Logger.TAG, "GPS fix");
-                    isGpsFix = true;
+                    gpsMetrics.count(GpsMetrics.FIRST_FIX_EVENTS);
+                    setGpsFix(true);
                     break;
+                case GpsStatus.GPS_EVENT_STARTED:
+
+                    gpsMetrics.count(GpsMetrics.STARTED_EVENTS);
+                    gpsMetrics.startSession(SystemClock.elapsedRealtime());
+                    break;
+                case GpsStatus.GPS_EVENT_STOPPED:
+
+                    gpsMetrics.count(GpsMetrics.STOPPED_EVENTS);
+                    gpsMetrics.stopSession();
+                    setGpsFix(false);
+                    break;
+            }
+        }
+
+        private int countSatellitesUsedInFix() {
+            if (locationManager == null) {
+                return 0;
+            }
+            gpsStatus = locationManager.getGpsStatus(gpsStatus); // reused, so only the iterator is allocated
+
+            int count = 0;
+            for (GpsSatellite satellite : gpsStatus.getSatellites()) {
+                if (satellite.usedInFix()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private void setGpsFix(boolean gpsFix) {
+            if (gpsFix != isGpsFix) {
+                isGpsFix = gpsFix;
+                gpsMetrics.count((gpsFix) ? GpsMetrics.FIXES_GAINED : GpsMetrics.FIXES_LOST);
+                Log.i(Logger.TAG, "GPS fix " + ((gpsFix) ? "acquired" : "lost"));
             }
         }
     }
 
+    /**
+     * Wakes a stationary user on a burst of movement, on the pipeline thread
+     */
+    private class AccelerometerListener implements SensorEventListener {
+
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            if (motionDetector.onAcceleration(event.values[0], event.values[1], event.values[2], event.timestamp)) {
+                Log.i(Logger.TAG, "Motion state woken by the accelerometer");
+                updateAccelerometer();
+                requestCurrentUpdates();
+            }
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        }
+    }
+
     private class LocationChangeListener implements LocationListener {
 
         @Override
         public void onLocationChanged(Location location) {
-
             if (location != null) {
-                currentLocation = location;
-                broadcastLocation(currentLocation);
+                sample.setLocation(location);
+                pipeline.process(sample);
             }
-
-            if (journeyActive && journey != null) {
-                journey.addLocation(location);
-                broadcastLocation(location);
-            }
-            lastLocationTimeMs = SystemClock.elapsedRealtime();
         }
 
         @Override
@@ -166,4 +770,4 @@ public class LocationService extends Service {
         }
     }
 
-}
\ No newline at end of file
+}
@@ -2,10 +2,12 @@ package net.astigan.impetus.main;
 
 import android.app.AlertDialog;
 import android.app.Dialog;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Vibrator;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -15,18 +17,35 @@ import com.google.android.gms.common.GooglePlayServicesUtil;
 import com.google.android.gms.maps.model.LatLng;
 
 import net.astigan.impetus.R;
+import net.astigan.impetus.destination.DestinationSelector;
+import net.astigan.impetus.destination.ExclusionIndex;
+import net.astigan.impetus.destination.NoveltyConstraint;
+import net.astigan.impetus.destination.RoadProximityConstraint;
 import net.astigan.impetus.entities.Journey;
+import net.astigan.impetus.entities.TrackBuffer;
+import net.astigan.impetus.graph.IsochroneCache;
+import net.astigan.impetus.graph.NetworkDistanceSearch;
+import net.astigan.impetus.graph.RoadGraph;
+import net.astigan.impetus.graph.RoadGraphConverter;
+import net.astigan.impetus.location.FixRingBuffer;
 import net.astigan.impetus.log.Logger;
 import net.astigan.impetus.ui.fragments.CustomMapFragment;
 import net.astigan.impetus.ui.fragments.JourneyCreatorFragment;
 import net.astigan.impetus.ui.fragments.NavigatorFragment;
 import net.astigan.impetus.utils.LocationUtils;
 import net.astigan.impetus.utils.MapUtils;
+import net.astigan.impetus.utils.RouteSimplifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 /**
  * Manages fragment transactions, and app state.
  */
-public class MainActivity extends BaseDrawerLayoutActivity implements JourneyCreatorFragment.JourneyCreatorFragmentListener, NavigatorFragment.NavigatorFragmentListener {
+public class MainActivity extends BaseDrawerLayoutActivity implements JourneyCreatorFragment.JourneyCreatorFragmentListener, NavigatorFragment.NavigatorFragmentListener, IsochroneCache.Listener {
 
     private enum AppMode {
         CREATE_JOURNEY,
@@ -35,6 +54,16 @@ public class MainActivity extends BaseDrawerLayoutActivity implements JourneyCre
 
     private static final int GOOGLE_PLAY_REQUEST_CODE = 0;
     private static final long VIBRATE_TIME = 500; // 500ms
+    private static final int DESTINATION_CANDIDATES = 20000;
+    private static final long DESTINATION_BUDGET = 50; // 50ms
+    private static final double NOVELTY_WEIGHT = 1.0;
+    private static final String EXCLUSIONS_DIRECTORY = "exclusions";
+    private static final String EXCLUSION_INDEX_FILE = "exclusions.idx";
+    private static final int NETWORK_CANDIDATES = 64;
+    private static final String ROAD_EXTRACT_FILE = "roads.osm";
+    private static final String ROAD_GRAPH_FILE = "roads.graph";
+    private static final double MAX_ROAD_DISTANCE = 250; // 250m
+    private static final int FIX_BATCH_SIZE = 64;
 
     private AppMode appMode;
 
@@ -45,6 +74,21 @@ public class MainActivity extends BaseDrawerLayoutActivity implements JourneyCre
     private Location destination;
     private LatLng currentLatLng;
     private Journey journey;
+    private int routeVersion = 0;
+
+    private final RouteSimplifier routeSimplifier = new RouteSimplifier();
+    private final List<LatLng> routeUpdate = new ArrayList<LatLng>();
+    private final FixRingBuffer.Batch fixBatch = new FixRingBuffer.Batch(FIX_BATCH_SIZE);
+    private int renderedBand = -1;
+    private int renderedVersion = 0;
+
+    private DestinationSelector destinationSelector;
+    private NoveltyConstraint noveltyConstraint;
+    private volatile RoadGraph roadGraph;
+    private NetworkDistanceSearch networkSearch;
+    private IsochroneCache isochroneCache;
+    private int selectedDistanceKm = -1; // -1 until the seekbar is first moved
+    private final Random random = new Random();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -69,6 +113,18 @@ public class MainActivity extends BaseDrawerLayoutActivity implements JourneyCre
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        if (destinationSelector != null) {
+            destinationSelector.shutdown();
+        }
+        if (isochroneCache != null) {
+            isochroneCache.shutdown();
+        }
+    }
+
     @Override
     public void onBackPressed() {
         if (drawerLayout.isDrawerOpen(drawerList)) {
@@ -84,6 +140,13 @@ public class MainActivity extends BaseDrawerLayoutActivity implements JourneyCre
     private void initialise() {
         appMode = AppMode.CREATE_JOURNEY;
 
+        noveltyConstraint = new NoveltyConstraint(NOVELTY_WEIGHT);
+        destinationSelector = new DestinationSelector();
+        destinationSelector.addConstraint(noveltyConstraint);
+        isochroneCache = new IsochroneCache(this);
+        loadExclusionIndex();
+        loadRoadGraph();
+
         if (journeyCreator == null) {
             journeyCreator = JourneyCreatorFragment.newInstance();
             getFragmentManager().beginTransaction().replace(R.id.main_fragment_container, journeyCreator).commit();
@@ -94,6 +157,59 @@ public class MainActivity extends BaseDrawerLayoutActivity implements JourneyCre
         }
     }
 
+    /**
+     * Loads areas that destinations should avoid from any GeoJSON files in the exclusions directory.
+     * The index is only rebuilt when the files change, which can be slow, so is done off the UI thread.
+     */
+    private void loadExclusionIndex() {
+        final File geoJsonDirectory = new File(getFilesDir(), EXCLUSIONS_DIRECTORY);
+        final File indexFile = new File(getFilesDir(), EXCLUSION_INDEX_FILE);
+        final DestinationSelector selector = destinationSelector;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ExclusionIndex exclusionIndex = ExclusionIndex.loadOrBuild(geoJsonDirectory, indexFile);
+
+                    if (exclusionIndex != null) {
+                        selector.addConstraint(exclusionIndex);
+                        Log.i(Logger.TAG, "Loaded destination exclusion index");
+                    }
+                } catch (IOException e) {
+                    Crashlytics.logException(e);
+                }
+            }
+        }, "ExclusionIndexLoader").start();
+    }
+
+    /**
+     * Loads the walkable road network that destinations are snapped to, converting the OSM extract
+     * in the background if it has changed, and rejects destinations too far from it
+     */
+    private void loadRoadGraph() {
+        final File osmFile = new File(getFilesDir(), ROAD_EXTRACT_FILE);
+        final File graphFile = new File(getFilesDir(), ROAD_GRAPH_FILE);
+        final DestinationSelector selector = destinationSelector;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    RoadGraph graph = RoadGraphConverter.loadOrConvert(osmFile, graphFile);
+
+                    if (graph != null) {
+                        selector.addConstraint(new RoadProximityConstraint(graph, MAX_ROAD_DISTANCE));
+                        roadGraph = graph;
+                        Log.i(Logger.TAG, "Loaded road graph with " + graph.getNodeCount() + " nodes");
+                    }
+                } catch (IOException e) {
+                    Crashlytics.logException(e);
+                }
+            }
+        }, "RoadGraphLoader").start();
+    }
+
     private void handlePlayServicesUnavailable(int statusCode) {
         Crashlytics.log(Log.INFO, Logger.TAG, "Google play services unavailable - " + statusCode);
 
@@ -110,6 +226,40 @@ public class MainActivity extends BaseDrawerLayoutActivity implements JourneyCre
     protected void onLocationUpdate(double lat, double lng) {
         updateMapLocationIfNeeded(lat, lng);
         updateIfJourneyActive();
+
+        if (appMode == AppMode.CREATE_JOURNEY && isochroneCache != null) {
+            isochroneCache.update(lat, lng, roadGraph);
+        }
+    }
+
+    @Override
+    public void onIsochronesUpdated() {
+        if (appMode == AppMode.CREATE_JOURNEY && selectedDistanceKm >= 0 && mapFragment != null) {
+            mapFragment.setIsochrone(isochroneCache.getIsochrone(selectedDistanceKm));
+        }
+    }
+
+    /**
+     * Resumes navigation if the service is still tracking a journey, e.g. one that was recovered
+     * after the process died.
+     */
+    @Override
+    protected void onLocationServiceConnected() {
+        Journey activeJourney = locationService.getJourney();
+
+        if (appMode == AppMode.CREATE_JOURNEY && activeJourney != null && mapFragment != null) {
+            appMode = AppMode.NAVIGATE_JOURNEY;
+            journey = activeJourney;
+            destination = activeJourney.getEndLocation();
+
+            navigatorFragment = NavigatorFragment.newInstance();
+            getFragmentManager().beginTransaction().replace(R.id.main_fragment_container, navigatorFragment).commit();
+
+            mapFragment.setUpMapIfNeeded();
+            mapFragment.startJourney(LocationUtils.constructLatLngFromLocation(activeJourney.getStartLocation()),
+                    LocationUtils.constructLatLngFromLocation(destination));
+            updateIfJourneyActive();
+        }
     }
 
     private void updateMapLocationIfNeeded(double lat, double lng) {
@@ -129,10 +279,84 @@ public class MainActivity extends BaseDrawerLayoutActivity implements JourneyCre
 
             if (journey == null) {
                 journey = locationService.getJourney();
+
+                if (journey == null) {
+                    return; // still being started on the location thread
+                }
+            }
+
+            FixRingBuffer fixStream = journey.getFixStream();
+            int count;
+
+            while ((count = fixStream.drain(fixBatch)) > 0) {
+                for (int i=0; i<count; i++) {
+                    routeSimplifier.addPoint(fixBatch.getLatitude(i), fixBatch.getLongitude(i));
+                }
+                routeVersion += count;
+            }
+
+            if (count == FixRingBuffer.OVERRUN) {
+                catchUpFromTrack(fixStream);
+            }
+            renderJourneyRoute();
+
+            if (journey.hasArrived() && !journey.isArrivalShown()) {
+                journey.setArrivalShown();
+                showArrivalDialog();
             }
+        }
+    }
 
-            mapFragment.setJourneyRoute(journey.getLocationRoute());
+    /**
+     * Lets the user know they've made it, and asks whether to keep exploring or end the journey
+     */
+    private void showArrivalDialog() {
+        Vibrator vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
+        if (vibrator != null) {
+            vibrator.vibrate(VIBRATE_TIME);
         }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(getString(R.string.congratulations));
+        builder.setMessage(getString(R.string.journey_success_message));
+        builder.setNegativeButton(R.string.continue_journey, null);
+        builder.setPositiveButton(R.string.exit, new FinishJourneyListener());
+        builder.create().show();
+    }
+
+    /**
+     * Adds the points the fix stream overwrote before they could be drained, e.g. while the
+     * activity was paused, by reading them from the journey's track
+     */
+    private void catchUpFromTrack(FixRingBuffer fixStream) {
+        TrackBuffer track = journey.getTrack();
+        int version = journey.getRouteVersion();
+
+        for (int i = routeVersion; i < version; i++) {
+            routeSimplifier.addPoint(track.getLatitude(i), track.getLongitude(i));
+        }
+        Log.i(Logger.TAG, "Caught up " + (version - routeVersion) + " route points after fix stream overrun");
+        routeVersion = version;
+        fixStream.resync(version);
+    }
+
+    /**
+     * Renders the simplified route for the current zoom level, only appending vertices that have
+     * been added since the last render unless the zoom band has changed.
+     */
+    private void renderJourneyRoute() {
+        int band = routeSimplifier.getBandForZoom(mapFragment.getZoom());
+
+        if (band != renderedBand) {
+            mapFragment.clearJourneyRoute();
+            renderedBand = band;
+            renderedVersion = 0;
+        }
+
+        routeUpdate.clear();
+        renderedVersion = routeSimplifier.getVerticesSince(band, renderedVersion, routeUpdate);
+        mapFragment.appendJourneyRoute(routeUpdate);
+        mapFragment.setJourneyRouteTail(routeSimplifier.getLastVertex(band), routeSimplifier.getLastPoint());
     }
 
     private void showConfirmDialog(int title, int message, DialogInterface.OnClickListener listener) {
@@ -150,12 +374,96 @@ public class MainActivity extends BaseDrawerLayoutActivity implements JourneyCre
             informUserNoLocAvailable();
             journeyCreator.informNoJourneyAvailable();
         } else {
-            LatLng coords = MapUtils.getRandomCoordinates(distanceKm, currentLatLng);
+            LatLng coords = selectNetworkDestination(distanceKm);
+
+            if (coords == null) {
+                coords = destinationSelector.select(distanceKm, currentLatLng.latitude,
+                        currentLatLng.longitude, DESTINATION_CANDIDATES, DESTINATION_BUDGET);
+            }
+
+            if (coords == null) { // every candidate was rejected, so fall back to any destination
+                coords = MapUtils.getRandomCoordinates(distanceKm, currentLatLng);
+            }
+            coords = snapToRoadGraph(coords);
+            noveltyConstraint.addDestination(coords.latitude, coords.longitude);
+
             destination = LocationUtils.constructLocationFromLatLng(coords);
             mapFragment.setFinishLocation(coords);
         }
     }
 
+    /**
+     * Picks a destination whose walking distance, rather than straight line distance, is within the
+     * requested range. A single bounded search finds the distance to every node in range, and the
+     * best of a handful of random nodes from the band is chosen.
+     *
+     * @return the destination, or null if there is no road graph near the user or no acceptable
+     * node in range
+     */
+    private LatLng selectNetworkDestination(int approxDistance) {
+        RoadGraph graph = roadGraph;
+
+        if (graph == null) {
+            return null;
+        }
+        if (networkSearch == null || networkSearch.getGraph() != graph) {
+            networkSearch = new NetworkDistanceSearch(graph);
+        }
+
+        int start = graph.nearestNode(currentLatLng.latitude, currentLatLng.longitude, RoadGraph.MAX_SNAP_DISTANCE);
+        if (start < 0) { // outside the extract, so distances from it would be meaningless
+            return null;
+        }
+
+        int minDistance = approxDistance * (100 - MapUtils.DELTA_DISTANCE_FACTOR) / 10; // decimetres
+        int maxDistance = approxDistance * (100 + MapUtils.DELTA_DISTANCE_FACTOR) / 10;
+
+        networkSearch.search(start, maxDistance);
+
+        LatLng best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+
+        for (int i=0; i < NETWORK_CANDIDATES; i++) {
+            int node = networkSearch.getRandomNode(minDistance, maxDistance, random);
+
+            if (node < 0) {
+                break;
+            }
+
+            double lat = graph.getLatitude(node);
+            double lng = graph.getLongitude(node);
+            double score = destinationSelector.score(lat, lng);
+
+            if (score > bestScore) {
+                bestScore = score;
+                best = new LatLng(lat, lng);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Moves a destination to the nearest walkable node, if a road graph covers it and the node
+     * isn't somewhere the destination constraints rule out
+     */
+    private LatLng snapToRoadGraph(LatLng coords) {
+        RoadGraph graph = roadGraph;
+
+        if (graph != null) {
+            int node = graph.nearestNode(coords.latitude, coords.longitude, RoadGraph.MAX_SNAP_DISTANCE);
+
+            if (node >= 0) {
+                double lat = graph.getLatitude(node);
+                double lng = graph.getLongitude(node);
+
+                if (destinationSelector.score(lat, lng) != Double.NEGATIVE_INFINITY) {
+                    return new LatLng(lat, lng);
+                }
+            }
+        }
+        return coords;
+    }
+
     @Override
     public void onJourneyStart() {
         if (currentLatLng == null) {
@@ -191,7 +499,14 @@ public class MainActivity extends BaseDrawerLayoutActivity implements JourneyCre
 
     @Override
     public void onSeekbarChanged(int distanceKm) {
-        mapFragment.approxDistanceChanged(currentLatLng, distanceKm);
+        selectedDistanceKm = distanceKm;
+        mapFragment.approxDistanceChanged(isochroneCache.getIsochrone(distanceKm));
+    }
+
+    @Override
+    public void onSeekbarDragged(int distanceKm) {
+        selectedDistanceKm = distanceKm;
+        mapFragment.setIsochrone(isochroneCache.getIsochrone(distanceKm));
     }
 
     private class FinishJourneyListener implements DialogInterface.OnClickListener {
@@ -203,6 +518,11 @@ public class MainActivity extends BaseDrawerLayoutActivity implements JourneyCre
 
     private void endJourney() {
         locationService.stopJourney();
+        journey = null;
+        routeVersion = 0;
+        routeSimplifier.clear();
+        renderedBand = -1;
+        renderedVersion = 0;
         mapFragment.endJourney(currentLatLng);
         getFragmentManager().beginTransaction().replace(R.id.main_fragment_container, JourneyCreatorFragment.newInstance()).commit();
         appMode = AppMode.CREATE_JOURNEY;
@@ -1,18 +1,27 @@
 package net.astigan.impetus.ui.fragments;
 
 import android.graphics.Color;
+import android.util.Log;
 
-import com.google.android.gms.maps.CameraUpdate;
-import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.MapFragment;
 import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.maps.model.Marker;
-import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polygon;
+import com.google.android.gms.maps.model.PolygonOptions;
 import com.google.android.gms.maps.model.Polyline;
 import com.google.android.gms.maps.model.PolylineOptions;
 
+import net.astigan.impetus.graph.Isochrone;
+import net.astigan.impetus.log.Logger;
+import net.astigan.impetus.ui.map.CameraScheduler;
+import net.astigan.impetus.ui.map.FrameClock;
+import net.astigan.impetus.ui.map.GoogleMapCamera;
+import net.astigan.impetus.ui.map.GoogleMapSurface;
+import net.astigan.impetus.ui.map.MapRenderer;
+import net.astigan.impetus.ui.map.MapScene;
+
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -28,15 +37,22 @@ public class CustomMapFragment extends MapFragment {
     private static final int DEFAULT_ANIM_TIME = 1000; // 1s
     private static final int SEEKBAR_CHANGE = 500; // 500ms
     private static final int POLYLINE_WIDTH = 2;
+    private static final int MAX_POLYLINE_POINTS = 500; // journey route is split into chunks
+    private static final int ISOCHRONE_PADDING = 48; // px
+    private static final int ISOCHRONE_STROKE_COLOR = Color.argb(160, 255, 140, 0);
+    private static final int ISOCHRONE_FILL_COLOR = Color.argb(40, 255, 140, 0);
 
     private GoogleMap map;
 
-    private Marker startMarker;
-    private Marker finishMarker;
-    private Marker currentMarker;
+    private final MapScene scene = new MapScene(); // markers, guide line & camera, applied by renderer
+    private MapRenderer renderer;
+    private CameraScheduler cameraScheduler; // coalesces camera moves into one animation at a time
 
-    private Polyline journeyLine;
-    private Polyline guideLine;
+    private final List<Polyline> journeyLines = new ArrayList<Polyline>();
+    private final List<LatLng> journeyLinePoints = new ArrayList<LatLng>(); // points in last chunk
+    private Polyline journeyLine; // the chunk currently being appended to
+    private Polyline journeyTailLine; // joins the route onto the latest, uncommitted point
+    private Polygon isochronePolygon;
 
     private long firstZoomUpdate = -1;
 
@@ -48,83 +64,102 @@ public class CustomMapFragment extends MapFragment {
         if (map == null) {
             map = getMap();
         }
+        if (map != null && renderer == null) {
+            cameraScheduler = new CameraScheduler(new GoogleMapCamera(map), FrameClock.create());
+            renderer = new MapRenderer(new GoogleMapSurface(map, cameraScheduler, POLYLINE_WIDTH, DEFAULT_ANIM_TIME));
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        if (cameraScheduler != null) {
+            Log.i(Logger.TAG, cameraScheduler.describe());
+            cameraScheduler.cancel();
+        }
+        super.onDestroyView();
     }
 
     public void startJourney(LatLng currentLatLng, LatLng destination) {
         resetMapMarkers();
-        setStartLocation(currentLatLng);
-        setFinishLocation(destination);
+        scene.setMarker(MapScene.MARKER_START, currentLatLng.latitude, currentLatLng.longitude,
+                BitmapDescriptorFactory.HUE_BLUE);
+        scene.setMarker(MapScene.MARKER_FINISH, destination.latitude, destination.longitude,
+                BitmapDescriptorFactory.HUE_ORANGE);
         setGuideLine(currentLatLng, destination);
         zoomToStreetLevel(currentLatLng);
+        renderScene();
     }
 
     public void endJourney(LatLng currentLatLng) {
         resetMapMarkers();
         zoomToUserLocation(currentLatLng);
+        renderScene();
     }
 
     public void setStartLocation(LatLng position) {
-        if (startMarker != null) {
-            startMarker.remove();
-        }
-        startMarker = map.addMarker(new MarkerOptions().position(position)
-                .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_BLUE)));
+        scene.setMarker(MapScene.MARKER_START, position.latitude, position.longitude,
+                BitmapDescriptorFactory.HUE_BLUE);
+        renderScene();
     }
 
     public void setFinishLocation(LatLng position) {
-        if (finishMarker != null) {
-            finishMarker.remove();
-        }
-        finishMarker = map.addMarker(new MarkerOptions().position(position)
-                .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_ORANGE)));
+        scene.setMarker(MapScene.MARKER_FINISH, position.latitude, position.longitude,
+                BitmapDescriptorFactory.HUE_ORANGE);
+        renderScene();
     }
 
-    public void approxDistanceChanged(LatLng currentLatLng, int approxDistance) {
-
-        float currentZoom = map.getCameraPosition().zoom;
-        float updatedZoom;
-
-        if (approxDistance >= 0.0 && approxDistance < 2.5) {
-            updatedZoom = 13.00f;
-        }
-        else if (approxDistance >= 2.5 && approxDistance < 5.0) {
-            updatedZoom = 11.00f;
-        }
-        else if (approxDistance >= 5.0 && approxDistance < 10.0) {
-            updatedZoom = 9.75f;
-        }
-        else if (approxDistance >= 10.0 && approxDistance < 17.0) {
-            updatedZoom = 9.00f;
-        }
-        else if (approxDistance >= 17.0 && approxDistance < 25.0) {
-            updatedZoom = 8.50f;
+    /**
+     * Shows the area that can be reached within the selected distance, and fits the camera to it
+     *
+     * @param isochrone the reachable area, or null if it has not been calculated yet
+     */
+    public void approxDistanceChanged(Isochrone isochrone) {
+        scene.hideMarker(MapScene.MARKER_FINISH);
+        renderScene();
+
+        if (isochrone != null) {
+            setIsochrone(isochrone);
+
+            cameraScheduler.fitBounds(isochrone.getMinLatitude(), isochrone.getMinLongitude(),
+                    isochrone.getMaxLatitude(), isochrone.getMaxLongitude(), ISOCHRONE_PADDING, SEEKBAR_CHANGE);
+            renderer.invalidateCamera(); // moved outside the scene
         }
-        else if (approxDistance >= 25.0 && approxDistance < 40.0) {
-            updatedZoom = 7.75f;
-        }
-        else if (approxDistance >= 40.0) {
-            updatedZoom = 7.50f;
-        }
-        else {
-            updatedZoom = DEFAULT_MAP_ZOOM;
+    }
+
+    /**
+     * Swaps the reachable area overlay without moving the camera, reusing the existing polygon
+     */
+    public void setIsochrone(Isochrone isochrone) {
+        if (isochrone == null) {
+            return;
         }
 
-        if (finishMarker != null) {
-            finishMarker.remove();
+        if (isochronePolygon == null) {
+            PolygonOptions polygonOptions = new PolygonOptions();
+            polygonOptions.addAll(isochrone.getPoints());
+            polygonOptions.strokeColor(ISOCHRONE_STROKE_COLOR);
+            polygonOptions.strokeWidth(POLYLINE_WIDTH);
+            polygonOptions.fillColor(ISOCHRONE_FILL_COLOR);
+            isochronePolygon = map.addPolygon(polygonOptions);
+        } else {
+            isochronePolygon.setPoints(isochrone.getPoints());
         }
+    }
 
-        if (currentZoom != updatedZoom && currentLatLng != null) {
-            CameraUpdate update = CameraUpdateFactory.newLatLngZoom(currentLatLng, updatedZoom);
-            map.animateCamera(update, SEEKBAR_CHANGE, null);
+    public void clearIsochrone() {
+        if (isochronePolygon != null) {
+            isochronePolygon.remove();
+            isochronePolygon = null;
         }
     }
 
+    /**
+     * Moves the current location marker and the camera. The marker is created once, and after that
+     * each fix only moves it in place.
+     */
     public void setCurrentLocation(LatLng position) {
-        if (currentMarker != null) {
-            currentMarker.remove();
-        }
-        currentMarker = map.addMarker(new MarkerOptions().position(position)
-                .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_YELLOW)));
+        scene.setMarker(MapScene.MARKER_CURRENT, position.latitude, position.longitude,
+                BitmapDescriptorFactory.HUE_YELLOW);
 
         if (firstZoomUpdate == -1 || (new Date().getTime()) - firstZoomUpdate < 1000) {
             firstZoomUpdate = new Date().getTime();
@@ -133,66 +168,137 @@ public class CustomMapFragment extends MapFragment {
         else {
             centerOnUserLocation(position);
         }
+        renderScene();
     }
 
-    public void setJourneyRoute(List<LatLng> positions) {
-        if (journeyLine == null) {
-            setupJourneyLine(positions);
-        } else {
-            journeyLine.setPoints(positions);
+    /**
+     * @return the camera's current zoom, or the default if the map isn't available
+     */
+    public float getZoom() {
+        return (map != null) ? map.getCameraPosition().zoom : DEFAULT_MAP_ZOOM;
+    }
+
+    public void clearJourneyRoute() {
+        removeJourneyLines();
+
+        if (journeyTailLine != null) {
+            journeyTailLine.remove();
+            journeyTailLine = null;
         }
     }
 
-    public void resetMapMarkers() {
-        if (startMarker != null) {
-            startMarker.remove();
+    /**
+     * Draws the short segment between the end of the (simplified) journey route and the latest
+     * position, which has not been committed to the route yet.
+     */
+    public void setJourneyRouteTail(LatLng routeEnd, LatLng latestPosition) {
+        if (routeEnd == null || latestPosition == null) {
+            return;
         }
-        if (finishMarker != null) {
-            finishMarker.remove();
+
+        if (journeyTailLine == null) {
+            PolylineOptions polylineOptions = new PolylineOptions();
+            polylineOptions.color(Color.RED);
+            polylineOptions.width(POLYLINE_WIDTH);
+            polylineOptions.add(routeEnd, latestPosition);
+            journeyTailLine = map.addPolyline(polylineOptions);
+        } else {
+            List<LatLng> points = journeyTailLine.getPoints();
+            points.set(0, routeEnd);
+            points.set(1, latestPosition);
+            journeyTailLine.setPoints(points);
         }
-        if (journeyLine != null) {
-            journeyLine.remove();
+    }
+
+    /**
+     * Appends new points onto the end of the journey route. Only the last polyline chunk is
+     * updated, and once it reaches MAX_POLYLINE_POINTS a new chunk is started, so the cost of an
+     * update does not grow with the length of the journey.
+     *
+     * @param positions the points added since the last update
+     */
+    public void appendJourneyRoute(List<LatLng> positions) {
+        if (positions.isEmpty()) {
+            return;
         }
-        if (guideLine != null) {
-            guideLine.remove();
+
+        for (LatLng point : positions) {
+            if (journeyLine == null || journeyLinePoints.size() >= MAX_POLYLINE_POINTS) {
+                startJourneyLineChunk();
+            }
+            journeyLinePoints.add(point);
         }
+        journeyLine.setPoints(journeyLinePoints);
     }
 
-    private void setupJourneyLine(List<LatLng> positions) {
+    /**
+     * Hides the journey markers and guide line, which are kept on the map to be reused
+     */
+    public void resetMapMarkers() {
+        scene.hideMarker(MapScene.MARKER_START);
+        scene.hideMarker(MapScene.MARKER_FINISH);
+        scene.hideLine(MapScene.LINE_GUIDE);
+        renderScene();
+
+        clearJourneyRoute();
+        clearIsochrone();
+    }
+
+    private void startJourneyLineChunk() {
+        if (journeyLine != null) { // flush the full chunk before moving on
+            journeyLine.setPoints(journeyLinePoints);
+        }
+        LatLng lastPoint = (journeyLinePoints.isEmpty()) ? null :
+                journeyLinePoints.get(journeyLinePoints.size() - 1);
+
         PolylineOptions polylineOptions = new PolylineOptions();
         polylineOptions.color(Color.RED);
         polylineOptions.width(POLYLINE_WIDTH);
 
-        for (LatLng point : positions) {
-            polylineOptions.add(point);
-        }
         journeyLine = map.addPolyline(polylineOptions);
+        journeyLines.add(journeyLine);
+        journeyLinePoints.clear();
+
+        if (lastPoint != null) { // join onto the previous chunk
+            journeyLinePoints.add(lastPoint);
+        }
+    }
+
+    private void removeJourneyLines() {
+        for (Polyline line : journeyLines) {
+            line.remove();
+        }
+        journeyLines.clear();
+        journeyLinePoints.clear();
+        journeyLine = null;
+    }
+
+    private void renderScene() {
+        if (renderer != null) {
+            renderer.render(scene);
+        }
     }
 
     private void zoomToUserLocation(LatLng position) {
-        CameraUpdate update = CameraUpdateFactory.newLatLngZoom(position, DEFAULT_MAP_ZOOM);
-        map.animateCamera(update, DEFAULT_ANIM_TIME, null);
+        scene.setCamera(position.latitude, position.longitude, DEFAULT_MAP_ZOOM);
     }
 
     private void zoomToStreetLevel(LatLng currentLatLng) {
-        CameraUpdate update = CameraUpdateFactory.newLatLngZoom(currentLatLng, STREET_LEVEL_ZOOM);
-        map.animateCamera(update, DEFAULT_ANIM_TIME, null);
+        scene.setCamera(currentLatLng.latitude, currentLatLng.longitude, STREET_LEVEL_ZOOM);
     }
 
+    /**
+     * Keeps the zoom the camera is heading for, as the live zoom may be part way through a fit to
+     * the isochrone
+     */
     private void centerOnUserLocation(LatLng currentLatLng) {
-        CameraUpdate update = CameraUpdateFactory.newLatLngZoom(currentLatLng, map.getCameraPosition().zoom);
-        map.animateCamera(update, DEFAULT_ANIM_TIME, null);
+        float zoom = (cameraScheduler != null) ? cameraScheduler.getTargetZoom() : DEFAULT_MAP_ZOOM;
+        scene.setCamera(currentLatLng.latitude, currentLatLng.longitude, zoom);
     }
 
     private void setGuideLine(LatLng startLocation, LatLng finishLocation) {
-        PolylineOptions polylineOptions = new PolylineOptions();
-        polylineOptions.color(Color.BLUE);
-        polylineOptions.width(POLYLINE_WIDTH);
-
-        polylineOptions.add(startLocation);
-        polylineOptions.add(finishLocation);
-
-        guideLine = map.addPolyline(polylineOptions);
+        scene.setLine(MapScene.LINE_GUIDE, startLocation.latitude, startLocation.longitude,
+                finishLocation.latitude, finishLocation.longitude, Color.BLUE);
     }
 
 }
\ No newline at end of file
@@ -35,6 +35,7 @@ public class JourneyCreatorFragment extends Fragment {
         public void onJourneyStart();
         public void onRandomiseJourney(int distanceKm);
         public void onSeekbarChanged(int distanceKm);
+        public void onSeekbarDragged(int distanceKm);
     }
 
     @InjectView(R.id.distance_seekbar) SeekBar seekBar;
@@ -122,6 +123,8 @@ public class JourneyCreatorFragment extends Fragment {
 
             if (!swiping) {
                 listener.onSeekbarChanged(seekBar.getProgress());
+            } else {
+                listener.onSeekbarDragged(seekBar.getProgress());
             }
             setDistanceLabel(i);
         }
@@ -0,0 +1,212 @@
+package net.astigan.impetus.ui.map;
+
+/**
+ * Coalesces camera moves so the map runs at most one animation at a time. Only the latest requested
+ * target is kept, and it is applied on the next display frame once any running animation has
+ * finished. A move to a point that is already well inside the visible viewport at the same zoom is
+ * skipped, so following the user on every fix only moves the camera as they near the edge.
+ *
+ * A fit to bounds, e.g. for the seekbar, isn't replaced or undone by following the user: moves to a
+ * point are skipped while one is pending or running.
+ *
+ * Must only be used from the main thread.
+ */
+public class CameraScheduler {
+
+    public static final double VIEWPORT_MARGIN = 0.2; // of the viewport's height & width on each side
+    private static final float ZOOM_TOLERANCE = 0.01f;
+
+    /**
+     * The map camera being moved. Animations must always call onFinished, even if cancelled.
+     */
+    public interface Camera {
+        float getZoom();
+
+        /**
+         * @param margin the fraction of the viewport on each side that doesn't count as inside
+         */
+        boolean isInsideViewport(double lat, double lng, double margin);
+
+        void animateTo(double lat, double lng, float zoom, int duration, Runnable onFinished);
+        void animateToBounds(double minLat, double minLng, double maxLat, double maxLng, int padding,
+                             int duration, Runnable onFinished);
+    }
+
+    private static final int NONE = 0;
+    private static final int POINT = 1;
+    private static final int BOUNDS = 2;
+
+    private final Camera camera;
+    private final FrameClock clock;
+
+    private int pendingType = NONE;
+    private double pendingLat1;
+    private double pendingLng1;
+    private double pendingLat2;
+    private double pendingLng2;
+    private float pendingZoom;
+    private int pendingPadding;
+    private int pendingDuration;
+
+    private boolean framePosted = false;
+    private boolean animating = false;
+    private int animatingType = NONE;
+    private float animatingZoom;
+    private boolean fitting = false; // a bounds target is pending or being animated to
+
+    private int requested = 0;
+    private int coalesced = 0;
+    private int skipped = 0;
+    private int animated = 0;
+
+    private final Runnable frame = new Runnable() {
+        @Override
+        public void run() {
+            framePosted = false;
+            applyPending();
+        }
+    };
+
+    private final Runnable animationFinished = new Runnable() {
+        @Override
+        public void run() {
+            animating = false;
+            animatingType = NONE;
+            fitting = (pendingType == BOUNDS);
+            schedule();
+        }
+    };
+
+    public CameraScheduler(Camera camera, FrameClock clock) {
+        this.camera = camera;
+        this.clock = clock;
+    }
+
+    /**
+     * Requests the camera to centre on a point, replacing any target not yet applied. Skipped while
+     * fitting to bounds.
+     *
+     * @param duration the animation time in ms
+     */
+    public void moveTo(double lat, double lng, float zoom, int duration) {
+        if (fitting) {
+            requested++;
+            skipped++;
+            return;
+        }
+        setPending(POINT, duration);
+        pendingLat1 = lat;
+        pendingLng1 = lng;
+        pendingZoom = zoom;
+        schedule();
+    }
+
+    /**
+     * Requests the camera to fit an area, replacing any target not yet applied
+     *
+     * @param padding the space left around the area in px
+     * @param duration the animation time in ms
+     */
+    public void fitBounds(double minLat, double minLng, double maxLat, double maxLng, int padding, int duration) {
+        setPending(BOUNDS, duration);
+        pendingLat1 = minLat;
+        pendingLng1 = minLng;
+        pendingLat2 = maxLat;
+        pendingLng2 = maxLng;
+        pendingPadding = padding;
+        fitting = true;
+        schedule();
+    }
+
+    /**
+     * Drops any target not yet applied
+     */
+    public void cancel() {
+        pendingType = NONE;
+        fitting = (animatingType == BOUNDS);
+    }
+
+    /**
+     * @return the zoom the camera is heading for, rather than the zoom part way through an
+     * animation: that of the latest point target, otherwise the camera's own zoom. While fitting to
+     * bounds the final zoom isn't known, but moves to a point are skipped until the fit finishes.
+     */
+    public float getTargetZoom() {
+        if (pendingType == POINT) {
+            return pendingZoom;
+        } else if (animatingType == POINT) {
+            return animatingZoom;
+        }
+        return camera.getZoom();
+    }
+
+    public int getRequestedCount() {
+        return requested;
+    }
+
+    /**
+     * @return how many targets were replaced by a later one before being applied
+     */
+    public int getCoalescedCount() {
+        return coalesced;
+    }
+
+    /**
+     * @return how many targets were already in view, or came while fitting to bounds, so weren't
+     * animated to
+     */
+    public int getSkippedCount() {
+        return skipped;
+    }
+
+    public int getAnimatedCount() {
+        return animated;
+    }
+
+    public String describe() {
+        return "camera moves: " + requested + " requested, " + coalesced + " coalesced, " +
+                skipped + " skipped, " + animated + " animated";
+    }
+
+    private void setPending(int type, int duration) {
+        requested++;
+        if (pendingType != NONE) {
+            coalesced++;
+        }
+        pendingType = type;
+        pendingDuration = duration;
+    }
+
+    private void schedule() {
+        if (pendingType != NONE && !framePosted && !animating) {
+            framePosted = true;
+            clock.postFrame(frame);
+        }
+    }
+
+    private void applyPending() {
+        int type = pendingType;
+        pendingType = NONE;
+
+        if (type == POINT) {
+            if (Math.abs(camera.getZoom() - pendingZoom) < ZOOM_TOLERANCE &&
+                    camera.isInsideViewport(pendingLat1, pendingLng1, VIEWPORT_MARGIN)) {
+                skipped++;
+                return;
+            }
+            animating = true;
+            animatingType = POINT;
+            animatingZoom = pendingZoom;
+            animated++;
+            camera.animateTo(pendingLat1, pendingLng1, pendingZoom, pendingDuration, animationFinished);
+        }
+        else if (type == BOUNDS) {
+            animating = true;
+            animatingType = BOUNDS;
+            animated++;
+            camera.animateToBounds(pendingLat1, pendingLng1, pendingLat2, pendingLng2, pendingPadding,
+                    pendingDuration, animationFinished);
+        }
+    }
+
+}
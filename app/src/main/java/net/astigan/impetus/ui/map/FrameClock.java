@@ -0,0 +1,61 @@
+package net.astigan.impetus.ui.map;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * Runs work on the next display frame of the main thread. Choreographer is used where available
+ * (API 16+), and older devices fall back to a Handler delayed by roughly one frame.
+ */
+public abstract class FrameClock {
+
+    private static final long FRAME_TIME = 16; // ms, at 60fps
+
+    /**
+     * Runs frame once on the next frame. Posting the same Runnable again allocates nothing.
+     */
+    public abstract void postFrame(Runnable frame);
+
+    public static FrameClock create() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return new ChoreographerClock();
+        }
+        else {
+            return new HandlerClock();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class ChoreographerClock extends FrameClock {
+
+        private final Choreographer choreographer = Choreographer.getInstance();
+        private Runnable frame;
+
+        private final Choreographer.FrameCallback callback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                frame.run();
+            }
+        };
+
+        @Override
+        public void postFrame(Runnable frame) {
+            this.frame = frame;
+            choreographer.postFrameCallback(callback);
+        }
+    }
+
+    private static class HandlerClock extends FrameClock {
+
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void postFrame(Runnable frame) {
+            handler.postDelayed(frame, FRAME_TIME);
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package net.astigan.impetus.ui.map;
+
+import com.google.android.gms.maps.CameraUpdate;
+import com.google.android.gms.maps.CameraUpdateFactory;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+
+/**
+ * Moves the camera of a GoogleMap for a CameraScheduler
+ */
+public class GoogleMapCamera implements CameraScheduler.Camera {
+
+    private final GoogleMap map;
+
+    public GoogleMapCamera(GoogleMap map) {
+        this.map = map;
+    }
+
+    @Override
+    public float getZoom() {
+        return map.getCameraPosition().zoom;
+    }
+
+    @Override
+    public boolean isInsideViewport(double lat, double lng, double margin) {
+        LatLngBounds bounds = map.getProjection().getVisibleRegion().latLngBounds;
+
+        double latMargin = (bounds.northeast.latitude - bounds.southwest.latitude) * margin;
+        if (lat < bounds.southwest.latitude + latMargin || lat > bounds.northeast.latitude - latMargin) {
+            return false;
+        }
+
+        double west = bounds.southwest.longitude;
+        double width = bounds.northeast.longitude - west;
+        if (width < 0) { // crosses the antimeridian
+            width += 360;
+        }
+        double x = lng - west;
+        if (x < 0) {
+            x += 360;
+        }
+        return x >= width * margin && x <= width * (1 - margin);
+    }
+
+    @Override
+    public void animateTo(double lat, double lng, float zoom, int duration, Runnable onFinished) {
+        CameraUpdate update = CameraUpdateFactory.newLatLngZoom(new LatLng(lat, lng), zoom);
+        map.animateCamera(update, duration, new FinishedCallback(onFinished));
+    }
+
+    @Override
+    public void animateToBounds(double minLat, double minLng, double maxLat, double maxLng, int padding,
+                                int duration, Runnable onFinished) {
+
+        LatLngBounds bounds = new LatLngBounds(new LatLng(minLat, minLng), new LatLng(maxLat, maxLng));
+        CameraUpdate update = CameraUpdateFactory.newLatLngBounds(bounds, padding);
+        map.animateCamera(update, duration, new FinishedCallback(onFinished));
+    }
+
+    private static class FinishedCallback implements GoogleMap.CancelableCallback {
+
+        private final Runnable onFinished;
+
+        FinishedCallback(Runnable onFinished) {
+            this.onFinished = onFinished;
+        }
+
+        @Override
+        public void onFinish() {
+            onFinished.run();
+        }
+
+        @Override
+        public void onCancel() {
+            onFinished.run();
+        }
+    }
+
+}
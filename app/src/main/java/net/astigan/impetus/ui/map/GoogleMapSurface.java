@@ -0,0 +1,112 @@
+package net.astigan.impetus.ui.map;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Draws a scene onto a GoogleMap, holding on to the markers and lines it creates so they can be
+ * updated in place. Marker icons are cached by hue, as each one is a bitmap the map has to upload.
+ */
+public class GoogleMapSurface implements MapRenderer.Surface {
+
+    private final GoogleMap map;
+    private final int lineWidth;
+    private final CameraScheduler cameraScheduler;
+    private final int animationTime; // ms
+
+    private final Marker[] markers = new Marker[MapScene.MARKERS];
+    private final Polyline[] lines = new Polyline[MapScene.LINES];
+    private final List<LatLng> linePoints = new ArrayList<LatLng>(2);
+
+    private float[] iconHues = new float[0];
+    private BitmapDescriptor[] icons = new BitmapDescriptor[0];
+
+    /**
+     * @param cameraScheduler coalesces the camera moves
+     * @param animationTime how long camera moves are animated for in ms
+     */
+    public GoogleMapSurface(GoogleMap map, CameraScheduler cameraScheduler, int lineWidth, int animationTime) {
+        this.map = map;
+        this.cameraScheduler = cameraScheduler;
+        this.lineWidth = lineWidth;
+        this.animationTime = animationTime;
+    }
+
+    @Override
+    public void addMarker(int marker, double lat, double lng, float hue) {
+        markers[marker] = map.addMarker(new MarkerOptions().position(new LatLng(lat, lng)).icon(getIcon(hue)));
+    }
+
+    @Override
+    public void moveMarker(int marker, double lat, double lng) {
+        markers[marker].setPosition(new LatLng(lat, lng));
+    }
+
+    @Override
+    public void setMarkerHue(int marker, float hue) {
+        markers[marker].setIcon(getIcon(hue));
+    }
+
+    @Override
+    public void setMarkerVisible(int marker, boolean visible) {
+        markers[marker].setVisible(visible);
+    }
+
+    @Override
+    public void addLine(int line, double lat1, double lng1, double lat2, double lng2, int color) {
+        PolylineOptions polylineOptions = new PolylineOptions();
+        polylineOptions.color(color);
+        polylineOptions.width(lineWidth);
+        polylineOptions.add(new LatLng(lat1, lng1), new LatLng(lat2, lng2));
+        lines[line] = map.addPolyline(polylineOptions);
+    }
+
+    @Override
+    public void moveLine(int line, double lat1, double lng1, double lat2, double lng2) {
+        linePoints.clear();
+        linePoints.add(new LatLng(lat1, lng1));
+        linePoints.add(new LatLng(lat2, lng2));
+        lines[line].setPoints(linePoints);
+    }
+
+    @Override
+    public void setLineColor(int line, int color) {
+        lines[line].setColor(color);
+    }
+
+    @Override
+    public void setLineVisible(int line, boolean visible) {
+        lines[line].setVisible(visible);
+    }
+
+    @Override
+    public void moveCamera(double lat, double lng, float zoom) {
+        cameraScheduler.moveTo(lat, lng, zoom, animationTime);
+    }
+
+    private BitmapDescriptor getIcon(float hue) {
+        for (int i=0; i < iconHues.length; i++) {
+            if (iconHues[i] == hue) {
+                return icons[i];
+            }
+        }
+
+        int size = iconHues.length;
+        iconHues = Arrays.copyOf(iconHues, size + 1);
+        icons = Arrays.copyOf(icons, size + 1);
+        iconHues[size] = hue;
+        icons[size] = BitmapDescriptorFactory.defaultMarker(hue);
+        return icons[size];
+    }
+
+}
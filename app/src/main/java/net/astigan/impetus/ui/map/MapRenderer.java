@@ -0,0 +1,124 @@
+package net.astigan.impetus.ui.map;
+
+/**
+ * Brings a map surface up to date with a scene, by diffing the scene against the last one that was
+ * applied and only touching what changed. Map objects are created the first time their slot is
+ * shown, and after that are moved, recoloured or hidden in place rather than being recreated, so a
+ * new fix for the current location costs a single marker move.
+ */
+public class MapRenderer {
+
+    /**
+     * The map being drawn on, e.g. a GoogleMap. Slots are those of MapScene.
+     */
+    public interface Surface {
+        void addMarker(int marker, double lat, double lng, float hue);
+        void moveMarker(int marker, double lat, double lng);
+        void setMarkerHue(int marker, float hue);
+        void setMarkerVisible(int marker, boolean visible);
+
+        void addLine(int line, double lat1, double lng1, double lat2, double lng2, int color);
+        void moveLine(int line, double lat1, double lng1, double lat2, double lng2);
+        void setLineColor(int line, int color);
+        void setLineVisible(int line, boolean visible);
+
+        void moveCamera(double lat, double lng, float zoom);
+    }
+
+    private final Surface surface;
+    private final MapScene applied = new MapScene();
+    private final boolean[] markerCreated = new boolean[MapScene.MARKERS];
+    private final boolean[] lineCreated = new boolean[MapScene.LINES];
+    private boolean cameraValid = false;
+
+    public MapRenderer(Surface surface) {
+        this.surface = surface;
+    }
+
+    public void render(MapScene scene) {
+        for (int i=0; i < MapScene.MARKERS; i++) {
+            renderMarker(scene, i);
+        }
+        for (int i=0; i < MapScene.LINES; i++) {
+            renderLine(scene, i);
+        }
+        renderCamera(scene);
+        applied.copyFrom(scene);
+    }
+
+    /**
+     * Forgets where the camera was put, e.g. after it was moved outside the scene, so the next render
+     * moves it even if the scene's camera hasn't changed
+     */
+    public void invalidateCamera() {
+        cameraValid = false;
+    }
+
+    private void renderMarker(MapScene scene, int marker) {
+        boolean visible = scene.isMarkerVisible(marker);
+        double lat = scene.getMarkerLatitude(marker);
+        double lng = scene.getMarkerLongitude(marker);
+        float hue = scene.getMarkerHue(marker);
+
+        if (!markerCreated[marker]) {
+            if (visible) {
+                surface.addMarker(marker, lat, lng, hue);
+                markerCreated[marker] = true;
+            }
+            return;
+        }
+
+        if (visible && (lat != applied.getMarkerLatitude(marker) || lng != applied.getMarkerLongitude(marker))) {
+            surface.moveMarker(marker, lat, lng);
+        }
+        if (visible && hue != applied.getMarkerHue(marker)) {
+            surface.setMarkerHue(marker, hue);
+        }
+        if (visible != applied.isMarkerVisible(marker)) {
+            surface.setMarkerVisible(marker, visible);
+        }
+    }
+
+    private void renderLine(MapScene scene, int line) {
+        boolean visible = scene.isLineVisible(line);
+        double lat1 = scene.getLineLatitude(line, 0);
+        double lng1 = scene.getLineLongitude(line, 0);
+        double lat2 = scene.getLineLatitude(line, 1);
+        double lng2 = scene.getLineLongitude(line, 1);
+        int color = scene.getLineColor(line);
+
+        if (!lineCreated[line]) {
+            if (visible) {
+                surface.addLine(line, lat1, lng1, lat2, lng2, color);
+                lineCreated[line] = true;
+            }
+            return;
+        }
+
+        if (visible && (lat1 != applied.getLineLatitude(line, 0) || lng1 != applied.getLineLongitude(line, 0) ||
+                lat2 != applied.getLineLatitude(line, 1) || lng2 != applied.getLineLongitude(line, 1))) {
+            surface.moveLine(line, lat1, lng1, lat2, lng2);
+        }
+        if (visible && color != applied.getLineColor(line)) {
+            surface.setLineColor(line, color);
+        }
+        if (visible != applied.isLineVisible(line)) {
+            surface.setLineVisible(line, visible);
+        }
+    }
+
+    private void renderCamera(MapScene scene) {
+        if (!scene.hasCamera()) {
+            return;
+        }
+
+        if (!cameraValid || scene.getCameraLatitude() != applied.getCameraLatitude() ||
+                scene.getCameraLongitude() != applied.getCameraLongitude() ||
+                scene.getCameraZoom() != applied.getCameraZoom()) {
+
+            surface.moveCamera(scene.getCameraLatitude(), scene.getCameraLongitude(), scene.getCameraZoom());
+            cameraValid = true;
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package net.astigan.impetus.ui.map;
+
+/**
+ * What the map should show, as plain data: a fixed set of marker and line slots, and where the
+ * camera should be. The scene is changed freely, and a MapRenderer works out which map objects
+ * need updating to match it.
+ */
+public class MapScene {
+
+    public static final int MARKER_START = 0;
+    public static final int MARKER_FINISH = 1;
+    public static final int MARKER_CURRENT = 2;
+    public static final int MARKERS = 3;
+
+    public static final int LINE_GUIDE = 0;
+    public static final int LINES = 1;
+
+    private final boolean[] markerVisible = new boolean[MARKERS];
+    private final double[] markerLats = new double[MARKERS];
+    private final double[] markerLngs = new double[MARKERS];
+    private final float[] markerHues = new float[MARKERS];
+
+    private final boolean[] lineVisible = new boolean[LINES];
+    private final double[] lineLats = new double[LINES * 2]; // start and end of each line
+    private final double[] lineLngs = new double[LINES * 2];
+    private final int[] lineColors = new int[LINES];
+
+    private boolean hasCamera = false;
+    private double cameraLat;
+    private double cameraLng;
+    private float cameraZoom;
+
+    /**
+     * Shows a marker
+     *
+     * @param hue the marker's hue, from 0 to 360
+     */
+    public void setMarker(int marker, double lat, double lng, float hue) {
+        markerVisible[marker] = true;
+        markerLats[marker] = lat;
+        markerLngs[marker] = lng;
+        markerHues[marker] = hue;
+    }
+
+    public void hideMarker(int marker) {
+        markerVisible[marker] = false;
+    }
+
+    /**
+     * Shows a straight line between two points
+     */
+    public void setLine(int line, double lat1, double lng1, double lat2, double lng2, int color) {
+        lineVisible[line] = true;
+        lineLats[line * 2] = lat1;
+        lineLngs[line * 2] = lng1;
+        lineLats[line * 2 + 1] = lat2;
+        lineLngs[line * 2 + 1] = lng2;
+        lineColors[line] = color;
+    }
+
+    public void hideLine(int line) {
+        lineVisible[line] = false;
+    }
+
+    public void setCamera(double lat, double lng, float zoom) {
+        hasCamera = true;
+        cameraLat = lat;
+        cameraLng = lng;
+        cameraZoom = zoom;
+    }
+
+    public void copyFrom(MapScene other) {
+        System.arraycopy(other.markerVisible, 0, markerVisible, 0, MARKERS);
+        System.arraycopy(other.markerLats, 0, markerLats, 0, MARKERS);
+        System.arraycopy(other.markerLngs, 0, markerLngs, 0, MARKERS);
+        System.arraycopy(other.markerHues, 0, markerHues, 0, MARKERS);
+        System.arraycopy(other.lineVisible, 0, lineVisible, 0, LINES);
+        System.arraycopy(other.lineLats, 0, lineLats, 0, LINES * 2);
+        System.arraycopy(other.lineLngs, 0, lineLngs, 0, LINES * 2);
+        System.arraycopy(other.lineColors, 0, lineColors, 0, LINES);
+        hasCamera = other.hasCamera;
+        cameraLat = other.cameraLat;
+        cameraLng = other.cameraLng;
+        cameraZoom = other.cameraZoom;
+    }
+
+    public boolean isMarkerVisible(int marker) {
+        return markerVisible[marker];
+    }
+
+    public double getMarkerLatitude(int marker) {
+        return markerLats[marker];
+    }
+
+    public double getMarkerLongitude(int marker) {
+        return markerLngs[marker];
+    }
+
+    public float getMarkerHue(int marker) {
+        return markerHues[marker];
+    }
+
+    public boolean isLineVisible(int line) {
+        return lineVisible[line];
+    }
+
+    /**
+     * @param end 0 for the start of the line, 1 for the end
+     */
+    public double getLineLatitude(int line, int end) {
+        return lineLats[line * 2 + end];
+    }
+
+    public double getLineLongitude(int line, int end) {
+        return lineLngs[line * 2 + end];
+    }
+
+    public int getLineColor(int line) {
+        return lineColors[line];
+    }
+
+    public boolean hasCamera() {
+        return hasCamera;
+    }
+
+    public double getCameraLatitude() {
+        return cameraLat;
+    }
+
+    public double getCameraLongitude() {
+        return cameraLng;
+    }
+
+    public float getCameraZoom() {
+        return cameraZoom;
+    }
+
+}
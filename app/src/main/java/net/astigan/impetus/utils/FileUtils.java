@@ -0,0 +1,31 @@
+package net.astigan.impetus.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Helpers for replacing a file atomically, by writing the new contents alongside it and renaming
+ * them over the original once complete. A reader then sees either the old file or the new one,
+ * never a partly written file left behind by a crash or a full disk.
+ */
+public class FileUtils {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * @return the file that a replacement is written to, in the same directory so it can be renamed
+     */
+    public static File getTempFile(File file) {
+        return new File(file.getPath() + TEMP_SUFFIX);
+    }
+
+    /**
+     * Renames a completely written temp file over the target
+     */
+    public static void replace(File temp, File target) throws IOException {
+        if (!temp.renameTo(target)) {
+            throw new IOException("Couldn't replace " + target);
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+package net.astigan.impetus.utils;
+
+/**
+ * Spherical geometry helpers that work on primitive coordinates, so they can be called for every
+ * fix without allocating Location or LatLng objects.
+ */
+public class GeoUtils {
+
+    public static final double EARTH_MEAN_RADIUS = 6371008.8; // m
+
+    // sin/cos of evenly spaced bearings, refined with a second order correction when looked up
+    private static final int BEARING_TABLE_SIZE = 4096;
+    private static final double BEARING_TABLE_STEP = (2 * Math.PI) / BEARING_TABLE_SIZE;
+    private static final double[] BEARING_SIN = new double[BEARING_TABLE_SIZE];
+    private static final double[] BEARING_COS = new double[BEARING_TABLE_SIZE];
+
+    static {
+        for (int i=0; i < BEARING_TABLE_SIZE; i++) {
+            BEARING_SIN[i] = Math.sin(i * BEARING_TABLE_STEP);
+            BEARING_COS[i] = Math.cos(i * BEARING_TABLE_STEP);
+        }
+    }
+
+    /**
+     * Calculates the great-circle distance between two points using the haversine formula
+     *
+     * @return the distance in metres
+     */
+    public static double haversineDistance(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+
+        double sinHalfDeltaLat = Math.sin((phi2 - phi1) * 0.5);
+        double sinHalfDeltaLng = Math.sin(Math.toRadians(lng2 - lng1) * 0.5);
+
+        double a = sinHalfDeltaLat * sinHalfDeltaLat +
+                Math.cos(phi1) * Math.cos(phi2) * sinHalfDeltaLng * sinHalfDeltaLng;
+
+        return 2 * EARTH_MEAN_RADIUS * Math.asin(Math.sqrt(Math.min(a, 1.0)));
+    }
+
+    /**
+     * Calculates the initial bearing of the great-circle path from one point to another
+     *
+     * @return the bearing in degrees clockwise from north, from 0 to 360
+     */
+    public static double initialBearing(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double deltaLambda = Math.toRadians(lng2 - lng1);
+
+        double y = Math.sin(deltaLambda) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(deltaLambda);
+
+        double bearing = Math.toDegrees(Math.atan2(y, x));
+        return (bearing < 0) ? bearing + 360.0 : bearing;
+    }
+
+    /**
+     * Looks up the sine of a bearing from a precomputed table, correcting for the remainder between
+     * table entries with a Taylor expansion. Accurate to ~1E-9, which is under a millimetre of error
+     * at the longest journey distance.
+     *
+     * @param bearing the bearing in radians, from 0 to 2PI
+     */
+    public static double sinBearing(double bearing) {
+        int index = (int) (bearing / BEARING_TABLE_STEP);
+        double remainder = bearing - (index * BEARING_TABLE_STEP);
+        index &= BEARING_TABLE_SIZE - 1;
+        double scale = 1 - (remainder * remainder * 0.5);
+        return BEARING_SIN[index] * scale + remainder * BEARING_COS[index];
+    }
+
+    /**
+     * Looks up the cosine of a bearing from a precomputed table, see sinBearing
+     */
+    public static double cosBearing(double bearing) {
+        int index = (int) (bearing / BEARING_TABLE_STEP);
+        double remainder = bearing - (index * BEARING_TABLE_STEP);
+        index &= BEARING_TABLE_SIZE - 1;
+        double scale = 1 - (remainder * remainder * 0.5);
+        return BEARING_COS[index] * scale - remainder * BEARING_SIN[index];
+    }
+
+    public static double normaliseLongitude(double lng) {
+        return (lng >= -180.0 && lng <= 180.0) ? lng : ((lng + 540.0) % 360.0) - 180.0;
+    }
+
+    /**
+     * A start point with its trigonometry precomputed, so many destinations and distances can be
+     * calculated from it without repeating the work for the origin each time.
+     */
+    public static final class Origin {
+
+        private final double latitude;
+        private final double longitude;
+
+        private final double sinPhi;
+        private final double cosPhi;
+
+        public Origin(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+
+            double phi = Math.toRadians(latitude);
+            this.sinPhi = Math.sin(phi);
+            this.cosPhi = Math.cos(phi);
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        /**
+         * Calculates the point reached by travelling along a great circle from the origin, and
+         * writes it into the given arrays
+         *
+         * @param distance distance to travel in metres
+         * @param sinBearing sine of the bearing (clockwise from north)
+         * @param cosBearing cosine of the bearing
+         * @param lats array that the destination latitude is written into
+         * @param lngs array that the destination longitude is written into
+         * @param index position in the arrays to write to
+         */
+        public void getDestination(double distance, double sinBearing, double cosBearing,
+                                   double[] lats, double[] lngs, int index) {
+
+            double delta = distance / EARTH_MEAN_RADIUS; // angular distance
+            double sinDelta = Math.sin(delta);
+            double cosDelta = Math.cos(delta);
+
+            double sinPhi2 = sinPhi * cosDelta + cosPhi * sinDelta * cosBearing;
+            double y = sinBearing * sinDelta * cosPhi;
+            double x = cosDelta - sinPhi * sinPhi2;
+
+            lats[index] = Math.toDegrees(Math.asin(sinPhi2));
+            lngs[index] = normaliseLongitude(longitude + Math.toDegrees(Math.atan2(y, x)));
+        }
+
+        /**
+         * @return the great-circle distance in metres from the origin to the given point
+         */
+        public double distanceTo(double lat, double lng) {
+            double phi2 = Math.toRadians(lat);
+
+            double sinHalfDeltaLat = Math.sin((phi2 - Math.toRadians(latitude)) * 0.5);
+            double sinHalfDeltaLng = Math.sin(Math.toRadians(lng - longitude) * 0.5);
+
+            double a = sinHalfDeltaLat * sinHalfDeltaLat +
+                    cosPhi * Math.cos(phi2) * sinHalfDeltaLng * sinHalfDeltaLng;
+
+            return 2 * EARTH_MEAN_RADIUS * Math.asin(Math.sqrt(Math.min(a, 1.0)));
+        }
+
+        /**
+         * @return the initial bearing in degrees from the origin to the given point
+         */
+        public double bearingTo(double lat, double lng) {
+            double phi2 = Math.toRadians(lat);
+            double deltaLambda = Math.toRadians(lng - longitude);
+            double cosPhi2 = Math.cos(phi2);
+
+            double y = Math.sin(deltaLambda) * cosPhi2;
+            double x = cosPhi * Math.sin(phi2) - sinPhi * cosPhi2 * Math.cos(deltaLambda);
+
+            double bearing = Math.toDegrees(Math.atan2(y, x));
+            return (bearing < 0) ? bearing + 360.0 : bearing;
+        }
+    }
+
+}
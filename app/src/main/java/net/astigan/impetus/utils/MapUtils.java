@@ -9,8 +9,9 @@ import java.util.Random;
  */
 public class MapUtils {
 
-    private static final int EARTH_RADIUS = 6378137; // m
-    private static final int DELTA_DISTANCE_FACTOR = 30; // % deviation
+    public static final int DELTA_DISTANCE_FACTOR = 30; // % deviation
+
+    private static final Random RANDOM = new Random();
 
     /**
      * Generates random coordinates based on the approximate distance of desired travel (+/- 30%),
@@ -21,53 +22,63 @@ public class MapUtils {
      * 1) A random number of metres is obtained (+/- 30%).
      *     </ul>
      *     <ul>
-     * 2) A random angle of direction (0-360) is obtained.
-     *     </ul>
-     *     <ul>
-     * 3) The number of metres the user needs to travel is obtained for both the X-axis and Y-axis,
-     * using a Pythagorean triangle. (This is an approximation as the world is not flat and leads to
-     * inaccurate values for large distances, but is good enough for the purposes of getting lost).
+     * 2) A random bearing (0-360) is obtained.
      *     </ul>
      *     <ul>
-     * 4) A LatLng is constructed using these values, is sanitised, then returned.
+     * 3) The destination is found by travelling that far along a great circle at that bearing,
+     * treating the earth as a sphere. (The earth is slightly flattened, but this is accurate to
+     * within 0.6% which is more than good enough for the purposes of getting lost).
      *     </ul>
      * </li>
      *
-     * @param approxDistance the approximate distance in kilometres that the user wishes to travel
+     * @param approxDistance the approximate distance in metres that the user wishes to travel
      * @param initialPos the start location of the journey
      * @return a random destination that is roughly the approximate distance from the
      * current location (+/- 30%)
      */
     public static LatLng getRandomCoordinates(double approxDistance, LatLng initialPos) {
-        // see http://stackoverflow.com/questions/2839533/adding-distance-to-a-gps-coordinate
-
-        double radiansFactor = (180 / Math.PI);
+        double[] lat = new double[1];
+        double[] lng = new double[1];
 
         double journeyDistanceMetres = getRandomMetres(approxDistance);
-        int directionAngle = getRandomJourneyDirection(); // hypotenuse length
+        double bearing = RANDOM.nextDouble() * 2 * Math.PI;
 
-        double xOffset = 0.0;
-        double yOffset = 0.0;
+        GeoUtils.Origin origin = new GeoUtils.Origin(initialPos.latitude, initialPos.longitude);
+        origin.getDestination(journeyDistanceMetres, Math.sin(bearing), Math.cos(bearing), lat, lng, 0);
 
-        if (directionAngle == 0) {
-            yOffset = journeyDistanceMetres;
-        }
-        else if (directionAngle == 90) {
-            xOffset = journeyDistanceMetres;
-        }
-        else {
-            yOffset = getYOffset(directionAngle, journeyDistanceMetres);
-            xOffset = getXOffset(journeyDistanceMetres, yOffset);
-        }
+        return new LatLng(lat[0], lng[0]);
+    }
+
+    /**
+     * Generates a batch of random destinations in one call, writing them into caller supplied
+     * arrays so that no objects are created. Destinations are spread uniformly over the ring
+     * between the minimum and maximum journey distance (+/- 30%), rather than being bunched
+     * towards the inner edge as they would be if the distance was picked uniformly.
+     *
+     * @param approxDistance the approximate distance in metres that the user wishes to travel
+     * @param originLat latitude of the start location
+     * @param originLng longitude of the start location
+     * @param random the source of randomness - pass a seeded Random to reproduce a batch
+     * @param lats array that the destination latitudes are written into
+     * @param lngs array that the destination longitudes are written into
+     * @param count the number of destinations to generate
+     */
+    public static void getRandomCoordinates(double approxDistance, double originLat, double originLng,
+                                            Random random, double[] lats, double[] lngs, int count) {
 
-        double deltaLat = radiansFactor * (yOffset / EARTH_RADIUS);
-        double deltaLng = ((radiansFactor) * (xOffset / EARTH_RADIUS)) / Math.cos(radiansFactor * initialPos.latitude);
+        double delta = (approxDistance / 100) * DELTA_DISTANCE_FACTOR;
+        double minSquared = (approxDistance - delta) * (approxDistance - delta);
+        double maxSquared = (approxDistance + delta) * (approxDistance + delta);
+
+        GeoUtils.Origin origin = new GeoUtils.Origin(originLat, originLng);
 
-        // decide whether to move up or down the map
-        double randomLat = (new Random().nextBoolean()) ? initialPos.latitude + deltaLat : initialPos.latitude - deltaLat;
-        double randomLng = (new Random().nextBoolean()) ? initialPos.longitude + deltaLng : initialPos.longitude - deltaLng;
+        for (int i=0; i < count; i++) {
+            double distance = Math.sqrt(minSquared + random.nextDouble() * (maxSquared - minSquared));
+            double bearing = random.nextDouble() * 2 * Math.PI;
 
-        return getSanitisedPosition(randomLat, randomLng);
+            origin.getDestination(distance, GeoUtils.sinBearing(bearing), GeoUtils.cosBearing(bearing),
+                    lats, lngs, i);
+        }
     }
 
     /**
@@ -83,14 +94,10 @@ public class MapUtils {
         double maxAxis = (approxDistance + delta);
 
         double range = maxAxis - minAxis;
-        double scale = new Random().nextDouble() * range;
+        double scale = RANDOM.nextDouble() * range;
         return scale + minAxis;
     }
 
-    public static int getRandomJourneyDirection() {
-        return new Random().nextInt(90);
-    }
-
     /**
      * This sanitises the newly generated LatLng in the event that the user lives at the GMT line
      * (e.g. London) or very far north (e.g. North Pole)
@@ -103,7 +110,10 @@ public class MapUtils {
      * @return a sanitised LatLng object that is guaranteed to be in the correct format for latlng
      */
     public static LatLng getSanitisedPosition(double randomLat, double randomLng) {
+        return new LatLng(getSanitisedLatitude(randomLat), getSanitisedLongitude(randomLng));
+    }
 
+    private static double getSanitisedLatitude(double randomLat) {
         if (randomLat < -90.0) {
             double absDiff = (randomLat + 90.0) * -1;
             randomLat = 90.0 - absDiff;
@@ -113,7 +123,10 @@ public class MapUtils {
             double absDiff = randomLat - 90.0;
             randomLat = 90.0 - absDiff;
         }
+        return randomLat;
+    }
 
+    private static double getSanitisedLongitude(double randomLng) {
         if (randomLng < -180.0) {
             double absDiff = (randomLng + 180.0) * -1;
             randomLng = 180.0 - absDiff;
@@ -123,16 +136,7 @@ public class MapUtils {
             randomLng = 180 - absDiff;
             randomLng *= -1;
         }
-
-        return new LatLng(randomLat, randomLng);
-    }
-
-    private static double getYOffset(int directionAngle, double journeyDistanceMetres) {
-        return Math.sin(directionAngle) * journeyDistanceMetres; // b = sin(c) c
-    }
-
-    private static double getXOffset(double journeyDistanceMetres, double yOffset) {
-        return Math.sqrt(Math.pow(journeyDistanceMetres, 2) - Math.pow(yOffset, 2)); // a^2 = c^2 - b^2
+        return randomLng;
     }
 
 }
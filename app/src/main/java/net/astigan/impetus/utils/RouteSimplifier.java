@@ -0,0 +1,200 @@
+package net.astigan.impetus.utils;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Simplifies a journey route as points arrive, keeping a separate simplified view for each band of
+ * map zoom levels. Raw GPS tracks carry far more points than can be seen when zoomed out, so
+ * rendering the simplified view for the current zoom cuts the number of polyline vertices.
+ *
+ * Each band uses an opening-window simplification: points are buffered after the last committed
+ * vertex until one of them strays further than the band's tolerance from the line between that
+ * vertex and the newest point, at which point the previous point is committed. Vertices are only
+ * ever appended, so views can be rendered incrementally using a version number.
+ */
+public class RouteSimplifier {
+
+    private static final float[] BAND_MIN_ZOOMS = { 0.0f, 11.0f, 13.0f, 15.0f, 17.0f };
+    private static final float MAX_ZOOM = 21.0f; // closest the map zooms in
+    private static final double PIXEL_TOLERANCE = 1.5; // max deviation from raw route in px
+    private static final double EQUATOR_METRES_PER_PIXEL = 156543.03; // at zoom 0
+    private static final int MAX_WINDOW_SIZE = 64; // bounds work per point
+
+    private final Band[] bands = new Band[BAND_MIN_ZOOMS.length];
+
+    private boolean hasPoints = false;
+    private double lastLat;
+    private double lastLng;
+
+    public RouteSimplifier() {
+        for (int i=0; i < bands.length; i++) {
+            bands[i] = new Band();
+        }
+    }
+
+    public void addPoint(double lat, double lng) {
+        if (!hasPoints) {
+            double cosLat = Math.cos(Math.toRadians(lat));
+
+            for (int i=0; i < bands.length; i++) {
+                bands[i].tolerance = PIXEL_TOLERANCE * EQUATOR_METRES_PER_PIXEL * cosLat / Math.pow(2, getBandMaxZoom(i));
+            }
+            hasPoints = true;
+        }
+
+        for (Band band : bands) {
+            band.addPoint(lat, lng);
+        }
+        lastLat = lat;
+        lastLng = lng;
+    }
+
+    public void clear() {
+        for (Band band : bands) {
+            band.clear();
+        }
+        hasPoints = false;
+    }
+
+    public int getBandForZoom(float zoom) {
+        int band = 0;
+
+        for (int i=1; i < BAND_MIN_ZOOMS.length; i++) {
+            if (zoom >= BAND_MIN_ZOOMS[i]) {
+                band = i;
+            }
+        }
+        return band;
+    }
+
+    /**
+     * @return the closest zoom a band is shown at, where its tolerance is the most visible
+     */
+    public float getBandMaxZoom(int band) {
+        return (band + 1 < BAND_MIN_ZOOMS.length) ? BAND_MIN_ZOOMS[band + 1] : MAX_ZOOM;
+    }
+
+    public int getBandCount() {
+        return bands.length;
+    }
+
+    public int getVertexCount(int band) {
+        return bands[band].size;
+    }
+
+    /**
+     * Appends the vertices committed to a band since a previous version to the given list
+     *
+     * @param band the zoom band, see getBandForZoom
+     * @param version a version previously returned by this method, or 0 for all vertices
+     * @param vertices the list that new vertices are appended to
+     * @return the current version of the band
+     */
+    public int getVerticesSince(int band, int version, List<LatLng> vertices) {
+        Band b = bands[band];
+
+        for (int i = Math.max(version, 0); i < b.size; i++) {
+            vertices.add(new LatLng(b.latitudes[i], b.longitudes[i]));
+        }
+        return b.size;
+    }
+
+    /**
+     * @return the last vertex committed to a band, or null if there are no points
+     */
+    public LatLng getLastVertex(int band) {
+        Band b = bands[band];
+        return (b.size == 0) ? null : new LatLng(b.latitudes[b.size - 1], b.longitudes[b.size - 1]);
+    }
+
+    /**
+     * @return the most recent point added, which may not have been committed as a vertex yet
+     */
+    public LatLng getLastPoint() {
+        return (hasPoints) ? new LatLng(lastLat, lastLng) : null;
+    }
+
+    private static class Band {
+
+        private double tolerance; // m
+
+        private double[] latitudes = new double[64];
+        private double[] longitudes = new double[64];
+        private int size = 0;
+
+        // points received since the last committed vertex
+        private final double[] windowLats = new double[MAX_WINDOW_SIZE];
+        private final double[] windowLngs = new double[MAX_WINDOW_SIZE];
+        private int windowSize = 0;
+
+        void addPoint(double lat, double lng) {
+            if (size == 0) {
+                commit(lat, lng);
+                return;
+            }
+
+            if (windowSize > 0 && (windowSize == MAX_WINDOW_SIZE || exceedsTolerance(lat, lng))) {
+                int previous = windowSize - 1;
+                commit(windowLats[previous], windowLngs[previous]);
+                windowSize = 0;
+            }
+            windowLats[windowSize] = lat;
+            windowLngs[windowSize] = lng;
+            windowSize++;
+        }
+
+        void clear() {
+            size = 0;
+            windowSize = 0;
+        }
+
+        /**
+         * Checks whether any buffered point is too far from the segment between the last vertex
+         * and the new point. Coordinates are projected onto a local flat plane in metres, which is
+         * accurate enough over the short distances involved.
+         */
+        private boolean exceedsTolerance(double lat, double lng) {
+            double anchorLat = latitudes[size - 1];
+            double anchorLng = longitudes[size - 1];
+
+            double metresPerDegree = Math.toRadians(GeoUtils.EARTH_MEAN_RADIUS);
+            double lngScale = metresPerDegree * Math.cos(Math.toRadians(anchorLat));
+
+            double endX = (lng - anchorLng) * lngScale;
+            double endY = (lat - anchorLat) * metresPerDegree;
+            double lengthSquared = endX * endX + endY * endY;
+            double toleranceSquared = tolerance * tolerance;
+
+            for (int i=0; i < windowSize; i++) {
+                double x = (windowLngs[i] - anchorLng) * lngScale;
+                double y = (windowLats[i] - anchorLat) * metresPerDegree;
+
+                double t = (lengthSquared == 0) ? 0 : (x * endX + y * endY) / lengthSquared;
+                t = Math.max(0, Math.min(1, t));
+
+                double dx = x - t * endX;
+                double dy = y - t * endY;
+
+                if (dx * dx + dy * dy > toleranceSquared) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void commit(double lat, double lng) {
+            if (size == latitudes.length) {
+                int newCapacity = size + (size >> 1);
+                latitudes = Arrays.copyOf(latitudes, newCapacity);
+                longitudes = Arrays.copyOf(longitudes, newCapacity);
+            }
+            latitudes[size] = lat;
+            longitudes[size] = lng;
+            size++;
+        }
+    }
+
+}